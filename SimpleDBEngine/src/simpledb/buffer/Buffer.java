@@ -1,5 +1,6 @@
 package simpledb.buffer;
 
+import java.util.concurrent.atomic.AtomicInteger;
 import simpledb.file.*;
 import simpledb.log.LogMgr;
 
@@ -13,17 +14,28 @@ import simpledb.log.LogMgr;
  * @author Edward Sciore
  */
 public class Buffer {
+   /**
+    * The LSN of a modification that need not be on disk when the
+    * transaction commits, such as a change to a temporary table.
+    * The buffer is written when it is replaced, or by a flush
+    * of every dirty buffer.
+    */
+   public static final int NO_FORCE = -2;
+
    private FileMgr fm;
    private LogMgr lm;
    private Page contents;
    private BlockId blk = null;
-   private int pins = 0;
+   private AtomicInteger pins = new AtomicInteger();
    private int txnum = -1;
    private int lsn = -1;
+   private boolean unlogged = false;
+   private int frame;
 
-   public Buffer(FileMgr fm, LogMgr lm) {
+   public Buffer(FileMgr fm, LogMgr lm, int frame) {
       this.fm = fm;
       this.lm = lm;
+      this.frame = frame;
       contents = new Page(fm.blockSize());
    }
    
@@ -40,10 +52,23 @@ public class Buffer {
       return blk;
    }
 
-   public void setModified(int txnum, int lsn) {
+   /**
+    * Mark the buffer as modified by the specified transaction.
+    * A negative LSN denotes a modification that was not logged,
+    * and so has to be forced to disk when the transaction commits,
+    * unless the LSN is {@link #NO_FORCE}.
+    * A transaction holds the buffer's monitor while it logs and
+    * applies a modification, so that a concurrent flush never
+    * writes a half-applied change.
+    * @param txnum the id of the modifying transaction
+    * @param lsn the LSN of the modification's log record
+    */
+   public synchronized void setModified(int txnum, int lsn) {
       this.txnum = txnum;
       if (lsn >= 0)
          this.lsn = lsn;
+      else if (lsn != NO_FORCE)
+         unlogged = true;
    }
 
    /**
@@ -52,13 +77,33 @@ public class Buffer {
     * @return true if the buffer is pinned
     */
    public boolean isPinned() {
-      return pins > 0;
+      return pins.get() > 0;
    }
    
    public int modifyingTx() {
       return txnum;
    }
 
+   /**
+    * Return true if the buffer holds a modification
+    * that was not logged and has not been written to disk.
+    * @return true if the buffer has unlogged modifications
+    */
+   boolean hasUnloggedChanges() {
+      return unlogged;
+   }
+
+   /**
+    * Return the position of this buffer within its partition
+    * of the buffer pool.
+    * Replacement policies use it to index their
+    * per-frame bookkeeping.
+    * @return the buffer's frame number
+    */
+   int frame() {
+      return frame;
+   }
+
    /**
     * Reads the contents of the specified block into
     * the contents of the buffer.
@@ -70,17 +115,39 @@ public class Buffer {
       flush();
       blk = b;
       fm.read(blk, contents);
-      pins = 0;
+      pins.set(0);
    }
    
+   /**
+    * Detach the buffer from its block so that it can receive
+    * a block that is being read ahead.
+    * The buffer must be clean and unpinned; it stays pinned,
+    * and so cannot be chosen as a victim, until the
+    * read-ahead is installed or abandoned.
+    */
+   void reserve() {
+      blk = null;
+      pins.set(1);
+   }
+
+   /**
+    * Assign the buffer to a block whose contents
+    * have already been read into it.
+    * @param b a reference to the data block
+    */
+   void assignPrefetched(BlockId b) {
+      blk = b;
+   }
+
    /**
     * Write the buffer to its disk block if it is dirty.
     */
-   void flush() {
+   synchronized void flush() {
       if (txnum >= 0) {
          lm.flush(lsn);
          fm.write(blk, contents);
          txnum = -1;
+         unlogged = false;
       }
    }
 
@@ -88,13 +155,13 @@ public class Buffer {
     * Increase the buffer's pin count.
     */
    void pin() {
-      pins++;
+      pins.incrementAndGet();
    }
 
    /**
     * Decrease the buffer's pin count.
     */
    void unpin() {
-      pins--;
+      pins.decrementAndGet();
    }
 }
\ No newline at end of file
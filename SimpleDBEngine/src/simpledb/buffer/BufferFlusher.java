@@ -0,0 +1,78 @@
+package simpledb.buffer;
+
+/**
+ * A background thread that periodically writes unpinned
+ * dirty buffers to disk.
+ * Because the pages are cleaned ahead of time, a pin that
+ * needs to replace a buffer rarely has to write it first,
+ * and a committing transaction has fewer pages to force.
+ * Each round writes at most a fixed number of buffers,
+ * so that the writer trickles pages out rather than
+ * competing with transactions for the disk.
+ * The thread runs until {@link #shutdown()} is called.
+ */
+public class BufferFlusher extends Thread {
+   private BufferMgr bm;
+   private long interval;
+   private int batchsize;
+   private Object monitor = new Object(); // not the thread's own, which join uses
+   private boolean stopped = false;
+
+   /**
+    * Create a daemon thread that flushes the specified buffer manager.
+    * @param bm the buffer manager
+    * @param interval the time between rounds, in milliseconds
+    * @param batchsize the maximum number of buffers written per round
+    */
+   public BufferFlusher(BufferMgr bm, long interval, int batchsize) {
+      super("BufferFlusher");
+      this.bm = bm;
+      this.interval = interval;
+      this.batchsize = batchsize;
+      setDaemon(true);
+   }
+
+   public void run() {
+      while (awaitRound())
+         bm.flushDirty(batchsize);
+   }
+
+   /**
+    * Stop the thread and wait for it to finish its current round.
+    * The thread is not interrupted, since interrupting a
+    * thread doing file I/O closes the file's channel.
+    */
+   public void shutdown() {
+      synchronized (monitor) {
+         stopped = true;
+         monitor.notifyAll();
+      }
+      try {
+         join();
+      }
+      catch(InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   /**
+    * Wait for the next round.
+    * @return false if the thread has been stopped
+    */
+   private boolean awaitRound() {
+      synchronized (monitor) {
+         long end = System.currentTimeMillis() + interval;
+         long remaining = interval;
+         while (!stopped && remaining > 0) {
+            try {
+               monitor.wait(remaining);
+            }
+            catch(InterruptedException e) {
+               stopped = true;
+            }
+            remaining = end - System.currentTimeMillis();
+         }
+         return !stopped;
+      }
+   }
+}
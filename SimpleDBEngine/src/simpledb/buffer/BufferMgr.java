@@ -1,80 +1,194 @@
 package simpledb.buffer;
 
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import simpledb.file.*;
 import simpledb.log.LogMgr;
 
 /**
  * Manages the pinning and unpinning of buffers to blocks.
+ * The buffer pool is divided into partitions, and each block
+ * is cached in the partition that its hash code maps to.
+ * Each partition has its own lock, block table and
+ * {@link ReplacementPolicy}, so threads pinning blocks in
+ * different partitions do not contend with each other.
+ * Small pools use a single partition, so that every
+ * buffer is available to every block; in a larger pool,
+ * {@link #available()} reports what a single partition can
+ * provide, since one partition can run out of buffers
+ * while the others still have some.
+ * <p>
+ * The buffer manager also detects sequential scans:
+ * when a file's blocks are pinned in order and the next
+ * one is not in the pool, the following blocks are read
+ * into free buffers with a single scattering read
+ * (see {@link #setReadAhead(int)}).
  * @author Edward Sciore
  *
  */
 public class BufferMgr {
-   private Buffer[] bufferpool;
-   private int numAvailable;
+   private FileMgr fm;
+   private BufferPartition[] partitions;
    private static final long MAX_TIME = 10000; // 10 seconds
-   
+   private static final int MIN_PARTITION_SIZE = 64;
+   private static final int SCAN_SLOTS = 64;
+   private int readAhead = 0;
+   private AtomicReferenceArray<BlockId> lastPinned = new AtomicReferenceArray<>(SCAN_SLOTS);
+
    /**
-    * Creates a buffer manager having the specified number 
-    * of buffer slots.
+    * Creates a buffer manager having the specified number
+    * of buffer slots, using the LRU replacement policy.
     * This constructor depends on a {@link FileMgr} and
     * {@link simpledb.log.LogMgr LogMgr} object.
     * @param numbuffs the number of buffer slots to allocate
     */
    public BufferMgr(FileMgr fm, LogMgr lm, int numbuffs) {
-      bufferpool = new Buffer[numbuffs];
-      numAvailable = numbuffs;
-      for (int i=0; i<numbuffs; i++)
-         bufferpool[i] = new Buffer(fm, lm);
+      this(fm, lm, numbuffs, ReplacementPolicy.LRU);
+   }
+
+   /**
+    * Creates a buffer manager having the specified number
+    * of buffer slots and the specified replacement policy.
+    * The number of partitions is chosen from the number of
+    * available processors, but no partition has fewer
+    * than MIN_PARTITION_SIZE buffers.
+    * @param numbuffs the number of buffer slots to allocate
+    * @param policyname the name of the replacement policy
+    */
+   public BufferMgr(FileMgr fm, LogMgr lm, int numbuffs, String policyname) {
+      this(fm, lm, numbuffs, policyname, defaultPartitions(numbuffs));
+   }
+
+   /**
+    * Creates a buffer manager having the specified number
+    * of buffer slots, replacement policy and number of partitions.
+    * @param numbuffs the number of buffer slots to allocate
+    * @param policyname the name of the replacement policy
+    * @param numpartitions the number of partitions of the pool
+    */
+   public BufferMgr(FileMgr fm, LogMgr lm, int numbuffs, String policyname, int numpartitions) {
+      this.fm = fm;
+      partitions = new BufferPartition[numpartitions];
+      for (int p=0; p<numpartitions; p++) {
+         // spread the remainder over the first partitions
+         int size = numbuffs / numpartitions + (p < numbuffs % numpartitions ? 1 : 0);
+         Buffer[] buffers = new Buffer[size];
+         for (int i=0; i<size; i++)
+            buffers[i] = new Buffer(fm, lm, i);
+         partitions[p] = new BufferPartition(buffers, policyname);
+      }
+   }
+
+   /**
+    * Sets the number of blocks that are read at once
+    * when a sequential scan misses the pool.
+    * A value of 0 or 1 disables read-ahead.
+    * @param numblocks the maximum number of blocks per read
+    */
+   public void setReadAhead(int numblocks) {
+      readAhead = numblocks;
    }
-   
+
    /**
-    * Returns the number of available (i.e. unpinned) buffers.
+    * Returns the number of available (i.e. unpinned) buffers
+    * that any blocks can be pinned to at once.
+    * A block can only use a buffer of its own partition, and
+    * the blocks being pinned may all map to the same partition,
+    * so this is the smallest number of available buffers
+    * of a partition, not their total.
+    * The partitions are not locked, so the value is a snapshot.
     * @return the number of available buffers
     */
-   public synchronized int available() {
+   public int available() {
+      int numAvailable = Integer.MAX_VALUE;
+      for (BufferPartition partition : partitions)
+         numAvailable = Math.min(numAvailable, partition.available());
       return numAvailable;
    }
-   
+
    /**
-    * Flushes the dirty buffers modified by the specified transaction.
+    * Flushes the dirty buffers modified by the specified transaction,
+    * and forces them to disk.
     * @param txnum the transaction's id number
     */
-   public synchronized void flushAll(int txnum) {
-      for (Buffer buff : bufferpool)
-         if (buff.modifyingTx() == txnum)
-         buff.flush();
+   public void flushAll(int txnum) {
+      for (BufferPartition partition : partitions)
+         partition.flushAll(txnum);
+      fm.forceAll();
    }
-   
-   
+
+   /**
+    * Flushes the buffers modified by the specified transaction
+    * that hold modifications it did not log.
+    * Such modifications cannot be redone during recovery,
+    * and so must be on disk before the transaction commits.
+    * @param txnum the transaction's id number
+    */
+   public void flushUnlogged(int txnum) {
+      for (BufferPartition partition : partitions)
+         partition.flushUnlogged(txnum);
+      fm.forceAll();
+   }
+
+   /**
+    * Flushes every dirty buffer, whichever transaction modified it,
+    * and forces the data files to disk.
+    * Used by checkpoints.
+    */
+   public void flushAll() {
+      for (BufferPartition partition : partitions)
+         partition.flushAll();
+      fm.forceAll();
+   }
+
+   /**
+    * Writes up to the specified number of unpinned dirty
+    * buffers to disk, in block order, so that later
+    * replacements and commits find them clean.
+    * Each buffer's log records are flushed before the buffer
+    * itself is written, as required by write-ahead logging.
+    * This method is called by the {@link BufferFlusher}.
+    * @param max the maximum number of buffers to write
+    * @return the number of buffers written
+    */
+   public int flushDirty(int max) {
+      SortedMap<BlockId,Buffer> dirty = new TreeMap<>();
+      for (BufferPartition partition : partitions)
+         partition.collectDirty(dirty);
+      int count = 0;
+      for (Map.Entry<BlockId,Buffer> e : dirty.entrySet()) {
+         if (count >= max)
+            break;
+         BlockId blk = e.getKey();
+         if (partitionOf(blk).flushIfUnpinned(e.getValue(), blk))
+            count++;
+      }
+      return count;
+   }
+
    /**
     * Unpins the specified data buffer. If its pin count
-    * goes to zero, then notify any waiting threads.
+    * goes to zero, then notify one thread waiting
+    * in the buffer's partition.
     * @param buff the buffer to be unpinned
     */
-   public synchronized void unpin(Buffer buff) {
-      buff.unpin();
-      if (!buff.isPinned()) {
-         numAvailable++;
-         notifyAll();
-      }
+   public void unpin(Buffer buff) {
+      partitionOf(buff.block()).unpin(buff);
    }
-   
+
    /**
     * Pins a buffer to the specified block, potentially
     * waiting until a buffer becomes available.
-    * If no buffer becomes available within a fixed 
+    * If no buffer becomes available within a fixed
     * time period, then a {@link BufferAbortException} is thrown.
     * @param blk a reference to a disk block
     * @return the buffer pinned to that block
     */
-   public synchronized Buffer pin(BlockId blk) {
+   public Buffer pin(BlockId blk) {
+      if (readAhead > 1 && isSequential(blk))
+         readAhead(blk);
       try {
-         long timestamp = System.currentTimeMillis();
-         Buffer buff = tryToPin(blk);
-         while (buff == null && !waitingTooLong(timestamp)) {
-            wait(MAX_TIME);
-            buff = tryToPin(blk);
-         }
+         Buffer buff = partitionOf(blk).pin(blk, MAX_TIME);
          if (buff == null)
             throw new BufferAbortException();
          return buff;
@@ -82,48 +196,79 @@ public class BufferMgr {
       catch(InterruptedException e) {
          throw new BufferAbortException();
       }
-   }  
-   
-   private boolean waitingTooLong(long starttime) {
-      return System.currentTimeMillis() - starttime > MAX_TIME;
    }
-   
+
    /**
-    * Tries to pin a buffer to the specified block. 
-    * If there is already a buffer assigned to that block
-    * then that buffer is used;  
-    * otherwise, an unpinned buffer from the pool is chosen.
-    * Returns a null value if there are no available buffers.
-    * @param blk a reference to a disk block
-    * @return the pinned buffer
+    * Remember the specified block as the last one pinned
+    * in its file, and return true if the previous pin in
+    * that file was of the preceding block.
+    * Files share a small table of slots, so interleaved
+    * scans of many files may go undetected, which only
+    * costs the read-ahead. Concurrent pinners swap the
+    * slot atomically, so each sees a block actually pinned.
     */
-   private Buffer tryToPin(BlockId blk) {
-      Buffer buff = findExistingBuffer(blk);
-      if (buff == null) {
-         buff = chooseUnpinnedBuffer();
-         if (buff == null)
-            return null;
-         buff.assignToBlock(blk);
-      }
-      if (!buff.isPinned())
-         numAvailable--;
-      buff.pin();
-      return buff;
+   private boolean isSequential(BlockId blk) {
+      int slot = Math.floorMod(blk.fileName().hashCode(), SCAN_SLOTS);
+      BlockId prev = lastPinned.getAndSet(slot, blk);
+      return prev != null && prev.number() == blk.number() - 1
+            && prev.fileName().equals(blk.fileName());
    }
-   
-   private Buffer findExistingBuffer(BlockId blk) {
-      for (Buffer buff : bufferpool) {
-         BlockId b = buff.block();
-         if (b != null && b.equals(blk))
-            return buff;
+
+   /**
+    * Read the specified block and the blocks after it into
+    * free buffers with a single read, so that the following
+    * pins of a sequential scan find them in the pool.
+    * The run stops at the end of the file, at a block already
+    * in the pool, or when no clean buffer can be reserved,
+    * and it takes at most half of the available buffers.
+    * Nothing is done if the block itself is in the pool,
+    * so a scan of cached blocks does not look up the
+    * length of the file for each of them.
+    */
+   private void readAhead(BlockId blk) {
+      if (partitionOf(blk).isResident(blk))
+         return;
+      String filename = blk.fileName();
+      int n = Math.min(readAhead, available() / 2);
+      n = Math.min(n, fm.length(filename) - blk.number());
+      if (n < 2)
+         return;
+      Buffer[] buffs = new Buffer[n];
+      long[] epochs = new long[buffs.length];
+      int count = 0;
+      while (count < n) {
+         BlockId b = new BlockId(filename, blk.number() + count);
+         BufferPartition partition = partitionOf(b);
+         epochs[count] = partition.writeEpoch();
+         buffs[count] = partition.reserve(b);
+         if (buffs[count] == null)
+            break;
+         count++;
+      }
+      if (count == 0)
+         return;
+      Page[] pages = new Page[count];
+      for (int i=0; i<count; i++)
+         pages[i] = buffs[i].contents();
+      boolean ok = false;
+      try {
+         fm.read(blk, pages);
+         ok = true;
+      }
+      finally {
+         for (int i=0; i<count; i++) {
+            BlockId b = new BlockId(filename, blk.number() + i);
+            partitionOf(b).install(buffs[i], b, ok ? epochs[i] : -1);
+         }
       }
-      return null;
    }
-   
-   private Buffer chooseUnpinnedBuffer() {
-      for (Buffer buff : bufferpool)
-         if (!buff.isPinned())
-         return buff;
-      return null;
+
+   private BufferPartition partitionOf(BlockId blk) {
+      return partitions[Math.floorMod(blk.hashCode(), partitions.length)];
+   }
+
+   private static int defaultPartitions(int numbuffs) {
+      int cpus = Runtime.getRuntime().availableProcessors();
+      return Math.max(1, Math.min(2 * cpus, numbuffs / MIN_PARTITION_SIZE));
    }
 }
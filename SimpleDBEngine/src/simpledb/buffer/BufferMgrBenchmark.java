@@ -0,0 +1,56 @@
+package simpledb.buffer;
+
+import java.util.Random;
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+
+/**
+ * Measures pin/unpin throughput as the number of threads grows,
+ * for a single-partition pool and for a partitioned pool.
+ * Every thread repeatedly pins and unpins random blocks of
+ * a working set that fits in the pool, so after warm-up
+ * the benchmark measures the cost of buffer hits.
+ * Usage: BufferMgrBenchmark [numbuffs [pinsPerThread]]
+ */
+public class BufferMgrBenchmark {
+   public static void main(String[] args) throws Exception {
+      int numbuffs = (args.length > 0) ? Integer.parseInt(args[0]) : 4096;
+      int pinsPerThread = (args.length > 1) ? Integer.parseInt(args[1]) : 1000000;
+      SimpleDB db = new SimpleDB("bufferbenchmark", 400, 8);
+      FileMgr fm = db.fileMgr();
+      int maxthreads = 2 * Runtime.getRuntime().availableProcessors();
+      int[] partitionCounts = {1, maxthreads};
+
+      for (int numpartitions : partitionCounts) {
+         System.out.println(numpartitions + " partition(s), " + numbuffs + " buffers:");
+         for (int numthreads=1; numthreads<=maxthreads; numthreads*=2) {
+            BufferMgr bm = new BufferMgr(fm, db.logMgr(), numbuffs, ReplacementPolicy.LRU, numpartitions);
+            run(bm, numbuffs/2, 1, pinsPerThread/10); // warm-up
+            long start = System.nanoTime();
+            run(bm, numbuffs/2, numthreads, pinsPerThread);
+            long elapsed = System.nanoTime() - start;
+            long pins = (long) numthreads * pinsPerThread;
+            System.out.println("   " + numthreads + " thread(s): "
+                  + (pins * 1000000000L / elapsed) + " pins/sec");
+         }
+      }
+   }
+
+   private static void run(BufferMgr bm, int workingset, int numthreads, int pinsPerThread)
+         throws InterruptedException {
+      Thread[] threads = new Thread[numthreads];
+      for (int t=0; t<numthreads; t++) {
+         Random rand = new Random(t);
+         threads[t] = new Thread(() -> {
+            for (int i=0; i<pinsPerThread; i++) {
+               BlockId blk = new BlockId("benchfile", rand.nextInt(workingset));
+               Buffer buff = bm.pin(blk);
+               bm.unpin(buff);
+            }
+         });
+         threads[t].start();
+      }
+      for (Thread t : threads)
+         t.join();
+   }
+}
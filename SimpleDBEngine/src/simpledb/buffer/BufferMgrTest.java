@@ -32,5 +32,13 @@ public class BufferMgrTest {
          if (b != null) 
             System.out.println("buff["+i+"] pinned to block " + b.block());
       }
+
+      // a partitioned pool: the blocks 0, 4, 8, ... all map to
+      // the same one of the 4 partitions, and still get buffers
+      BufferMgr pbm = new BufferMgr(db.fileMgr(), db.logMgr(), 256, ReplacementPolicy.LRU, 4);
+      int n = pbm.available();
+      for (int i=0; i<n; i++)
+         pbm.pin(new BlockId("testfile", 4*i));
+      System.out.println("\nPinned " + n + " blocks of one partition (expected 64)");
    }
 }
@@ -0,0 +1,314 @@
+package simpledb.buffer;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.*;
+import simpledb.file.BlockId;
+
+/**
+ * One partition of the buffer pool.
+ * Each partition owns a fixed subset of the buffers,
+ * the table of blocks currently assigned to them,
+ * and its own replacement policy.
+ * A block is always cached in the partition its hash
+ * maps to, so pins of unrelated blocks take different
+ * locks and can proceed in parallel.
+ * Threads waiting for a buffer wait on the partition's
+ * condition, and each unpin wakes at most one of them.
+ * The partition counts the writes of its buffers (its
+ * "write epoch"), so that a block read ahead without the
+ * lock can be discarded if it may have been overwritten.
+ */
+class BufferPartition {
+   private Buffer[] buffers;
+   private Map<BlockId,Buffer> bufferTable = new HashMap<>();
+   private ReplacementPolicy policy;
+   private volatile int numAvailable;
+   private long writeEpoch = 0;
+   private ReentrantLock lock = new ReentrantLock();
+   private Condition bufferFreed = lock.newCondition();
+
+   /**
+    * Create a partition that manages the specified buffers.
+    * @param buffers the buffers owned by the partition
+    * @param policyname the name of the replacement policy
+    */
+   BufferPartition(Buffer[] buffers, String policyname) {
+      this.buffers = buffers;
+      numAvailable = buffers.length;
+      policy = ReplacementPolicy.createPolicy(policyname, buffers);
+   }
+
+   /**
+    * Pin a buffer to the specified block, waiting at most
+    * the specified time for one of the partition's buffers
+    * to become available.
+    * @param blk a reference to a disk block
+    * @param maxtime the maximum wait, in milliseconds
+    * @return the pinned buffer, or null if the wait timed out
+    */
+   Buffer pin(BlockId blk, long maxtime) throws InterruptedException {
+      lock.lock();
+      try {
+         long remaining = TimeUnit.MILLISECONDS.toNanos(maxtime);
+         Buffer buff = tryToPin(blk);
+         while (buff == null && remaining > 0) {
+            remaining = bufferFreed.awaitNanos(remaining);
+            buff = tryToPin(blk);
+         }
+         // a woken thread may have found its block already
+         // in the pool, so pass any unused wakeup along
+         if (numAvailable > 0 && lock.hasWaiters(bufferFreed))
+            bufferFreed.signal();
+         return buff;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Unpin the specified buffer. If its pin count
+    * goes to zero, then wake one waiting thread.
+    * @param buff the buffer to be unpinned
+    */
+   void unpin(Buffer buff) {
+      lock.lock();
+      try {
+         buff.unpin();
+         if (!buff.isPinned()) {
+            numAvailable++;
+            policy.unpinned(buff);
+            bufferFreed.signal();
+         }
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Flush the partition's buffers modified by the specified transaction.
+    * @param txnum the transaction's id number
+    */
+   void flushAll(int txnum) {
+      lock.lock();
+      try {
+         for (Buffer buff : buffers)
+            if (buff.modifyingTx() == txnum) {
+               writeEpoch++;
+               buff.flush();
+            }
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Flush the partition's buffers modified by the specified
+    * transaction that hold modifications it did not log.
+    * @param txnum the transaction's id number
+    */
+   void flushUnlogged(int txnum) {
+      lock.lock();
+      try {
+         for (Buffer buff : buffers)
+            if (buff.modifyingTx() == txnum && buff.hasUnloggedChanges()) {
+               writeEpoch++;
+               buff.flush();
+            }
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Flush every dirty buffer of the partition, pinned or not.
+    * The lock is taken separately for each buffer,
+    * so that pins are only held up for one write at a time.
+    */
+   void flushAll() {
+      for (Buffer buff : buffers) {
+         lock.lock();
+         try {
+            if (buff.modifyingTx() >= 0)
+               writeEpoch++;
+            buff.flush();
+         }
+         finally {
+            lock.unlock();
+         }
+      }
+   }
+
+   /**
+    * Add the partition's unpinned, modified buffers
+    * to the specified map, keyed by their blocks.
+    * @param dirty the map of dirty buffers
+    */
+   void collectDirty(Map<BlockId,Buffer> dirty) {
+      lock.lock();
+      try {
+         for (Buffer buff : buffers)
+            if (!buff.isPinned() && buff.modifyingTx() >= 0)
+               dirty.put(buff.block(), buff);
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Write the specified buffer to disk, provided that it
+    * is still assigned to the specified block, is still
+    * dirty, and is not pinned.
+    * Holding the lock keeps the buffer from being pinned
+    * or reassigned while it is being written.
+    * @param buff the buffer to be written
+    * @param blk the block the buffer was assigned to
+    * @return true if the buffer was written
+    */
+   boolean flushIfUnpinned(Buffer buff, BlockId blk) {
+      lock.lock();
+      try {
+         if (buff.isPinned() || buff.modifyingTx() < 0 || !blk.equals(buff.block()))
+            return false;
+         writeEpoch++;
+         buff.flush();
+         return true;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Return the partition's current write epoch.
+    * Taking the lock ensures that no write begun
+    * under an earlier epoch is still in progress.
+    * @return the number of buffer writes so far
+    */
+   long writeEpoch() {
+      lock.lock();
+      try {
+         return writeEpoch;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Return true if the specified block is assigned
+    * to one of the partition's buffers.
+    * @param blk a reference to a disk block
+    * @return true if the block is in the partition
+    */
+   boolean isResident(BlockId blk) {
+      lock.lock();
+      try {
+         return bufferTable.containsKey(blk);
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Reserve a buffer to receive the specified block,
+    * which is about to be read ahead of a sequential scan.
+    * Read-ahead never waits and never writes, so no buffer
+    * is reserved if the block is already in the partition,
+    * or if the replacement policy's victim is dirty.
+    * @param blk the block to be read ahead
+    * @return the reserved buffer, or null
+    */
+   Buffer reserve(BlockId blk) {
+      lock.lock();
+      try {
+         if (bufferTable.containsKey(blk))
+            return null;
+         Buffer buff = policy.chooseVictim();
+         if (buff == null || buff.modifyingTx() >= 0)
+            return null;
+         if (buff.block() != null)
+            bufferTable.remove(buff.block());
+         buff.reserve();
+         numAvailable--;
+         policy.pinned(buff);
+         return buff;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Release a reserved buffer, assigning it to the block
+    * that was read into it, unless the block may have been
+    * written since the read began (its epoch is out of date)
+    * or the block was pinned into another buffer meanwhile.
+    * In those cases the buffer is left unassigned.
+    * @param buff the reserved buffer
+    * @param blk the block that was read into it
+    * @param epoch the write epoch before the read began
+    */
+   void install(Buffer buff, BlockId blk, long epoch) {
+      lock.lock();
+      try {
+         if (epoch == writeEpoch && !bufferTable.containsKey(blk)) {
+            buff.assignPrefetched(blk);
+            bufferTable.put(blk, buff);
+         }
+         buff.unpin();
+         numAvailable++;
+         policy.unpinned(buff);
+         bufferFreed.signal();
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Return the number of the partition's unpinned buffers.
+    * The count is read without taking the lock,
+    * so it is only a snapshot.
+    * @return the number of available buffers
+    */
+   int available() {
+      return numAvailable;
+   }
+
+   /**
+    * Tries to pin a buffer to the specified block. 
+    * If there is already a buffer assigned to that block
+    * then that buffer is used;  
+    * otherwise, the replacement policy chooses an unpinned buffer.
+    * Returns a null value if there are no available buffers.
+    * Must be called with the lock held.
+    * @param blk a reference to a disk block
+    * @return the pinned buffer
+    */
+   private Buffer tryToPin(BlockId blk) {
+      Buffer buff = bufferTable.get(blk);
+      if (buff == null) {
+         buff = policy.chooseVictim();
+         if (buff == null)
+            return null;
+         if (buff.block() != null)
+            bufferTable.remove(buff.block());
+         if (buff.modifyingTx() >= 0)
+            writeEpoch++;
+         buff.assignToBlock(blk);
+         bufferTable.put(blk, buff);
+      }
+      if (!buff.isPinned())
+         numAvailable--;
+      buff.pin();
+      policy.pinned(buff);
+      return buff;
+   }
+}
@@ -0,0 +1,49 @@
+package simpledb.buffer;
+
+/**
+ * The clock (second-chance) replacement policy.
+ * Each frame has a reference bit that is set whenever
+ * the frame is pinned. The clock hand sweeps the pool,
+ * clearing reference bits, and chooses the first unpinned
+ * frame whose bit is already clear.
+ */
+class ClockPolicy implements ReplacementPolicy {
+   private Buffer[] bufferpool;
+   private boolean[] referenced;
+   private int hand = 0;
+
+   /**
+    * Create a clock policy for the specified buffer pool.
+    * @param bufferpool the buffers managed by the policy
+    */
+   public ClockPolicy(Buffer[] bufferpool) {
+      this.bufferpool = bufferpool;
+      referenced = new boolean[bufferpool.length];
+   }
+
+   public void pinned(Buffer buff) {
+      referenced[buff.frame()] = true;
+   }
+
+   public void unpinned(Buffer buff) {
+      // the reference bit was already set when the buffer was pinned
+   }
+
+   /**
+    * Sweep the pool at most twice: the first pass may
+    * only clear reference bits, but the second pass is
+    * then guaranteed to find any unpinned frame.
+    */
+   public Buffer chooseVictim() {
+      for (int i=0; i<2*bufferpool.length; i++) {
+         Buffer buff = bufferpool[hand];
+         hand = (hand + 1) % bufferpool.length;
+         if (buff.isPinned())
+            continue;
+         if (!referenced[buff.frame()])
+            return buff;
+         referenced[buff.frame()] = false;
+      }
+      return null;
+   }
+}
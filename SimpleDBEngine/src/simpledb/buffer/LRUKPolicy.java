@@ -0,0 +1,82 @@
+package simpledb.buffer;
+
+import simpledb.file.BlockId;
+
+/**
+ * The LRU-K replacement policy.
+ * The policy remembers the times of the last K pins of
+ * each frame, and chooses the unpinned frame whose K-th
+ * most recent pin is the oldest. Frames that have been
+ * pinned fewer than K times since they were assigned are
+ * chosen first, least-recently-used among them.
+ * This keeps a single sequential scan from flushing
+ * the frames that are repeatedly re-referenced.
+ * The history of a frame is discarded when it is
+ * assigned to a different block.
+ */
+class LRUKPolicy implements ReplacementPolicy {
+   static final int DEFAULT_K = 2;
+   private Buffer[] bufferpool;
+   private BlockId[] blocks;
+   private long[][] history;
+   private int k;
+   private long clock = 0;
+
+   /**
+    * Create an LRU-K policy for the specified buffer pool.
+    * @param bufferpool the buffers managed by the policy
+    * @param k the number of references remembered per frame
+    */
+   public LRUKPolicy(Buffer[] bufferpool, int k) {
+      this.bufferpool = bufferpool;
+      this.k = k;
+      blocks = new BlockId[bufferpool.length];
+      history = new long[bufferpool.length][k];
+   }
+
+   /**
+    * Shift the frame's reference history and record
+    * the current time as its most recent reference.
+    * A history entry of 0 means "never referenced".
+    */
+   public void pinned(Buffer buff) {
+      int frame = buff.frame();
+      long[] hist = history[frame];
+      if (blocks[frame] == null || !blocks[frame].equals(buff.block())) {
+         blocks[frame] = buff.block();
+         for (int i=0; i<k; i++)
+            hist[i] = 0;
+      }
+      for (int i=k-1; i>0; i--)
+         hist[i] = hist[i-1];
+      clock++;
+      hist[0] = clock;
+   }
+
+   public void unpinned(Buffer buff) {
+      // the reference time was recorded when the buffer was pinned
+   }
+
+   public Buffer chooseVictim() {
+      Buffer victim = null;
+      for (Buffer buff : bufferpool) {
+         if (buff.isPinned())
+            continue;
+         if (victim == null || isOlder(buff.frame(), victim.frame()))
+            victim = buff;
+      }
+      return victim;
+   }
+
+   /**
+    * Return true if frame f1 is a better victim than frame f2,
+    * comparing the K-th most recent references first
+    * and the most recent references to break ties.
+    */
+   private boolean isOlder(int f1, int f2) {
+      long kth1 = history[f1][k-1], kth2 = history[f2][k-1];
+      if (kth1 != kth2)
+         return kth1 < kth2;
+      return history[f1][0] < history[f2][0];
+   }
+}
@@ -0,0 +1,36 @@
+package simpledb.buffer;
+
+import java.util.*;
+
+/**
+ * The least-recently-used replacement policy.
+ * Unpinned buffers are kept in the order in which they
+ * were unpinned, so that the victim is always the
+ * head of the list and every operation takes constant time.
+ */
+class LRUPolicy implements ReplacementPolicy {
+   private LinkedHashSet<Buffer> unpinned = new LinkedHashSet<>();
+
+   /**
+    * Create an LRU policy for the specified buffer pool.
+    * Every buffer starts out unpinned, in pool order.
+    * @param bufferpool the buffers managed by the policy
+    */
+   public LRUPolicy(Buffer[] bufferpool) {
+      for (Buffer buff : bufferpool)
+         unpinned.add(buff);
+   }
+
+   public void pinned(Buffer buff) {
+      unpinned.remove(buff);
+   }
+
+   public void unpinned(Buffer buff) {
+      unpinned.add(buff);
+   }
+
+   public Buffer chooseVictim() {
+      Iterator<Buffer> iter = unpinned.iterator();
+      return iter.hasNext() ? iter.next() : null;
+   }
+}
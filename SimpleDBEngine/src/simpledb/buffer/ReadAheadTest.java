@@ -0,0 +1,46 @@
+package simpledb.buffer;
+
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+
+/**
+ * Scans a file sequentially through a buffer manager
+ * that reads ahead, and checks that every block has the
+ * right contents, including a block that was modified
+ * in the pool (and not yet written) before the scan.
+ */
+public class ReadAheadTest {
+   private static final int NUMBLOCKS = 40;
+
+   public static void main(String[] args) throws Exception {
+      SimpleDB db = new SimpleDB("readaheadtest", 400, 8);
+      FileMgr fm = db.fileMgr();
+      Page p = new Page(fm.blockSize());
+      while (fm.length("testfile") < NUMBLOCKS) {
+         BlockId blk = fm.append("testfile");
+         p.setInt(0, blk.number());
+         fm.write(blk, p);
+      }
+
+      BufferMgr bm = new BufferMgr(fm, db.logMgr(), 16);
+      bm.setReadAhead(8);
+      Buffer buff = bm.pin(new BlockId("testfile", 5));
+      buff.contents().setInt(0, 1000);
+      buff.setModified(1, 0);
+      bm.unpin(buff);
+
+      for (int pass=0; pass<2; pass++) {
+         int errors = 0;
+         for (int i=0; i<NUMBLOCKS; i++) {
+            buff = bm.pin(new BlockId("testfile", i));
+            int expected = (i == 5) ? 1000 : i;
+            if (buff.contents().getInt(0) != expected) {
+               System.out.println("block " + i + " contains " + buff.contents().getInt(0));
+               errors++;
+            }
+            bm.unpin(buff);
+         }
+         System.out.println("scan " + pass + ": " + errors + " wrong blocks");
+      }
+   }
+}
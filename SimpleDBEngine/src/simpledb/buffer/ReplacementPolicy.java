@@ -0,0 +1,55 @@
+package simpledb.buffer;
+
+/**
+ * The interface implemented by each buffer replacement strategy.
+ * The buffer manager tells the policy whenever a frame is
+ * pinned or becomes unpinned, and asks it for a victim
+ * when a block is not already in the pool.
+ * Each partition of the buffer pool has its own policy,
+ * and all methods are called while the partition's lock
+ * is held, so implementations need no synchronization.
+ */
+public interface ReplacementPolicy {
+   static final String LRU = "lru", CLOCK = "clock", LRUK = "lru-k";
+
+   /**
+    * Records that the specified buffer has just been pinned,
+    * either because its block was found in the pool
+    * or because the buffer was just assigned to the block.
+    * @param buff the pinned buffer
+    */
+   void pinned(Buffer buff);
+
+   /**
+    * Records that the pin count of the specified buffer
+    * has dropped to zero, making it a candidate for replacement.
+    * @param buff the unpinned buffer
+    */
+   void unpinned(Buffer buff);
+
+   /**
+    * Chooses an unpinned buffer to be reassigned to a new block.
+    * @return the victim buffer, or null if every buffer is pinned
+    */
+   Buffer chooseVictim();
+
+   /**
+    * Create the replacement policy having the specified name
+    * for the specified buffer pool.
+    * @param name one of LRU, CLOCK or LRUK
+    * @param bufferpool the buffers managed by the policy
+    * @return the replacement policy
+    */
+   static ReplacementPolicy createPolicy(String name, Buffer[] bufferpool) {
+      switch (name) {
+      case LRU:
+         return new LRUPolicy(bufferpool);
+      case CLOCK:
+         return new ClockPolicy(bufferpool);
+      case LRUK:
+         return new LRUKPolicy(bufferpool, LRUKPolicy.DEFAULT_K);
+      default:
+         throw new IllegalArgumentException("unknown replacement policy " + name);
+      }
+   }
+}
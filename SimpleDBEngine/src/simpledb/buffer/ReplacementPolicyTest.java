@@ -0,0 +1,25 @@
+package simpledb.buffer;
+
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+
+public class ReplacementPolicyTest {
+   public static void main(String[] args) {
+      String[] policies = {ReplacementPolicy.LRU, ReplacementPolicy.CLOCK, ReplacementPolicy.LRUK};
+      for (String policy : policies) {
+         SimpleDB db = new SimpleDB("replacementtest", 400, 3, policy); // only 3 buffers
+         BufferMgr bm = db.bufferMgr();
+
+         // block 0 is referenced twice; blocks 1 and 2 only once
+         bm.unpin(bm.pin(new BlockId("testfile", 0)));
+         bm.unpin(bm.pin(new BlockId("testfile", 1)));
+         bm.unpin(bm.pin(new BlockId("testfile", 0)));
+         bm.unpin(bm.pin(new BlockId("testfile", 2)));
+
+         // this pin has to replace one of the three blocks
+         Buffer buff = bm.pin(new BlockId("testfile", 3));
+         bm.unpin(buff);
+         System.out.println(policy + ": block 3 replaced buffer " + buff.frame());
+      }
+   }
+}
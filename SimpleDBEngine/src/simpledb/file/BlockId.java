@@ -1,6 +1,6 @@
 package simpledb.file;
 
-public class BlockId {
+public class BlockId implements Comparable<BlockId> {
    private String filename;
    private int blknum;
 
@@ -22,11 +22,20 @@ public class BlockId {
       return filename.equals(blk.filename) && blknum == blk.blknum;
    }
    
+   /**
+    * Order blocks by file name, and then by block number,
+    * which is the order in which they are laid out on disk.
+    */
+   public int compareTo(BlockId blk) {
+      int cmp = filename.compareTo(blk.filename);
+      return (cmp != 0) ? cmp : Integer.compare(blknum, blk.blknum);
+   }
+   
    public String toString() {
       return "[file " + filename + ", block " + blknum + "]";
    }
    
    public int hashCode() {
-      return toString().hashCode();
+      return 31 * filename.hashCode() + blknum;
    }
 }
@@ -0,0 +1,68 @@
+package simpledb.file;
+
+import java.io.File;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.plan.*;
+import simpledb.query.Scan;
+
+/**
+ * Compares synchronous writes (every write durable, as with
+ * "rws" files) against explicit durability points (the log
+ * forced when flushed, data files forced at commit and
+ * checkpoint, temporary files never forced).
+ * The insert-heavy workload commits after every insertion;
+ * the sort-heavy workload runs ORDER BY queries, whose
+ * temporary tables are written but never need to be durable.
+ * Usage: DurabilityBenchmark [rows [sorts]]
+ */
+public class DurabilityBenchmark {
+   public static void main(String[] args) {
+      int rows = (args.length > 0) ? Integer.parseInt(args[0]) : 300;
+      int sorts = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+      boolean[] modes = {true, false};
+      for (boolean sync : modes) {
+         String dirname = "durabilitybenchmark-" + (sync ? "sync" : "explicit");
+         delete(new File(dirname));
+         SimpleDB.SYNC_WRITES = sync;
+         SimpleDB db = new SimpleDB(dirname);
+         Planner planner = db.planner();
+
+         Transaction tx = db.newTx();
+         planner.executeUpdate("create table bench(a int, b varchar(10))", tx);
+         tx.commit();
+         long start = System.nanoTime();
+         for (int i=0; i<rows; i++) {
+            tx = db.newTx();
+            int a = (i * 7919) % rows;
+            planner.executeUpdate("insert into bench(a,b) values (" + a + ", 'rec" + a + "')", tx);
+            tx.commit();
+         }
+         long insertNanos = System.nanoTime() - start;
+
+         start = System.nanoTime();
+         for (int i=0; i<sorts; i++) {
+            tx = db.newTx();
+            Plan p = planner.createQueryPlan("select a, b from bench order by b", tx);
+            Scan s = p.open();
+            while (s.next())
+               s.getInt("a");
+            s.close();
+            tx.commit();
+         }
+         long sortNanos = System.nanoTime() - start;
+
+         System.out.println((sync ? "synchronous writes: " : "explicit durability: ")
+               + rows + " insert commits in " + (insertNanos / 1000000) + "ms, "
+               + sorts + " sorts in " + (sortNanos / 1000000) + "ms");
+      }
+   }
+
+   private static void delete(File f) {
+      File[] children = f.listFiles();
+      if (children != null)
+         for (File child : children)
+            delete(child);
+      f.delete();
+   }
+}
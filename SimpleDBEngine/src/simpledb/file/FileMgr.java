@@ -1,17 +1,61 @@
 package simpledb.file;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * The file manager reads and writes blocks with positional
+ * channel I/O, which does not depend on a shared file pointer.
+ * Reads and writes of different blocks can therefore
+ * proceed concurrently, even within the same file.
+ * Only the operations that use a file's length or position
+ * (appending a block, and the gathering write) are serialized,
+ * and then only on that file's channel.
+ * <p>
+ * By default a write only reaches the operating system,
+ * and is made durable by an explicit call to {@link #force(String)}
+ * or {@link #forceAll()}: the log manager forces the log when it
+ * is flushed, and the buffer manager forces the data files at
+ * commit and checkpoint time.
+ * Temporary files ("temp*") are never forced, because they
+ * do not survive a restart anyway.
+ * The file manager can instead be created in synchronous mode,
+ * in which every write is durable before it returns.
+ * <p>
+ * In mapped mode, table and index files (that is, every file
+ * other than temporary files and "*.log" files) are accessed
+ * through a memory mapping (see {@link MappedFile}), which
+ * saves a system call per block read.
+ */
 public class FileMgr {
    private File dbDirectory;
    private int blocksize;
    private boolean isNew;
-   private Map<String,RandomAccessFile> openFiles = new HashMap<>();
+   private boolean syncwrites;
+   private boolean mapfiles;
+   private Map<String,FileChannel> openFiles = new ConcurrentHashMap<>();
+   private Map<String,MappedFile> mappedFiles = new ConcurrentHashMap<>();
+   private Set<String> unforced = ConcurrentHashMap.newKeySet();
 
    public FileMgr(File dbDirectory, int blocksize) {
+      this(dbDirectory, blocksize, false, false);
+   }
+
+   /**
+    * Creates a file manager for the specified database directory.
+    * @param dbDirectory the database directory
+    * @param blocksize the block size
+    * @param syncwrites whether every write is synchronously durable
+    * @param mapfiles whether table and index files are memory-mapped
+    */
+   public FileMgr(File dbDirectory, int blocksize, boolean syncwrites, boolean mapfiles) {
       this.dbDirectory = dbDirectory;
       this.blocksize = blocksize;
+      this.syncwrites = syncwrites;
+      this.mapfiles = mapfiles;
       isNew = !dbDirectory.exists();
 
       // create the directory if the database is new
@@ -24,53 +68,188 @@ public class FileMgr {
          		new File(dbDirectory, filename).delete();
    }
 
-   public synchronized void read(BlockId blk, Page p) {
+   public void read(BlockId blk, Page p) {
       try {
-         RandomAccessFile f = getFile(blk.fileName());
-         f.seek(blk.number() * blocksize);
-         f.getChannel().read(p.contents());
+         FileChannel fc = getFile(blk.fileName());
+         ByteBuffer bb = p.contents();
+         long pos = (long) blk.number() * blocksize;
+         MappedFile mf = getMapped(blk.fileName());
+         if (mf != null && mf.read(pos, bb))
+            return;
+         while (bb.hasRemaining() && fc.read(bb, pos + bb.position()) >= 0)
+            ;
       }
       catch (IOException e) {
          throw new RuntimeException("cannot read block " + blk);
       }
    }
 
-   public synchronized void write(BlockId blk, Page p) {
+   /**
+    * Reads consecutive blocks of a file into the pages,
+    * starting at the specified block, using a single
+    * scattering read.
+    * A scattering read uses the channel's position,
+    * so it holds the channel's lock.
+    * @param blk the block read into the first page
+    * @param pages the pages to be filled
+    */
+   public void read(BlockId blk, Page[] pages) {
+      try {
+         FileChannel fc = getFile(blk.fileName());
+         ByteBuffer[] bufs = new ByteBuffer[pages.length];
+         for (int i=0; i<pages.length; i++)
+            bufs[i] = pages[i].contents();
+         long pos = (long) blk.number() * blocksize;
+         MappedFile mf = getMapped(blk.fileName());
+         if (mf != null && mf.read(pos, bufs))
+            return;
+         synchronized (fc) {
+            fc.position(pos);
+            while (bufs[bufs.length-1].hasRemaining() && fc.read(bufs) >= 0)
+               ;
+         }
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot read blocks starting at " + blk);
+      }
+   }
+
+   public void write(BlockId blk, Page p) {
       try {
-         RandomAccessFile f = getFile(blk.fileName());
-         f.seek(blk.number() * blocksize);
-         f.getChannel().write(p.contents());
+         FileChannel fc = getFile(blk.fileName());
+         ByteBuffer bb = p.contents();
+         long pos = (long) blk.number() * blocksize;
+         MappedFile mf = getMapped(blk.fileName());
+         if (mf != null && mf.write(pos, bb)) {
+            if (syncwrites)
+               mf.force();
+         }
+         else {
+            while (bb.hasRemaining())
+               fc.write(bb, pos + bb.position());
+         }
+         written(blk.fileName());
       }
       catch (IOException e) {
          throw new RuntimeException("cannot write block" + blk);
       }
    }
 
-   public synchronized BlockId append(String filename) {
-      int newblknum = length(filename);
-      BlockId blk = new BlockId(filename, newblknum);
-      byte[] b = new byte[blocksize];
+   /**
+    * Writes the pages to consecutive blocks of a file,
+    * starting at the specified block, using a single
+    * gathering write.
+    * A gathering write uses the channel's position,
+    * so it holds the channel's lock.
+    * @param blk the block that receives the first page
+    * @param pages the pages to be written
+    */
+   public void write(BlockId blk, Page[] pages) {
+      try {
+         FileChannel fc = getFile(blk.fileName());
+         ByteBuffer[] bufs = new ByteBuffer[pages.length];
+         for (int i=0; i<pages.length; i++)
+            bufs[i] = pages[i].contents();
+         synchronized (fc) {
+            fc.position((long) blk.number() * blocksize);
+            while (bufs[bufs.length-1].hasRemaining())
+               fc.write(bufs);
+         }
+         written(blk.fileName());
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot write blocks starting at " + blk);
+      }
+   }
+
+   /**
+    * Appends an empty block to the file.
+    * Appends to the same file are serialized on the file's
+    * channel, so that each one gets a different block.
+    * A mapped file is told of its new size, but it
+    * is not remapped (see {@link MappedFile}).
+    */
+   public BlockId append(String filename) {
       try {
-         RandomAccessFile f = getFile(blk.fileName());
-         f.seek(blk.number() * blocksize);
-         f.write(b);
+         FileChannel fc = getFile(filename);
+         synchronized (fc) {
+            int newblknum = (int)(fc.size() / blocksize);
+            BlockId blk = new BlockId(filename, newblknum);
+            ByteBuffer bb = ByteBuffer.allocate(blocksize);
+            long pos = (long) newblknum * blocksize;
+            while (bb.hasRemaining())
+               fc.write(bb, pos + bb.position());
+            MappedFile mf = getMapped(filename);
+            if (mf != null)
+               mf.extended(pos + blocksize);
+            written(filename);
+            return blk;
+         }
       }
       catch (IOException e) {
-         throw new RuntimeException("cannot append block" + blk);
+         throw new RuntimeException("cannot append block to " + filename);
       }
-      return blk;
    }
 
    public int length(String filename) {
       try {
-         RandomAccessFile f = getFile(filename);
-         return (int)(f.length() / blocksize);
+         FileChannel fc = getFile(filename);
+         return (int)(fc.size() / blocksize);
       }
       catch (IOException e) {
          throw new RuntimeException("cannot access " + filename);
       }
    }
 
+   /**
+    * Makes the writes to the specified file durable.
+    * Does nothing for temporary files, or in synchronous mode.
+    * @param filename the name of the file
+    */
+   public void force(String filename) {
+      if (syncwrites || isTemp(filename))
+         return;
+      try {
+         unforced.remove(filename);
+         MappedFile mf = getMapped(filename);
+         if (mf != null)
+            mf.force();
+         getFile(filename).force(true);
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot force " + filename);
+      }
+   }
+
+   /**
+    * Makes the writes to every file durable,
+    * except for temporary files.
+    * Only the files written since they were last
+    * forced are actually synced.
+    */
+   public void forceAll() {
+      for (String filename : unforced)
+         force(filename);
+   }
+
+   /**
+    * Closes the specified file, which is reopened
+    * if it is used again.
+    * The caller makes sure that no one else is using it.
+    * @param filename the name of the file
+    */
+   public void close(String filename) {
+      try {
+         mappedFiles.remove(filename);
+         FileChannel fc = openFiles.remove(filename);
+         if (fc != null)
+            fc.close();
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot close " + filename);
+      }
+   }
+
    public boolean isNew() {
       return isNew;
    }
@@ -79,13 +258,65 @@ public class FileMgr {
       return blocksize;
    }
 
-   private RandomAccessFile getFile(String filename) throws IOException {
-      RandomAccessFile f = openFiles.get(filename);
-      if (f == null) {
-         File dbTable = new File(dbDirectory, filename);
-         f = new RandomAccessFile(dbTable, "rws");
-         openFiles.put(filename, f);
+   private void written(String filename) {
+      if (!syncwrites && !isTemp(filename))
+         unforced.add(filename);
+   }
+
+   private boolean isTemp(String filename) {
+      return filename.startsWith("temp");
+   }
+
+   /**
+    * Returns the mapping of the specified file, mapping it
+    * the first time it is used, or null if the file is not
+    * to be mapped.
+    */
+   private MappedFile getMapped(String filename) throws IOException {
+      if (!mapfiles || isTemp(filename) || filename.endsWith(".log"))
+         return null;
+      MappedFile mf = mappedFiles.get(filename);
+      if (mf != null)
+         return mf;
+      FileChannel fc = getFile(filename);
+      try {
+         return mappedFiles.computeIfAbsent(filename, name -> {
+            try {
+               return new MappedFile(fc);
+            }
+            catch (IOException e) {
+               throw new UncheckedIOException(e);
+            }
+         });
+      }
+      catch (UncheckedIOException e) {
+         throw e.getCause();
+      }
+   }
+
+   /**
+    * Returns the channel of the specified file, opening it
+    * the first time it is used. The cache is a concurrent map,
+    * so looking up an open file takes no global lock.
+    */
+   private FileChannel getFile(String filename) throws IOException {
+      FileChannel fc = openFiles.get(filename);
+      if (fc != null)
+         return fc;
+      try {
+         return openFiles.computeIfAbsent(filename, name -> {
+            try {
+               File dbTable = new File(dbDirectory, name);
+               String mode = syncwrites ? "rws" : "rw";
+               return new RandomAccessFile(dbTable, mode).getChannel();
+            }
+            catch (IOException e) {
+               throw new UncheckedIOException(e);
+            }
+         });
+      }
+      catch (UncheckedIOException e) {
+         throw e.getCause();
       }
-      return f;
    }
 }
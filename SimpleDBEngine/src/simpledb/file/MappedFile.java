@@ -0,0 +1,143 @@
+package simpledb.file;
+
+import java.io.IOException;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+
+/**
+ * A file whose contents are accessed through a memory mapping,
+ * so that reading a block is a memory copy rather than a system call.
+ * The mapping covers the file as it was when last mapped.
+ * A block appended since then is not handled here, and the caller
+ * falls back to ordinary channel I/O; the file is remapped only
+ * when such an access finds that the blocks appended since the
+ * last mapping amount to half of the mapping (and at least
+ * MIN_GROWTH bytes), so that the mapping grows geometrically
+ * and a file of n bytes is mapped O(log n) times.
+ * The mapping cannot extend past the end of the file,
+ * because mapping it would extend the file.
+ */
+class MappedFile {
+   private static final long MIN_GROWTH = 1 << 20;
+
+   private FileChannel fc;
+   private volatile MappedByteBuffer map;
+   private volatile long size;  // the size of the file, as last reported
+
+   /**
+    * Maps the file of the specified channel.
+    * @param fc the file's channel
+    */
+   MappedFile(FileChannel fc) throws IOException {
+      this.fc = fc;
+      size = fc.size();
+      remap();
+   }
+
+   /**
+    * Records that the file has grown to the specified size.
+    * The new blocks are not mapped until there are enough of them.
+    * @param newsize the new size of the file, in bytes
+    */
+   void extended(long newsize) {
+      size = newsize;
+   }
+
+   /**
+    * Maps the current contents of the file.
+    * Files too large for a single mapping are not mapped,
+    * and all of their I/O goes through the channel.
+    */
+   private synchronized void remap() throws IOException {
+      long current = fc.size();
+      MappedByteBuffer m = map;
+      if (m != null && m.capacity() == current)
+         return;  // another thread has remapped the file
+      map = (current <= Integer.MAX_VALUE) ? fc.map(FileChannel.MapMode.READ_WRITE, 0, current) : null;
+   }
+
+   /**
+    * Copies the mapped bytes at the specified position into the buffer.
+    * @param pos the position in the file
+    * @param dst the buffer to be filled
+    * @return false if the bytes are not mapped
+    */
+   boolean read(long pos, ByteBuffer dst) {
+      ByteBuffer src = region(pos, dst.remaining());
+      if (src == null)
+         return false;
+      dst.put(src);
+      return true;
+   }
+
+   /**
+    * Copies the mapped bytes at the specified position
+    * into the consecutive buffers.
+    * @param pos the position in the file
+    * @param dsts the buffers to be filled
+    * @return false if the bytes are not mapped
+    */
+   boolean read(long pos, ByteBuffer[] dsts) {
+      int length = 0;
+      for (ByteBuffer dst : dsts)
+         length += dst.remaining();
+      ByteBuffer src = region(pos, length);
+      if (src == null)
+         return false;
+      for (ByteBuffer dst : dsts) {
+         src.limit(src.position() + dst.remaining());
+         dst.put(src);
+      }
+      return true;
+   }
+
+   /**
+    * Copies the buffer into the mapping at the specified position.
+    * @param pos the position in the file
+    * @param src the bytes to be written
+    * @return false if the bytes are not mapped
+    */
+   boolean write(long pos, ByteBuffer src) {
+      ByteBuffer dst = region(pos, src.remaining());
+      if (dst == null)
+         return false;
+      dst.put(src);
+      return true;
+   }
+
+   /**
+    * Writes the modified mapped bytes to disk.
+    */
+   void force() {
+      MappedByteBuffer m = map;
+      if (m != null)
+         m.force();
+   }
+
+   /**
+    * Returns a buffer holding the mapped bytes at the specified
+    * position, or null if they are not mapped.
+    * An access past the mapping remaps the file if it
+    * has grown enough since it was last mapped.
+    */
+   private ByteBuffer region(long pos, int length) {
+      MappedByteBuffer m = map;
+      if (m != null && pos + length > m.capacity() && pos + length <= size
+            && size - m.capacity() >= Math.max(m.capacity() / 2, MIN_GROWTH)
+            && size <= Integer.MAX_VALUE) {
+         try {
+            remap();
+         }
+         catch (IOException e) {
+            return null;
+         }
+         m = map;
+      }
+      if (m == null || pos + length > m.capacity())
+         return null;
+      ByteBuffer bb = m.duplicate();
+      bb.position((int) pos);
+      bb.limit((int) pos + length);
+      return bb;
+   }
+}
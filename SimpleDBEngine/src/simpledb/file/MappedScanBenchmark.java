@@ -0,0 +1,73 @@
+package simpledb.file;
+
+import java.io.File;
+import java.lang.management.*;
+
+/**
+ * Compares the cost of scanning a table file block by block
+ * with channel reads and with a memory-mapped file.
+ * The file is written once and then scanned repeatedly,
+ * so it is in the operating system's cache and the
+ * benchmark measures the per-block CPU cost of a read.
+ * Finally it appends blocks to a mapped file, which maps
+ * the new blocks only now and then, and checks them.
+ * Usage: MappedScanBenchmark [blocks [scans]]
+ */
+public class MappedScanBenchmark {
+   public static void main(String[] args) {
+      int numblocks = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+      int scans = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+      File dir = new File("mappedscanbenchmark");
+      int blocksize = 4096;
+      FileMgr fm = new FileMgr(dir, blocksize);
+      Page p = new Page(blocksize);
+      while (fm.length("scan.tbl") < numblocks) {
+         BlockId blk = fm.append("scan.tbl");
+         p.setInt(0, blk.number());
+         fm.write(blk, p);
+      }
+
+      ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+      boolean[] modes = {false, true};
+      for (boolean mapped : modes) {
+         fm = new FileMgr(dir, blocksize, false, mapped);
+         long sum = scan(fm, numblocks, p); // warm-up
+         long cpu = bean.getCurrentThreadCpuTime();
+         long start = System.nanoTime();
+         for (int i=0; i<scans; i++)
+            sum += scan(fm, numblocks, p);
+         long elapsed = System.nanoTime() - start;
+         cpu = bean.getCurrentThreadCpuTime() - cpu;
+         long reads = (long) numblocks * scans;
+         System.out.println((mapped ? "mapped reads:  " : "channel reads: ")
+               + (elapsed / reads) + "ns/block elapsed, "
+               + (cpu / reads) + "ns/block CPU (checksum " + sum + ")");
+      }
+
+      fm = new FileMgr(dir, blocksize, false, true);
+      long start = System.nanoTime();
+      for (int i=0; i<numblocks; i++) {
+         BlockId blk = fm.append("append.tbl");
+         p.setInt(0, blk.number());
+         fm.write(blk, p);
+      }
+      long elapsed = System.nanoTime() - start;
+      int wrong = 0;
+      for (int i=0; i<numblocks; i++) {
+         fm.read(new BlockId("append.tbl", i), p);
+         if (p.getInt(0) != i)
+            wrong++;
+      }
+      System.out.println("mapped appends: " + (elapsed / numblocks) + "ns/block, "
+            + wrong + " blocks read back wrong");
+   }
+
+   private static long scan(FileMgr fm, int numblocks, Page p) {
+      long sum = 0;
+      for (int i=0; i<numblocks; i++) {
+         fm.read(new BlockId("scan.tbl", i), p);
+         sum += p.getInt(0);
+      }
+      return sum;
+   }
+}
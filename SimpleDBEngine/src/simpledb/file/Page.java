@@ -39,6 +39,20 @@ public class Page {
       bb.put(b);
    }
    
+   // Bytes stored without a length, such as a
+   // range of a block copied as a whole.
+   public byte[] readBytes(int offset, int length) {
+      bb.position(offset);
+      byte[] b = new byte[length];
+      bb.get(b);
+      return b;
+   }
+
+   public void writeBytes(int offset, byte[] b) {
+      bb.position(offset);
+      bb.put(b);
+   }
+
    public String getString(int offset) {
       byte[] b = getBytes(offset);
       return new String(b, CHARSET);
@@ -49,14 +63,29 @@ public class Page {
       setBytes(offset, b);
    }
 
+   public int size() {
+      return bb.capacity();
+   }
+
+   // A copy of the page, for keeping an earlier
+   // version of a block in memory.
+   public Page copy() {
+      byte[] b = new byte[bb.capacity()];
+      contents().get(b);
+      return new Page(b);
+   }
+
    public static int maxLength(int strlen) {
       float bytesPerChar = CHARSET.newEncoder().maxBytesPerChar();
       return Integer.BYTES + (strlen * (int)bytesPerChar);
    }
 
-   // a package private method, needed by FileMgr
+   // a package private method, needed by FileMgr.
+   // The view has its own position, so that a buffer can be
+   // written to disk while a transaction reads the page.
    ByteBuffer contents() {
-      bb.position(0);
-      return bb;
+      ByteBuffer view = bb.duplicate();
+      view.position(0);
+      return view;
    }
 }
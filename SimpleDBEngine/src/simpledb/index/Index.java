@@ -1,6 +1,6 @@
 package simpledb.index;
 
-import simpledb.query.Constant;
+import simpledb.query.*;
 import simpledb.record.RID;
 
 /**
@@ -47,6 +47,20 @@ public interface Index {
     */
    public void    delete(Constant dataval, RID datarid);
    
+   /**
+    * Inserts many index records at once.
+    * The records are read from a scan having the fields
+    * dataval, block and id, in order of their datavals,
+    * such as the output of an external sort.
+    * By default, the records are inserted one at a time.
+    * @param entries the new index records, sorted by dataval
+    */
+   public default void load(Scan entries) {
+      entries.beforeFirst();
+      while (entries.next())
+         insert(entries.getVal("dataval"), new RID(entries.getInt("block"), entries.getInt("id")));
+   }
+   
    /**
     * Closes the index.
     */
@@ -17,6 +17,7 @@ public class BTPage {
    private Transaction tx;
    private BlockId currentblk;
    private Layout layout;
+   private boolean okToLog = true;
    
    /**
     * Open a node for the specified B-tree block.
@@ -62,6 +63,26 @@ public class BTPage {
       return slotpos(getNumRecs()+1) >= tx.blockSize();
    }
    
+   /**
+    * Return the number of records that the page
+    * can hold without being full.
+    * @return the capacity of the page
+    */
+   public int capacity() {
+      return (tx.blockSize() - 2*Integer.BYTES - 1) / layout.slotSize() - 1;
+   }
+
+   /**
+    * Specify whether modifications to the page are logged.
+    * A bulk load turns logging off for the pages
+    * that it builds in newly-appended blocks,
+    * which the transaction forces to disk when it commits.
+    * @param okToLog false if modifications are not to be logged
+    */
+   public void setLogging(boolean okToLog) {
+      this.okToLog = okToLog;
+   }
+
    /**
     * Split the page at the specified position.
     * A new page is created, and the records of the page
@@ -101,7 +122,7 @@ public class BTPage {
     * @param val the new value of the page flag
     */
    public void setFlag(int val) {
-      tx.setInt(currentblk, 0, val, true);
+      tx.setInt(currentblk, 0, val, okToLog);
    }
    
    /**
@@ -114,6 +135,7 @@ public class BTPage {
       BlockId blk = tx.append(currentblk.fileName());
       tx.pin(blk);
       format(blk, flag);
+      tx.unpin(blk);
       return blk;
    }
  
@@ -223,12 +245,12 @@ public class BTPage {
    
    private void setInt(int slot, String fldname, int val) {
       int pos = fldpos(slot, fldname);
-      tx.setInt(currentblk, pos, val, true);
+      tx.setInt(currentblk, pos, val, okToLog);
    }
    
    private void setString(int slot, String fldname, String val) {
       int pos = fldpos(slot, fldname);
-      tx.setString(currentblk, pos, val, true);
+      tx.setString(currentblk, pos, val, okToLog);
    }
    
    private void setVal(int slot, String fldname, Constant val) {
@@ -240,7 +262,7 @@ public class BTPage {
    }
    
    private void setNumRecs(int n) {
-      tx.setInt(currentblk, Integer.BYTES, n, true);
+      tx.setInt(currentblk, Integer.BYTES, n, okToLog);
    }
    
    private void insert(int slot) {
@@ -1,11 +1,12 @@
 package simpledb.index.btree;
 
 import static java.sql.Types.INTEGER;
+import java.util.*;
 import simpledb.file.BlockId;
 import simpledb.tx.Transaction;
 import simpledb.record.*;
 import simpledb.index.Index;
-import simpledb.query.Constant;
+import simpledb.query.*;
 
 /**
  * A B-tree implementation of the Index interface.
@@ -51,11 +52,7 @@ public class BTreeIndex implements Index {
          BTPage node = new BTPage(tx, rootblk, dirLayout);
          node.format(rootblk, 0);
          // insert initial directory entry
-         int fldtype = dirsch.type("dataval");
-         Constant minval = (fldtype == INTEGER) ?
-               new Constant(Integer.MIN_VALUE) :
-               new Constant("");
-         node.insertDir(0, minval, 0);
+         node.insertDir(0, minVal(), 0);
          node.close();
       }
    }
@@ -134,6 +131,97 @@ public class BTreeIndex implements Index {
       leaf.close();
    }
 
+   /**
+    * Insert the specified records into the index.
+    * If the index is empty, it is built bottom-up:
+    * the leaves are filled in dataval order, and then each
+    * directory level is built from the level below it.
+    * A dataval never spans two leaves; if its records
+    * do not fit in a leaf, the rest go into overflow blocks,
+    * as in {@link BTreeLeaf#insert}.
+    * The pages are built in new blocks without logging,
+    * except for the first leaf and the root, which are
+    * logged so that a rollback leaves the index empty.
+    * If the index is not empty, the records are
+    * inserted one at a time.
+    * Only the dataRIDs of one dataval are held in memory at a time.
+    * @see simpledb.index.Index#load(Scan)
+    */
+   public void load(Scan entries) {
+      if (!isEmpty()) {
+         Index.super.load(entries);
+         return;
+      }
+      entries.beforeFirst();
+      boolean hasmore = entries.next();
+      if (!hasmore)
+         return;
+      close();
+
+      // build the leaves, and a directory entry for each of them
+      List<DirEntry> direntries = new ArrayList<>();
+      direntries.add(new DirEntry(minVal(), 0));
+      BlockId blk = new BlockId(leaftbl, 0);
+      BTPage page = new BTPage(tx, blk, leafLayout);
+      int leafcap = page.capacity();
+      boolean shared = true;  // can the page hold another dataval?
+      while (hasmore) {
+         Constant dataval = entries.getVal("dataval");
+         List<RID> rids = new ArrayList<>();
+         do {
+            rids.add(new RID(entries.getInt("block"), entries.getInt("id")));
+            hasmore = entries.next();
+         } while (hasmore && entries.getVal("dataval").equals(dataval));
+         if (page.getNumRecs() > 0 && (!shared || page.getNumRecs() + rids.size() > leafcap)) {
+            page.close();
+            blk = tx.append(leaftbl);
+            page = newPage(blk, leafLayout, -1);
+            direntries.add(new DirEntry(dataval, blk.number()));
+            shared = true;
+         }
+         for (RID rid : rids) {
+            if (page.getNumRecs() == leafcap) {
+               BlockId overflow = tx.append(leaftbl);
+               page.setFlag(overflow.number());
+               page.close();
+               page = newPage(overflow, leafLayout, -1);
+               shared = false;
+            }
+            page.insertLeaf(page.getNumRecs(), dataval, rid);
+         }
+      }
+      page.close();
+
+      // build the directory levels, until the entries fit in the root
+      BTPage root = new BTPage(tx, rootblk, dirLayout);
+      int dircap = root.capacity();
+      int level = 0;
+      while (direntries.size() > dircap) {
+         List<DirEntry> parents = new ArrayList<>();
+         page = null;
+         for (DirEntry e : direntries) {
+            if (page == null || page.getNumRecs() == dircap) {
+               if (page != null)
+                  page.close();
+               blk = tx.append(rootblk.fileName());
+               page = newPage(blk, dirLayout, level);
+               parents.add(new DirEntry(e.dataVal(), blk.number()));
+            }
+            page.insertDir(page.getNumRecs(), e.dataVal(), e.blockNumber());
+         }
+         page.close();
+         direntries = parents;
+         level++;
+      }
+
+      // replace the root's initial entry
+      root.delete(0);
+      for (DirEntry e : direntries)
+         root.insertDir(root.getNumRecs(), e.dataVal(), e.blockNumber());
+      root.setFlag(level);
+      root.close();
+   }
+
    /**
     * Close the index by closing its open leaf page,
     * if necessary.
@@ -144,6 +232,32 @@ public class BTreeIndex implements Index {
          leaf.close();
    }
 
+   private Constant minVal() {
+      int fldtype = dirLayout.schema().type("dataval");
+      return (fldtype == INTEGER) ? new Constant(Integer.MIN_VALUE) : new Constant("");
+   }
+
+   /**
+    * Return true if the index has never had any records,
+    * that is, if it consists of an empty leaf and the
+    * initial root.
+    */
+   private boolean isEmpty() {
+      if (tx.size(leaftbl) > 1 || tx.size(rootblk.fileName()) > 1)
+         return false;
+      BTPage leaf0 = new BTPage(tx, new BlockId(leaftbl, 0), leafLayout);
+      boolean empty = (leaf0.getNumRecs() == 0 && leaf0.getFlag() < 0);
+      leaf0.close();
+      return empty;
+   }
+
+   private BTPage newPage(BlockId blk, Layout layout, int flag) {
+      BTPage page = new BTPage(tx, blk, layout);
+      page.setLogging(false);
+      page.format(blk, flag);
+      return page;
+   }
+
    /**
     * Estimate the number of block accesses
     * required to find all index records having
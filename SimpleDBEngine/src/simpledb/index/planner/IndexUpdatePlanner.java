@@ -51,6 +51,8 @@ public class IndexUpdatePlanner implements UpdatePlanner {
    
    public int executeDelete(DeleteData data, Transaction tx) {
       String tblname = data.tableName();
+      if (data.pred().isEmpty())
+         tx.lockTable(tblname + ".tbl");  // every record changes
       Plan p = new TablePlan(tx, tblname, mdm);
       p = new SelectPlan(p, data.pred());
       Map<String,IndexInfo> indexes = mdm.getIndexInfo(tblname, tx);
@@ -77,6 +79,8 @@ public class IndexUpdatePlanner implements UpdatePlanner {
    public int executeModify(ModifyData data, Transaction tx) {
       String tblname = data.tableName();
       String fldname = data.targetField();
+      if (data.pred().isEmpty())
+         tx.lockTable(tblname + ".tbl");  // every record changes
       Plan p = new TablePlan(tx, tblname, mdm);
       p = new SelectPlan(p, data.pred());
       
@@ -105,7 +109,7 @@ public class IndexUpdatePlanner implements UpdatePlanner {
    }
    
    public int executeCreateTable(CreateTableData data, Transaction tx) {
-      mdm.createTable(data.tableName(), data.newSchema(), tx);
+      mdm.createTable(data.tableName(), data.newSchema(), data.isSlotted(), tx);
       return 0;
    }
    
@@ -117,20 +121,24 @@ public class IndexUpdatePlanner implements UpdatePlanner {
    public int executeCreateIndex(CreateIndexData data, Transaction tx) {
       mdm.createIndex(data.indexName(), data.tableName(), data.fieldName(), data.structName(), tx);
       String tblname = data.tableName();
+      String fldname = data.fieldName();
+      
+      // collect the index records of the existing data,
+      // and load them all at once
       Plan p = new TablePlan(tx, tblname, mdm);
+      IndexInfo ii = mdm.getIndexInfo(tblname, tx).get(fldname);
+      IndexLoader loader = new IndexLoader(tx, ii, p.schema());
       UpdateScan s = (UpdateScan) p.open();
-      Map<String,IndexInfo> idx_map = mdm.getIndexInfo(tblname, tx);
-      s.beforeFirst();
-      while (s.next() == true) {
-    	  IndexInfo ii = idx_map.get(data.fieldName());
-          if (ii != null) {
-             Index idx = ii.open();
-             idx.insert(s.getVal(data.fieldName()), s.getRid());
-             idx.close();
-          }
-      }
-      
+      while (s.next())
+         loader.add(s.getVal(fldname), s.getRid());
       s.close();
+      loader.finish();
       return 1;
    }
+   
+   public int executeLoad(LoadData data, Transaction tx) {
+      BulkLoader loader = new BulkLoader(tx, data.tableName(), data.fields(), mdm);
+      loader.addFile(data.fileName());
+      return loader.finish();
+   }
 }
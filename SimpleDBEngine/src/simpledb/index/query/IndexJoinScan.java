@@ -100,6 +100,38 @@ public class IndexJoinScan implements Scan {
          return lhs.getString(fldname);
    }
    
+   /**
+    * Returns the ordinal of the specified field,
+    * encoded as in {@link ProductScan#fieldIndex},
+    * with the RHS scan first.
+    * @see simpledb.query.Scan#fieldIndex(java.lang.String)
+    */
+   public int fieldIndex(String fldname) {
+      return ProductScan.joinIndex(rhs.fieldIndex(fldname), lhs.fieldIndex(fldname));
+   }
+   
+   /**
+    * Returns the integer value of the field having the specified ordinal.
+    * @see simpledb.query.Scan#getInt(int)
+    */
+   public int getInt(int fldindex) {
+      if ((fldindex & 1) == 0)
+         return rhs.getInt(fldindex >>> 1);
+      else
+         return lhs.getInt(fldindex >>> 1);
+   }
+   
+   /**
+    * Returns the string bytes of the field having the specified ordinal.
+    * @see simpledb.query.Scan#getBytes(int)
+    */
+   public byte[] getBytes(int fldindex) {
+      if ((fldindex & 1) == 0)
+         return rhs.getBytes(fldindex >>> 1);
+      else
+         return lhs.getBytes(fldindex >>> 1);
+   }
+   
    /** Returns true if the field is in the schema.
      * @see simpledb.query.Scan#hasField(java.lang.String)
      */
@@ -80,6 +80,30 @@ public class IndexSelectScan implements Scan {
       return ts.getVal(fldname);
    }
    
+   /**
+    * Returns the ordinal of the field in the data record.
+    * @see simpledb.query.Scan#fieldIndex(java.lang.String)
+    */
+   public int fieldIndex(String fldname) {
+      return ts.fieldIndex(fldname);
+   }
+   
+   /**
+    * Returns the value of the field of the current data record.
+    * @see simpledb.query.Scan#getInt(int)
+    */
+   public int getInt(int fldindex) {
+      return ts.getInt(fldindex);
+   }
+   
+   /**
+    * Returns the value of the field of the current data record.
+    * @see simpledb.query.Scan#getBytes(int)
+    */
+   public byte[] getBytes(int fldindex) {
+      return ts.getBytes(fldindex);
+   }
+   
    /**
     * Returns whether the data record has the specified field.
     * @see simpledb.query.Scan#hasField(java.lang.String)
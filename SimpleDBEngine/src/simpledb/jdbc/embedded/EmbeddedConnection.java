@@ -15,6 +15,7 @@ class EmbeddedConnection extends ConnectionAdapter {
    private SimpleDB db;
    private Transaction currentTx;
    private Planner planner;
+   private boolean readOnly = false;
 
    /**
     * Creates a connection
@@ -46,7 +47,7 @@ class EmbeddedConnection extends ConnectionAdapter {
     */
    public void commit() throws SQLException {
       currentTx.commit();
-      currentTx = db.newTx();
+      currentTx = newTx();
    }
 
    /**
@@ -54,7 +55,30 @@ class EmbeddedConnection extends ConnectionAdapter {
     */
    public void rollback() throws SQLException {
       currentTx.rollback();
-      currentTx = db.newTx();
+      currentTx = newTx();
+   }
+
+   /**
+    * Declares whether the transactions of this connection
+    * are read-only, starting with the current one.
+    * A read-only transaction writes nothing to the log,
+    * and its updates fail.
+    */
+   public void setReadOnly(boolean readOnly) throws SQLException {
+      try {
+         currentTx.setReadOnly(readOnly);
+         this.readOnly = readOnly;
+      }
+      catch(RuntimeException e) {
+         throw new SQLException(e);
+      }
+   }
+
+   /**
+    * Returns whether the transactions of this connection are read-only.
+    */
+   public boolean isReadOnly() throws SQLException {
+      return readOnly;
    }
 
    /**
@@ -65,5 +89,11 @@ class EmbeddedConnection extends ConnectionAdapter {
    Transaction getTransaction() {  
       return currentTx;
    }
+
+   private Transaction newTx() {
+      Transaction tx = db.newTx();
+      tx.setReadOnly(readOnly);
+      return tx;
+   }
 }
 
@@ -81,6 +81,7 @@ public class EmbeddedResultSet extends ResultSetAdapter {
 
    /**
     * Closes the result set by closing its scan, and commits.
+    * A query that modified nothing commits without touching the log.
     */
    public void close() throws SQLException {
       s.close();
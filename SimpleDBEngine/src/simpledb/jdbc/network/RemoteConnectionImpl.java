@@ -16,6 +16,7 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements RemoteConnecti
    private SimpleDB db;
    private Transaction currentTx;
    private Planner planner;
+   private boolean readOnly = false;
    
    /**
     * Creates a remote connection
@@ -44,6 +45,24 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements RemoteConnecti
    public void close() throws RemoteException {
       currentTx.commit();
    }
+
+   /**
+    * Declares whether the transactions of this connection
+    * are read-only, starting with the current one.
+    * @see simpledb.jdbc.network.RemoteConnection#setReadOnly(boolean)
+    */
+   public void setReadOnly(boolean readOnly) throws RemoteException {
+      currentTx.setReadOnly(readOnly);
+      this.readOnly = readOnly;
+   }
+
+   /**
+    * Returns whether the transactions of this connection are read-only.
+    * @see simpledb.jdbc.network.RemoteConnection#isReadOnly()
+    */
+   public boolean isReadOnly() throws RemoteException {
+      return readOnly;
+   }
    
 // The following methods are used by the server-side classes.
    
@@ -62,7 +81,7 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements RemoteConnecti
     */
    void commit() {
       currentTx.commit();
-      currentTx = db.newTx();
+      currentTx = newTx();
    }
    
    /**
@@ -71,7 +90,12 @@ class RemoteConnectionImpl extends UnicastRemoteObject implements RemoteConnecti
     */
    void rollback() {
       currentTx.rollback();
-      currentTx = db.newTx();
+      currentTx = newTx();
+   }
+   
+   private Transaction newTx() {
+      Transaction tx = db.newTx();
+      tx.setReadOnly(readOnly);
+      return tx;
    }
 }
-
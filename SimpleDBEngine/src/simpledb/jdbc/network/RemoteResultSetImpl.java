@@ -87,7 +87,8 @@ class RemoteResultSetImpl extends UnicastRemoteObject implements RemoteResultSet
    }
 
    /**
-    * Closes the result set by closing its scan.
+    * Closes the result set by closing its scan, and commits.
+    * A query that modified nothing commits without touching the log.
     * @see simpledb.jdbc.network.RemoteResultSet#close()
     */
    public void close() throws RemoteException {
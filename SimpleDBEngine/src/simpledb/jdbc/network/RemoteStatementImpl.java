@@ -2,8 +2,10 @@ package simpledb.jdbc.network;
 
 import simpledb.plan.Plan;
 import simpledb.plan.Planner;
+import simpledb.server.SimpleDB;
 import simpledb.tx.Transaction;
 
+import java.io.File;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 
@@ -44,12 +46,15 @@ class RemoteStatementImpl extends UnicastRemoteObject implements RemoteStatement
     * Executes the specified SQL update command.
     * The method sends the command to the update planner,
     * which executes it.
+    * A load statement may only read the files of the
+    * directory {@link SimpleDB#LOAD_DIRECTORY}.
     * @see simpledb.jdbc.network.RemoteStatement#executeUpdate(java.lang.String)
     */
    public int executeUpdate(String cmd) throws RemoteException {
       try {
          Transaction tx = rconn.getTransaction();
-         int result = planner.executeUpdate(cmd, tx);
+         File loaddir = (SimpleDB.LOAD_DIRECTORY == null) ? null : new File(SimpleDB.LOAD_DIRECTORY);
+         int result = planner.executeRemoteUpdate(cmd, tx, loaddir);
          rconn.commit();
          return result;
       }
@@ -0,0 +1,51 @@
+package simpledb.log;
+
+import java.io.File;
+import simpledb.file.*;
+
+/**
+ * Runs concurrent "committers" that each append a record
+ * and wait for it to become durable, with and without a
+ * group commit window, and prints the log manager's counters.
+ * Then runs a lone committer, which should not wait for the window.
+ */
+public class GroupCommitTest {
+   private static final int THREADS = 8, COMMITS = 200;
+
+   public static void main(String[] args) throws Exception {
+      long[] windows = {0, 500, 2000}; // microseconds
+      for (long window : windows) {
+         FileMgr fm = new FileMgr(new File("groupcommittest"), 400);
+         LogMgr lm = new LogMgr(fm, "groupcommit" + window + ".log", window);
+         Thread[] threads = new Thread[THREADS];
+         long start = System.nanoTime();
+         for (int t=0; t<THREADS; t++) {
+            threads[t] = new Thread(() -> {
+               for (int i=0; i<COMMITS; i++) {
+                  int lsn = lm.append(new byte[40]);
+                  lm.groupCommit(lsn);
+               }
+            });
+            threads[t].start();
+         }
+         for (Thread t : threads)
+            t.join();
+         long elapsed = System.nanoTime() - start;
+
+         System.out.println("window " + window + "us: "
+               + lm.commitCount() + " commits in " + (elapsed / 1000000) + "ms, "
+               + lm.flushCount() + " flushes, "
+               + "avg batch " + (lm.commitCount() / (double) lm.flushCount()) + ", "
+               + "max batch " + lm.maxBatchSize() + ", "
+               + "avg commit latency " + (lm.commitWaitNanos() / lm.commitCount() / 1000) + "us");
+      }
+
+      FileMgr fm = new FileMgr(new File("groupcommittest"), 400);
+      LogMgr lm = new LogMgr(fm, "groupcommitalone.log", 2000);
+      for (int i=0; i<COMMITS; i++)
+         lm.groupCommit(lm.append(new byte[40]));
+      long latency = lm.commitWaitNanos() / lm.commitCount() / 1000;
+      System.out.println("lone committer, window 2000us: avg commit latency " + latency + "us"
+            + (latency < 2000 ? "" : ", NOT below the window"));
+   }
+}
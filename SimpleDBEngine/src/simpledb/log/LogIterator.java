@@ -1,18 +1,24 @@
 package simpledb.log;
 
-import java.util.Iterator;
+import java.util.*;
 import simpledb.file.*;
 
 /**
  * A class that provides the ability to move through the
  * records of the log file in reverse order.
+ * The log is read backwards in runs of blocks, each
+ * run with a single scattering read, so that reading
+ * the log during recovery is sequential I/O.
  * 
  * @author Edward Sciore
  */
 class LogIterator implements Iterator<byte[]> {
+   private static final int READ_AHEAD = 8;
    private FileMgr fm;
    private BlockId blk;
    private Page p;
+   private Page[] run = new Page[READ_AHEAD];
+   private int runstart, runlength = 0;
    private int currentpos;
    private int boundary;
 
@@ -23,8 +29,8 @@ class LogIterator implements Iterator<byte[]> {
    public LogIterator(FileMgr fm, BlockId blk) {
       this.fm = fm;
       this.blk = blk;
-      byte[] b = new byte[fm.blockSize()];
-      p = new Page(b);
+      for (int i=0; i<READ_AHEAD; i++)
+         run[i] = new Page(fm.blockSize());
       moveToBlock(blk);
    }
 
@@ -58,9 +64,17 @@ class LogIterator implements Iterator<byte[]> {
     * Moves to the specified log block
     * and positions it at the first record in that block
     * (i.e., the most recent one).
+    * If the block is not in the current run, the run of
+    * blocks that ends with it is read first.
     */
    private void moveToBlock(BlockId blk) {
-      fm.read(blk, p);
+      int blknum = blk.number();
+      if (blknum < runstart || blknum >= runstart + runlength) {
+         runstart = Math.max(0, blknum - READ_AHEAD + 1);
+         runlength = blknum - runstart + 1;
+         fm.read(new BlockId(blk.fileName(), runstart), Arrays.copyOf(run, runlength));
+      }
+      p = run[blknum - runstart];
       boundary = p.getInt(0);
       currentpos = boundary;
    }
@@ -1,42 +1,152 @@
 package simpledb.log;
 
-import java.util.Iterator;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.*;
 import simpledb.file.*;
+import simpledb.tx.concurrency.*;
 
 /**
  * The log manager, which is responsible for 
  * writing log records into a log file. The tail of 
- * the log is kept in a bytebuffer, which is flushed
- * to disk when needed. 
+ * the log is kept in a ring of log pages.
+ * Appending a record only fills the current page;
+ * a full page is handed to a {@link LogWriter} thread,
+ * which writes each run of full pages to disk with a
+ * single sequential write. An appender has to wait for
+ * the writer only when every page of the ring is full.
+ * Committing transactions can share a flush:
+ * see {@link #groupCommit(int)}.
  * @author Edward Sciore
  */
 public class LogMgr {
+   public static final int DEFAULT_BUFFER_PAGES = 8;
+
    private FileMgr fm;
    private String logfile;
-   private Page logpage;
-   private BlockId currentblk;
+   private byte[][] buffers;
+   private Page[] ring;
+   private BlockId[] blocks;
+   private int[] pageLSN;     // the latest LSN in each page
+   private int tail = 0;      // the page receiving new records
+   private int oldest = 0;    // the oldest full page not yet written
+   private int full = 0;      // the number of full pages not yet written
+   private byte[] tailbytes;  // a copy of the current page, for the writer
+   private Page tailcopy;
    private int latestLSN = 0;
    private int lastSavedLSN = 0;
+   private int requestedLSN = 0;
+   private RuntimeException failure = null;
+   private boolean stopped = false;
+   private LogWriter writer;
+
+   private Lock lock = new ReentrantLock();
+   private Condition workReady = lock.newCondition();
+   private Condition spaceFreed = lock.newCondition();
+   private Condition logWritten = lock.newCondition();
+
+   // group commit
+   private long window;
+   private boolean leaderWaiting = false;
+   private int pendingCommits = 0;
+   private int lastBatchSize = 0;  // the commits made durable by the last write
+
+   // the transactions of this log that have not finished
+   private Set<Integer> activeTxs = ConcurrentHashMap.newKeySet();
+   private ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+
+   // the locks and block versions of those transactions
+   private LockTable locktbl = new LockTable();
+   private VersionStore versions = new VersionStore();
+
+   // statistics
+   private long flushCount = 0;
+   private long commitCount = 0;
+   private int maxBatchSize = 0;
+   private long commitWaitNanos = 0;
+   private long writeNanos = 0;
 
    /**
     * Creates the manager for the specified log file.
     * If the log file does not yet exist, it is created
     * with an empty first block.
-    * @param FileMgr the file manager
+    * @param fm the file manager
     * @param logfile the name of the log file
     */
    public LogMgr(FileMgr fm, String logfile) {
+      this(fm, logfile, 0);
+   }
+
+   /**
+    * Creates the manager for the specified log file,
+    * with the specified group commit window.
+    * @param fm the file manager
+    * @param logfile the name of the log file
+    * @param window the group commit window, in microseconds
+    */
+   public LogMgr(FileMgr fm, String logfile, long window) {
+      this(fm, logfile, window, DEFAULT_BUFFER_PAGES);
+   }
+
+   /**
+    * Creates the manager for the specified log file,
+    * with the specified group commit window and
+    * the specified number of log pages.
+    * @param fm the file manager
+    * @param logfile the name of the log file
+    * @param window the group commit window, in microseconds
+    * @param numpages the number of pages in the log buffer (at least 2)
+    */
+   public LogMgr(FileMgr fm, String logfile, long window, int numpages) {
       this.fm = fm;
       this.logfile = logfile;
-      byte[] b = new byte[fm.blockSize()];
-      logpage = new Page(b);
+      this.window = window;
+      int n = Math.max(2, numpages);
+      buffers = new byte[n][fm.blockSize()];
+      ring = new Page[n];
+      for (int i=0; i<n; i++)
+         ring[i] = new Page(buffers[i]);
+      blocks = new BlockId[n];
+      pageLSN = new int[n];
+      tailbytes = new byte[fm.blockSize()];
+      tailcopy = new Page(tailbytes);
       int logsize = fm.length(logfile);
-      if (logsize == 0)
-         currentblk = appendNewBlock();
+      if (logsize == 0) {
+         blocks[0] = new BlockId(logfile, 0);
+         ring[0].setInt(0, fm.blockSize());
+         fm.write(blocks[0], ring[0]);
+         fm.force(logfile);
+      }
       else {
-         currentblk = new BlockId(logfile, logsize-1);
-         fm.read(currentblk, logpage);
+         blocks[0] = new BlockId(logfile, logsize-1);
+         fm.read(blocks[0], ring[0]);
       }
+      writer = new LogWriter(this);
+      writer.start();
+   }
+
+   /**
+    * Writes the rest of the log to disk, stops the log
+    * writer, and closes the log file.
+    * The log cannot be used afterwards.
+    */
+   public void shutdown() {
+      flush(latestLSN());
+      lock.lock();
+      try {
+         stopped = true;
+         workReady.signal();
+      }
+      finally {
+         lock.unlock();
+      }
+      try {
+         writer.join();
+      }
+      catch(InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      fm.close(logfile);
    }
 
    /**
@@ -46,59 +156,408 @@ public class LogMgr {
     * @param lsn the LSN of a log record
     */
    public void flush(int lsn) {
-      if (lsn >= lastSavedLSN)
-         flush();
+      lock.lock();
+      try {
+         if (lsn > lastSavedLSN) {
+            requestWrite(lsn);
+            awaitWritten(lsn);
+         }
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Ensures that the specified commit (or rollback) record
+    * is on disk, sharing the disk write with other
+    * transactions that commit at about the same time.
+    * The first transaction to arrive becomes the leader of
+    * a group: it waits for the group commit window to pass,
+    * or for the log page to fill up, while other transactions
+    * append their records and join the group.
+    * A single write then makes the whole group durable.
+    * A leader that is the only committer, following a write
+    * that was not shared either, does not wait: there is
+    * probably no one to share the write with.
+    * @param lsn the LSN of the commit record
+    */
+   public void groupCommit(int lsn) {
+      lock.lock();
+      try {
+         long start = System.nanoTime();
+         pendingCommits++;
+         while (lsn > lastSavedLSN) {
+            if (failure != null)
+               throw failure;
+            if (leaderWaiting)
+               logWritten.awaitUninterruptibly();
+            else
+               leadGroup(lsn);
+         }
+         commitCount++;
+         commitWaitNanos += System.nanoTime() - start;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Returns the transactions that have written a START
+    * record to this log but not yet a COMMIT or ROLLBACK record.
+    * The set is maintained by the recovery managers,
+    * under the read lock of {@link #checkpointLock()}.
+    * @return the ids of the active transactions
+    */
+   public Set<Integer> activeTxs() {
+      return activeTxs;
+   }
+
+   /**
+    * Returns the lock that keeps the set of active transactions
+    * in agreement with the log: a transaction holds the read lock
+    * while it writes a START, COMMIT or ROLLBACK record and updates
+    * the set, and a checkpoint holds the write lock.
+    * @return the checkpoint lock of this log
+    */
+   public ReadWriteLock checkpointLock() {
+      return checkpointLock;
+   }
+
+   /**
+    * Returns the lock table shared by the concurrency
+    * managers of the transactions of this log.
+    * @return the lock table of this database
+    */
+   public LockTable lockTable() {
+      return locktbl;
    }
 
+   /**
+    * Returns the version store shared by the concurrency
+    * managers of the transactions of this log.
+    * @return the version store of this database
+    */
+   public VersionStore versionStore() {
+      return versions;
+   }
+
+   /**
+    * Returns the LSN of the latest log record,
+    * whether or not it has been written to disk.
+    * @return the latest LSN
+    */
+   public int latestLSN() {
+      lock.lock();
+      try {
+         return latestLSN;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Returns the number of physical writes to the log file.
+    * @return the number of log writes
+    */
+   public long flushCount() {
+      lock.lock();
+      try {
+         return flushCount;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Returns the number of commits made durable by
+    * {@link #groupCommit(int)}.
+    * Dividing it by the number of flushes gives the
+    * average size of a commit group.
+    * @return the number of group commits
+    */
+   public long commitCount() {
+      lock.lock();
+      try {
+         return commitCount;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Returns the largest number of commits that
+    * were made durable by a single write.
+    * @return the largest commit group
+    */
+   public int maxBatchSize() {
+      lock.lock();
+      try {
+         return maxBatchSize;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Returns the total time that committing transactions
+    * spent in {@link #groupCommit(int)}, waiting for their
+    * group to form and for the write.
+    * @return the total commit latency, in nanoseconds
+    */
+   public long commitWaitNanos() {
+      lock.lock();
+      try {
+         return commitWaitNanos;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Returns the total time the log writer spent writing to disk.
+    * @return the total write time, in nanoseconds
+    */
+   public long writeNanos() {
+      lock.lock();
+      try {
+         return writeNanos;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Writes the whole log to disk, and returns an iterator
+    * that reads its records from the latest to the earliest.
+    * If the current page is still empty, the iterator
+    * starts from the page before it.
+    */
    public Iterator<byte[]> iterator() {
-      flush();
-      return new LogIterator(fm, currentblk);
+      lock.lock();
+      try {
+         if (latestLSN > lastSavedLSN) {
+            requestWrite(latestLSN);
+            awaitWritten(latestLSN);
+         }
+         BlockId blk = blocks[tail];
+         if (ring[tail].getInt(0) == fm.blockSize() && blk.number() > 0)
+            blk = new BlockId(logfile, blk.number()-1);
+         return new LogIterator(fm, blk);
+      }
+      finally {
+         lock.unlock();
+      }
    }
 
    /**
     * Appends a log record to the log buffer. 
     * The record consists of an arbitrary array of bytes. 
-    * Log records are written right to left in the buffer.
+    * Log records are written right to left in the page.
     * The size of the record is written before the bytes.
-    * The beginning of the buffer contains the location
+    * The beginning of the page contains the location
     * of the last-written record (the "boundary").
     * Storing the records backwards makes it easy to read
     * them in reverse order.
     * @param logrec a byte buffer containing the bytes.
     * @return the LSN of the final value
     */
-   public synchronized int append(byte[] logrec) {
-      int boundary = logpage.getInt(0);
-      int recsize = logrec.length;
-      int bytesneeded = recsize + Integer.BYTES;
-      if (boundary - bytesneeded < Integer.BYTES) { // the log record doesn't fit,
-         flush();        // so move to the next block.
-         currentblk = appendNewBlock();
-         boundary = logpage.getInt(0);
+   public int append(byte[] logrec) {
+      lock.lock();
+      try {
+         int boundary = ring[tail].getInt(0);
+         int recsize = logrec.length;
+         int bytesneeded = recsize + Integer.BYTES;
+         if (boundary - bytesneeded < Integer.BYTES) { // the log record doesn't fit,
+            moveToNextPage();                          // so move to the next page.
+            boundary = ring[tail].getInt(0);
+         }
+         int recpos = boundary - bytesneeded;
+
+         ring[tail].setBytes(recpos, logrec);
+         ring[tail].setInt(0, recpos); // the new boundary
+         latestLSN += 1;
+         pageLSN[tail] = latestLSN;
+         return latestLSN;
+      }
+      finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Writes the next run of log pages to disk, waiting
+    * until there is something to write.
+    * The run consists of the full pages that have not yet
+    * been written, followed by a copy of the current page
+    * if some thread is waiting for one of its records.
+    * The pages are consecutive blocks of the log file, and
+    * are written and forced to disk without holding the lock, so that other
+    * threads can keep appending to the current page.
+    * This method is called repeatedly by the {@link LogWriter},
+    * until the log is shut down.
+    * @return false if the log has been shut down
+    */
+   boolean writeNext() throws InterruptedException {
+      Page[] run;
+      BlockId first;
+      int n, savedLSN, batch;
+      lock.lock();
+      try {
+         while (full == 0 && requestedLSN <= lastSavedLSN) {
+            if (stopped) {
+               failure = new RuntimeException("log " + logfile + " is shut down.");
+               spaceFreed.signalAll();
+               logWritten.signalAll();
+               return false;
+            }
+            workReady.await();
+         }
+         n = full;
+         int fullLSN = (n > 0) ? pageLSN[(oldest+n-1) % ring.length] : lastSavedLSN;
+         boolean withTail = requestedLSN > fullLSN;
+         run = new Page[withTail ? n+1 : n];
+         for (int i=0; i<n; i++)
+            run[i] = ring[(oldest+i) % ring.length];
+         if (withTail) {
+            System.arraycopy(buffers[tail], 0, tailbytes, 0, tailbytes.length);
+            run[n] = tailcopy;
+         }
+         first = blocks[(n > 0) ? oldest : tail];
+         savedLSN = withTail ? latestLSN : fullLSN;
+         batch = pendingCommits;
+         pendingCommits = 0;
+      }
+      finally {
+         lock.unlock();
       }
-      int recpos = boundary - bytesneeded;
 
-      logpage.setBytes(recpos, logrec);
-      logpage.setInt(0, recpos); // the new boundary
-      latestLSN += 1;
-      return latestLSN;
+      long start = System.nanoTime();
+      try {
+         fm.write(first, run);
+         fm.force(logfile);
+      }
+      catch(RuntimeException e) {
+         lock.lock();
+         try {
+            failure = e;
+            spaceFreed.signalAll();
+            logWritten.signalAll();
+         }
+         finally {
+            lock.unlock();
+         }
+         throw e;
+      }
+      long elapsed = System.nanoTime() - start;
+
+      lock.lock();
+      try {
+         oldest = (oldest + n) % ring.length;
+         full -= n;
+         lastSavedLSN = Math.max(lastSavedLSN, savedLSN);
+         writeNanos += elapsed;
+         flushCount++;
+         maxBatchSize = Math.max(maxBatchSize, batch);
+         if (batch > 0)
+            lastBatchSize = batch;
+         spaceFreed.signalAll();
+         logWritten.signalAll();
+      }
+      finally {
+         lock.unlock();
+      }
+      return true;
    }
 
    /**
-    * Initialize the bytebuffer and append it to the log file.
+    * Hand the current page to the log writer and move to
+    * the next page of the ring, which becomes the next
+    * block of the log file.
+    * The new block is not written until the writer gets to it.
+    * If every page is full, wait for the writer to free one.
     */
-   private BlockId appendNewBlock() {
-      BlockId blk = fm.append(logfile);     
-      logpage.setInt(0, fm.blockSize());
-      fm.write(blk, logpage);
-      return blk;
+   private void moveToNextPage() {
+      while (full == ring.length - 1) {
+         if (failure != null)
+            throw failure;
+         spaceFreed.awaitUninterruptibly();
+      }
+      int blknum = blocks[tail].number() + 1;
+      full++;
+      tail = (tail + 1) % ring.length;
+      blocks[tail] = new BlockId(logfile, blknum);
+      ring[tail].setInt(0, fm.blockSize());
+      pageLSN[tail] = latestLSN;
+      workReady.signal();
    }
 
    /**
-    * Write the buffer to the log file.
+    * Ask the log writer to write the log
+    * up to (at least) the specified LSN.
     */
-   private void flush() {
-      fm.write(currentblk, logpage);
-      lastSavedLSN = latestLSN;
+   private void requestWrite(int lsn) {
+      if (lsn > requestedLSN)
+         requestedLSN = lsn;
+      workReady.signal();
+   }
+
+   /**
+    * Wait until the log writer has written the
+    * log record with the specified LSN.
+    */
+   private void awaitWritten(int lsn) {
+      while (lsn > lastSavedLSN) {
+         if (failure != null)
+            throw failure;
+         logWritten.awaitUninterruptibly();
+      }
+   }
+
+   /**
+    * Unless the transaction commits alone (see {@link #groupCommit}),
+    * wait for the group commit window to pass, unless
+    * the write of a full log page makes the commit durable
+    * first, and then have the log written for the whole group.
+    * Waiting releases the lock, so that other transactions
+    * can append their commit records.
+    * A leader made durable by a page write leaves without
+    * requesting a write, and so wakes the followers to
+    * choose a new leader.
+    */
+   private void leadGroup(int lsn) {
+      if (pendingCommits == 1 && lastBatchSize <= 1) {
+         requestWrite(latestLSN);
+         awaitWritten(lsn);
+         return;
+      }
+      leaderWaiting = true;
+      try {
+         long remaining = window * 1000;
+         while (lsn > lastSavedLSN && remaining > 0)
+            remaining = logWritten.awaitNanos(remaining);
+      }
+      catch(InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      finally {
+         leaderWaiting = false;
+      }
+      if (lsn > lastSavedLSN) {
+         requestWrite(latestLSN);
+         awaitWritten(lsn);
+      }
+      else {
+         // a follower may have gone back to waiting for this
+         // leader, so let it check whether it has to lead
+         logWritten.signalAll();
+      }
    }
 }
@@ -0,0 +1,34 @@
+package simpledb.log;
+
+/**
+ * The thread that writes full log pages to disk on behalf
+ * of a {@link LogMgr}, so that appending a record never
+ * waits for the disk unless the log buffer is full.
+ * Each round writes all of the pages that are ready
+ * with a single sequential write.
+ * The thread stops when the log is shut down
+ * (see {@link LogMgr#shutdown()}).
+ */
+class LogWriter extends Thread {
+   private LogMgr lm;
+
+   /**
+    * Create a daemon thread that writes the specified log.
+    * @param lm the log manager
+    */
+   LogWriter(LogMgr lm) {
+      super("LogWriter");
+      this.lm = lm;
+      setDaemon(true);
+   }
+
+   public void run() {
+      try {
+         while (lm.writeNext())
+            ;
+      }
+      catch(InterruptedException e) {
+         // the thread was asked to stop
+      }
+   }
+}
@@ -23,6 +23,32 @@ public interface AggregationFn {
     */
    void processNext(Scan s);
    
+   /**
+    * Use some selected rows of the specified batch as the
+    * next records in the group, or as its first records.
+    * The rows are those at positions from through to-1 of the
+    * batch's selection vector; there may be none of them.
+    * @param b the batch to aggregate over
+    * @param from the position of the first row
+    * @param to the position after the last row
+    * @param first true if the rows begin the group
+    */
+   void processRows(Batch b, int from, int to, boolean first);
+   
+   /**
+    * Return the name of the field that is aggregated.
+    * @return the name of the aggregated field
+    */
+   String field();
+   
+   /**
+    * Return a new aggregation function of the same kind,
+    * over the same field, that has processed no records.
+    * The hash-based groupby operator uses one for each group.
+    * @return the new aggregation function
+    */
+   AggregationFn newInstance();
+   
    /**
     * Return the name of the new aggregation field.
     * @return the name of the new aggregation field
@@ -1,5 +1,6 @@
 package simpledb.materialize;
 
+import simpledb.query.Batch;
 import simpledb.query.Constant;
 import simpledb.query.Scan;
 
@@ -32,6 +33,7 @@ public class AvgFn implements AggregationFn {
    public void processFirst(Scan s) {
       sum = s.getInt(fldname);
       count = 1;
+      values.clear();
       values.add(sum);
    }
 
@@ -49,6 +51,27 @@ public class AvgFn implements AggregationFn {
     * Return the field's name, prepended by "avgof".
     * @see AggregationFn#fieldName()
     */
+   /**
+    * Add the field values of the rows to the sum and
+    * the number of rows to the count.
+    * @see simpledb.materialize.AggregationFn#processRows(simpledb.query.Batch, int, int, boolean)
+    */
+   public void processRows(Batch b, int from, int to, boolean first) {
+      if (first) {
+         sum = 0;
+         count = 0;
+         values.clear();
+      }
+      int[] col = b.ints(b.columnIndex(fldname));
+      int[] sel = b.selection();
+      for (int i=from; i<to; i++)
+         sum += col[sel[i]];
+      count += to - from;
+      if (isDistinct)
+         for (int i=from; i<to; i++)
+            values.add(col[sel[i]]);
+   }
+   
    public String fieldName() {
       return "avgof" + fldname;
    }
@@ -61,6 +84,14 @@ public class AvgFn implements AggregationFn {
       return fldname;
    }
 
+   /**
+    * Return a new avg function over the same field.
+    * @see simpledb.materialize.AggregationFn#newInstance()
+    */
+   public AggregationFn newInstance() {
+      return new AvgFn(fldname, isDistinct);
+   }
+
    /**
     * Return the current avg.
     * @see simpledb.materialize.AggregationFn#value()
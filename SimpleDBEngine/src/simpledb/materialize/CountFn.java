@@ -46,6 +46,16 @@ public class CountFn implements AggregationFn {
     * Return the field's name, prepended by "countof".
     * @see simpledb.materialize.AggregationFn#fieldName()
     */
+   /**
+    * Add the number of rows to the count.
+    * @see simpledb.materialize.AggregationFn#processRows(simpledb.query.Batch, int, int, boolean)
+    */
+   public void processRows(Batch b, int from, int to, boolean first) {
+      if (first)
+         count = 0;
+      count += to - from;
+   }
+   
    public String fieldName() {
       return "countof" + fldname;
    }
@@ -54,6 +64,18 @@ public class CountFn implements AggregationFn {
     * Return the current count.
     * @see simpledb.materialize.AggregationFn#value()
     */
+   public String field() {
+      return fldname;
+   }
+
+   /**
+    * Return a new count function over the same field.
+    * @see simpledb.materialize.AggregationFn#newInstance()
+    */
+   public AggregationFn newInstance() {
+      return new CountFn(fldname, isDistinct);
+   }
+   
    public Constant value() {
       return new Constant(count);
    }
@@ -14,7 +14,7 @@ public class GroupByPlan implements Plan {
    private Plan p;
    private List<String> groupfields;
    private List<AggregationFn> aggfns;
-   private Schema sch = new Schema();
+   private Schema sch;
    
    /**
     * Create a groupby plan for the underlying query.
@@ -32,10 +32,30 @@ public class GroupByPlan implements Plan {
       this.p = new SortPlan(tx, p, groupfields);
       this.groupfields = groupfields;
       this.aggfns = aggfns;
+      sch = outputSchema(p.schema(), groupfields, aggfns);
+   }
+   
+   /**
+    * Return the schema of the output of a grouping:
+    * the group fields, plus one field for each aggregation function.
+    * @param input the schema of the records being grouped
+    * @param groupfields the group fields
+    * @param aggfns the aggregation functions
+    * @return the schema of the output
+    */
+   static Schema outputSchema(Schema input, List<String> groupfields, List<AggregationFn> aggfns) {
+      Schema sch = new Schema();
       for (String fldname : groupfields)
-         sch.add(fldname, p.schema());
-      for (AggregationFn fn : aggfns)
-         sch.addIntField(fn.fieldName());
+         sch.add(fldname, input);
+      for (AggregationFn fn : aggfns) {
+         // a maximum or minimum has the type of its field
+         String fldname = fn.field();
+         if ((fn instanceof MaxFn || fn instanceof MinFn) && input.hasField(fldname))
+            sch.addField(fn.fieldName(), input.type(fldname), input.length(fldname));
+         else
+            sch.addIntField(fn.fieldName());
+      }
+      return sch;
    }
    
    /**
@@ -46,7 +66,7 @@ public class GroupByPlan implements Plan {
     */
    public Scan open() {
       Scan s = p.open();
-      return new GroupByScan(s, groupfields, aggfns);
+      return new GroupByScan(s, groupfields, aggfns, p.schema());
    }
    
    /**
@@ -1,8 +1,10 @@
 package simpledb.materialize;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 import simpledb.query.*;
+import simpledb.record.Schema;
 
 /**
  * The Scan class for the <i>groupby</i> operator.
@@ -12,19 +14,38 @@ public class GroupByScan implements Scan {
    private Scan s;
    private List<String> groupfields;
    private List<AggregationFn> aggfns;
-   private GroupValue groupval;
+   private Batch in;
+   private int[] keycols;
+   private int pos;
+   private Constant[] groupvals;
+   private int[] keyints;
+   private String[] keystrs;
    private boolean moregroups;
    
    /**
     * Create a groupby scan, given a grouped table scan.
+    * The grouped scan is read a batch at a time, and the
+    * aggregation functions process the records of a group
+    * that are in the same batch together.
     * @param s the grouped scan
     * @param groupfields the group fields
     * @param aggfns the aggregation functions
+    * @param sch the schema of the grouped scan
     */
-   public GroupByScan(Scan s, List<String> groupfields, List<AggregationFn> aggfns) {
+   public GroupByScan(Scan s, List<String> groupfields, List<AggregationFn> aggfns, Schema sch) {
       this.s = s;
       this.groupfields = groupfields;
       this.aggfns = aggfns;
+      in = new Batch(groupfields, sch);
+      for (AggregationFn fn : aggfns)
+         if (sch.hasField(fn.field()))
+            in.addColumn(fn.field(), sch.type(fn.field()));
+      keycols = new int[groupfields.size()];
+      for (int i=0; i<keycols.length; i++)
+         keycols[i] = in.columnIndex(groupfields.get(i));
+      groupvals = new Constant[keycols.length];
+      keyints = new int[keycols.length];
+      keystrs = new String[keycols.length];
       beforeFirst();
    }
    
@@ -32,38 +53,95 @@ public class GroupByScan implements Scan {
     * Position the scan before the first group.
     * Internally, the underlying scan is always 
     * positioned at the first record of a group, which 
-    * means that this method moves to the
-    * first underlying record.
+    * means that this method reads the first
+    * batch of underlying records.
     * @see simpledb.query.Scan#beforeFirst()
     */
    public void beforeFirst() {
       s.beforeFirst();
-      moregroups = s.next();
+      in.clear();
+      moregroups = s.nextBatch(in);
+      pos = 0;
    }
    
    /**
     * Move to the next group.
     * The key of the group is determined by the 
     * group values at the current record.
-    * The method repeatedly reads underlying records until
-    * it encounters a record having a different key.
-    * The aggregation functions are called for each record
-    * in the group. 
+    * The method finds the records of the current batch
+    * having that key, passes them to the aggregation
+    * functions, and reads more batches until it encounters
+    * a record having a different key.
     * The values of the grouping fields for the group are saved.
     * @see simpledb.query.Scan#next()
     */
    public boolean next() {
       if (!moregroups)
          return false;
-      for (AggregationFn fn : aggfns)
-         fn.processFirst(s);
-      groupval = new GroupValue(s, groupfields);
-      while(moregroups = s.next()) {
-         GroupValue gv = new GroupValue(s, groupfields);
-         if (!groupval.equals(gv))
-            break;
+      int[] sel = in.selection();
+      setKey(sel[pos]);
+      boolean first = true;
+      while (true) {
+         int end = pos;
+         while (end < in.selected() && hasKey(sel[end]))
+            end++;
          for (AggregationFn fn : aggfns)
-            fn.processNext(s);
+            fn.processRows(in, pos, end, first);
+         first = false;
+         pos = end;
+         if (pos < in.selected())
+            return true;
+         moregroups = s.nextBatch(in);
+         pos = 0;
+         if (!moregroups)
+            return true;
+      }
+   }
+   
+   /**
+    * Fill the batch with the next groups.
+    * @see simpledb.query.Scan#nextBatch(simpledb.query.Batch)
+    */
+   public boolean nextBatch(Batch b) {
+      int ncols = b.fields().size();
+      int[] ords = new int[ncols];
+      for (int c=0; c<ncols; c++) {
+         ords[c] = fieldIndex(b.fields().get(c));
+         if (ords[c] < 0)
+            throw new RuntimeException("field " + b.fields().get(c) + " not found.");
+      }
+      int n = 0;
+      while (n < Batch.CAPACITY && next()) {
+         for (int c=0; c<ncols; c++) {
+            Constant val = valueAt(ords[c]);
+            if (b.isInt(c))
+               b.ints(c)[n] = val.asInt();
+            else
+               b.strings(c)[n] = val.asString();
+         }
+         n++;
+      }
+      b.setSize(n);
+      return n > 0;
+   }
+   
+   private void setKey(int row) {
+      for (int i=0; i<keycols.length; i++) {
+         int col = keycols[i];
+         groupvals[i] = in.getVal(col, row);
+         if (in.isInt(col))
+            keyints[i] = in.ints(col)[row];
+         else
+            keystrs[i] = in.strings(col)[row];
+      }
+   }
+   
+   private boolean hasKey(int row) {
+      for (int i=0; i<keycols.length; i++) {
+         int col = keycols[i];
+         if (in.isInt(col) ? in.ints(col)[row] != keyints[i]
+                           : !in.strings(col)[row].equals(keystrs[i]))
+            return false;
       }
       return true;
    }
@@ -85,8 +163,9 @@ public class GroupByScan implements Scan {
     * @see simpledb.query.Scan#getVal(java.lang.String)
     */
    public Constant getVal(String fldname) {
-      if (groupfields.contains(fldname))
-         return groupval.getVal(fldname);
+      int i = groupfields.indexOf(fldname);
+      if (i >= 0)
+         return groupvals[i];
       for (AggregationFn fn : aggfns)
          if (fn.fieldName().equals(fldname))
          return fn.value();
@@ -117,6 +196,47 @@ public class GroupByScan implements Scan {
       return getVal(fldname).asString();
    }
    
+   /**
+    * Return the ordinal of the specified field, which is its
+    * position in the list of group fields, or for the field
+    * of an aggregation function, the number of group fields
+    * plus the position of the function.
+    * @see simpledb.query.Scan#fieldIndex(java.lang.String)
+    */
+   public int fieldIndex(String fldname) {
+      int i = groupfields.indexOf(fldname);
+      if (i >= 0)
+         return i;
+      for (int j=0; j<aggfns.size(); j++)
+         if (aggfns.get(j).fieldName().equals(fldname))
+            return groupfields.size() + j;
+      return -1;
+   }
+   
+   /**
+    * Get the integer value of the field having the specified ordinal.
+    * @see simpledb.query.Scan#getInt(int)
+    */
+   public int getInt(int fldindex) {
+      return valueAt(fldindex).asInt();
+   }
+   
+   /**
+    * Get the string bytes of the field having the specified ordinal.
+    * @see simpledb.query.Scan#getBytes(int)
+    */
+   public byte[] getBytes(int fldindex) {
+      return valueAt(fldindex).asString().getBytes(StandardCharsets.US_ASCII);
+   }
+   
+   private Constant valueAt(int fldindex) {
+      int n = groupfields.size();
+      if (fldindex < n)
+         return groupvals[fldindex];
+      else
+         return aggfns.get(fldindex - n).value();
+   }
+   
    /** Return true if the specified field is either a 
     * grouping field or created by an aggregation function.
     * @see simpledb.query.Scan#hasField(java.lang.String)
@@ -0,0 +1,115 @@
+package simpledb.materialize;
+
+import java.util.*;
+import simpledb.tx.Transaction;
+import simpledb.record.*;
+import simpledb.plan.Plan;
+import simpledb.query.*;
+
+/**
+ * The Plan class for the hash-based <i>groupby</i> operator.
+ * Unlike GroupByPlan, it does not sort its input: the groups
+ * are kept in a hash table as the input is read once, and only
+ * the records of groups that do not fit in memory are written
+ * to temporary tables (see HashGroupByScan).
+ * It is the better choice when the groups fit in memory.
+ */
+public class HashGroupByPlan implements Plan {
+   private Transaction tx;
+   private Plan p;
+   private List<String> groupfields;
+   private List<AggregationFn> aggfns;
+   private Schema sch;
+
+   /**
+    * Create a hash-based groupby plan for the underlying query.
+    * @param tx the calling transaction
+    * @param p a plan for the underlying query
+    * @param groupfields the group fields
+    * @param aggfns the aggregation functions
+    */
+   public HashGroupByPlan(Transaction tx, Plan p, List<String> groupfields, List<AggregationFn> aggfns) {
+      this.tx = tx;
+      this.p = p;
+      this.groupfields = groupfields;
+      this.aggfns = aggfns;
+      sch = GroupByPlan.outputSchema(p.schema(), groupfields, aggfns);
+   }
+
+   /**
+    * Open a scan that groups the records of the underlying query.
+    * The buffers that are available once the underlying scan is open
+    * decide how many groups are held in memory, and how many
+    * temporary tables the other records are divided into.
+    * @see simpledb.plan.Plan#open()
+    */
+   public Scan open() {
+      Scan s = p.open();
+      int avail = tx.availableBuffs();
+      return new HashGroupByScan(tx, s, groupfields, aggfns, p.schema(), maxGroups(), avail - 2);
+   }
+
+   /**
+    * Return the number of groups whose output records
+    * fit in the available buffers.
+    * @return the number of groups that can be held in memory
+    */
+   public int maxGroups() {
+      int perblock = tx.blockSize() / new Layout(sch).slotSize();
+      return Math.max(1, tx.availableBuffs()) * perblock;
+   }
+
+   /**
+    * Return the number of blocks accessed, which is one pass
+    * through the underlying query if the groups fit in memory.
+    * Otherwise most of the records are also written to
+    * temporary tables and read back, which triples the cost.
+    * @see simpledb.plan.Plan#blocksAccessed()
+    */
+   public int blocksAccessed() {
+      if (recordsOutput() <= maxGroups())
+         return p.blocksAccessed();
+      else
+         return 3 * p.blocksAccessed();
+   }
+
+   /**
+    * Return the number of groups, estimated as in GroupByPlan
+    * but no more than the number of underlying records.
+    * @see simpledb.plan.Plan#recordsOutput()
+    */
+   public int recordsOutput() {
+      long numgroups = 1;
+      for (String fldname : groupfields)
+         numgroups = Math.min(numgroups * p.distinctValues(fldname), Integer.MAX_VALUE);
+      return (int) Math.min(numgroups, Math.max(1, p.recordsOutput()));
+   }
+
+   /**
+    * Return the number of distinct values for the
+    * specified field, as in GroupByPlan.
+    * @see simpledb.plan.Plan#distinctValues(java.lang.String)
+    */
+   public int distinctValues(String fldname) {
+      if (p.schema().hasField(fldname))
+         return p.distinctValues(fldname);
+      else
+         return recordsOutput();
+   }
+
+   /**
+    * Returns the schema of the output table, which
+    * is the same as that of GroupByPlan.
+    * @see simpledb.plan.Plan#schema()
+    */
+   public Schema schema() {
+      return sch;
+   }
+
+   public String toString() {
+      String S = p.toString() + " HashGroupBy " + groupfields.toString();
+      if (!aggfns.isEmpty())
+         return S + " Aggregated To: " + aggfns;
+      return S;
+   }
+}
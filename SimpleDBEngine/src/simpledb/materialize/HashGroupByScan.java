@@ -0,0 +1,267 @@
+package simpledb.materialize;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import simpledb.query.*;
+import simpledb.record.Schema;
+import simpledb.tx.Transaction;
+
+/**
+ * The Scan class for the hash-based <i>groupby</i> operator.
+ * <p>
+ * The input is read once into an open-addressing hash table,
+ * which maps the group values of each group to its own
+ * aggregation functions (see {@link AggregationFn#newInstance}).
+ * Once the table holds as many groups as fit in memory,
+ * a record of a group that is not in it is written instead to
+ * one of several temporary tables, chosen by the hash of its
+ * group values; the groups in the table keep aggregating.
+ * After the groups of the table are output, each temporary
+ * table is read in turn in the same way, with a different hash
+ * function, up to MAX_LEVELS times; after that, the table grows
+ * to hold all of the groups of a temporary table.
+ */
+public class HashGroupByScan implements Scan {
+   private static final int MAX_LEVELS = 3;
+   private Transaction tx;
+   private Scan s;
+   private List<String> groupfields, infields, outfields;
+   private List<AggregationFn> aggfns;
+   private Schema spillsch = new Schema();
+   private int maxgroups, fanout;
+
+   // the hash table: for each slot, the group in it or -1;
+   // and for each group, its group values and its functions
+   private int[] slots;
+   private List<Constant[]> keys = new ArrayList<>();
+   private List<AggregationFn[]> states = new ArrayList<>();
+
+   // the temporary tables still to be read, and the level of each
+   private List<TempTable> spills = new ArrayList<>();
+   private List<Integer> levels = new ArrayList<>();
+   private int nextspill;
+
+   private int current;
+   private Constant[] row;
+
+   /**
+    * Create a hash-based groupby scan.
+    * @param tx the calling transaction, which creates the temporary tables
+    * @param s the scan of the records to be grouped
+    * @param groupfields the group fields
+    * @param aggfns the aggregation functions
+    * @param sch the schema of the records to be grouped
+    * @param maxgroups the number of groups that can be held in memory
+    * @param fanout the number of temporary tables that records are divided into,
+    * which needs as many buffers; if it is less than 2, no records are written to them
+    */
+   public HashGroupByScan(Transaction tx, Scan s, List<String> groupfields, List<AggregationFn> aggfns,
+                          Schema sch, int maxgroups, int fanout) {
+      this.tx = tx;
+      this.s = s;
+      this.groupfields = groupfields;
+      this.aggfns = aggfns;
+      this.maxgroups = maxgroups;
+      this.fanout = fanout;
+      infields = new ArrayList<>(groupfields);
+      for (AggregationFn fn : aggfns)
+         if (sch.hasField(fn.field()) && !infields.contains(fn.field()))
+            infields.add(fn.field());
+      for (String fldname : infields)
+         spillsch.add(fldname, sch);
+      outfields = new ArrayList<>(groupfields);
+      for (AggregationFn fn : aggfns)
+         outfields.add(fn.fieldName());
+      beforeFirst();
+   }
+
+   /**
+    * Position the scan before the first group.
+    * The whole input is read into the hash table,
+    * and the records of the groups that do not fit in it
+    * are written to temporary tables.
+    * @see simpledb.query.Scan#beforeFirst()
+    */
+   public void beforeFirst() {
+      spills.clear();
+      levels.clear();
+      nextspill = 0;
+      load(s, 0);
+      current = -1;
+   }
+
+   /**
+    * Move to the next group of the hash table, or else load the
+    * groups of the next temporary table into the hash table.
+    * @see simpledb.query.Scan#next()
+    */
+   public boolean next() {
+      current++;
+      while (current >= keys.size()) {
+         if (nextspill >= spills.size())
+            return false;
+         Scan in = spills.get(nextspill).open();
+         load(in, levels.get(nextspill));
+         in.close();
+         nextspill++;
+         current = 0;
+      }
+      Constant[] key = keys.get(current);
+      AggregationFn[] fns = states.get(current);
+      row = new Constant[key.length + fns.length];
+      System.arraycopy(key, 0, row, 0, key.length);
+      for (int i=0; i<fns.length; i++)
+         row[key.length + i] = fns[i].value();
+      return true;
+   }
+
+   /**
+    * Close the scan by closing the underlying scan.
+    * @see simpledb.query.Scan#close()
+    */
+   public void close() {
+      s.close();
+   }
+
+   public Constant getVal(String fldname) {
+      int i = outfields.indexOf(fldname);
+      if (i < 0)
+         throw new RuntimeException("field " + fldname + " not found.");
+      return row[i];
+   }
+
+   public int getInt(String fldname) {
+      return getVal(fldname).asInt();
+   }
+
+   public String getString(String fldname) {
+      return getVal(fldname).asString();
+   }
+
+   /**
+    * Return the ordinal of the field, which is
+    * its position among the group fields followed
+    * by the aggregation fields.
+    * @see simpledb.query.Scan#fieldIndex(java.lang.String)
+    */
+   public int fieldIndex(String fldname) {
+      return outfields.indexOf(fldname);
+   }
+
+   public int getInt(int fldindex) {
+      return row[fldindex].asInt();
+   }
+
+   public byte[] getBytes(int fldindex) {
+      return row[fldindex].asString().getBytes(StandardCharsets.US_ASCII);
+   }
+
+   public boolean hasField(String fldname) {
+      return outfields.contains(fldname);
+   }
+
+   /**
+    * Empty the hash table and read the specified records
+    * into it, writing the records of the groups that do not
+    * fit to new temporary tables.
+    */
+   private void load(Scan in, int level) {
+      keys.clear();
+      states.clear();
+      slots = new int[Integer.highestOneBit(Math.max(maxgroups, 1)) << 1];
+      Arrays.fill(slots, -1);
+      boolean canspill = fanout >= 2 && level < MAX_LEVELS;
+      TempTable[] temps = null;
+      UpdateScan[] outs = null;
+      boolean[] used = null;
+      Constant[] key = new Constant[groupfields.size()];
+      in.beforeFirst();
+      while (in.next()) {
+         for (int i=0; i<key.length; i++)
+            key[i] = in.getVal(groupfields.get(i));
+         int slot = find(key);
+         if (slots[slot] >= 0) {
+            for (AggregationFn fn : states.get(slots[slot]))
+               fn.processNext(in);
+         }
+         else if (keys.size() >= maxgroups && canspill) {
+            if (outs == null) {
+               temps = new TempTable[fanout];
+               outs = new UpdateScan[fanout];
+               used = new boolean[fanout];
+               for (int i=0; i<fanout; i++) {
+                  temps[i] = new TempTable(tx, spillsch);
+                  outs[i] = temps[i].open();
+               }
+            }
+            int p = Math.floorMod(hash(key, level + 1), fanout);
+            outs[p].insert();
+            for (String fldname : infields)
+               outs[p].setVal(fldname, in.getVal(fldname));
+            used[p] = true;
+         }
+         else {
+            AggregationFn[] fns = new AggregationFn[aggfns.size()];
+            for (int i=0; i<fns.length; i++) {
+               fns[i] = aggfns.get(i).newInstance();
+               fns[i].processFirst(in);
+            }
+            slots[slot] = keys.size();
+            keys.add(key.clone());
+            states.add(fns);
+            if (keys.size() * 2 > slots.length)
+               grow();
+         }
+      }
+      if (outs != null) {
+         for (int i=0; i<fanout; i++) {
+            outs[i].close();
+            if (used[i]) {
+               spills.add(temps[i]);
+               levels.add(level + 1);
+            }
+         }
+      }
+   }
+
+   /**
+    * Return the slot that holds the group having the
+    * specified values, or else the empty slot where
+    * that group would go.
+    */
+   private int find(Constant[] key) {
+      int mask = slots.length - 1;
+      int slot = hash(key, 0) & mask;
+      while (slots[slot] >= 0 && !Arrays.equals(keys.get(slots[slot]), key))
+         slot = (slot + 1) & mask;
+      return slot;
+   }
+
+   /**
+    * Double the number of slots, and put each group
+    * into its slot in the larger table.
+    */
+   private void grow() {
+      slots = new int[slots.length * 2];
+      Arrays.fill(slots, -1);
+      for (int g=0; g<keys.size(); g++)
+         slots[find(keys.get(g))] = g;
+   }
+
+   /**
+    * Hash the group values, mixed with a seed so that
+    * the table and each level of temporary tables divide
+    * the groups differently.
+    */
+   private static int hash(Constant[] key, int seed) {
+      int h = seed * 0x85EBCA6B;
+      for (Constant val : key)
+         h = 31 * h + val.hashCode();
+      h *= 0x9E3779B9;
+      h ^= h >>> 16;
+      h *= 0x85EBCA6B;
+      h ^= h >>> 13;
+      return h;
+   }
+}
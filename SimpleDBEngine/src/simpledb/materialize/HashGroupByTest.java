@@ -0,0 +1,89 @@
+package simpledb.materialize;
+
+import java.util.*;
+
+import simpledb.metadata.MetadataMgr;
+import simpledb.plan.*;
+import simpledb.query.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+/**
+ * Groups a table with both groupby operators and checks that
+ * they output the same groups, both when the groups fit in
+ * memory and when most of them are written to temporary tables.
+ * Also checks which operator the planner chooses.
+ */
+public class HashGroupByTest {
+   public static void main(String[] args) {
+      SimpleDB db = new SimpleDB("hashgroupbytest");
+      MetadataMgr mdm = db.mdMgr();
+      Transaction tx = db.newTx();
+      db.planner().executeUpdate("create table T(A int, B varchar(9), C int)", tx);
+      Random rand = new Random(3223);
+      BulkLoader loader = new BulkLoader(tx, "t", null, mdm);
+      for (int i=0; i<8000; i++) {
+         int a = rand.nextInt(1500), b = rand.nextInt(12), c = rand.nextInt(40);
+         loader.add(Arrays.asList(new Constant(a), new Constant("b" + (10 + b)), new Constant(c)));
+      }
+      loader.finish();
+      tx.commit();
+
+      tx = db.newTx();
+      check(tx, mdm, Arrays.asList("b"), 1000, 5);
+      check(tx, mdm, Arrays.asList("a"), 1000, 5);
+      check(tx, mdm, Arrays.asList("a"), 20, 4);
+      check(tx, mdm, Arrays.asList("a", "b"), 50, 3);
+      check(tx, mdm, Arrays.asList(), 1, 2);
+
+      Planner planner = db.planner();
+      plan(planner, tx, "select b, count(a), max(c) from t where a = 7 group by b", true);
+      plan(planner, tx, "select a, c, count(b) from t group by a, c", false);
+      tx.commit();
+   }
+
+   private static void check(Transaction tx, MetadataMgr mdm, List<String> groupfields, int maxgroups, int fanout) {
+      Plan p = new TablePlan(tx, "t", mdm);
+      List<String> outfields = new ArrayList<>(groupfields);
+      for (AggregationFn fn : aggregations())
+         outfields.add(fn.fieldName());
+      Set<String> expected = read(new GroupByPlan(tx, p, groupfields, aggregations()).open(), outfields);
+      Scan s = new HashGroupByScan(tx, p.open(), groupfields, aggregations(), p.schema(), maxgroups, fanout);
+      Set<String> actual = read(s, outfields);
+      System.out.println("group by " + groupfields + " with " + maxgroups + " groups in memory: "
+            + actual.size() + " groups, " + (actual.equals(expected) ? "as expected" : "NOT AS EXPECTED"));
+   }
+
+   private static void plan(Planner planner, Transaction tx, String qry, boolean hashed) {
+      Plan p = planner.createQueryPlan(qry, tx);
+      System.out.println(qry + ": " + ((p instanceof HashGroupByPlan) == hashed ? "" : "not ") + "planned "
+            + (hashed ? "with" : "without") + " hashing, estimated " + p.recordsOutput() + " groups, "
+            + count(p) + " groups");
+   }
+
+   private static List<AggregationFn> aggregations() {
+      return Arrays.asList(new CountFn("a", false), new SumFn("c", true), new AvgFn("c", false),
+                           new MaxFn("b", false), new MinFn("c", false));
+   }
+
+   private static Set<String> read(Scan s, List<String> outfields) {
+      Set<String> recs = new TreeSet<>();
+      while (s.next()) {
+         StringBuilder sb = new StringBuilder();
+         for (String fldname : outfields)
+            sb.append(s.getVal(fldname)).append(' ');
+         recs.add(sb.toString());
+      }
+      s.close();
+      return recs;
+   }
+
+   private static int count(Plan p) {
+      Scan s = p.open();
+      int n = 0;
+      while (s.next())
+         n++;
+      s.close();
+      return n;
+   }
+}
@@ -1,12 +1,14 @@
 package simpledb.materialize;
 
-import java.util.List;
-
 import simpledb.plan.Plan;
 import simpledb.query.Scan;
+import simpledb.record.Layout;
 import simpledb.record.Schema;
 import simpledb.tx.Transaction;
 
+/**
+ * The Plan class for the hash join operator, which is a Grace hash join (see HashJoinScan).
+ */
 public class HashJoinPlan implements Plan {
 	
 	private Transaction tx;
@@ -14,7 +16,6 @@ public class HashJoinPlan implements Plan {
 	private String fldname1, fldname2;
 	private Schema sch = new Schema();
 	
-	private int numOfPartitions;
 	
 	/**
 	 * Constructor for HashJoinPlan - initializes its variables to those passed to the constructor.	
@@ -32,31 +33,45 @@ public class HashJoinPlan implements Plan {
 		this.fldname2 = fldname2;
 		sch.addAll(p1.schema());
 		sch.addAll(p2.schema());
-		this.numOfPartitions = tx.availableBuffs() - 1;
 	}
 	
 	/**
 	 * Creates HashJoinScan from Scans of p1 and p2, along with other parameters.
+	 * The buffers that are available once both scans are open decide how many p1 records the scan
+	 * may hold in memory, and how many partitions it divides the inputs into; one buffer is
+	 * kept back for the block that a temporary table appends.
 	 */
 	public Scan open() {
 		Scan s1 = p1.open();
 		Scan s2 = p2.open();
-		List<String> s1Fields = p1.schema().fields();
-		return new HashJoinScan(s1, s2, fldname1, fldname2, s1Fields, numOfPartitions);
+		int avail = tx.availableBuffs();
+		int perBlock = tx.blockSize() / new Layout(p1.schema()).slotSize();
+		int maxRecords = Math.max(avail, 1) * perBlock;
+		return new HashJoinScan(tx, s1, s2, fldname1, fldname2, p1.schema(), p2.schema(), maxRecords, avail - 1);
 	}
 	
 	/**
-	 * Returns the blocks accessed as a result of the join, which is the sum of those accessed by p1 and p2.	
+	 * Returns the blocks accessed by the join.
+	 * If p1 fits in the available buffers, each input is read once; otherwise each input is also
+	 * written to its partitions and read from them, which triples the cost.
+	 * Partitioning a partition again is not counted.
 	 */
 	public int blocksAccessed() {
-		return 3 * (p1.blocksAccessed() + p2.blocksAccessed());
+		int inputs = p1.blocksAccessed() + p2.blocksAccessed();
+		if (p1.blocksAccessed() <= tx.availableBuffs()) {
+			return inputs;
+		} else {
+			return 3 * inputs;
+		}
 	}
 	
 	/**
-	 * Returns the combined records output by the join, which is the product of those output by p1 and p2.
+	 * Returns the records output by the join, estimated as for any equijoin: the product of the records
+	 * output by p1 and p2, divided by the larger number of distinct values of the join fields.
 	 */
 	public int recordsOutput() {
-		return p1.recordsOutput() * p2.recordsOutput();
+		int maxvals = Math.max(p1.distinctValues(fldname1), p2.distinctValues(fldname2));
+		return (p1.recordsOutput() * p2.recordsOutput()) / maxvals;
 	}
 	
 	/**
@@ -1,149 +1,511 @@
 package simpledb.materialize;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
+import simpledb.query.Batch;
 import simpledb.query.Constant;
+import simpledb.query.ProductScan;
 import simpledb.query.Scan;
+import simpledb.query.UpdateScan;
+import simpledb.record.Schema;
+import simpledb.tx.Transaction;
 
+/**
+ * The scan class for the hash join operator, which is a Grace hash join.
+ * <p>
+ * The s1 records are read into memory, and if they all fit, s2 is probed against them directly.
+ * Otherwise both inputs are partitioned once on the hash of their join values into temporary tables,
+ * and each pair of partitions is then joined in memory: the hash table is built from the s1 partition
+ * and probed with the records of the s2 partition.
+ * An s1 partition that is still too large is partitioned again with a different hash function,
+ * up to MAX_LEVELS times; one that does not shrink, because its records share a join value,
+ * is joined in memory as it is.
+ */
 public class HashJoinScan implements Scan {
 
+	private static final int MAX_LEVELS = 3;
+
+	private Transaction tx;
 	private Scan s1, s2;
 	private String fldname1, fldname2;
-	private List<String> s1Fields;
-	private int numOfPartitions;
-	
-	private int curr_index, curr_partition;
-	private Map<String, Constant> curr_s1Record;
-	private ArrayList<Map<String, Constant>> curr_arr;
-	private Map<Constant, ArrayList<Map<String, Constant>>> hashTable;
-	
+	private Schema sch1, sch2;
+	private List<String> s1Fields, s2Fields;
+	private int maxRecords, fanout;
+
+	// the s1 and s2 partitions to be joined; a null entry stands for s1 and s2 themselves,
+	// when the s1 records fit in memory
+	private List<Partition> partitions;
+	private List<Constant[]> inMemory;
+	private boolean spilled;
+
+	// the hash table of the current partition: the records, and for each slot the first record
+	// and for each record the next record whose join value hashes to the same slot
+	private int curr_partition;
+	private List<Constant[]> records;
+	private int[] heads, chain;
+	private int keyIndex;
+
+	// the s2 records of the current partition, and the ordinals of their fields in the order of s2Fields
+	private Scan curr_probe;
+	private int[] s2Ords, probeOrds;
+
+	// the current s2 join value, the next record in its chain, and the current s1 record
+	private Constant curr_joinval;
+	private int curr_match;
+	private Constant[] curr_s1Record;
+
+	// the s2 records being probed in batch mode, and the position and row of the current one
+	private Batch probe;
+	private int probe_pos, probe_row;
+
+	/**
+	 * A pair of partitions of s1 and s2, which hold the records whose join values hash to the same value.
+	 */
+	private static class Partition {
+		TempTable build, probe;
+		int level, count;
+
+		Partition(TempTable build, TempTable probe, int level, int count) {
+			this.build = build;
+			this.probe = probe;
+			this.level = level;
+			this.count = count;
+		}
+	}
+
 	/**
 	 * Constructor for HashJoinScan - initializes variables to those passed to it.
-	 * @param s1
-	 * @param s2
-	 * @param fldname1
-	 * @param fldname2
-	 * @param s1Fields
-	 * @param numOfPartitions
-	 */
-	public HashJoinScan(Scan s1, Scan s2, String fldname1, String fldname2, List<String> s1Fields, int numOfPartitions) {
+	 * The inputs are partitioned when the scan is first positioned.
+	 * @param tx the calling transaction, which creates the temporary tables of the partitions
+	 * @param s1 the build input
+	 * @param s2 the probe input
+	 * @param fldname1 the join field of s1
+	 * @param fldname2 the join field of s2
+	 * @param sch1 the schema of s1
+	 * @param sch2 the schema of s2
+	 * @param maxRecords the number of s1 records that can be held in memory
+	 * @param fanout the number of partitions that an input is divided into, which needs as many buffers;
+	 * if it is less than 2 the inputs are never partitioned
+	 */
+	public HashJoinScan(Transaction tx, Scan s1, Scan s2, String fldname1, String fldname2, Schema sch1, Schema sch2,
+			int maxRecords, int fanout) {
+		this.tx = tx;
 		this.s1 = s1;
 		this.s2 = s2;
 		this.fldname1 = fldname1;
 		this.fldname2 = fldname2;
-		this.s1Fields = s1Fields;
-		this.numOfPartitions = numOfPartitions;
-		this.curr_index = 0;
-		
+		this.sch1 = sch1;
+		this.sch2 = sch2;
+		this.s1Fields = sch1.fields();
+		this.s2Fields = sch2.fields();
+		this.maxRecords = maxRecords;
+		this.fanout = fanout;
+		this.keyIndex = s1Fields.indexOf(fldname1);
+
+		s2Ords = new int[s2Fields.size()];
+		for (int i = 0; i < s2Ords.length; i++) {
+			s2Ords[i] = s2.fieldIndex(s2Fields.get(i));
+		}
 		beforeFirst();
 	}
-	
+
 	public void close() {
-		s1.close();
-		s2.close();
+		closeProbe();
+		if (!spilled) {
+			s1.close();
+			s2.close();
+		}
 	}
-	
+
+	/**
+	 * Positions the scan before the first partition, partitioning the inputs if this has not been done.
+	 */
 	public void beforeFirst() {
-		
+		if (partitions == null) {
+			partitionInputs();
+		}
+		closeProbe();
+		curr_partition = -1;
+		curr_match = -1;
+		records = null;
+		probe = null;
 	}
-	
+
 	/**
-	 * Returns true if there remain partitions with unmatched records.
+	 * Moves to the next s1 record that matches the current s2 record, or else to the next s2 record
+	 * of the current partition, or else to the next partition.
+	 * Returns false when there are no more partitions.
 	 */
 	public boolean next() {
-		
 		while (true) {
-			
-			// if curr_arr has already been initialised and there are still unmatched records
-			if (curr_arr != null && curr_index < curr_arr.size()) {
-				curr_s1Record = curr_arr.get(curr_index);
-				curr_index++;
+			Constant[] rec = nextMatch();
+			if (rec != null) {
+				curr_s1Record = rec;
 				return true;
 			}
-			
-			//iterating through s2
-			while(s2.next()) {
-				// Pass s2 value into hash function and match against hash table.
-				if(curr_partition == (s2.getVal(fldname2).hashCode() % numOfPartitions)) {
-					if(hashTable.keySet().contains(s2.getVal(fldname2))) {
-						curr_index = 0;
-						curr_arr = hashTable.get(s2.getVal(fldname2));
-						curr_s1Record = curr_arr.get(curr_index);
-						curr_index++;
-						return true;
-					}
-				}
+			if (curr_probe != null && curr_probe.next()) {
+				startMatches(curr_probe.getVal(fldname2));
+				continue;
 			}
-			curr_arr = null;
-			
-			// checking if there is next partition
-			curr_partition++;
-			if(curr_partition >= numOfPartitions) {
+			if (!nextPartition()) {
 				return false;
 			}
-			
-			s1.beforeFirst();
-			s2.beforeFirst();
-			hashTable = new HashMap<Constant, ArrayList<Map<String, Constant>>>();
-
-			//iterating through s1
-			while(s1.next()) {
-				if(curr_partition == s1.getVal(fldname1).hashCode() % numOfPartitions) {
-					Map<String, Constant> curr_record = new HashMap<>();
-					for(String curr_fieldName: s1Fields) {
-						curr_record.put(curr_fieldName, s1.getVal(curr_fieldName));
+		}
+	}
+
+	/**
+	 * Fills the batch with the next joined records.
+	 * The s2 records are probed a batch at a time, and the s1 records that match a probe row are copied
+	 * from the hash table into the batch; a probe row whose matches do not fit is continued in the next call.
+	 */
+	public boolean nextBatch(Batch b) {
+		if (probe == null) {
+			probe = new Batch(Collections.singletonList(fldname2), sch2);
+			for (String fldname : b.fields()) {
+				if (sch2.hasField(fldname)) {
+					probe.addColumn(fldname, sch2.type(fldname));
+				}
+			}
+			probe_pos = 0;
+		}
+		// a column is copied from the probe batch if s2 has the field, and otherwise from the s1 record
+		int ncols = b.fields().size();
+		int[] srcs = new int[ncols];
+		for (int c = 0; c < ncols; c++) {
+			String fldname = b.fields().get(c);
+			if (sch2.hasField(fldname)) {
+				srcs[c] = probe.columnIndex(fldname);
+			} else if (s1Fields.contains(fldname)) {
+				srcs[c] = -1 - s1Fields.indexOf(fldname);
+			} else {
+				throw new RuntimeException("field " + fldname + " not found.");
+			}
+		}
+		int keycol = probe.columnIndex(fldname2);
+		int n = 0;
+		while (n < Batch.CAPACITY) {
+			Constant[] rec = nextMatch();
+			if (rec != null) {
+				for (int c = 0; c < ncols; c++) {
+					int src = srcs[c];
+					if (b.isInt(c)) {
+						b.ints(c)[n] = (src >= 0) ? probe.ints(src)[probe_row] : rec[-1 - src].asInt();
+					} else {
+						b.strings(c)[n] = (src >= 0) ? probe.strings(src)[probe_row] : rec[-1 - src].asString();
 					}
-					hashTable.computeIfAbsent(s1.getVal(fldname1), k -> new ArrayList<Map<String, Constant>>()).add(curr_record);
 				}
+				n++;
+				continue;
 			}
-			
-			return true;
+			if (curr_probe == null || (probe_pos >= probe.selected() && !nextProbeBatch())) {
+				if (!nextPartition()) {
+					break;
+				}
+				probe.clear();
+				probe_pos = 0;
+				continue;
+			}
+			probe_row = probe.selection()[probe_pos];
+			probe_pos++;
+			startMatches(probe.getVal(keycol, probe_row));
 		}
-		
+		b.setSize(n);
+		return n > 0;
 	}
-	
+
+	private boolean nextProbeBatch() {
+		if (!curr_probe.nextBatch(probe)) {
+			return false;
+		}
+		probe_pos = 0;
+		return true;
+	}
+
+	/**
+	 * Reads the s1 records into memory. If there are too many, partitions s1 and s2 into temporary tables,
+	 * and partitions again each s1 partition that is still too large.
+	 */
+	private void partitionInputs() {
+		partitions = new ArrayList<Partition>();
+		inMemory = new ArrayList<Constant[]>();
+		s1.beforeFirst();
+		boolean fits = true;
+		while (s1.next()) {
+			inMemory.add(record(s1));
+			if (inMemory.size() > maxRecords && fanout >= 2) {
+				fits = false;
+				break;
+			}
+		}
+		if (fits) {
+			if (!inMemory.isEmpty()) {
+				partitions.add(null);
+			}
+			return;
+		}
+
+		List<Partition> pending = new ArrayList<Partition>();
+		split(s1, s2, inMemory, 0, pending);
+		inMemory = null;
+		spilled = true;
+		s1.close();
+		s2.close();
+		for (int i = 0; i < pending.size(); i++) {
+			Partition p = pending.get(i);
+			Scan build = p.build.open();
+			Scan probe = p.probe.open();
+			split(build, probe, Collections.<Constant[]>emptyList(), p.level + 1, pending);
+			build.close();
+			probe.close();
+		}
+	}
+
+	/**
+	 * Divides the records of the build input, after the specified records that were already read from it,
+	 * and the records of the probe input into fanout pairs of partitions.
+	 * A probe record whose build partition is empty is dropped, and so is a pair with no build records.
+	 * A pair whose build partition has too many records is added to the pending list, unless
+	 * it cannot be partitioned again.
+	 */
+	private void split(Scan build, Scan probe, List<Constant[]> buffered, int level, List<Partition> pending) {
+		TempTable[] builds = new TempTable[fanout];
+		TempTable[] probes = new TempTable[fanout];
+		UpdateScan[] outs = new UpdateScan[fanout];
+		int[] counts = new int[fanout];
+		int total = 0;
+
+		for (int i = 0; i < fanout; i++) {
+			builds[i] = new TempTable(tx, sch1);
+			outs[i] = builds[i].open();
+		}
+		for (Constant[] rec : buffered) {
+			write(outs, counts, rec, level);
+			total++;
+		}
+		while (build.next()) {
+			write(outs, counts, record(build), level);
+			total++;
+		}
+		for (int i = 0; i < fanout; i++) {
+			outs[i].close();
+			probes[i] = new TempTable(tx, sch2);
+			outs[i] = probes[i].open();
+		}
+		probe.beforeFirst();
+		while (probe.next()) {
+			int p = partition(probe.getVal(fldname2), level);
+			if (counts[p] > 0) {
+				UpdateScan out = outs[p];
+				out.insert();
+				for (String fldname : s2Fields) {
+					out.setVal(fldname, probe.getVal(fldname));
+				}
+			}
+		}
+		for (int i = 0; i < fanout; i++) {
+			outs[i].close();
+			if (counts[i] == 0) {
+				continue;
+			}
+			Partition p = new Partition(builds[i], probes[i], level, counts[i]);
+			if (counts[i] > maxRecords && counts[i] < total && level + 1 < MAX_LEVELS) {
+				pending.add(p);
+			} else {
+				partitions.add(p);
+			}
+		}
+	}
+
+	private void write(UpdateScan[] outs, int[] counts, Constant[] rec, int level) {
+		int p = partition(rec[keyIndex], level);
+		UpdateScan out = outs[p];
+		out.insert();
+		for (int i = 0; i < rec.length; i++) {
+			out.setVal(s1Fields.get(i), rec[i]);
+		}
+		counts[p]++;
+	}
+
+	/**
+	 * Builds the hash table of the next partition from its s1 records, and positions its s2 records
+	 * before the first. Returns false if there is no next partition.
+	 */
+	private boolean nextPartition() {
+		closeProbe();
+		curr_match = -1;
+		curr_partition++;
+		if (curr_partition >= partitions.size()) {
+			records = null;
+			return false;
+		}
+		Partition p = partitions.get(curr_partition);
+		if (p == null) {
+			records = inMemory;
+			curr_probe = s2;
+			s2.beforeFirst();
+			probeOrds = s2Ords;
+		} else {
+			records = new ArrayList<Constant[]>(p.count);
+			Scan s = p.build.open();
+			while (s.next()) {
+				records.add(record(s));
+			}
+			s.close();
+			curr_probe = p.probe.open();
+			probeOrds = new int[s2Fields.size()];
+			for (int i = 0; i < probeOrds.length; i++) {
+				probeOrds[i] = curr_probe.fieldIndex(s2Fields.get(i));
+			}
+		}
+
+		int size = Integer.highestOneBit(Math.max(records.size(), 1)) << 1;
+		heads = new int[size];
+		Arrays.fill(heads, -1);
+		chain = new int[records.size()];
+		for (int i = 0; i < chain.length; i++) {
+			int slot = hash(records.get(i)[keyIndex], 0) & (size - 1);
+			chain[i] = heads[slot];
+			heads[slot] = i;
+		}
+		return true;
+	}
+
+	/**
+	 * Closes the s2 records of the current partition, unless they are s2 itself.
+	 */
+	private void closeProbe() {
+		if (curr_probe != null && curr_probe != s2) {
+			curr_probe.close();
+		}
+		curr_probe = null;
+	}
+
+	private void startMatches(Constant joinval) {
+		curr_joinval = joinval;
+		curr_match = heads[hash(joinval, 0) & (heads.length - 1)];
+	}
+
+	/**
+	 * Returns the next s1 record of the current chain whose join value equals the current s2 join value,
+	 * or null if there is none.
+	 */
+	private Constant[] nextMatch() {
+		while (curr_match >= 0) {
+			Constant[] rec = records.get(curr_match);
+			curr_match = chain[curr_match];
+			if (rec[keyIndex].equals(curr_joinval)) {
+				return rec;
+			}
+		}
+		return null;
+	}
+
+	private Constant[] record(Scan s) {
+		Constant[] rec = new Constant[s1Fields.size()];
+		for (int i = 0; i < rec.length; i++) {
+			rec[i] = s.getVal(s1Fields.get(i));
+		}
+		return rec;
+	}
+
+	private int partition(Constant joinval, int level) {
+		return Math.floorMod(hash(joinval, level + 1), fanout);
+	}
+
+	/**
+	 * Mixes the hash code of the value with a seed, so that each level of partitioning
+	 * and the hash table divide the values differently.
+	 */
+	private static int hash(Constant val, int seed) {
+		int h = val.hashCode() * 0x9E3779B9 + seed * 0x85EBCA6B;
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		return h;
+	}
+
 	/**
 	 * Returns the integer corresponding to the given field in s2 if one exists, else the String corresponding to the given field
 	 * in s1.
 	 */
 	public int getInt(String fldname) {
-		if (s2.hasField(fldname)) {
-			return s2.getInt(fldname);
-		} else { 
-			return curr_s1Record.get(fldname).asInt();
+		if (sch2.hasField(fldname)) {
+			return curr_probe.getInt(fldname);
+		} else {
+			return s1Value(fldname).asInt();
 		}
 	}
-	
+
 	/**
 	 * Returns the String corresponding to the given field in s2 if one exists, else the String corresponding to the given field
 	 * in s1.
 	 */
 	public String getString(String fldname) {
-		if (s2.hasField(fldname)) {
-			return s2.getString(fldname);
+		if (sch2.hasField(fldname)) {
+			return curr_probe.getString(fldname);
 		} else {
-			return curr_s1Record.get(fldname).asString();
+			return s1Value(fldname).asString();
 		}
 	}
-	
+
 	/**
 	 * Returns the value corresponding to the given key in s2 if it exists, else the value corresponding to the given key in s1.
 	 */
 	public Constant getVal(String fldname) {
-		if (s2.hasField(fldname)) {
-			return s2.getVal(fldname);
+		if (sch2.hasField(fldname)) {
+			return curr_probe.getVal(fldname);
+		} else {
+			return s1Value(fldname);
+		}
+	}
+
+	/**
+	 * Returns the ordinal of the given field, encoded as in ProductScan with s2 first.
+	 * The ordinal of a field is based on its position in s2Fields or s1Fields, since the s2 records
+	 * may be read from a temporary table. A field of s2 that s2 cannot read by ordinal has none.
+	 */
+	public int fieldIndex(String fldname) {
+		int i2 = s2Fields.indexOf(fldname);
+		if (i2 >= 0) {
+			return (s2Ords[i2] >= 0) ? ProductScan.joinIndex(i2, -1) : -1;
+		}
+		return ProductScan.joinIndex(-1, s1Fields.indexOf(fldname));
+	}
+
+	/**
+	 * Returns the integer value of the field having the given ordinal.
+	 */
+	public int getInt(int fldindex) {
+		if ((fldindex & 1) == 0) {
+			return curr_probe.getInt(probeOrds[fldindex >>> 1]);
+		} else {
+			return curr_s1Record[fldindex >>> 1].asInt();
+		}
+	}
+
+	/**
+	 * Returns the string bytes of the field having the given ordinal.
+	 */
+	public byte[] getBytes(int fldindex) {
+		if ((fldindex & 1) == 0) {
+			return curr_probe.getBytes(probeOrds[fldindex >>> 1]);
 		} else {
-			return curr_s1Record.get(fldname);
+			return curr_s1Record[fldindex >>> 1].asString().getBytes(StandardCharsets.US_ASCII);
 		}
 	}
-	
+
 	/**
-	 * Checks if either s1 or s2 have the given field in their keyset.
+	 * Checks if either s1 or s2 have the given field.
 	 */
 	public boolean hasField(String fldname) {
-		return s2.hasField(fldname) || curr_s1Record.containsKey(fldname);
+		return sch2.hasField(fldname) || s1Fields.contains(fldname);
+	}
+
+	private Constant s1Value(String fldname) {
+		return curr_s1Record[s1Fields.indexOf(fldname)];
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,89 @@
+package simpledb.materialize;
+
+import java.util.*;
+
+import simpledb.metadata.MetadataMgr;
+import simpledb.plan.*;
+import simpledb.query.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+/**
+ * Joins tables with a hash join whose build input does not fit
+ * in memory and has a join value shared by many records,
+ * and one whose build input fits, and checks the number of
+ * joined records against the number computed from the data.
+ */
+public class HashJoinTest {
+   public static void main(String[] args) {
+      SimpleDB db = new SimpleDB("hashjointest");
+      MetadataMgr mdm = db.mdMgr();
+      Transaction tx = db.newTx();
+      db.planner().executeUpdate("create table R(A int, B varchar(9))", tx);
+      db.planner().executeUpdate("create table S(C int, D varchar(9))", tx);
+      db.planner().executeUpdate("create table U(E int)", tx);
+      Map<Integer,Integer> rcounts = new HashMap<>();
+      BulkLoader loader = new BulkLoader(tx, "r", null, mdm);
+      for (int i=0; i<3400; i++) {
+         // the last 400 records all have the join value 7
+         int a = (i < 3000) ? i % 500 : 7;
+         loader.add(Arrays.asList(new Constant(a), new Constant("b" + i)));
+         rcounts.merge(a, 1, Integer::sum);
+      }
+      loader.finish();
+      Map<Integer,Integer> scounts = new HashMap<>();
+      loader = new BulkLoader(tx, "s", null, mdm);
+      for (int i=0; i<1000; i++) {
+         loader.add(Arrays.asList(new Constant(i % 600), new Constant("d" + i)));
+         scounts.merge(i % 600, 1, Integer::sum);
+      }
+      loader.finish();
+      loader = new BulkLoader(tx, "u", null, mdm);
+      for (int i=0; i<50; i++)
+         loader.add(Arrays.asList(new Constant(i * 3)));
+      loader.finish();
+      tx.commit();
+
+      tx = db.newTx();
+      Plan r = new TablePlan(tx, "r", mdm);
+      Plan s = new TablePlan(tx, "s", mdm);
+      Plan u = new TablePlan(tx, "u", mdm);
+      int expected = 0;
+      for (Map.Entry<Integer,Integer> e : rcounts.entrySet())
+         expected += e.getValue() * scounts.getOrDefault(e.getKey(), 0);
+      int uexpected = 0;
+      for (int i=0; i<50; i++)
+         uexpected += scounts.getOrDefault(i * 3, 0);
+
+      check("r join s", new HashJoinPlan(tx, r, s, "a", "c"), "a", "c", expected);
+      check("u join s", new HashJoinPlan(tx, u, s, "e", "c"), "e", "c", uexpected);
+      Plan none = new SelectPlan(r, new Predicate(new Term(new Expression("a"),
+            new Expression(new Constant(-1)), "=")));
+      check("empty join s", new HashJoinPlan(tx, none, s, "a", "c"), "a", "c", 0);
+      tx.commit();
+   }
+
+   private static void check(String name, Plan p, String fld1, String fld2, int expected) {
+      Scan s = p.open();
+      int n = 0, bad = 0;
+      while (s.next()) {
+         n++;
+         if (s.getInt(fld1) != s.getInt(fld2))
+            bad++;
+      }
+      // read it a second time, to check that it can be repositioned
+      s.beforeFirst();
+      int again = 0;
+      while (s.next())
+         again++;
+      s.close();
+      Scan bs = new BatchRowScan(p.open(), p.schema().fields(), p.schema());
+      int bybatch = 0;
+      while (bs.next())
+         bybatch++;
+      bs.close();
+      System.out.println(name + ": " + n + " records (expected " + expected + "), " + bad
+            + " with unequal join values, " + again + " when read again, " + bybatch + " by batch; estimated "
+            + p.recordsOutput() + " records, " + p.blocksAccessed() + " block accesses");
+   }
+}
@@ -44,6 +44,37 @@ public class MaxFn implements AggregationFn {
     * Return the field's name, prepended by "maxof".
     * @see simpledb.materialize.AggregationFn#fieldName()
     */
+   /**
+    * Replace the current maximum by the highest field value
+    * in the rows, if it is higher.
+    * @see simpledb.materialize.AggregationFn#processRows(simpledb.query.Batch, int, int, boolean)
+    */
+   public void processRows(Batch b, int from, int to, boolean first) {
+      if (from == to)
+         return;
+      int col = b.columnIndex(fldname);
+      int[] sel = b.selection();
+      Constant newval;
+      if (b.isInt(col)) {
+         int[] vals = b.ints(col);
+         int best = vals[sel[from]];
+         for (int i=from+1; i<to; i++)
+            if (vals[sel[i]] > best)
+               best = vals[sel[i]];
+         newval = new Constant(best);
+      }
+      else {
+         String[] vals = b.strings(col);
+         String best = vals[sel[from]];
+         for (int i=from+1; i<to; i++)
+            if (vals[sel[i]].compareTo(best) > 0)
+               best = vals[sel[i]];
+         newval = new Constant(best);
+      }
+      if (first || newval.compareTo(val) > 0)
+         val = newval;
+   }
+   
    public String fieldName() {
       return "maxof" + fldname;
    }
@@ -55,6 +86,14 @@ public class MaxFn implements AggregationFn {
    public String field() {
       return fldname;
    }
+
+   /**
+    * Return a new max function over the same field.
+    * @see simpledb.materialize.AggregationFn#newInstance()
+    */
+   public AggregationFn newInstance() {
+      return new MaxFn(fldname, isDistinct);
+   }
    
    /**
     * Return the current maximum.
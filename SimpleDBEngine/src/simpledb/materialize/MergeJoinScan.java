@@ -126,6 +126,39 @@ public class MergeJoinScan implements Scan {
          return s2.getVal(fldname);
    }
    
+   /**
+    * Return the ordinal of the specified field,
+    * encoded as in {@link ProductScan#fieldIndex}.
+    * @see simpledb.query.Scan#fieldIndex(java.lang.String)
+    */
+   public int fieldIndex(String fldname) {
+      return ProductScan.joinIndex(s1.fieldIndex(fldname), s2.fieldIndex(fldname));
+   }
+   
+   /** 
+    * Return the integer value of the field having the
+    * specified ordinal, from the scan that contains it.
+    * @see simpledb.query.Scan#getInt(int)
+    */
+   public int getInt(int fldindex) {
+      if ((fldindex & 1) == 0)
+         return s1.getInt(fldindex >>> 1);
+      else
+         return s2.getInt(fldindex >>> 1);
+   }
+   
+   /** 
+    * Return the string bytes of the field having the
+    * specified ordinal, from the scan that contains it.
+    * @see simpledb.query.Scan#getBytes(int)
+    */
+   public byte[] getBytes(int fldindex) {
+      if ((fldindex & 1) == 0)
+         return s1.getBytes(fldindex >>> 1);
+      else
+         return s2.getBytes(fldindex >>> 1);
+   }
+   
    /**
     * Return true if the specified field is in
     * either of the underlying scans.
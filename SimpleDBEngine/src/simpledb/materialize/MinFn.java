@@ -1,5 +1,6 @@
 package simpledb.materialize;
 
+import simpledb.query.Batch;
 import simpledb.query.Constant;
 import simpledb.query.Scan;
 
@@ -41,6 +42,37 @@ public class MinFn implements AggregationFn {
          val = newval;
    }
    
+   /**
+    * Replace the current minimum by the lowest field value
+    * in the rows, if it is lower.
+    * @see simpledb.materialize.AggregationFn#processRows(simpledb.query.Batch, int, int, boolean)
+    */
+   public void processRows(Batch b, int from, int to, boolean first) {
+      if (from == to)
+         return;
+      int col = b.columnIndex(fldname);
+      int[] sel = b.selection();
+      Constant newval;
+      if (b.isInt(col)) {
+         int[] vals = b.ints(col);
+         int best = vals[sel[from]];
+         for (int i=from+1; i<to; i++)
+            if (vals[sel[i]] < best)
+               best = vals[sel[i]];
+         newval = new Constant(best);
+      }
+      else {
+         String[] vals = b.strings(col);
+         String best = vals[sel[from]];
+         for (int i=from+1; i<to; i++)
+            if (vals[sel[i]].compareTo(best) < 0)
+               best = vals[sel[i]];
+         newval = new Constant(best);
+      }
+      if (first || newval.compareTo(val) < 0)
+         val = newval;
+   }
+   
    public String fieldName() {
       return "minof" + fldname;
    }
@@ -48,6 +80,14 @@ public class MinFn implements AggregationFn {
    public String field() {
       return fldname;
    }
+
+   /**
+    * Return a new min function over the same field.
+    * @see simpledb.materialize.AggregationFn#newInstance()
+    */
+   public AggregationFn newInstance() {
+      return new MinFn(fldname, isDistinct);
+   }
    
    public Constant value() {
       return val;
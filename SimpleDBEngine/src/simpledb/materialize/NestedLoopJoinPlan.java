@@ -43,7 +43,7 @@ public class NestedLoopJoinPlan implements Plan {
 	public Scan open() {
 		Scan inner = this.innerPlan.open();
 		TempTable outer = copyRecordsFrom(new MaterializePlan(tx, this.outerPlan));
-		return new NestedLoopJoinScan(tx, inner, innerFldName, outer, outerFldName, pred);
+		return new NestedLoopJoinScan(tx, inner, innerFldName, outer, outerFldName, pred, sch);
 	}
 
 	private TempTable copyRecordsFrom(Plan p) {
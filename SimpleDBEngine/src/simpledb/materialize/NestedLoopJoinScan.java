@@ -2,11 +2,14 @@ package simpledb.materialize;
 
 import simpledb.multibuffer.BufferNeeds;
 import simpledb.multibuffer.ChunkScan;
+import simpledb.query.BoundPredicate;
 import simpledb.query.Constant;
 import simpledb.query.Predicate;
+import simpledb.query.ProductScan;
 import simpledb.query.Scan;
 import simpledb.record.Layout;
 import simpledb.record.RID;
+import simpledb.record.Schema;
 import simpledb.record.TableScan;
 import simpledb.tx.Transaction;
 
@@ -16,14 +19,18 @@ public class NestedLoopJoinScan implements Scan {
 	private ChunkScan outer;
 
 	private Layout layout;
-	private Predicate pred;
+	private BoundPredicate pred;
 	private Transaction tx;
 	private String filename;
 	private int chunksize, nextblknum, filesize;
 	
-	public NestedLoopJoinScan(Transaction tx, Scan inner, String fldname1, TempTable tt, String fldname2, Predicate pred) {
+	/**
+	 * Creates the scan, binding the join predicate to the field ordinals
+	 * of the scan so that testing a pair of records does not look up fields by name.
+	 * @param sch the schema of the join
+	 */
+	public NestedLoopJoinScan(Transaction tx, Scan inner, String fldname1, TempTable tt, String fldname2, Predicate pred, Schema sch) {
 		this.tx = tx;
-		this.pred = pred;
 		this.inner = inner;
 		this.filename = tt.tableName() + ".tbl";
 		this.filesize = tx.size(this.filename);
@@ -33,6 +40,7 @@ public class NestedLoopJoinScan implements Scan {
 		
 		//initialisation
 		beforeFirst();
+		this.pred = pred.bind(this, sch);
 	}
 	
 	public void beforeFirst() {
@@ -112,6 +120,28 @@ public class NestedLoopJoinScan implements Scan {
 			return outer.getString(fldname);
 	}
 	
+	/**
+	 * Returns the ordinal of the given field, encoded as in ProductScan with the inner scan first.
+	 * Every chunk of the outer table has the table's field ordinals.
+	 */
+	public int fieldIndex(String fldname) {
+		return ProductScan.joinIndex(inner.fieldIndex(fldname), layout.schema().fields().indexOf(fldname));
+	}
+	
+	public int getInt(int fldindex) {
+		if ((fldindex & 1) == 0)
+			return inner.getInt(fldindex >>> 1);
+		else
+			return outer.getInt(fldindex >>> 1);
+	}
+	
+	public byte[] getBytes(int fldindex) {
+		if ((fldindex & 1) == 0)
+			return inner.getBytes(fldindex >>> 1);
+		else
+			return outer.getBytes(fldindex >>> 1);
+	}
+	
 	public boolean hasField(String fldname) {
 		return inner.hasField(fldname) || outer.hasField(fldname);
 	}
@@ -69,6 +69,35 @@ public class RecordComparator implements Comparator<Scan> {
       return 0;
    }
 
+   /**
+    * Return a comparator, using the same sort fields and
+    * ordering, for records that are held in memory as arrays
+    * of values.
+    * @param recfields the fields of the records, in array order
+    * @return the comparator for records held in memory
+    */
+   public Comparator<Constant[]> forRecords(List<String> recfields) {
+      int n = fields.size();
+      int[] indexes = new int[n];
+      boolean[] ascending = new boolean[n];
+      int i = 0;
+      for (Map.Entry<String, Boolean> entry : fields.entrySet()) {
+         indexes[i] = recfields.indexOf(entry.getKey());
+         if (indexes[i] < 0)
+            throw new RuntimeException("field " + entry.getKey() + " not found.");
+         ascending[i] = entry.getValue();
+         i++;
+      }
+      return (r1, r2) -> {
+         for (int k=0; k<n; k++) {
+            int result = r1[indexes[k]].compareTo(r2[indexes[k]]);
+            if (result != 0)
+               return ascending[k] ? result : -result;
+         }
+         return 0;
+      };
+   }
+
    public boolean compareDistinct(Scan s1, Scan s2) {
       for (String fldname : this.fields_lst) {
 			Constant val1 = s1.getVal(fldname);
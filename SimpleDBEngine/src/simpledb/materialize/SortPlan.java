@@ -48,16 +48,19 @@ public class SortPlan implements Plan {
    
    /**
     * This method is where most of the action is.
-    * Up to 2 sorted temporary tables are created,
-    * and are passed into SortScan for final merging.
+    * Replacement selection splits the input into sorted runs,
+    * which are merged as many at a time as the available buffers
+    * allow, until few enough remain for SortScan to merge them
+    * while leaving half of the buffers to the operators above it.
     * @see simpledb.plan.Plan#open()
     */
    public Scan open() {
       Scan src = p.open();
-      List<TempTable> runs = splitIntoRuns(src);
+      List<TempTable> runs = splitIntoRuns(src, tx.availableBuffs());
       src.close();
-      while (runs.size() > 1)
-         runs = doAMergeIteration(runs);
+      int finalruns = Math.max(2, tx.availableBuffs() / 2);
+      while (runs.size() > finalruns)
+         runs = doAMergeIteration(runs, Math.max(2, tx.availableBuffs() - 1));
       return new SortScan(runs, comp);
    }
    
@@ -104,84 +107,123 @@ public class SortPlan implements Plan {
    }
    
    /**
-    * Splits the given Scan into an ArrayList of runs.
-    * @param src
-    * @return
+    * Splits the given Scan into sorted runs by replacement selection.
+    * The records are read into a heap that holds as many records
+    * as fit in the specified number of buffers. The smallest record
+    * of the current run is removed from the heap and written to the run,
+    * and the next input record takes its place; it belongs to the
+    * current run unless it sorts before the record just written.
+    * The runs are therefore about twice as long as the heap,
+    * and the input is a single run if it is already sorted.
+    * @param src the input
+    * @param buffs the number of buffers that the heap may use
+    * @return the runs, of which there is at least one
     */
-   
-   private List<TempTable> splitIntoRuns(Scan src) {
+   private List<TempTable> splitIntoRuns(Scan src, int buffs) {
       List<TempTable> temps = new ArrayList<>();
+      List<String> fields = sch.fields();
+      Comparator<Constant[]> reccomp = comp.forRecords(fields);
+      int capacity = Math.max(2, buffs) * (tx.blockSize() / new Layout(sch).slotSize());
+      PriorityQueue<HeapEntry> heap = new PriorityQueue<>(capacity, (e1, e2) ->
+            (e1.run != e2.run) ? Integer.compare(e1.run, e2.run) : reccomp.compare(e1.rec, e2.rec));
       src.beforeFirst();
-      if (!src.next())
-         return temps;
-      TempTable currenttemp = new TempTable(tx, sch);
-      temps.add(currenttemp);
-      UpdateScan currentscan = currenttemp.open();
-      while (copy(src, currentscan))
-         if (comp.compare(src, currentscan) < 0) {
-         // start a new run
-         currentscan.close();
-         currenttemp = new TempTable(tx, sch);
-         temps.add(currenttemp);
-         currentscan = (UpdateScan) currenttemp.open();
+      boolean hasmore = src.next();
+      while (hasmore && heap.size() < capacity) {
+         heap.add(new HeapEntry(0, read(src, fields)));
+         hasmore = src.next();
       }
-      currentscan.close();
+      int currentrun = -1;
+      UpdateScan currentscan = null;
+      while (!heap.isEmpty()) {
+         HeapEntry e = heap.poll();
+         if (e.run != currentrun) {
+            // start a new run
+            if (currentscan != null)
+               currentscan.close();
+            TempTable currenttemp = new TempTable(tx, sch);
+            temps.add(currenttemp);
+            currentscan = currenttemp.open();
+            currentrun = e.run;
+         }
+         currentscan.insert();
+         for (int i=0; i<fields.size(); i++)
+            currentscan.setVal(fields.get(i), e.rec[i]);
+         if (hasmore) {
+            Constant[] rec = read(src, fields);
+            hasmore = src.next();
+            int run = (reccomp.compare(rec, e.rec) < 0) ? currentrun + 1 : currentrun;
+            heap.add(new HeapEntry(run, rec));
+         }
+      }
+      if (currentscan != null)
+         currentscan.close();
+      if (temps.isEmpty())
+         temps.add(new TempTable(tx, sch));
       return temps;
    }
    
    /**
-    * Carries out a merge of the first pair of runs in the given list of tables
-    * @param runs
-    * @return
+    * Merges the runs in groups of the specified size,
+    * each group into a single run.
+    * @param runs the runs
+    * @param k the number of runs merged at a time
+    * @return the merged runs
     */
-   private List<TempTable> doAMergeIteration(List<TempTable> runs) {
+   private List<TempTable> doAMergeIteration(List<TempTable> runs, int k) {
       List<TempTable> result = new ArrayList<>();
-      while (runs.size() > 1) {
-         TempTable p1 = runs.remove(0);
-         TempTable p2 = runs.remove(0);
-         result.add(mergeTwoRuns(p1, p2));
+      for (int i=0; i<runs.size(); i+=k) {
+         List<TempTable> group = runs.subList(i, Math.min(i + k, runs.size()));
+         if (group.size() == 1)
+            result.add(group.get(0));
+         else
+            result.add(mergeRuns(group));
       }
-      if (runs.size() == 1)
-         result.add(runs.get(0));
       return result;
    }
    
    /**
-    * Iteratively merges a pair of runs passed to it.
-    * @param p1
-    * @param p2
-    * @return
+    * Merges the given runs into a single run,
+    * by copying the output of a SortScan over them.
+    * @param runs the runs
+    * @return the merged run
     */
-   private TempTable mergeTwoRuns(TempTable p1, TempTable p2) {
-      Scan src1 = p1.open();
-      Scan src2 = p2.open();
+   private TempTable mergeRuns(List<TempTable> runs) {
+      Scan src = new SortScan(runs, comp);
       TempTable result = new TempTable(tx, sch);
       UpdateScan dest = result.open();
-      
-      boolean hasmore1 = src1.next();
-      boolean hasmore2 = src2.next();
-      while (hasmore1 && hasmore2)
-         if (comp.compare(src1, src2) < 0)
-         hasmore1 = copy(src1, dest);
-      else
-         hasmore2 = copy(src2, dest);
-      
-      if (hasmore1)
-         while (hasmore1)
-         hasmore1 = copy(src1, dest);
-      else
-         while (hasmore2)
-         hasmore2 = copy(src2, dest);
-      src1.close();
-      src2.close();
+      boolean hasmore = src.next();
+      while (hasmore)
+         hasmore = copy(src, dest);
+      src.close();
       dest.close();
       return result;
    }
    
+   private Constant[] read(Scan src, List<String> fields) {
+      Constant[] rec = new Constant[fields.size()];
+      for (int i=0; i<rec.length; i++)
+         rec[i] = src.getVal(fields.get(i));
+      return rec;
+   }
+   
    private boolean copy(Scan src, UpdateScan dest) {
       dest.insert();
       for (String fldname : sch.fields())
          dest.setVal(fldname, src.getVal(fldname));
       return src.next();
    }
+   
+   /**
+    * A record in the replacement selection heap,
+    * together with the run that it belongs to.
+    */
+   private static class HeapEntry {
+      int run;
+      Constant[] rec;
+      
+      HeapEntry(int run, Constant[] rec) {
+         this.run = run;
+         this.rec = rec;
+      }
+   }
 }
@@ -7,92 +7,85 @@ import simpledb.record.*;
 
 /**
  * The Scan class for the <i>sort</i> operator.
+ * It merges any number of sorted runs, using a loser tree:
+ * each internal node of the tree holds the run that lost the
+ * comparison at that node, so that after the winning run
+ * moves to its next record, only the comparisons on the path
+ * from that run to the root are made again.
  * @author Edward Sciore
  */
-/**
- * @author sciore
- *
- */
 public class SortScan implements Scan {
-   private UpdateScan s1, s2=null, currentscan=null;
+   private List<UpdateScan> scans = new ArrayList<>();
+   private UpdateScan currentscan = null;
    private RecordComparator comp;
-   private boolean hasmore1, hasmore2=false;
+   private boolean[] hasmore;
+   private int[] tree;
+   private int winner;
    private List<RID> savedposition;
-   
+   private boolean[] savedhasmore;
+   private int[] savedtree;
+   private int savedwinner;
+
    /**
-    * Create a sort scan, given a list of 1 or 2 runs.
-    * If there is only 1 run, then s2 will be null and
-    * hasmore2 will be false.
+    * Create a sort scan, given a non-empty list of runs.
     * @param runs the list of runs
     * @param comp the record comparator
     */
    public SortScan(List<TempTable> runs, RecordComparator comp) {
       this.comp = comp;
-      s1 = (UpdateScan) runs.get(0).open();
-      hasmore1 = s1.next();
-      if (runs.size() > 1) {
-         s2 = (UpdateScan) runs.get(1).open();
-         hasmore2 = s2.next();
-      }
+      for (TempTable run : runs)
+         scans.add(run.open());
+      hasmore = new boolean[scans.size()];
+      tree = new int[scans.size()];
+      beforeFirst();
    }
-   
+
    /**
     * Position the scan before the first record in sorted order.
-    * Internally, it moves to the first record of each underlying scan.
+    * Internally, it moves to the first record of each run,
+    * and builds the loser tree from them.
     * The variable currentscan is set to null, indicating that there is
     * no current scan.
     * @see simpledb.query.Scan#beforeFirst()
     */
    public void beforeFirst() {
       currentscan = null;
-      s1.beforeFirst();
-      hasmore1 = s1.next();
-      if (s2 != null) {
-         s2.beforeFirst();
-         hasmore2 = s2.next();
+      for (int i=0; i<scans.size(); i++) {
+         scans.get(i).beforeFirst();
+         hasmore[i] = scans.get(i).next();
       }
+      winner = (scans.size() == 1) ? 0 : build(1);
    }
-   
+
    /**
     * Move to the next record in sorted order.
-    * First, the current scan is moved to the next record.
-    * Then the lowest record of the two scans is found, and that
-    * scan is chosen to be the new current scan.
+    * First, the current scan is moved to the next record,
+    * and the tree is replayed from that run.
+    * The run that then wins is chosen to be the new current scan.
     * @see simpledb.query.Scan#next()
     */
    public boolean next() {
       if (currentscan != null) {
-         if (currentscan == s1)
-            hasmore1 = s1.next();
-         else if (currentscan == s2)
-            hasmore2 = s2.next();
+         hasmore[winner] = currentscan.next();
+         replay(winner);
       }
-      
-      if (!hasmore1 && !hasmore2)
+      if (!hasmore[winner]) {
+         currentscan = null;
          return false;
-      else if (hasmore1 && hasmore2) {
-         if (comp.compare(s1, s2) < 0)
-            currentscan = s1;
-         else
-            currentscan = s2;
       }
-      else if (hasmore1)
-         currentscan = s1;
-      else if (hasmore2)
-         currentscan = s2;
+      currentscan = scans.get(winner);
       return true;
    }
-   
+
    /**
-    * Close the two underlying scans.
+    * Close the underlying scans.
     * @see simpledb.query.Scan#close()
     */
    public void close() {
-      s1.close();
-      if (s2 != null)
-         s2.close();
+      for (UpdateScan s : scans)
+         s.close();
    }
-   
+
    /**
     * Get the Constant value of the specified field
     * of the current scan.
@@ -101,7 +94,7 @@ public class SortScan implements Scan {
    public Constant getVal(String fldname) {
       return currentscan.getVal(fldname);
    }
-   
+
    /**
     * Get the integer value of the specified field
     * of the current scan.
@@ -110,7 +103,7 @@ public class SortScan implements Scan {
    public int getInt(String fldname) {
       return currentscan.getInt(fldname);
    }
-   
+
    /**
     * Get the string value of the specified field
     * of the current scan.
@@ -119,33 +112,120 @@ public class SortScan implements Scan {
    public String getString(String fldname) {
       return currentscan.getString(fldname);
    }
-   
+
    /**
-    * Return true if the specified field is in the current scan.
+    * Return the ordinal of the specified field.
+    * The runs have the same layout, so a field has
+    * the same ordinal in each of them.
+    * @see simpledb.query.Scan#fieldIndex(java.lang.String)
+    */
+   public int fieldIndex(String fldname) {
+      return scans.get(0).fieldIndex(fldname);
+   }
+
+   /**
+    * Get the integer value of the field having the
+    * specified ordinal in the current scan.
+    * @see simpledb.query.Scan#getInt(int)
+    */
+   public int getInt(int fldindex) {
+      return currentscan.getInt(fldindex);
+   }
+
+   /**
+    * Get the string bytes of the field having the
+    * specified ordinal in the current scan.
+    * @see simpledb.query.Scan#getBytes(int)
+    */
+   public byte[] getBytes(int fldindex) {
+      return currentscan.getBytes(fldindex);
+   }
+
+   /**
+    * Return true if the specified field is in the runs.
     * @see simpledb.query.Scan#hasField(java.lang.String)
     */
    public boolean hasField(String fldname) {
-      return currentscan.hasField(fldname);
+      return scans.get(0).hasField(fldname);
    }
-   
+
    /**
     * Save the position of the current record,
     * so that it can be restored at a later time.
+    * The position consists of the position of each run
+    * that has records left, and the state of the tree.
     */
    public void savePosition() {
-      RID rid1 = s1.getRid();
-      RID rid2 = (s2 == null) ? null : s2.getRid();
-      savedposition = Arrays.asList(rid1,rid2);
+      savedposition = new ArrayList<>();
+      for (int i=0; i<scans.size(); i++)
+         savedposition.add(hasmore[i] ? scans.get(i).getRid() : null);
+      savedhasmore = hasmore.clone();
+      savedtree = tree.clone();
+      savedwinner = winner;
    }
-   
+
    /**
     * Move the scan to its previously-saved position.
     */
    public void restorePosition() {
-      RID rid1 = savedposition.get(0);
-      RID rid2 = savedposition.get(1);
-      s1.moveToRid(rid1);
-      if (rid2 != null)
-         s2.moveToRid(rid2);
+      for (int i=0; i<scans.size(); i++) {
+         RID rid = savedposition.get(i);
+         if (rid != null)
+            scans.get(i).moveToRid(rid);
+      }
+      hasmore = savedhasmore.clone();
+      tree = savedtree.clone();
+      winner = savedwinner;
+      currentscan = hasmore[winner] ? scans.get(winner) : null;
+   }
+
+   /**
+    * Play the matches of the subtree rooted at the specified node,
+    * whose leaves are nodes k to 2k-1 for k runs,
+    * storing the loser at each internal node.
+    * @return the run that wins the subtree
+    */
+   private int build(int node) {
+      int k = scans.size();
+      if (node >= k)
+         return node - k;
+      int left = build(2 * node);
+      int right = build(2 * node + 1);
+      if (beats(left, right)) {
+         tree[node] = right;
+         return left;
+      }
+      tree[node] = left;
+      return right;
+   }
+
+   /**
+    * Replay the matches on the path from the specified run
+    * to the root, after the run has moved to its next record.
+    */
+   private void replay(int run) {
+      int w = run;
+      for (int node = (run + scans.size()) / 2; node >= 1; node /= 2) {
+         if (beats(tree[node], w)) {
+            int loser = w;
+            w = tree[node];
+            tree[node] = loser;
+         }
+      }
+      winner = w;
+   }
+
+   /**
+    * Return true if the current record of run r1 comes
+    * before that of run r2. A run with no more records
+    * comes after every other, and ties go to the earlier run.
+    */
+   private boolean beats(int r1, int r2) {
+      if (!hasmore[r1])
+         return false;
+      if (!hasmore[r2])
+         return true;
+      int result = comp.compare(scans.get(r1), scans.get(r2));
+      return result < 0 || (result == 0 && r1 < r2);
    }
 }
@@ -0,0 +1,98 @@
+package simpledb.materialize;
+
+import java.io.File;
+import java.util.*;
+
+import simpledb.metadata.MetadataMgr;
+import simpledb.plan.*;
+import simpledb.query.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+/**
+ * Sorts a table of random records, a table that is already
+ * sorted and an empty table, checking the order of the output
+ * and counting the temporary tables that each sort creates.
+ * Then merge joins two tables having duplicate join values,
+ * which moves the sorted scan back to saved positions.
+ */
+public class SortTest {
+   public static void main(String[] args) {
+      SimpleDB db = new SimpleDB("sorttest");
+      MetadataMgr mdm = db.mdMgr();
+      Transaction tx = db.newTx();
+      db.planner().executeUpdate("create table R(A int, B varchar(9))", tx);
+      db.planner().executeUpdate("create table S(C int, D varchar(9))", tx);
+      db.planner().executeUpdate("create table E(A int, B varchar(9))", tx);
+      Random rand = new Random(3223);
+      BulkLoader loader = new BulkLoader(tx, "r", null, mdm);
+      for (int i=0; i<20000; i++)
+         loader.add(Arrays.asList(new Constant(rand.nextInt(1000)), new Constant("b" + rand.nextInt(100))));
+      loader.finish();
+      loader = new BulkLoader(tx, "s", null, mdm);
+      for (int i=0; i<3000; i++)
+         loader.add(Arrays.asList(new Constant(i), new Constant("d" + i)));
+      loader.finish();
+      tx.commit();
+
+      tx = db.newTx();
+      Plan r = new TablePlan(tx, "r", mdm);
+      Plan s = new TablePlan(tx, "s", mdm);
+      Plan e = new TablePlan(tx, "e", mdm);
+      LinkedHashMap<String, Boolean> rorder = new LinkedHashMap<>();
+      rorder.put("a", true);
+      rorder.put("b", false);
+      check("r by a, b desc", new SortPlan(tx, r, rorder), rorder, 20000);
+      check("s by c", new SortPlan(tx, s, Arrays.asList("c")), null, 3000);
+      check("e by a", new SortPlan(tx, e, Arrays.asList("a")), null, 0);
+
+      // each value of a occurs about 20 times in r, and once in s for c < 1000
+      Plan join = new MergeJoinPlan(tx, r, s, "a", "c");
+      Scan js = join.open();
+      int n = 0, bad = 0;
+      while (js.next()) {
+         n++;
+         if (js.getInt("a") != js.getInt("c"))
+            bad++;
+      }
+      js.close();
+      System.out.println("r merge join s: " + n + " records (expected 20000), " + bad + " with unequal join values");
+      tx.commit();
+   }
+
+   private static void check(String name, Plan p, LinkedHashMap<String, Boolean> order, int expected) {
+      int temps = countTemps();
+      long start = System.nanoTime();
+      Scan s = p.open();
+      long time = System.nanoTime() - start;
+      temps = countTemps() - temps;
+      int n = 0, bad = 0;
+      int preva = Integer.MIN_VALUE;
+      String prevb = null;
+      while (s.next()) {
+         n++;
+         int a = s.getInt(order == null ? p.schema().fields().get(0) : "a");
+         if (a < preva)
+            bad++;
+         if (order != null) {
+            String b = s.getString("b");
+            if (a == preva && b.compareTo(prevb) > 0)
+               bad++;
+            prevb = b;
+         }
+         preva = a;
+      }
+      s.close();
+      System.out.println(name + ": " + n + " records (expected " + expected + "), " + bad
+            + " out of order; " + temps + " temporary tables, sorted in " + time / 1000000 + "ms");
+   }
+
+   private static int countTemps() {
+      String[] files = new File("sorttest").list();
+      int n = 0;
+      for (String f : files)
+         if (f.startsWith("temp"))
+            n++;
+      return n;
+   }
+}
@@ -1,5 +1,6 @@
 package simpledb.materialize;
 
+import simpledb.query.Batch;
 import simpledb.query.Constant;
 import simpledb.query.Scan;
 
@@ -30,6 +31,7 @@ public class SumFn implements AggregationFn {
     */
    public void processFirst(Scan s) {
       sum = s.getInt(fldname);
+      values.clear();
       values.add(sum);
    }
    
@@ -47,6 +49,25 @@ public class SumFn implements AggregationFn {
     * Return the field's name, prepended by "sumof".
     * @see simpledb.materialize.AggregationFn#fieldName()
     */
+   /**
+    * Add the field values of the rows to the sum,
+    * reading them from the field's column.
+    * @see simpledb.materialize.AggregationFn#processRows(simpledb.query.Batch, int, int, boolean)
+    */
+   public void processRows(Batch b, int from, int to, boolean first) {
+      if (first) {
+         sum = 0;
+         values.clear();
+      }
+      int[] col = b.ints(b.columnIndex(fldname));
+      int[] sel = b.selection();
+      for (int i=from; i<to; i++)
+         sum += col[sel[i]];
+      if (isDistinct)
+         for (int i=from; i<to; i++)
+            values.add(col[sel[i]]);
+   }
+   
    public String fieldName() {
       return "sumof" + fldname;
    }
@@ -59,6 +80,14 @@ public class SumFn implements AggregationFn {
       return fldname;
    }
 
+   /**
+    * Return a new sum function over the same field.
+    * @see simpledb.materialize.AggregationFn#newInstance()
+    */
+   public AggregationFn newInstance() {
+      return new SumFn(fldname, isDistinct);
+   }
+
    /**
     * Return the current sum.
     * @see simpledb.materialize.AggregationFn#value()
@@ -0,0 +1,139 @@
+package simpledb.materialize;
+
+import java.util.*;
+import simpledb.tx.Transaction;
+import simpledb.record.*;
+import simpledb.plan.Plan;
+import simpledb.query.*;
+
+/**
+ * The Plan class for the <i>top-n</i> operator, which outputs
+ * the first n records of its input in sort order.
+ * The input is read once, and a heap holding the n records
+ * that sort first so far is kept in memory,
+ * so no temporary table is written.
+ * If n records do not fit in the available buffers,
+ * the plan sorts its input and stops after n records.
+ */
+public class TopNPlan implements Plan {
+   private Transaction tx;
+   private Plan p;
+   private Schema sch = new Schema();
+   private LinkedHashMap<String, Boolean> sortfields;
+   private List<String> fieldlist;
+   private int n;
+
+   /**
+    * Create a top-n plan for the specified query.
+    * @param tx the calling transaction
+    * @param p the plan for the underlying query
+    * @param sortfields the fields to sort by, and whether each is ascending
+    * @param fieldlist the fields of the output
+    * @param n the number of records to output
+    */
+   public TopNPlan(Transaction tx, Plan p, LinkedHashMap<String, Boolean> sortfields, List<String> fieldlist, int n) {
+      this.tx = tx;
+      this.p = p;
+      this.sortfields = sortfields;
+      this.fieldlist = fieldlist;
+      this.n = n;
+      for (String fldname : fieldlist)
+         sch.add(fldname, p.schema());
+   }
+
+   /**
+    * Read the input, keeping the first n records in a heap
+    * whose root is the record that sorts last, and return
+    * a scan of those records in sort order.
+    * The records also hold the sort fields that are not
+    * output fields.
+    * @see simpledb.plan.Plan#open()
+    */
+   public Scan open() {
+      int perblock = tx.blockSize() / new Layout(p.schema()).slotSize();
+      if (n > Math.max(1, tx.availableBuffs()) * perblock) {
+         Plan sp = new SortPlan(tx, p, sortfields, fieldlist);
+         return new ProjectScan(sp.open(), fieldlist, n);
+      }
+      List<String> recfields = new ArrayList<>(fieldlist);
+      for (String fldname : sortfields.keySet())
+         if (!recfields.contains(fldname))
+            recfields.add(fldname);
+      Comparator<Constant[]> comp = new RecordComparator(sortfields).forRecords(recfields);
+      PriorityQueue<Constant[]> heap = new PriorityQueue<>(Math.max(1, n + 1), comp.reversed());
+      Scan src = p.open();
+      while (n > 0 && src.next()) {
+         if (heap.size() == n) {
+            // skip a record that sorts after all n kept so far
+            if (compare(src, heap.peek(), recfields, comp) >= 0)
+               continue;
+            heap.poll();
+         }
+         heap.add(read(src, recfields));
+      }
+      src.close();
+      List<Constant[]> recs = new ArrayList<>(heap);
+      recs.sort(comp);
+      return new TopNScan(recs, recfields, sch);
+   }
+
+   /**
+    * Return the number of blocks accessed by reading
+    * the input once.
+    * @see simpledb.plan.Plan#blocksAccessed()
+    */
+   public int blocksAccessed() {
+      return p.blocksAccessed();
+   }
+
+   /**
+    * Return the number of records output, which is n
+    * unless the underlying query has fewer.
+    * @see simpledb.plan.Plan#recordsOutput()
+    */
+   public int recordsOutput() {
+      return Math.min(n, p.recordsOutput());
+   }
+
+   /**
+    * Return the number of distinct field values, which
+    * is estimated as that of the underlying query,
+    * but no more than the number of records output.
+    * @see simpledb.plan.Plan#distinctValues(java.lang.String)
+    */
+   public int distinctValues(String fldname) {
+      return Math.min(p.distinctValues(fldname), Math.max(1, recordsOutput()));
+   }
+
+   /**
+    * Return the schema, which has the output fields.
+    * @see simpledb.plan.Plan#schema()
+    */
+   public Schema schema() {
+      return sch;
+   }
+
+   public String toString() {
+      return "Top " + n + " by " + sortfields.keySet() + ", " + p.toString();
+   }
+
+   /**
+    * Compare the current record of the scan with a record in
+    * the heap, reading only the sort fields of the scan.
+    */
+   private int compare(Scan s, Constant[] rec, List<String> recfields, Comparator<Constant[]> comp) {
+      Constant[] keys = new Constant[recfields.size()];
+      for (String fldname : sortfields.keySet()) {
+         int i = recfields.indexOf(fldname);
+         keys[i] = s.getVal(fldname);
+      }
+      return comp.compare(keys, rec);
+   }
+
+   private Constant[] read(Scan s, List<String> recfields) {
+      Constant[] rec = new Constant[recfields.size()];
+      for (int i=0; i<rec.length; i++)
+         rec[i] = s.getVal(recfields.get(i));
+      return rec;
+   }
+}
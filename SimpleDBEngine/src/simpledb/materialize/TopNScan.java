@@ -0,0 +1,79 @@
+package simpledb.materialize;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import simpledb.query.*;
+import simpledb.record.*;
+
+/**
+ * The Scan class for the <i>top-n</i> operator.
+ * It scans the records that the plan kept, which are
+ * held in memory in sort order.
+ */
+public class TopNScan implements Scan {
+   private List<Constant[]> recs;
+   private List<String> recfields;
+   private Schema sch;
+   private int pos = -1;
+
+   /**
+    * Create a scan of the specified records.
+    * @param recs the records, in sort order
+    * @param recfields the fields of the records, in array order
+    * @param sch the schema of the output, whose fields are among recfields
+    */
+   public TopNScan(List<Constant[]> recs, List<String> recfields, Schema sch) {
+      this.recs = recs;
+      this.recfields = recfields;
+      this.sch = sch;
+   }
+
+   public void beforeFirst() {
+      pos = -1;
+   }
+
+   public boolean next() {
+      if (pos < recs.size())
+         pos++;
+      return pos < recs.size();
+   }
+
+   public int getInt(String fldname) {
+      return getVal(fldname).asInt();
+   }
+
+   public String getString(String fldname) {
+      return getVal(fldname).asString();
+   }
+
+   public Constant getVal(String fldname) {
+      int i = fieldIndex(fldname);
+      if (i < 0)
+         throw new RuntimeException("field " + fldname + " not found.");
+      return recs.get(pos)[i];
+   }
+
+   /**
+    * Return the ordinal of the field, which is its position
+    * in the records, or -1 if it is not an output field.
+    * @see simpledb.query.Scan#fieldIndex(java.lang.String)
+    */
+   public int fieldIndex(String fldname) {
+      return sch.hasField(fldname) ? recfields.indexOf(fldname) : -1;
+   }
+
+   public int getInt(int fldindex) {
+      return recs.get(pos)[fldindex].asInt();
+   }
+
+   public byte[] getBytes(int fldindex) {
+      return recs.get(pos)[fldindex].asString().getBytes(StandardCharsets.US_ASCII);
+   }
+
+   public boolean hasField(String fldname) {
+      return sch.hasField(fldname);
+   }
+
+   public void close() {}
+}
@@ -0,0 +1,75 @@
+package simpledb.materialize;
+
+import java.util.*;
+
+import simpledb.metadata.MetadataMgr;
+import simpledb.plan.*;
+import simpledb.query.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+/**
+ * Plans queries having a limit, and checks which plan is
+ * chosen and that the records output are those expected
+ * from the data.
+ */
+public class TopNTest {
+   private static List<int[]> rows = new ArrayList<>();
+
+   public static void main(String[] args) {
+      SimpleDB db = new SimpleDB("topntest");
+      MetadataMgr mdm = db.mdMgr();
+      Transaction tx = db.newTx();
+      db.planner().executeUpdate("create table T(A int, B varchar(9))", tx);
+      Random rand = new Random(3223);
+      BulkLoader loader = new BulkLoader(tx, "t", null, mdm);
+      for (int i=0; i<5000; i++) {
+         int a = rand.nextInt(2000), b = rand.nextInt(50);
+         rows.add(new int[] {a, b});
+         loader.add(Arrays.asList(new Constant(a), new Constant("b" + (10 + b))));
+      }
+      loader.finish();
+      tx.commit();
+
+      tx = db.newTx();
+      Planner planner = db.planner();
+      Comparator<int[]> adescb = (r1, r2) -> (r1[0] != r2[0]) ? r2[0] - r1[0] : r1[1] - r2[1];
+      Comparator<int[]> bthena = (r1, r2) -> (r1[1] != r2[1]) ? r1[1] - r2[1] : r1[0] - r2[0];
+      check(planner, tx, "select a, b from t order by a desc, b limit 10", adescb, 10, true);
+      check(planner, tx, "select a, b from t order by b, a fetch first 5 rows only", bthena, 5, true);
+      check(planner, tx, "select a, b from t order by a desc, b fetch next row only", adescb, 1, true);
+      check(planner, tx, "select a, b from t order by b, a limit 0", bthena, 0, true);
+      check(planner, tx, "select a, b from t order by a desc, b limit 4000", adescb, 4000, true);
+      check(planner, tx, "select a, b from t limit 7", null, 7, false);
+
+      Plan p = planner.createQueryPlan("select b, count(a) from t group by b limit 3", tx);
+      Scan s = p.open();
+      int n = 0;
+      while (s.next())
+         n++;
+      s.close();
+      System.out.println("group by with limit 3: " + n + " records");
+      tx.commit();
+   }
+
+   private static void check(Planner planner, Transaction tx, String qry,
+         Comparator<int[]> order, int limit, boolean topn) {
+      Plan p = planner.createQueryPlan(qry, tx);
+      List<String> expected = new ArrayList<>();
+      List<int[]> sorted = new ArrayList<>(rows);
+      if (order != null)
+         sorted.sort(order);
+      for (int[] row : sorted.subList(0, limit))
+         expected.add(row[0] + " b" + (10 + row[1]));
+      List<String> actual = new ArrayList<>();
+      Scan s = p.open();
+      while (s.next())
+         actual.add(s.getInt("a") + " " + s.getString("b"));
+      s.close();
+      boolean same = (order == null) ? actual.size() == limit && expected.containsAll(actual)
+                                     : actual.equals(expected);
+      System.out.println(qry + ": " + actual.size() + " records, " + (same ? "as expected" : "NOT AS EXPECTED")
+            + ", " + ((p instanceof TopNPlan) == topn ? "" : "not ") + "planned " + (topn ? "as" : "without")
+            + " top-n, estimated " + p.recordsOutput() + " records");
+   }
+}
@@ -9,6 +9,8 @@ import simpledb.record.*;
  * There are methods to create a table, save the metadata
  * in the catalog, and obtain the metadata of a
  * previously-created table.
+ * A table that uses slotted pages is recorded in tblcat
+ * with a negative slot size.
  * @author Edward Sciore
  */
 class TableMgr {
@@ -50,12 +52,24 @@ class TableMgr {
     * @param tx the transaction creating the table
     */
    public void createTable(String tblname, Schema sch, Transaction tx) {
-      Layout layout = new Layout(sch);
+      createTable(tblname, sch, false, tx);
+   }
+
+   /**
+    * Create a new table having the specified name, schema
+    * and record format.
+    * @param tblname the name of the new table
+    * @param sch the table's schema
+    * @param slotted whether the table uses slotted pages
+    * @param tx the transaction creating the table
+    */
+   public void createTable(String tblname, Schema sch, boolean slotted, Transaction tx) {
+      Layout layout = new Layout(sch, slotted);
       // insert one record into tblcat
       TableScan tcat = new TableScan(tx, "tblcat", tcatLayout);
       tcat.insert();
       tcat.setString("tblname", tblname);
-      tcat.setInt("slotsize", layout.slotSize());
+      tcat.setInt("slotsize", slotted ? -layout.slotSize() : layout.slotSize());
       tcat.close();
 
       // insert a record into fldcat for each field
@@ -101,6 +115,8 @@ class TableMgr {
             sch.addField(fldname, fldtype, fldlen);
          }
       fcat.close();
+      if (size < 0)
+         return new Layout(sch, offsets, -size, true);
       return new Layout(sch, offsets, size);
    }
 }
\ No newline at end of file
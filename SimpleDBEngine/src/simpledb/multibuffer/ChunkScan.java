@@ -35,7 +35,7 @@ public class ChunkScan implements Scan {
       this.endbnum   = endbnum;
       for (int i=startbnum; i<=endbnum; i++) {
          BlockId blk = new BlockId(filename, i);
-         buffs.add(new RecordPage(tx, blk, layout));
+         buffs.add(RecordPage.create(tx, blk, layout));
       }
       moveToBlock(startbnum);
    }
@@ -99,6 +99,27 @@ public class ChunkScan implements Scan {
          return new Constant(getString(fldname));
    }
 
+   /**
+    * @see simpledb.query.Scan#fieldIndex(java.lang.String)
+    */
+   public int fieldIndex(String fldname) {
+      return layout.schema().fields().indexOf(fldname);
+   }
+
+   /**
+    * @see simpledb.query.Scan#getInt(int)
+    */
+   public int getInt(int fldindex) {
+      return rp.getInt(currentslot, fldindex);
+   }
+
+   /**
+    * @see simpledb.query.Scan#getBytes(int)
+    */
+   public byte[] getBytes(int fldindex) {
+      return rp.getBytes(currentslot, fldindex);
+   }
+
   /**
     * @see simpledb.query.Scan#hasField(java.lang.String)
     */
@@ -98,6 +98,30 @@ public class MultibufferProductScan implements Scan {
       return prodscan.getString(fldname);
    }
    
+   /**
+    * Returns the ordinal of the specified field.
+    * Every chunk has the same product scan ordinals,
+    * since its records have the RHS table's layout.
+    * @see simpledb.query.Scan#fieldIndex(java.lang.String)
+    */
+   public int fieldIndex(String fldname) {
+      return prodscan.fieldIndex(fldname);
+   }
+   
+   /**
+    * @see simpledb.query.Scan#getInt(int)
+    */
+   public int getInt(int fldindex) {
+      return prodscan.getInt(fldindex);
+   }
+   
+   /**
+    * @see simpledb.query.Scan#getBytes(int)
+    */
+   public byte[] getBytes(int fldindex) {
+      return prodscan.getBytes(fldindex);
+   }
+   
    /**
     * Returns true if the specified field is in
     * either of the underlying scans.
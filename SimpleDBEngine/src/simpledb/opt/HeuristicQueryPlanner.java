@@ -4,7 +4,9 @@ import java.util.*;
 import simpledb.tx.Transaction;
 import simpledb.materialize.DistinctPlan;
 import simpledb.materialize.GroupByPlan;
+import simpledb.materialize.HashGroupByPlan;
 import simpledb.materialize.SortPlan;
+import simpledb.materialize.TopNPlan;
 import simpledb.metadata.MetadataMgr;
 import simpledb.parse.QueryData;
 import simpledb.plan.*;
@@ -49,24 +51,44 @@ public class HeuristicQueryPlanner implements QueryPlanner {
             currentplan = getLowestProductPlan(currentplan);
       }
       
-      // Step 4.  Project on the field names and return
-      Plan p = new ProjectPlan(currentplan, data.fields());
+      // Step 4.  Project on the field names and return;
+      // a query that is not sorted, grouped or made distinct
+      // stops reading its input once it reaches its limit
+      boolean ordered = !data.orderByAttributeList().isEmpty();
+      boolean grouped = !data.groupfields().isEmpty() || !data.aggregations().isEmpty();
+      boolean limited = data.limit() >= 0;
+      boolean projectlimit = limited && !ordered && !grouped && !data.isDistinct();
+      Plan p = new ProjectPlan(currentplan, data.fields(), projectlimit ? data.limit() : -1);
       
 
-      // Step 5: Add a sort plan if ordered
-      if (!data.orderByAttributeList().isEmpty()) {
-         p = new SortPlan(tx, currentplan, data.orderByAttributeList(), data.fields());
+      // Step 5: Add a sort plan if ordered, or a top-n plan
+      // if the first records are all that is needed
+      if (ordered) {
+         if (limited && !grouped && !data.isDistinct())
+            p = new TopNPlan(tx, currentplan, data.orderByAttributeList(), data.fields(), data.limit());
+         else
+            p = new SortPlan(tx, currentplan, data.orderByAttributeList(), data.fields());
       }
       
-      // if group by clause or aggregation function is present
-      if (!data.groupfields().isEmpty() || !data.aggregations().isEmpty()) {
-         p = new GroupByPlan(tx, p, data.groupfields(), data.aggregations());
+      // if group by clause or aggregation function is present;
+      // the groups are hashed if they are expected to fit in memory,
+      // unless the output must keep the sort order of the groups
+      if (grouped) {
+         HashGroupByPlan hp = new HashGroupByPlan(tx, p, data.groupfields(), data.aggregations());
+         if (!ordered && hp.recordsOutput() <= hp.maxGroups())
+            p = hp;
+         else
+            p = new GroupByPlan(tx, p, data.groupfields(), data.aggregations());
       }
 
       if (data.isDistinct()) {
 			p = new DistinctPlan(tx, currentplan, data.fields());
 		}
       
+      // Step 6: Apply the limit to the output of a grouping or distinct plan
+      if (limited && !projectlimit && !(p instanceof TopNPlan))
+         p = new ProjectPlan(p, p.schema().fields(), data.limit());
+      
       return p;
    }
    
@@ -9,13 +9,22 @@ import simpledb.record.Schema;
 public class CreateTableData {
    private String tblname;
    private Schema sch;
+   private boolean slotted;
    
    /**
     * Saves the table name and schema.
     */
    public CreateTableData(String tblname, Schema sch) {
+      this(tblname, sch, false);
+   }
+   
+   /**
+    * Saves the table name, schema and record format.
+    */
+   public CreateTableData(String tblname, Schema sch, boolean slotted) {
       this.tblname = tblname;
       this.sch = sch;
+      this.slotted = slotted;
    }
    
    /**
@@ -33,5 +42,14 @@ public class CreateTableData {
    public Schema newSchema() {
       return sch;
    }
+   
+   /**
+    * Returns true if the new table stores its records
+    * in slotted pages.
+    * @return true if the table uses slotted pages
+    */
+   public boolean isSlotted() {
+      return slotted;
+   }
 }
 
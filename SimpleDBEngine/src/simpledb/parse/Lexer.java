@@ -254,7 +254,8 @@ public class Lexer {
       keywords = Arrays.asList("select", "from", "where", "and",
                                "insert", "into", "values", "delete", "update", "set", 
                                "create", "table", "int", "varchar", "view", "as", "index", "on",
-                               "order", "by", "using", "hash", "btree", "distinct");
+                               "order", "by", "using", "hash", "btree", "distinct", "slotted",
+                               "load", "limit", "fetch");
    }
    
    private void initAggregation() {
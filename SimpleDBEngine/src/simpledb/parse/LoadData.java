@@ -0,0 +1,48 @@
+package simpledb.parse;
+
+import java.util.*;
+
+/**
+ * Data for the SQL <i>load</i> statement.
+ */
+public class LoadData {
+   private String tblname;
+   private List<String> flds;
+   private String filename;
+   
+   /**
+    * Saves the table name, the fields and the name of the data file.
+    * A null list of fields denotes all of the table's fields.
+    */
+   public LoadData(String tblname, List<String> flds, String filename) {
+      this.tblname = tblname;
+      this.flds = flds;
+      this.filename = filename;
+   }
+   
+   /**
+    * Returns the name of the affected table.
+    * @return the name of the affected table
+    */
+   public String tableName() {
+      return tblname;
+   }
+   
+   /**
+    * Returns the fields whose values appear in the data file,
+    * in the order in which they appear,
+    * or null if the file holds every field of the table.
+    * @return the fields of the data file, or null
+    */
+   public List<String> fields() {
+      return flds;
+   }
+   
+   /**
+    * Returns the name of the data file.
+    * @return the name of the data file
+    */
+   public String fileName() {
+      return filename;
+   }
+}
@@ -133,7 +133,41 @@ public class Parser {
           groupfields = groupfieldList();
       }
       
-      return new QueryData(fields, tables, pred, orderByAttributesList, distinct, aggregations, groupfields);
+      int limit = limit();
+      return new QueryData(fields, tables, pred, orderByAttributesList, distinct, aggregations, groupfields, limit);
+   }
+   
+   /**
+    * Parses an optional "limit n" or "fetch {first|next} [n] {row|rows} only" clause.
+    * @return the limit, or -1 if there is no such clause
+    */
+   private int limit() {
+      if (lex.matchKeyword("limit")) {
+         lex.eatKeyword("limit");
+         return nonNegative(lex.eatIntConstant());
+      }
+      if (!lex.matchKeyword("fetch"))
+         return -1;
+      lex.eatKeyword("fetch");
+      if (lex.matchKeyword("next"))
+         lex.eatKeyword("next");
+      else
+         lex.eatKeyword("first");
+      int n = 1;
+      if (lex.matchIntConstant())
+         n = nonNegative(lex.eatIntConstant());
+      if (lex.matchKeyword("row"))
+         lex.eatKeyword("row");
+      else
+         lex.eatKeyword("rows");
+      lex.eatKeyword("only");
+      return n;
+   }
+   
+   private int nonNegative(int n) {
+      if (n < 0)
+         throw new BadSyntaxException("The limit of a query cannot be negative");
+      return n;
    }
    
    private List<String> groupfieldList() {
@@ -212,6 +246,8 @@ public class Parser {
          return delete();
       else if (lex.matchKeyword("update"))
          return modify();
+      else if (lex.matchKeyword("load"))
+         return load();
       else
          return create();
    }
@@ -276,6 +312,23 @@ public class Parser {
       return L;
    }
    
+// Method for parsing load commands
+   
+   public LoadData load() {
+      lex.eatKeyword("load");
+      lex.eatKeyword("into");
+      String tblname = lex.eatId();
+      List<String> flds = null;
+      if (lex.matchDelim('(')) {
+         lex.eatDelim('(');
+         flds = fieldList();
+         lex.eatDelim(')');
+      }
+      lex.eatKeyword("from");
+      String filename = lex.eatStringConstant();
+      return new LoadData(tblname, flds, filename);
+   }
+   
 // Method for parsing modify commands
    
    public ModifyData modify() {
@@ -301,7 +354,13 @@ public class Parser {
       lex.eatDelim('(');
       Schema sch = fieldDefs();
       lex.eatDelim(')');
-      return new CreateTableData(tblname, sch);
+      boolean slotted = false;
+      if (lex.matchKeyword("using")) {
+         lex.eatKeyword("using");
+         lex.eatKeyword("slotted");
+         slotted = true;
+      }
+      return new CreateTableData(tblname, sch, slotted);
    }
    
    private Schema fieldDefs() {
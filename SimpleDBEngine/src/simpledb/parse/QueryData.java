@@ -17,12 +17,14 @@ public class QueryData {
    private boolean distinct;
    private List<AggregationFn> aggregations;
    private List<String> groupfields;
+   private int limit;
    
    /**
     * Saves the field and table list and predicate.
+    * A limit of -1 means that the query has no limit.
     */
    public QueryData(List<String> fields, Collection<String> tables, Predicate pred, LinkedHashMap<String, Boolean> orderByAttributesList,
-		   boolean distinct, List<AggregationFn> aggregations, List<String> groupfields) {
+		   boolean distinct, List<AggregationFn> aggregations, List<String> groupfields, int limit) {
       this.fields = fields;
       this.tables = tables;
       this.pred = pred;
@@ -30,6 +32,7 @@ public class QueryData {
       this.distinct = distinct;
       this.aggregations = aggregations;
       this.groupfields = groupfields;
+      this.limit = limit;
    }
    
    /**
@@ -90,6 +93,15 @@ public class QueryData {
        return groupfields;
    }
    
+   /**
+    * Returns the maximum number of records that the query outputs,
+    * given by its limit or fetch first clause.
+    * @return the limit, or -1 if the query has none
+    */
+   public int limit() {
+       return limit;
+   }
+   
    public String toString() {
       String result = "select ";
       for (String fldname : fields)
@@ -102,6 +114,8 @@ public class QueryData {
       String predstring = pred.toString();
       if (!predstring.equals(""))
          result += " where " + predstring;
+      if (limit >= 0)
+         result += " limit " + limit;
       return result;
    }
 }
@@ -54,6 +54,10 @@ public class BasicQueryPlanner implements QueryPlanner {
       if (!data.groupfields().isEmpty() || !data.aggregations().isEmpty()) {
           p = new GroupByPlan(tx, p, data.groupfields(), data.aggregations());
       }
+      
+      //Apply the limit, if the query has one
+      if (data.limit() >= 0)
+         p = new ProjectPlan(p, p.schema().fields(), data.limit());
       return p;
    }
 }
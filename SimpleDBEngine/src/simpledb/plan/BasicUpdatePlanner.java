@@ -18,6 +18,8 @@ public class BasicUpdatePlanner implements UpdatePlanner {
    }
    
    public int executeDelete(DeleteData data, Transaction tx) {
+      if (data.pred().isEmpty())
+         tx.lockTable(data.tableName() + ".tbl");  // every record changes
       Plan p = new TablePlan(tx, data.tableName(), mdm);
       p = new SelectPlan(p, data.pred());
       UpdateScan us = (UpdateScan) p.open();
@@ -31,6 +33,8 @@ public class BasicUpdatePlanner implements UpdatePlanner {
    }
    
    public int executeModify(ModifyData data, Transaction tx) {
+      if (data.pred().isEmpty())
+         tx.lockTable(data.tableName() + ".tbl");  // every record changes
       Plan p = new TablePlan(tx, data.tableName(), mdm);
       p = new SelectPlan(p, data.pred());
       UpdateScan us = (UpdateScan) p.open();
@@ -58,7 +62,7 @@ public class BasicUpdatePlanner implements UpdatePlanner {
    }
    
    public int executeCreateTable(CreateTableData data, Transaction tx) {
-      mdm.createTable(data.tableName(), data.newSchema(), tx);
+      mdm.createTable(data.tableName(), data.newSchema(), data.isSlotted(), tx);
       return 0;
    }
    
@@ -70,4 +74,10 @@ public class BasicUpdatePlanner implements UpdatePlanner {
       mdm.createIndex(data.indexName(), data.tableName(), data.fieldName(), data.structName(), tx);
       return 0;  
    }
+   
+   public int executeLoad(LoadData data, Transaction tx) {
+      BulkLoader loader = new BulkLoader(tx, data.tableName(), data.fields(), mdm);
+      loader.addFile(data.fileName());
+      return loader.finish();
+   }
 }
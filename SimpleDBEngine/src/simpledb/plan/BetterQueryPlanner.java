@@ -52,6 +52,10 @@ public class BetterQueryPlanner implements QueryPlanner {
       
       //Step 4: Project on the field names
       p = new ProjectPlan(p, data.fields());
+      
+      //Apply the limit, if the query has one
+      if (data.limit() >= 0)
+         p = new ProjectPlan(p, p.schema().fields(), data.limit());
       return p;
    }
 }
@@ -0,0 +1,131 @@
+package simpledb.plan;
+
+import java.io.*;
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.metadata.MetadataMgr;
+import simpledb.index.Index;
+import simpledb.query.*;
+
+/**
+ * Loads the same records into an indexed table with the load
+ * statement and with insert statements, and compares the times.
+ * It then checks the records and the index (including a
+ * dataval whose records need overflow blocks), builds a
+ * second index over the loaded data, and checks that a
+ * rolled-back load leaves no trace.
+ * Finally, checks which files a remote client may load.
+ */
+public class BulkLoadTest {
+   private static final int N = 2000;
+
+   public static void main(String[] args) throws IOException {
+      SimpleDB db = new SimpleDB("bulkloadtest");
+      Planner planner = db.planner();
+      MetadataMgr mdm = db.mdMgr();
+      File datafile = new File("bulkloadtest", "data.csv");
+      try (PrintWriter out = new PrintWriter(new FileWriter(datafile))) {
+         for (int i=0; i<N; i++)
+            out.println((i < 200 ? -1 : i % 300) + ", 'rec, " + i + "'");
+      }
+
+      Transaction tx = db.newTx();
+      planner.executeUpdate("create table L(A int, B varchar(12))", tx);
+      planner.executeUpdate("create index LA on L(A)", tx);
+      planner.executeUpdate("create table I(A int, B varchar(12))", tx);
+      planner.executeUpdate("create index IA on I(A)", tx);
+      tx.commit();
+
+      tx = db.newTx();
+      long start = System.currentTimeMillis();
+      int n = planner.executeUpdate("load into L from '" + datafile.getPath() + "'", tx);
+      tx.commit();
+      long loadtime = System.currentTimeMillis() - start;
+
+      start = System.currentTimeMillis();
+      tx = db.newTx();
+      for (int i=0; i<N; i++) {
+         int a = (i < 200) ? -1 : i % 300;
+         planner.executeUpdate("insert into I(A,B) values(" + a + ", 'rec, " + i + "')", tx);
+         if (i % 100 == 99) {
+            tx.commit();
+            tx = db.newTx();
+         }
+      }
+      tx.commit();
+      long inserttime = System.currentTimeMillis() - start;
+      System.out.println("load: " + n + " records in " + loadtime + "ms; inserts: "
+            + N + " records in " + inserttime + "ms");
+
+      tx = db.newTx();
+      System.out.println("L has " + count(planner, "select B from L", tx) + " records");
+      System.out.println("LA finds " + lookup(mdm, "l", "a", -1, tx) + " records for -1 (expected 200), "
+            + lookup(mdm, "l", "a", 7, tx) + " for 7 (expected 6), "
+            + lookup(mdm, "l", "a", 300, tx) + " for 300 (expected 0)");
+
+      planner.executeUpdate("create index LB on L(B)", tx);
+      int found = 0;
+      for (int i=0; i<N; i += 97)
+         found += lookup(mdm, "l", "b", "rec, " + i, tx);
+      System.out.println("LB finds " + found + " of " + ((N + 96) / 97) + " sampled records");
+      tx.commit();
+
+      try (PrintWriter out = new PrintWriter(new FileWriter(datafile))) {
+         for (int i=0; i<N; i++)
+            out.println("'extra " + i + "'");
+      }
+      tx = db.newTx();
+      planner.executeUpdate("create table M(B varchar(12))", tx);
+      planner.executeUpdate("create index MB on M(B)", tx);
+      tx.commit();
+      tx = db.newTx();
+      planner.executeUpdate("load into L(B) from '" + datafile.getPath() + "'", tx);
+      planner.executeUpdate("load into M from '" + datafile.getPath() + "'", tx);
+      tx.rollback();
+      tx = db.newTx();
+      System.out.println("after rollback, L has " + count(planner, "select B from L", tx)
+            + " records, and LA finds " + lookup(mdm, "l", "a", 0, tx) + " for 0 (expected 6)");
+      System.out.println("after rollback, M has " + count(planner, "select B from M", tx)
+            + " records, and MB finds " + lookup(mdm, "m", "b", "extra 5", tx) + " for 'extra 5'");
+      tx.commit();
+
+      tx = db.newTx();
+      File loaddir = new File("bulkloadtest");
+      remoteLoad(planner, "data.csv", null, tx);
+      remoteLoad(planner, datafile.getAbsolutePath(), loaddir, tx);
+      remoteLoad(planner, "../bulkloadtest/data.csv", loaddir, tx);
+      remoteLoad(planner, "data.csv", loaddir, tx);
+      tx.rollback();
+   }
+
+   private static void remoteLoad(Planner planner, String filename, File loaddir, Transaction tx) {
+      try {
+         int n = planner.executeRemoteUpdate("load into M from '" + filename + "'", tx, loaddir);
+         System.out.println("remote load of " + filename + ": " + n + " records");
+      }
+      catch(RuntimeException e) {
+         System.out.println("remote load of " + filename + ": refused");
+      }
+   }
+
+   private static int count(Planner planner, String qry, Transaction tx) {
+      Scan s = planner.createQueryPlan(qry, tx).open();
+      int n = 0;
+      while (s.next())
+         n++;
+      s.close();
+      return n;
+   }
+
+   private static int lookup(MetadataMgr mdm, String tblname, String fldname, Object val, Transaction tx) {
+      Index idx = mdm.getIndexInfo(tblname, tx).get(fldname).open();
+      Constant key = (val instanceof Integer) ? new Constant((Integer) val) : new Constant((String) val);
+      idx.beforeFirst(key);
+      int n = 0;
+      while (idx.next())
+         n++;
+      idx.close();
+      return n;
+   }
+}
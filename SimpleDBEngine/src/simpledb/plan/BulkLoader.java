@@ -0,0 +1,186 @@
+package simpledb.plan;
+
+import static java.sql.Types.INTEGER;
+import java.io.*;
+import java.util.*;
+import simpledb.file.BlockId;
+import simpledb.metadata.*;
+import simpledb.query.Constant;
+import simpledb.record.*;
+import simpledb.tx.Transaction;
+
+/**
+ * Loads many records into a table at once.
+ * The records go into new blocks at the end of the table,
+ * which are filled directly (see {@link RecordPage#load})
+ * instead of through a table scan, so that only the
+ * existence of each record is logged, not its values.
+ * The table's indexes receive their records when the load
+ * finishes, in dataval order, so that an empty B-tree
+ * index is built bottom-up.
+ * <p>
+ * The load is part of the transaction: a rollback removes
+ * the records, and a commit forces the new blocks to disk.
+ * The index records wait in temporary tables until the load
+ * finishes (see {@link IndexLoader}), so that a load of any
+ * size needs only a block's worth of records in memory.
+ */
+public class BulkLoader {
+   private Transaction tx;
+   private String filename;
+   private Layout layout;
+   private FreeSpaceMap fsm;
+   private List<String> flds;
+   private Map<String,IndexLoader> idxloaders = new HashMap<>();
+   private List<List<Constant>> pending = new ArrayList<>();
+   private int batchsize;
+   private int count = 0;
+
+   /**
+    * Creates a loader for the specified table.
+    * @param tx the calling transaction
+    * @param tblname the name of the table
+    * @param flds the fields whose values are given for each record,
+    * or null for all of the table's fields; other fields get 0 or ""
+    * @param mdm the metadata manager
+    */
+   public BulkLoader(Transaction tx, String tblname, List<String> flds, MetadataMgr mdm) {
+      this.tx = tx;
+      filename = tblname + ".tbl";
+      layout = mdm.getLayout(tblname, tx);
+      fsm = new FreeSpaceMap(tx, tblname);
+      this.flds = (flds == null) ? layout.schema().fields() : flds;
+      Map<String,IndexInfo> indexes = mdm.getIndexInfo(tblname, tx);
+      for (String fldname : indexes.keySet())
+         idxloaders.put(fldname, new IndexLoader(tx, indexes.get(fldname), layout.schema()));
+      // every record takes at least 4 bytes, so this many records fill a block
+      batchsize = tx.blockSize() / Integer.BYTES;
+   }
+
+   /**
+    * Adds a record to the table.
+    * @param vals the values of the loader's fields, in order
+    */
+   public void add(List<Constant> vals) {
+      if (vals.size() != flds.size())
+         throw new RuntimeException("expected " + flds.size() + " values but got " + vals.size());
+      Schema sch = layout.schema();
+      List<Constant> rec = new ArrayList<>();
+      for (String fldname : sch.fields()) {
+         int i = flds.indexOf(fldname);
+         if (i >= 0)
+            rec.add(vals.get(i));
+         else
+            rec.add((sch.type(fldname) == INTEGER) ? new Constant(0) : new Constant(""));
+      }
+      pending.add(rec);
+      if (pending.size() >= batchsize)
+         loadBlock();
+   }
+
+   /**
+    * Adds the records of the specified data file to the table.
+    * Each line of the file holds the values of one record,
+    * separated by commas; a string value may be enclosed
+    * in single quotes, so that it can contain commas.
+    * Blank lines are ignored.
+    * @param datafile the name of the data file
+    */
+   public void addFile(String datafile) {
+      Schema sch = layout.schema();
+      try (BufferedReader reader = new BufferedReader(new FileReader(datafile))) {
+         String line;
+         int linenum = 0;
+         while ((line = reader.readLine()) != null) {
+            linenum++;
+            if (line.trim().isEmpty())
+               continue;
+            List<String> strs = split(line);
+            if (strs.size() != flds.size())
+               throw new RuntimeException(datafile + ", line " + linenum + ": expected "
+                     + flds.size() + " values but got " + strs.size());
+            List<Constant> vals = new ArrayList<>();
+            for (int i=0; i<strs.size(); i++) {
+               String str = strs.get(i);
+               if (sch.type(flds.get(i)) == INTEGER) {
+                  try {
+                     vals.add(new Constant(Integer.parseInt(str)));
+                  }
+                  catch (NumberFormatException e) {
+                     throw new RuntimeException(datafile + ", line " + linenum
+                           + ": bad integer " + str);
+                  }
+               }
+               else
+                  vals.add(new Constant(str));
+            }
+            add(vals);
+         }
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot read " + datafile);
+      }
+   }
+
+   /**
+    * Stores the remaining records and loads the
+    * index records into the table's indexes.
+    * @return the number of records loaded
+    */
+   public int finish() {
+      while (!pending.isEmpty())
+         loadBlock();
+      for (IndexLoader loader : idxloaders.values())
+         loader.finish();
+      return count;
+   }
+
+   /**
+    * Appends a block to the table and fills it with pending records.
+    * A block that is filled is marked as full in the free-space map.
+    */
+   private void loadBlock() {
+      BlockId blk = tx.append(filename);
+      RecordPage rp = RecordPage.create(tx, blk, layout);
+      rp.format();
+      int n = rp.load(pending);
+      tx.unpin(blk);
+      if (n == 0)
+         throw new RuntimeException("record does not fit in an empty block of " + filename);
+
+      Schema sch = layout.schema();
+      for (String fldname : idxloaders.keySet()) {
+         int i = sch.fields().indexOf(fldname);
+         IndexLoader loader = idxloaders.get(fldname);
+         for (int slot=0; slot<n; slot++)
+            loader.add(pending.get(slot).get(i), new RID(blk.number(), slot));
+      }
+      pending.subList(0, n).clear();
+      count += n;
+      if (!pending.isEmpty())
+         fsm.setFull(blk.number());
+   }
+
+   private static List<String> split(String line) {
+      List<String> strs = new ArrayList<>();
+      StringBuilder sb = new StringBuilder();
+      boolean quoted = false, wasquoted = false;
+      for (char c : line.toCharArray()) {
+         if (c == '\'') {
+            if (!wasquoted)
+               sb.setLength(0);  // drop the blanks before the quote
+            quoted = !quoted;
+            wasquoted = true;
+         }
+         else if (c == ',' && !quoted) {
+            strs.add(wasquoted ? sb.toString() : sb.toString().trim());
+            sb.setLength(0);
+            wasquoted = false;
+         }
+         else if (quoted || !wasquoted)
+            sb.append(c);
+      }
+      strs.add(wasquoted ? sb.toString() : sb.toString().trim());
+      return strs;
+   }
+}
@@ -0,0 +1,99 @@
+package simpledb.plan;
+
+import java.util.Arrays;
+import simpledb.index.Index;
+import simpledb.materialize.*;
+import simpledb.metadata.IndexInfo;
+import simpledb.query.*;
+import simpledb.record.*;
+import simpledb.tx.Transaction;
+
+/**
+ * Loads many records into an index at once.
+ * The index records are written to a temporary table as
+ * they are added. When the load finishes, they are sorted by
+ * dataval with an external sort (see {@link SortPlan}), whose
+ * output goes to {@link Index#load}; so the records never
+ * need to fit in memory.
+ */
+public class IndexLoader {
+   private Transaction tx;
+   private IndexInfo ii;
+   private TempTable temp;
+   private UpdateScan recs;
+   private int count = 0;
+
+   /**
+    * Creates a loader for the specified index.
+    * @param tx the calling transaction
+    * @param ii the index
+    * @param tblsch the schema of the indexed table
+    */
+   public IndexLoader(Transaction tx, IndexInfo ii, Schema tblsch) {
+      this.tx = tx;
+      this.ii = ii;
+      String fldname = ii.getFieldName();
+      Schema sch = new Schema();
+      sch.addField("dataval", tblsch.type(fldname), tblsch.length(fldname));
+      sch.addIntField("block");
+      sch.addIntField("id");
+      temp = new TempTable(tx, sch);
+      recs = temp.open();
+   }
+
+   /**
+    * Adds an index record.
+    * @param dataval the dataval of the record
+    * @param rid the dataRID of the record
+    */
+   public void add(Constant dataval, RID rid) {
+      recs.insert();
+      recs.setVal("dataval", dataval);
+      recs.setInt("block", rid.blockNumber());
+      recs.setInt("id", rid.slot());
+      count++;
+   }
+
+   /**
+    * Sorts the index records and loads them into the index.
+    * The index is opened even if there are no records,
+    * since opening a new B-tree index creates its files.
+    */
+   public void finish() {
+      recs.close();
+      Index idx = ii.open();
+      if (count > 0) {
+         Plan p = new SortPlan(tx, new RecordsPlan(), Arrays.asList("dataval"));
+         Scan s = p.open();
+         idx.load(s);
+         s.close();
+      }
+      idx.close();
+   }
+
+   /**
+    * The plan that reads the index records back,
+    * as the input of the sort.
+    */
+   private class RecordsPlan implements Plan {
+      public Scan open() {
+         return temp.open();
+      }
+
+      public int blocksAccessed() {
+         return tx.size(temp.tableName() + ".tbl");
+      }
+
+      public int recordsOutput() {
+         return count;
+      }
+
+      public int distinctValues(String fldname) {
+         return count;
+      }
+
+      public Schema schema() {
+         return temp.getLayout().schema();
+      }
+   }
+}
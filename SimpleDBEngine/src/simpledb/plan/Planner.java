@@ -1,5 +1,6 @@
 package simpledb.plan;
 
+import java.io.*;
 import simpledb.tx.Transaction;
 import simpledb.parse.*;
 
@@ -43,6 +44,33 @@ public class Planner {
       Parser parser = new Parser(cmd);
       Object data = parser.updateCmd();
       verifyUpdate(data);
+      return execute(data, tx);
+   }
+
+   /**
+    * Executes an SQL update statement sent by a remote client.
+    * A load statement may only read a file of the specified
+    * directory, named by a relative path that does not go up
+    * a directory; if the directory is null, load statements
+    * are refused.
+    * @param cmd the SQL update string
+    * @param tx the transaction
+    * @param loaddir the directory of the files that can be loaded, or null
+    * @return an integer denoting the number of affected records
+    */
+   public int executeRemoteUpdate(String cmd, Transaction tx, File loaddir) {
+      Parser parser = new Parser(cmd);
+      Object data = parser.updateCmd();
+      verifyUpdate(data);
+      if (data instanceof LoadData) {
+         LoadData ld = (LoadData) data;
+         String path = loadPath(ld.fileName(), loaddir);
+         data = new LoadData(ld.tableName(), ld.fields(), path);
+      }
+      return execute(data, tx);
+   }
+
+   private int execute(Object data, Transaction tx) {
       if (data instanceof InsertData)
          return uplanner.executeInsert((InsertData)data, tx);
       else if (data instanceof DeleteData)
@@ -55,10 +83,35 @@ public class Planner {
          return uplanner.executeCreateView((CreateViewData)data, tx);
       else if (data instanceof CreateIndexData)
          return uplanner.executeCreateIndex((CreateIndexData)data, tx);
+      else if (data instanceof LoadData)
+         return uplanner.executeLoad((LoadData)data, tx);
       else
          return 0;
    }
  
+   /**
+    * Returns the path of the data file of a remote load
+    * statement, or throws an exception if the file
+    * is not in the specified directory.
+    */
+   private String loadPath(String filename, File loaddir) {
+      if (loaddir == null)
+         throw new RuntimeException("load statements are not allowed.");
+      File f = new File(filename);
+      if (f.isAbsolute() || filename.replace('\\', '/').matches("(.*/)?\\.\\.(/.*)?"))
+         throw new RuntimeException("cannot load " + filename + ".");
+      try {
+         File dir = loaddir.getCanonicalFile();
+         File file = new File(dir, filename).getCanonicalFile();
+         if (!file.toPath().startsWith(dir.toPath()))
+            throw new RuntimeException("cannot load " + filename + ".");
+         return file.getPath();
+      }
+      catch (IOException e) {
+         throw new RuntimeException("cannot load " + filename + ".");
+      }
+   }
+
    // SimpleDB does not verify queries, although it should.
    private void verifyQuery(QueryData data) {
    }
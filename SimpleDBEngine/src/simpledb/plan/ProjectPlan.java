@@ -11,6 +11,7 @@ import simpledb.query.*;
 public class ProjectPlan implements Plan {
    private Plan p;
    private Schema schema = new Schema();
+   private int limit = -1;
 
    /**
     * Creates a new project node in the query tree,
@@ -24,13 +25,25 @@ public class ProjectPlan implements Plan {
          schema.add(fldname, p.schema());
    }
 
+   /**
+    * Creates a new project node in the query tree
+    * that outputs at most the specified number of records.
+    * @param p the subquery
+    * @param fieldlist the list of fields
+    * @param limit the maximum number of records, or -1 for no limit
+    */
+   public ProjectPlan(Plan p, List<String> fieldlist, int limit) {
+      this(p, fieldlist);
+      this.limit = limit;
+   }
+
    /**
     * Creates a project scan for this query.
     * @see simpledb.plan.Plan#open()
     */
    public Scan open() {
       Scan s = p.open();
-      return new ProjectScan(s, schema.fields());
+      return new ProjectScan(s, schema.fields(), limit);
    }
 
    /**
@@ -44,10 +57,13 @@ public class ProjectPlan implements Plan {
 
    /**
     * Estimates the number of output records in the projection,
-    * which is the same as in the underlying query.
+    * which is the same as in the underlying query,
+    * unless the projection has a smaller limit.
     * @see simpledb.plan.Plan#recordsOutput()
     */
    public int recordsOutput() {
+      if (limit >= 0)
+         return Math.min(limit, p.recordsOutput());
       return p.recordsOutput();
    }
 
@@ -75,6 +91,7 @@ public class ProjectPlan implements Plan {
     * @return The corresponding String.
     */
    public String toString() {
-	   return "Project :" + schema.fields() + "," + p.toString();
+	   String lim = (limit >= 0) ? " limit " + limit : "";
+	   return "Project :" + schema.fields() + lim + "," + p.toString();
    }
 }
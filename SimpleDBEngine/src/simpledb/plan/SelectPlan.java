@@ -30,7 +30,7 @@ public class SelectPlan implements Plan {
     */
    public Scan open() {
       Scan s = p.open();
-      return new SelectScan(s, pred);
+      return new SelectScan(s, pred, p.schema());
    }
    
    /**
@@ -63,4 +63,13 @@ public interface UpdatePlanner {
     * @return the number of affected records
     */
    public int executeCreateIndex(CreateIndexData data, Transaction tx);
+   
+   /**
+    * Executes the specified load statement, and
+    * returns the number of records loaded.
+    * @param data the parsed representation of the load statement
+    * @param tx the calling transaction
+    * @return the number of loaded records
+    */
+   public int executeLoad(LoadData data, Transaction tx);
 }
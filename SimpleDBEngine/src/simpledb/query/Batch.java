@@ -0,0 +1,192 @@
+package simpledb.query;
+
+import static java.sql.Types.INTEGER;
+import java.util.*;
+import simpledb.record.Schema;
+
+/**
+ * A batch of records, stored column by column, that a scan
+ * fills in a single call to {@link Scan#nextBatch}.
+ * Each column holds the values of one field, in an int array
+ * for an integer field and in a String array for a string field.
+ * <p>
+ * A batch also has a selection vector, which lists the rows of
+ * the batch that are part of the output, in order.
+ * A scan that filters its input marks a row as rejected by
+ * leaving it out of the selection vector, instead of moving the
+ * values of the remaining rows.
+ */
+public class Batch {
+   /**
+    * The maximum number of rows in a batch.
+    */
+   public static final int CAPACITY = 1024;
+   private List<String> fields = new ArrayList<>();
+   private List<Integer> types = new ArrayList<>();
+   private List<int[]> intcols = new ArrayList<>();
+   private List<String[]> strcols = new ArrayList<>();
+   private int size = 0;
+   private int[] sel = new int[CAPACITY];
+   private int selected = 0;
+   private boolean atend = false;
+
+   /**
+    * Create a batch having a column for each of the
+    * specified fields.
+    * @param fields the names of the fields
+    * @param sch a schema containing the fields
+    */
+   public Batch(Collection<String> fields, Schema sch) {
+      for (String fldname : fields)
+         addColumn(fldname, sch.type(fldname));
+   }
+
+   /**
+    * Add a column for the specified field, if the batch
+    * does not have one already.
+    * A scan can call this method to obtain a column that
+    * it needs but that its caller did not ask for.
+    * @param fldname the name of the field
+    * @param type the type of the field, as defined in java.sql.Types
+    * @return the index of the field's column
+    */
+   public int addColumn(String fldname, int type) {
+      int col = fields.indexOf(fldname);
+      if (col >= 0)
+         return col;
+      fields.add(fldname);
+      types.add(type);
+      intcols.add(type == INTEGER ? new int[CAPACITY] : null);
+      strcols.add(type == INTEGER ? null : new String[CAPACITY]);
+      return fields.size() - 1;
+   }
+
+   /**
+    * Return the names of the fields of the batch, in column order.
+    * @return the names of the fields
+    */
+   public List<String> fields() {
+      return fields;
+   }
+
+   /**
+    * Return the index of the column of the specified field.
+    * @param fldname the name of the field
+    * @return the index of its column, or -1 if the batch does not have the field
+    */
+   public int columnIndex(String fldname) {
+      return fields.indexOf(fldname);
+   }
+
+   /**
+    * Return true if the specified column holds integers.
+    * @param col the index of the column
+    * @return true if the column holds integers
+    */
+   public boolean isInt(int col) {
+      return types.get(col) == INTEGER;
+   }
+
+   /**
+    * Return the values of an integer column.
+    * @param col the index of the column
+    * @return the array of values
+    */
+   public int[] ints(int col) {
+      return intcols.get(col);
+   }
+
+   /**
+    * Return the values of a string column.
+    * @param col the index of the column
+    * @return the array of values
+    */
+   public String[] strings(int col) {
+      return strcols.get(col);
+   }
+
+   /**
+    * Return the value of the specified row of a column, as a Constant.
+    * @param col the index of the column
+    * @param row the row
+    * @return the value in that row of the column
+    */
+   public Constant getVal(int col, int row) {
+      return isInt(col) ? new Constant(intcols.get(col)[row])
+                        : new Constant(strcols.get(col)[row]);
+   }
+
+   /**
+    * Return the number of rows whose values were filled in.
+    * @return the number of rows
+    */
+   public int size() {
+      return size;
+   }
+
+   /**
+    * Set the number of rows whose values were filled in,
+    * and select all of them.
+    * @param size the number of rows
+    */
+   public void setSize(int size) {
+      this.size = size;
+      for (int i=0; i<size; i++)
+         sel[i] = i;
+      selected = size;
+   }
+
+   /**
+    * Empty the batch, before it is filled from a scan
+    * that has been positioned by beforeFirst.
+    */
+   public void clear() {
+      setSize(0);
+      atend = false;
+   }
+
+   /**
+    * Record that the scan filling the batch has no more records.
+    * A scan that reads its records one at a time uses this
+    * to avoid calling next again once it has returned false.
+    */
+   public void setAtEnd() {
+      atend = true;
+   }
+
+   /**
+    * Return true if the scan filling the batch is known
+    * to have no more records.
+    * @return true if the scan has no more records
+    */
+   public boolean atEnd() {
+      return atend;
+   }
+
+   /**
+    * Return the selection vector. Its first {@link #selected()}
+    * entries are the selected rows, in increasing order.
+    * A scan that filters the batch may overwrite the array,
+    * and then calls {@link #setSelected}.
+    * @return the selection vector
+    */
+   public int[] selection() {
+      return sel;
+   }
+
+   /**
+    * Return the number of selected rows.
+    * @return the number of selected rows
+    */
+   public int selected() {
+      return selected;
+   }
+
+   /**
+    * Set the number of selected rows.
+    * @param selected the number of leading entries of the selection vector that are selected
+    */
+   public void setSelected(int selected) {
+      this.selected = selected;
+   }
+}
@@ -0,0 +1,89 @@
+package simpledb.query;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import simpledb.record.Schema;
+
+/**
+ * A scan that reads the records of another scan a batch
+ * at a time, and returns them a record at a time.
+ * It lets an operator that works on records consume the
+ * output of a scan that works best on batches.
+ * The field ordinals of the scan are the columns of its batch.
+ */
+public class BatchRowScan implements Scan {
+   private Scan s;
+   private Batch b;
+   private int pos;
+
+   /**
+    * Create a scan of the specified fields of the underlying scan.
+    * @param s the underlying scan
+    * @param fields the fields to read
+    * @param sch a schema containing the fields
+    */
+   public BatchRowScan(Scan s, Collection<String> fields, Schema sch) {
+      this.s = s;
+      b = new Batch(fields, sch);
+      beforeFirst();
+   }
+
+   public void beforeFirst() {
+      s.beforeFirst();
+      b.clear();
+      pos = -1;
+   }
+
+   public boolean next() {
+      pos++;
+      while (pos >= b.selected()) {
+         if (!s.nextBatch(b))
+            return false;
+         pos = 0;
+      }
+      return true;
+   }
+
+   public int getInt(String fldname) {
+      return b.ints(column(fldname))[row()];
+   }
+
+   public String getString(String fldname) {
+      return b.strings(column(fldname))[row()];
+   }
+
+   public Constant getVal(String fldname) {
+      return b.getVal(column(fldname), row());
+   }
+
+   public int fieldIndex(String fldname) {
+      return b.columnIndex(fldname);
+   }
+
+   public int getInt(int fldindex) {
+      return b.ints(fldindex)[row()];
+   }
+
+   public byte[] getBytes(int fldindex) {
+      return b.strings(fldindex)[row()].getBytes(StandardCharsets.US_ASCII);
+   }
+
+   public boolean hasField(String fldname) {
+      return b.columnIndex(fldname) >= 0;
+   }
+
+   public void close() {
+      s.close();
+   }
+
+   private int row() {
+      return b.selection()[pos];
+   }
+
+   private int column(String fldname) {
+      int col = b.columnIndex(fldname);
+      if (col < 0)
+         throw new RuntimeException("field " + fldname + " not found.");
+      return col;
+   }
+}
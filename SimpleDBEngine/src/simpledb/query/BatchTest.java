@@ -0,0 +1,101 @@
+package simpledb.query;
+
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.metadata.MetadataMgr;
+import simpledb.plan.*;
+import simpledb.materialize.*;
+import simpledb.record.Schema;
+
+/**
+ * Reads the output of a selection, a projection, a hash join
+ * and a grouping a record at a time and a batch at a time,
+ * and checks that both give the same records.
+ * It then times a filtered sum over a larger table in both modes.
+ */
+public class BatchTest {
+   public static void main(String[] args) {
+      SimpleDB db = new SimpleDB("batchtest");
+      MetadataMgr mdm = db.mdMgr();
+      Transaction tx = db.newTx();
+      db.planner().executeUpdate("create table T(A int, B varchar(9))", tx);
+      db.planner().executeUpdate("create table U(C int, D varchar(9))", tx);
+      BulkLoader loader = new BulkLoader(tx, "t", null, mdm);
+      for (int i=0; i<50000; i++)
+         loader.add(Arrays.asList(new Constant(i % 1000), new Constant("b" + (i % 7))));
+      loader.finish();
+      loader = new BulkLoader(tx, "u", null, mdm);
+      for (int i=0; i<300; i++)
+         loader.add(Arrays.asList(new Constant(i), new Constant("d" + (i % 5))));
+      loader.finish();
+      tx.commit();
+
+      tx = db.newTx();
+      Plan t = new TablePlan(tx, "t", mdm);
+      Plan u = new TablePlan(tx, "u", mdm);
+      Predicate pred = new Predicate(new Term(new Expression("a"), new Expression(new Constant(20)), "<"));
+      pred.conjoinWith(new Predicate(new Term(new Expression("b"), new Expression(new Constant("b3")), "<>")));
+      Plan select = new SelectPlan(t, pred);
+      Plan project = new ProjectPlan(select, Arrays.asList("b"));
+      Plan join = new HashJoinPlan(tx, u, select, "c", "a");
+      List<AggregationFn> fns = Arrays.asList(new CountFn("c", false), new SumFn("c", false),
+                                              new MaxFn("c", false), new MinFn("d", false));
+      Plan group = new GroupByPlan(tx, new SelectPlan(u, new Predicate(new Term(
+            new Expression("c"), new Expression(new Constant(250)), "<"))), Arrays.asList("d"), fns);
+      compare("select", select);
+      compare("project", project);
+      compare("hash join", join);
+      compare("group by", group);
+
+      // a filter and sum over the whole table
+      Predicate big = new Predicate(new Term(new Expression("a"), new Expression(new Constant(500)), ">="));
+      Plan bigselect = new SelectPlan(t, big);
+      for (int round=0; round<3; round++) {
+         long start = System.nanoTime();
+         Scan s = bigselect.open();
+         long rowsum = 0;
+         while (s.next())
+            rowsum += s.getInt("a");
+         s.close();
+         long rowtime = System.nanoTime() - start;
+
+         start = System.nanoTime();
+         s = bigselect.open();
+         Batch b = new Batch(Arrays.asList("a"), t.schema());
+         long batchsum = 0;
+         while (s.nextBatch(b)) {
+            int[] col = b.ints(0);
+            int[] sel = b.selection();
+            for (int i=0; i<b.selected(); i++)
+               batchsum += col[sel[i]];
+         }
+         s.close();
+         long batchtime = System.nanoTime() - start;
+         System.out.println("sum of a >= 500: " + rowsum + " by record in " + rowtime / 1000000
+               + "ms, " + batchsum + " by batch in " + batchtime / 1000000 + "ms");
+      }
+      tx.commit();
+   }
+
+   private static void compare(String name, Plan p) {
+      Schema sch = p.schema();
+      List<String> byrecord = read(p.open(), sch);
+      List<String> bybatch = read(new BatchRowScan(p.open(), sch.fields(), sch), sch);
+      System.out.println(name + ": " + byrecord.size() + " records, " + bybatch.size()
+            + " by batch, " + (byrecord.equals(bybatch) ? "same" : "DIFFERENT")
+            + (byrecord.isEmpty() ? "" : "; first " + byrecord.get(0)));
+   }
+
+   private static List<String> read(Scan s, Schema sch) {
+      List<String> result = new ArrayList<>();
+      while (s.next()) {
+         String rec = "";
+         for (String fldname : sch.fields())
+            rec += fldname + "=" + s.getVal(fldname) + " ";
+         result.add(rec.trim());
+      }
+      s.close();
+      return result;
+   }
+}
@@ -0,0 +1,96 @@
+package simpledb.query;
+
+import java.util.*;
+import simpledb.record.Schema;
+
+/**
+ * A predicate whose terms are compiled for a particular scan.
+ * Each term becomes an evaluator (see {@link Evaluator}) that is
+ * specialized for the term's operator and operands, and that reads
+ * the scan's field values by ordinal (see {@link Scan#fieldIndex})
+ * as integers or as string bytes, comparing them with constants
+ * that were converted when the predicate was compiled.
+ * Testing a record therefore involves no switch on the operator,
+ * no field name lookup and no Constant.
+ * <p>
+ * A term that cannot be compiled, such as one that compares
+ * values of different types, is tested by the term itself.
+ * <p>
+ * A predicate whose terms are all compiled can also filter a
+ * batch of records, one term at a time, by removing the
+ * rows that fail the term from the batch's selection vector.
+ */
+public class BoundPredicate {
+   private Evaluator[] evals;
+   private boolean canfilter = true;
+
+   /**
+    * Compile the specified terms for the specified scan.
+    * Terms that can be compiled are tested before
+    * those that cannot.
+    * @param terms the terms of the predicate
+    * @param s the scan whose records will be tested
+    * @param sch the schema of the scan
+    */
+   BoundPredicate(List<Term> terms, Scan s, Schema sch) {
+      List<Evaluator> compiled = new ArrayList<>();
+      List<Evaluator> rest = new ArrayList<>();
+      for (Term t : terms) {
+         Evaluator e = Evaluator.compile(t, s, sch);
+         if (e.canFilter())
+            compiled.add(e);
+         else
+            rest.add(e);
+      }
+      canfilter = rest.isEmpty();
+      compiled.addAll(rest);
+      evals = compiled.toArray(new Evaluator[0]);
+   }
+
+   /**
+    * Returns true if the predicate is satisfied by
+    * the current record of the scan it was bound to.
+    * @param s the scan
+    * @return true if the predicate is true in the scan
+    */
+   public boolean isSatisfied(Scan s) {
+      for (Evaluator e : evals)
+         if (!e.isSatisfied(s))
+            return false;
+      return true;
+   }
+
+   /**
+    * Return true if every term of the predicate is compiled,
+    * so that the predicate can filter batches.
+    * @return true if the predicate can filter batches
+    */
+   public boolean canFilter() {
+      return canfilter;
+   }
+
+   /**
+    * Add to the batch the columns of the fields that
+    * the predicate tests, if it does not have them.
+    * @param b the batch
+    */
+   public void addColumns(Batch b) {
+      for (Evaluator e : evals)
+         e.addColumns(b);
+   }
+
+   /**
+    * Remove from the selection vector of the batch the rows
+    * that do not satisfy the predicate.
+    * The batch must have the columns added by {@link #addColumns},
+    * and the predicate must be able to filter batches.
+    * @param b the batch
+    */
+   public void filter(Batch b) {
+      int[] sel = b.selection();
+      int n = b.selected();
+      for (int i=0; i<evals.length && n > 0; i++)
+         n = evals[i].filter(b, sel, n);
+      b.setSelected(n);
+   }
+}
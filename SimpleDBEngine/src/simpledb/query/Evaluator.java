@@ -0,0 +1,500 @@
+package simpledb.query;
+
+import static java.sql.Types.INTEGER;
+import static java.sql.Types.VARCHAR;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import simpledb.record.Schema;
+
+/**
+ * The compiled form of a term, bound to the field ordinals
+ * of a particular scan.
+ * A term is compiled into an evaluator of a class that is
+ * specialized for its operator and for the kinds of its operands,
+ * so that testing a record involves no switch on the operator,
+ * no field name lookup and no Constant.
+ * <p>
+ * An evaluator can test the current record of its scan,
+ * and can also filter the selected rows of a batch;
+ * an evaluator that is not compiled does so a row at a time.
+ */
+abstract class Evaluator {
+   // the outcomes of a comparison that satisfy each operator,
+   // as bits for less than (1), equal (2) and greater than (4)
+   private static final int EQ = 2, NE = 5, LT = 1, LE = 3, GT = 4, GE = 6;
+
+   /**
+    * Compile the term for the specified scan.
+    * A term whose operands cannot be bound is evaluated
+    * by the term itself.
+    * @param t the term
+    * @param s the scan whose records will be tested
+    * @param sch the schema of the scan
+    * @return the evaluator of the term
+    */
+   static Evaluator compile(Term t, Scan s, Schema sch) {
+      int mask = mask(t.getOperator());
+      Expression lhs = t.lhs(), rhs = t.rhs();
+      int lhstype = type(lhs, s, sch);
+      int rhstype = type(rhs, s, sch);
+      if (mask < 0 || lhstype == 0 || lhstype != rhstype)
+         return new Unbound(t, sch);
+      if (!lhs.isFieldName() && !rhs.isFieldName())
+         return new Folded(t.isSatisfied(s));
+      if (!lhs.isFieldName()) {
+         // put the field on the left: c<F is F>c
+         Expression e = lhs;
+         lhs = rhs;
+         rhs = e;
+         mask = flip(mask);
+      }
+      String fld1 = lhs.asFieldName();
+      int ord1 = s.fieldIndex(fld1);
+      if (rhs.isFieldName()) {
+         String fld2 = rhs.asFieldName();
+         int ord2 = s.fieldIndex(fld2);
+         return (lhstype == INTEGER) ? new IntFields(fld1, ord1, fld2, ord2, mask)
+                                     : new StrFields(fld1, ord1, fld2, ord2, mask);
+      }
+      Constant c = rhs.asConstant();
+      if (lhstype == VARCHAR)
+         return (mask == EQ) ? new StrEq(fld1, ord1, c.asString())
+                             : new StrConst(fld1, ord1, c.asString(), mask);
+      int val = c.asInt();
+      switch (mask) {
+         case EQ: return new IntEq(fld1, ord1, val);
+         case NE: return new IntNe(fld1, ord1, val);
+         case LT: return new IntLt(fld1, ord1, val);
+         case LE: return new IntLe(fld1, ord1, val);
+         case GT: return new IntGt(fld1, ord1, val);
+         default: return new IntGe(fld1, ord1, val);
+      }
+   }
+
+   /**
+    * Return true if the current record of the scan
+    * that the evaluator was compiled for satisfies the term.
+    * @param s the scan
+    * @return true if the term is satisfied
+    */
+   abstract boolean isSatisfied(Scan s);
+
+   /**
+    * Return true if the evaluator filters batches
+    * without testing each row separately.
+    * @return true if the evaluator filters batches efficiently
+    */
+   boolean canFilter() {
+      return true;
+   }
+
+   /**
+    * Add to the batch the columns that the evaluator reads.
+    * @param b the batch
+    */
+   void addColumns(Batch b) {}
+
+   /**
+    * Keep the selected rows of the batch that satisfy the term,
+    * by compacting the first n entries of the selection vector.
+    * @param b the batch
+    * @param sel the selection vector of the batch
+    * @param n the number of selected rows
+    * @return the number of rows that remain selected
+    */
+   abstract int filter(Batch b, int[] sel, int n);
+
+   /**
+    * Return true if a comparison whose result is cmp
+    * satisfies the operator of the specified mask.
+    */
+   static boolean accepts(int mask, int cmp) {
+      return ((mask >> (Integer.signum(cmp) + 1)) & 1) != 0;
+   }
+
+   /**
+    * Compare two ASCII strings, given their bytes,
+    * in the same order as String.compareTo.
+    */
+   static int compare(byte[] b1, byte[] b2) {
+      int n = Math.min(b1.length, b2.length);
+      for (int i=0; i<n; i++)
+         if (b1[i] != b2[i])
+            return (b1[i] & 0xff) - (b2[i] & 0xff);
+      return b1.length - b2.length;
+   }
+
+   private static int mask(String operator) {
+      switch (operator) {
+         case "=":  return EQ;
+         case "!=":
+         case "<>": return NE;
+         case "<":  return LT;
+         case "<=": return LE;
+         case ">":  return GT;
+         case ">=": return GE;
+         default:   return -1;
+      }
+   }
+
+   /**
+    * Swap the less-than and greater-than bits of the mask.
+    */
+   private static int flip(int mask) {
+      return (mask & EQ) | ((mask & 1) << 2) | ((mask & 4) >> 2);
+   }
+
+   /**
+    * Return the type of the expression, or 0 if
+    * the expression names a field that the scan cannot bind.
+    */
+   private static int type(Expression e, Scan s, Schema sch) {
+      if (!e.isFieldName())
+         return (e.asConstant().asString() == null) ? INTEGER : VARCHAR;
+      String fldname = e.asFieldName();
+      if (!sch.hasField(fldname) || s.fieldIndex(fldname) < 0)
+         return 0;
+      return sch.type(fldname);
+   }
+
+   /**
+    * A term that is tested by the term itself.
+    * It filters a batch a row at a time, creating
+    * a constant for each field value.
+    */
+   static class Unbound extends Evaluator {
+      private Term t;
+      private Schema sch;
+
+      Unbound(Term t, Schema sch) {
+         this.t = t;
+         this.sch = sch;
+      }
+
+      boolean isSatisfied(Scan s) {
+         return t.isSatisfied(s);
+      }
+
+      boolean canFilter() {
+         return false;
+      }
+
+      void addColumns(Batch b) {
+         for (Expression e : new Expression[] {t.lhs(), t.rhs()})
+            if (e.isFieldName() && sch.hasField(e.asFieldName()))
+               b.addColumn(e.asFieldName(), sch.type(e.asFieldName()));
+      }
+
+      int filter(Batch b, int[] sel, int n) {
+         int m = 0;
+         for (int k=0; k<n; k++)
+            if (t.isSatisfied(value(b, t.lhs(), sel[k]), value(b, t.rhs(), sel[k])))
+               sel[m++] = sel[k];
+         return m;
+      }
+
+      private static Constant value(Batch b, Expression e, int row) {
+         if (!e.isFieldName())
+            return e.asConstant();
+         int col = b.columnIndex(e.asFieldName());
+         if (col < 0)
+            throw new RuntimeException("field " + e.asFieldName() + " not found.");
+         return b.getVal(col, row);
+      }
+   }
+
+   /**
+    * A term that compares two constants,
+    * whose value is known when it is compiled.
+    */
+   static class Folded extends Evaluator {
+      private boolean val;
+
+      Folded(boolean val) {
+         this.val = val;
+      }
+
+      boolean isSatisfied(Scan s) {
+         return val;
+      }
+
+      int filter(Batch b, int[] sel, int n) {
+         return val ? n : 0;
+      }
+   }
+
+   /**
+    * The comparison of an integer field with an integer constant.
+    * There is a subclass for each operator.
+    */
+   abstract static class IntConst extends Evaluator {
+      String fldname;
+      int ord, val;
+
+      IntConst(String fldname, int ord, int val) {
+         this.fldname = fldname;
+         this.ord = ord;
+         this.val = val;
+      }
+
+      void addColumns(Batch b) {
+         b.addColumn(fldname, INTEGER);
+      }
+   }
+
+   static class IntEq extends IntConst {
+      IntEq(String fldname, int ord, int val) {
+         super(fldname, ord, val);
+      }
+
+      boolean isSatisfied(Scan s) {
+         return s.getInt(ord) == val;
+      }
+
+      int filter(Batch b, int[] sel, int n) {
+         int[] col = b.ints(b.columnIndex(fldname));
+         int m = 0;
+         for (int k=0; k<n; k++)
+            if (col[sel[k]] == val)
+               sel[m++] = sel[k];
+         return m;
+      }
+   }
+
+   static class IntNe extends IntConst {
+      IntNe(String fldname, int ord, int val) {
+         super(fldname, ord, val);
+      }
+
+      boolean isSatisfied(Scan s) {
+         return s.getInt(ord) != val;
+      }
+
+      int filter(Batch b, int[] sel, int n) {
+         int[] col = b.ints(b.columnIndex(fldname));
+         int m = 0;
+         for (int k=0; k<n; k++)
+            if (col[sel[k]] != val)
+               sel[m++] = sel[k];
+         return m;
+      }
+   }
+
+   static class IntLt extends IntConst {
+      IntLt(String fldname, int ord, int val) {
+         super(fldname, ord, val);
+      }
+
+      boolean isSatisfied(Scan s) {
+         return s.getInt(ord) < val;
+      }
+
+      int filter(Batch b, int[] sel, int n) {
+         int[] col = b.ints(b.columnIndex(fldname));
+         int m = 0;
+         for (int k=0; k<n; k++)
+            if (col[sel[k]] < val)
+               sel[m++] = sel[k];
+         return m;
+      }
+   }
+
+   static class IntLe extends IntConst {
+      IntLe(String fldname, int ord, int val) {
+         super(fldname, ord, val);
+      }
+
+      boolean isSatisfied(Scan s) {
+         return s.getInt(ord) <= val;
+      }
+
+      int filter(Batch b, int[] sel, int n) {
+         int[] col = b.ints(b.columnIndex(fldname));
+         int m = 0;
+         for (int k=0; k<n; k++)
+            if (col[sel[k]] <= val)
+               sel[m++] = sel[k];
+         return m;
+      }
+   }
+
+   static class IntGt extends IntConst {
+      IntGt(String fldname, int ord, int val) {
+         super(fldname, ord, val);
+      }
+
+      boolean isSatisfied(Scan s) {
+         return s.getInt(ord) > val;
+      }
+
+      int filter(Batch b, int[] sel, int n) {
+         int[] col = b.ints(b.columnIndex(fldname));
+         int m = 0;
+         for (int k=0; k<n; k++)
+            if (col[sel[k]] > val)
+               sel[m++] = sel[k];
+         return m;
+      }
+   }
+
+   static class IntGe extends IntConst {
+      IntGe(String fldname, int ord, int val) {
+         super(fldname, ord, val);
+      }
+
+      boolean isSatisfied(Scan s) {
+         return s.getInt(ord) >= val;
+      }
+
+      int filter(Batch b, int[] sel, int n) {
+         int[] col = b.ints(b.columnIndex(fldname));
+         int m = 0;
+         for (int k=0; k<n; k++)
+            if (col[sel[k]] >= val)
+               sel[m++] = sel[k];
+         return m;
+      }
+   }
+
+   /**
+    * The comparison of two integer fields.
+    */
+   static class IntFields extends Evaluator {
+      private String fld1, fld2;
+      private int ord1, ord2, mask;
+
+      IntFields(String fld1, int ord1, String fld2, int ord2, int mask) {
+         this.fld1 = fld1;
+         this.ord1 = ord1;
+         this.fld2 = fld2;
+         this.ord2 = ord2;
+         this.mask = mask;
+      }
+
+      boolean isSatisfied(Scan s) {
+         return accepts(mask, Integer.compare(s.getInt(ord1), s.getInt(ord2)));
+      }
+
+      void addColumns(Batch b) {
+         b.addColumn(fld1, INTEGER);
+         b.addColumn(fld2, INTEGER);
+      }
+
+      int filter(Batch b, int[] sel, int n) {
+         int[] col1 = b.ints(b.columnIndex(fld1));
+         int[] col2 = b.ints(b.columnIndex(fld2));
+         int m = 0;
+         for (int k=0; k<n; k++) {
+            int row = sel[k];
+            if (accepts(mask, Integer.compare(col1[row], col2[row])))
+               sel[m++] = row;
+         }
+         return m;
+      }
+   }
+
+   /**
+    * The test that a string field equals a string constant,
+    * which compares bytes without ordering them.
+    */
+   static class StrEq extends Evaluator {
+      private String fldname, val;
+      private int ord;
+      private byte[] bytes;
+
+      StrEq(String fldname, int ord, String val) {
+         this.fldname = fldname;
+         this.ord = ord;
+         this.val = val;
+         bytes = val.getBytes(StandardCharsets.US_ASCII);
+      }
+
+      boolean isSatisfied(Scan s) {
+         return Arrays.equals(s.getBytes(ord), bytes);
+      }
+
+      void addColumns(Batch b) {
+         b.addColumn(fldname, VARCHAR);
+      }
+
+      int filter(Batch b, int[] sel, int n) {
+         String[] col = b.strings(b.columnIndex(fldname));
+         int m = 0;
+         for (int k=0; k<n; k++)
+            if (val.equals(col[sel[k]]))
+               sel[m++] = sel[k];
+         return m;
+      }
+   }
+
+   /**
+    * The comparison of a string field with a string constant.
+    */
+   static class StrConst extends Evaluator {
+      private String fldname, val;
+      private int ord, mask;
+      private byte[] bytes;
+
+      StrConst(String fldname, int ord, String val, int mask) {
+         this.fldname = fldname;
+         this.ord = ord;
+         this.val = val;
+         this.mask = mask;
+         bytes = val.getBytes(StandardCharsets.US_ASCII);
+      }
+
+      boolean isSatisfied(Scan s) {
+         return accepts(mask, compare(s.getBytes(ord), bytes));
+      }
+
+      void addColumns(Batch b) {
+         b.addColumn(fldname, VARCHAR);
+      }
+
+      int filter(Batch b, int[] sel, int n) {
+         String[] col = b.strings(b.columnIndex(fldname));
+         int m = 0;
+         for (int k=0; k<n; k++)
+            if (accepts(mask, col[sel[k]].compareTo(val)))
+               sel[m++] = sel[k];
+         return m;
+      }
+   }
+
+   /**
+    * The comparison of two string fields.
+    */
+   static class StrFields extends Evaluator {
+      private String fld1, fld2;
+      private int ord1, ord2, mask;
+
+      StrFields(String fld1, int ord1, String fld2, int ord2, int mask) {
+         this.fld1 = fld1;
+         this.ord1 = ord1;
+         this.fld2 = fld2;
+         this.ord2 = ord2;
+         this.mask = mask;
+      }
+
+      boolean isSatisfied(Scan s) {
+         return accepts(mask, compare(s.getBytes(ord1), s.getBytes(ord2)));
+      }
+
+      void addColumns(Batch b) {
+         b.addColumn(fld1, VARCHAR);
+         b.addColumn(fld2, VARCHAR);
+      }
+
+      int filter(Batch b, int[] sel, int n) {
+         String[] col1 = b.strings(b.columnIndex(fld1));
+         String[] col2 = b.strings(b.columnIndex(fld2));
+         int m = 0;
+         for (int k=0; k<n; k++) {
+            int row = sel[k];
+            if (accepts(mask, col1[row].compareTo(col2[row])))
+               sel[m++] = row;
+         }
+         return m;
+      }
+   }
+}
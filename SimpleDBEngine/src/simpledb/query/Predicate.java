@@ -35,6 +35,15 @@ public class Predicate {
       terms.addAll(pred.terms);
    }
 
+   /**
+    * Return whether the predicate has no terms,
+    * and so is satisfied by every record.
+    * @return true if the predicate is empty
+    */
+   public boolean isEmpty() {
+      return terms.isEmpty();
+   }
+
    /**
     * Returns true if the predicate evaluates to true
     * with respect to the specified scan.
@@ -48,6 +57,18 @@ public class Predicate {
       return true;
    }
 
+   /**
+    * Bind the predicate to the field ordinals of the specified scan,
+    * so that it can be evaluated for each of the scan's records
+    * without looking up field names or creating constants.
+    * @param s the scan whose records will be tested
+    * @param sch the schema of the scan
+    * @return the bound predicate
+    */
+   public BoundPredicate bind(Scan s, Schema sch) {
+      return new BoundPredicate(terms, s, sch);
+   }
+
    /** 
     * Calculate the extent to which selecting on the predicate 
     * reduces the number of records output by a query.
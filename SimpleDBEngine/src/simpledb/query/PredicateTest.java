@@ -0,0 +1,174 @@
+package simpledb.query;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import simpledb.record.Schema;
+
+/**
+ * Tests predicates both by their terms and compiled for a scan,
+ * and checks that both accept the same records, as does
+ * the compiled predicate filtering batches of the records
+ * (a row at a time for the terms that cannot be compiled).
+ * The records are held in memory, so that the time per record
+ * that is printed is the cost of evaluating the predicate
+ * rather than the cost of reading blocks.
+ */
+public class PredicateTest {
+   private static final int ROWS = 100000;
+
+   public static void main(String[] args) {
+      Schema sch = new Schema();
+      sch.addIntField("a");
+      sch.addStringField("b", 9);
+      sch.addIntField("c");
+      sch.addStringField("d", 9);
+      MemoryScan s = new MemoryScan(ROWS);
+
+      check("a<40", s, sch, term("a", 40, "<"));
+      check("40>a", s, sch, term(40, "a", ">"));
+      check("a<>3 and b>=b2", s, sch, term("a", 3, "<>"), term("b", "b2", ">="));
+      check("b=b5", s, sch, term("b", "b5", "="));
+      check("b5<=b", s, sch, term("b5", "b", "<="));
+      check("a=c and b<>d", s, sch, fields("a", "c", "="), fields("b", "d", "<>"));
+      check("a>=c and d<b", s, sch, fields("a", "c", ">="), fields("d", "b", "<"));
+      check("1=1 and a<=10", s, sch, term(1, 1, "="), term("a", 10, "<="));
+      check("1=2", s, sch, term(1, 2, "="));
+      check("a=b5 and c>90", s, sch, term("a", "b5", "="), term("c", 90, ">"));
+   }
+
+   private static void check(String name, MemoryScan s, Schema sch, Term... terms) {
+      Predicate pred = new Predicate();
+      for (Term t : terms)
+         pred.conjoinWith(new Predicate(t));
+      BoundPredicate bound = pred.bind(s, sch);
+
+      // the first rounds warm up both forms; the best time is printed
+      int byterm = 0, compiled = 0;
+      long termtime = Long.MAX_VALUE, compiledtime = Long.MAX_VALUE;
+      for (int round=0; round<10; round++) {
+         long start = System.nanoTime();
+         byterm = count(s, pred, null);
+         termtime = Math.min(termtime, System.nanoTime() - start);
+         start = System.nanoTime();
+         compiled = count(s, null, bound);
+         compiledtime = Math.min(compiledtime, System.nanoTime() - start);
+      }
+      int batched = countBatches(s, bound, sch);
+      System.out.printf("%s: %d records by term, %d compiled, %d by batch, %s; %.1fns vs %.1fns per record%n",
+            name, byterm, compiled, batched, (byterm == compiled && byterm == batched) ? "same" : "DIFFERENT",
+            (double) termtime / ROWS, (double) compiledtime / ROWS);
+   }
+
+   private static int count(Scan s, Predicate pred, BoundPredicate bound) {
+      int n = 0;
+      s.beforeFirst();
+      while (s.next())
+         if (bound == null ? pred.isSatisfied(s) : bound.isSatisfied(s))
+            n++;
+      return n;
+   }
+
+   private static int countBatches(Scan s, BoundPredicate bound, Schema sch) {
+      Batch b = new Batch(Collections.emptyList(), sch);
+      bound.addColumns(b);
+      int n = 0;
+      s.beforeFirst();
+      while (s.nextBatch(b)) {
+         bound.filter(b);
+         n += b.selected();
+      }
+      return n;
+   }
+
+   private static Term term(Object lhs, Object rhs, String op) {
+      return new Term(expr(lhs), expr(rhs), op);
+   }
+
+   private static Term fields(String lhs, String rhs, String op) {
+      return new Term(new Expression(lhs), new Expression(rhs), op);
+   }
+
+   /**
+    * Make an expression from an integer, a field name
+    * (a one-letter string) or a string constant.
+    */
+   private static Expression expr(Object o) {
+      if (o instanceof Integer)
+         return new Expression(new Constant((Integer) o));
+      String str = (String) o;
+      if (str.length() == 1)
+         return new Expression(str);
+      return new Expression(new Constant(str));
+   }
+
+   /**
+    * A scan of records with the fields a, b, c and d,
+    * held in arrays.
+    */
+   private static class MemoryScan implements Scan {
+      private static final List<String> FIELDS = Arrays.asList("a", "b", "c", "d");
+      private int[] a, c;
+      private String[] b, d;
+      private byte[][] bbytes, dbytes;
+      private int pos = -1;
+
+      MemoryScan(int rows) {
+         a = new int[rows];
+         c = new int[rows];
+         b = new String[rows];
+         d = new String[rows];
+         bbytes = new byte[rows][];
+         dbytes = new byte[rows][];
+         Random rand = new Random(3223);
+         for (int i=0; i<rows; i++) {
+            a[i] = rand.nextInt(100);
+            c[i] = rand.nextInt(100);
+            b[i] = "b" + rand.nextInt(10);
+            d[i] = "b" + rand.nextInt(10);
+            bbytes[i] = b[i].getBytes(StandardCharsets.US_ASCII);
+            dbytes[i] = d[i].getBytes(StandardCharsets.US_ASCII);
+         }
+      }
+
+      public void beforeFirst() {
+         pos = -1;
+      }
+
+      public boolean next() {
+         pos++;
+         return pos < a.length;
+      }
+
+      public int getInt(String fldname) {
+         return getInt(fieldIndex(fldname));
+      }
+
+      public String getString(String fldname) {
+         return fldname.equals("b") ? b[pos] : d[pos];
+      }
+
+      public Constant getVal(String fldname) {
+         if (fldname.equals("a") || fldname.equals("c"))
+            return new Constant(getInt(fldname));
+         return new Constant(getString(fldname));
+      }
+
+      public int fieldIndex(String fldname) {
+         return FIELDS.indexOf(fldname);
+      }
+
+      public int getInt(int fldindex) {
+         return (fldindex == 0) ? a[pos] : c[pos];
+      }
+
+      public byte[] getBytes(int fldindex) {
+         return (fldindex == 1) ? bbytes[pos] : dbytes[pos];
+      }
+
+      public boolean hasField(String fldname) {
+         return FIELDS.contains(fldname);
+      }
+
+      public void close() {}
+   }
+}
@@ -88,6 +88,59 @@ public class ProductScan implements Scan {
          return s2.getVal(fldname);
    }
 
+   /**
+    * Return the ordinal of the specified field.
+    * The ordinal of a field of the LHS scan is twice its
+    * ordinal in that scan, and the ordinal of a field of the
+    * RHS scan is twice its ordinal in that scan, plus one.
+    * @see simpledb.query.Scan#fieldIndex(java.lang.String)
+    */
+   public int fieldIndex(String fldname) {
+      return joinIndex(s1.fieldIndex(fldname), s2.fieldIndex(fldname));
+   }
+
+   /**
+    * Return the integer value of the field having the
+    * specified ordinal, from the scan that contains it.
+    * @see simpledb.query.Scan#getInt(int)
+    */
+   public int getInt(int fldindex) {
+      if ((fldindex & 1) == 0)
+         return s1.getInt(fldindex >>> 1);
+      else
+         return s2.getInt(fldindex >>> 1);
+   }
+
+   /**
+    * Return the string bytes of the field having the
+    * specified ordinal, from the scan that contains it.
+    * @see simpledb.query.Scan#getBytes(int)
+    */
+   public byte[] getBytes(int fldindex) {
+      if ((fldindex & 1) == 0)
+         return s1.getBytes(fldindex >>> 1);
+      else
+         return s2.getBytes(fldindex >>> 1);
+   }
+
+   /**
+    * Combine the ordinals of a field in the two
+    * scans of a product or join into the field's ordinal
+    * in the product, as described in {@link #fieldIndex}.
+    * The field is taken from the first scan if both have it.
+    * @param i1 the field's ordinal in the first scan, or -1
+    * @param i2 the field's ordinal in the second scan, or -1
+    * @return the field's ordinal in the product, or -1
+    */
+   public static int joinIndex(int i1, int i2) {
+      if (i1 >= 0)
+         return i1 << 1;
+      else if (i2 >= 0)
+         return (i2 << 1) | 1;
+      else
+         return -1;
+   }
+
    /**
     * Returns true if the specified field is in
     * either of the underlying scans.
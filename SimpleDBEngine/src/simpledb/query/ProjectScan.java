@@ -7,11 +7,14 @@ import java.util.List;
  * algebra operator.
  * All methods except hasField delegate their work to the
  * underlying scan.
+ * A project scan can also have a limit, after which it stops
+ * reading records from the underlying scan.
  * @author Edward Sciore
  */
 public class ProjectScan implements Scan {
    private Scan s;
    private List<String> fieldlist;
+   private int limit, count = 0;
    
    /**
     * Create a project scan having the specified
@@ -20,15 +23,31 @@ public class ProjectScan implements Scan {
     * @param fieldlist the list of field names
     */
    public ProjectScan(Scan s, List<String> fieldlist) {
+      this(s, fieldlist, -1);
+   }
+   
+   /**
+    * Create a project scan that outputs at most
+    * the specified number of records.
+    * @param s the underlying scan
+    * @param fieldlist the list of field names
+    * @param limit the maximum number of records, or -1 for no limit
+    */
+   public ProjectScan(Scan s, List<String> fieldlist, int limit) {
       this.s = s;
       this.fieldlist = fieldlist;
+      this.limit = limit;
    }
    
    public void beforeFirst() {
       s.beforeFirst();
+      count = 0;
    }
    
    public boolean next() {
+      if (limit >= 0 && count >= limit)
+         return false;
+      count++;
       return s.next();
    }
    
@@ -53,6 +72,39 @@ public class ProjectScan implements Scan {
          throw new RuntimeException("field " + fldname + " not found.");
    }
 
+   /**
+    * Fill the batch from the underlying scan.
+    * The batch determines which fields are read,
+    * so its fields should be fields of the projection.
+    * If the scan has a limit, the rows beyond it are
+    * removed from the selection.
+    * @see simpledb.query.Scan#nextBatch(simpledb.query.Batch)
+    */
+   public boolean nextBatch(Batch b) {
+      if (limit < 0)
+         return s.nextBatch(b);
+      if (count >= limit || !s.nextBatch(b)) {
+         b.setSize(0);
+         return false;
+      }
+      if (b.selected() > limit - count)
+         b.setSelected(limit - count);
+      count += b.selected();
+      return true;
+   }
+   
+   public int fieldIndex(String fldname) {
+      return hasField(fldname) ? s.fieldIndex(fldname) : -1;
+   }
+   
+   public int getInt(int fldindex) {
+      return s.getInt(fldindex);
+   }
+   
+   public byte[] getBytes(int fldindex) {
+      return s.getBytes(fldindex);
+   }
+
    public boolean hasField(String fldname) {
       return fieldlist.contains(fldname);
    }
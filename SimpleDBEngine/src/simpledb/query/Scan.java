@@ -1,5 +1,8 @@
 package simpledb.query;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
 /**
  * The interface will be implemented by each query scan.
  * There is a Scan class for each relational
@@ -44,6 +47,81 @@ public interface Scan {
     */
    public Constant getVal(String fldname);
    
+   /**
+    * Return the ordinal of the specified field, which can be
+    * passed to {@link #getInt(int)} and {@link #getBytes(int)}
+    * in place of the field name.
+    * An ordinal is meaningful only to the scan that returned it,
+    * and should be obtained once, when the scan is opened,
+    * so that each record's values are read without a name lookup.
+    * @param fldname the name of the field
+    * @return the field's ordinal, or -1 if the scan does not have the field
+    */
+   public int fieldIndex(String fldname);
+   
+   /**
+    * Return the value of the integer field having the
+    * specified ordinal in the current record.
+    * @param fldindex the ordinal of the field
+    * @return the field's integer value in the current record
+    */
+   public int getInt(int fldindex);
+   
+   /**
+    * Return the characters of the string field having the
+    * specified ordinal in the current record, without
+    * decoding them into a string.
+    * @param fldindex the ordinal of the field
+    * @return the field's characters in the current record
+    */
+   public byte[] getBytes(int fldindex);
+   
+   /**
+    * Fill the specified batch with the next records of the scan,
+    * reading the values of the batch's fields.
+    * If the method returns true, at least one row of the batch
+    * is selected; if it returns false, there are no more records.
+    * A scan should be read either a record at a time or a
+    * batch at a time, until it is next positioned by beforeFirst;
+    * after that, the batch should be cleared (see {@link Batch#clear}).
+    * Once the method returns false, it continues to do so.
+    * <p>
+    * This default implementation reads the records a record at
+    * a time, by their field ordinals; a scan that can do better
+    * a batch at a time overrides it.
+    * @param b the batch to fill
+    * @return false if there are no more records
+    */
+   public default boolean nextBatch(Batch b) {
+      if (b.atEnd()) {
+         b.setSize(0);
+         return false;
+      }
+      List<String> fields = b.fields();
+      int[] ords = new int[fields.size()];
+      for (int c=0; c<ords.length; c++) {
+         ords[c] = fieldIndex(fields.get(c));
+         if (ords[c] < 0)
+            throw new RuntimeException("field " + fields.get(c) + " not found.");
+      }
+      int n = 0;
+      while (n < Batch.CAPACITY) {
+         if (!next()) {
+            b.setAtEnd();
+            break;
+         }
+         for (int c=0; c<ords.length; c++) {
+            if (b.isInt(c))
+               b.ints(c)[n] = getInt(ords[c]);
+            else
+               b.strings(c)[n] = new String(getBytes(ords[c]), StandardCharsets.US_ASCII);
+         }
+         n++;
+      }
+      b.setSize(n);
+      return n > 0;
+   }
+   
    /**
     * Return true if the scan has the specified field.
     * @param fldname the name of the field
@@ -0,0 +1,92 @@
+package simpledb.query;
+
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+import simpledb.record.*;
+
+/**
+ * Selects from a table and from a product of two tables,
+ * with predicates tested by field name and by field ordinal,
+ * and checks that both find the same records.
+ * The table is read in both record formats.
+ */
+public class ScanOrdinalTest {
+   public static void main(String[] args) throws Exception {
+      SimpleDB db = new SimpleDB("scanordinaltest");
+      Transaction tx = db.newTx();
+      Schema sch1 = new Schema();
+      sch1.addIntField("a");
+      sch1.addStringField("b", 9);
+      for (boolean slotted : new boolean[] {false, true}) {
+         Layout layout = new Layout(sch1, slotted);
+         String tblname = slotted ? "s1" : "t1";
+         UpdateScan us = new TableScan(tx, tblname, layout);
+         for (int i=0; i<2000; i++) {
+            us.insert();
+            us.setInt("a", i % 100);
+            us.setString("b", "b" + (i % 37));
+         }
+         us.close();
+
+         Predicate pred = new Predicate(new Term(new Expression("a"), new Expression(new Constant(40)), "<"));
+         pred.conjoinWith(new Predicate(new Term(new Expression("b"), new Expression(new Constant("b2")), ">=")));
+         pred.conjoinWith(new Predicate(new Term(new Expression(new Constant(3)), new Expression("a"), "<>")));
+         compare(tblname + " select", pred, () -> new TableScan(tx, tblname, layout), sch1);
+      }
+
+      Schema sch2 = new Schema();
+      sch2.addIntField("c");
+      sch2.addStringField("d", 9);
+      Layout layout2 = new Layout(sch2);
+      UpdateScan us = new TableScan(tx, "t2", layout2);
+      for (int i=0; i<50; i++) {
+         us.insert();
+         us.setInt("c", i);
+         us.setString("d", "b" + i);
+      }
+      us.close();
+      Layout layout1 = new Layout(sch1);
+      Schema prodsch = new Schema();
+      prodsch.addAll(sch1);
+      prodsch.addAll(sch2);
+      Predicate pred = new Predicate(new Term(new Expression("a"), new Expression("c"), "="));
+      pred.conjoinWith(new Predicate(new Term(new Expression("d"), new Expression("b"), "=")));
+      compare("product join", pred,
+            () -> new ProductScan(new TableScan(tx, "t1", layout1), new TableScan(tx, "t2", layout2)),
+            prodsch);
+
+      // a projection has no ordinal for a field that it hides
+      Scan s = new ProjectScan(new TableScan(tx, "t1", layout1), Arrays.asList("a"));
+      System.out.println("project scan ordinals: a=" + s.fieldIndex("a") + " b=" + s.fieldIndex("b")
+            + " (expected 0 and -1)");
+      s.close();
+      tx.commit();
+   }
+
+   private interface ScanMaker {
+      Scan open();
+   }
+
+   private static void compare(String name, Predicate pred, ScanMaker maker, Schema sch) {
+      long start = System.nanoTime();
+      Scan s = new SelectScan(maker.open(), pred);
+      List<String> byname = new ArrayList<>();
+      while (s.next())
+         byname.add(s.getInt("a") + s.getString("b"));
+      s.close();
+      long nametime = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      s = new SelectScan(maker.open(), pred, sch);
+      List<String> byordinal = new ArrayList<>();
+      while (s.next())
+         byordinal.add(s.getInt("a") + s.getString("b"));
+      s.close();
+      long ordtime = System.nanoTime() - start;
+
+      System.out.println(name + " (" + pred + "): " + byname.size() + " records by name, "
+            + byordinal.size() + " by ordinal, " + (byname.equals(byordinal) ? "same" : "DIFFERENT")
+            + "; " + nametime / 1000000 + "ms vs " + ordtime / 1000000 + "ms");
+   }
+}
@@ -12,6 +12,7 @@ import simpledb.record.*;
 public class SelectScan implements UpdateScan {
 	private Scan s;
 	private Predicate pred;
+	private BoundPredicate bound;
 
 	/**
 	 * Create a select scan having the specified underlying
@@ -24,6 +25,20 @@ public class SelectScan implements UpdateScan {
 		this.pred = pred;
 	}
 
+	/**
+	 * Create a select scan whose predicate is bound to the
+	 * field ordinals of the underlying scan, so that testing
+	 * a record does not look up fields by name.
+	 * @param s the scan of the underlying query
+	 * @param pred the selection predicate
+	 * @param sch the schema of the underlying query
+	 */
+	public SelectScan(Scan s, Predicate pred, Schema sch) {
+		this.s = s;
+		this.pred = pred;
+		bound = pred.bind(s, sch);
+	}
+
 	// Scan methods
 
 	public void beforeFirst() {
@@ -32,7 +47,7 @@ public class SelectScan implements UpdateScan {
 
 	public boolean next() {
 		while (s.next()) {
-			if (pred.isSatisfied(s))
+			if (bound != null ? bound.isSatisfied(s) : pred.isSatisfied(s))
 				return true;
 		}
 		return false;
@@ -50,6 +65,37 @@ public class SelectScan implements UpdateScan {
       return s.getVal(fldname);
    }
 
+	/**
+	 * Fill the batch with the next records of the underlying
+	 * scan that satisfy the predicate.
+	 * A bound predicate filters each batch of the underlying
+	 * scan as a whole, adding the columns of the fields that it
+	 * tests to the batch if necessary.
+	 */
+	public boolean nextBatch(Batch b) {
+		if (bound == null || !bound.canFilter())
+			return UpdateScan.super.nextBatch(b);
+		bound.addColumns(b);
+		while (s.nextBatch(b)) {
+			bound.filter(b);
+			if (b.selected() > 0)
+				return true;
+		}
+		return false;
+	}
+
+	public int fieldIndex(String fldname) {
+		return s.fieldIndex(fldname);
+	}
+
+	public int getInt(int fldindex) {
+		return s.getInt(fldindex);
+	}
+
+	public byte[] getBytes(int fldindex) {
+		return s.getBytes(fldindex);
+	}
+
 	public boolean hasField(String fldname) {
 		return s.hasField(fldname);
 	}
@@ -33,9 +33,17 @@ public class Term {
     * @return true if both expressions have the same value in the scan
     */
    public boolean isSatisfied(Scan s) {
-      Constant lhsval = lhs.evaluate(s);
-      Constant rhsval = rhs.evaluate(s);
-      
+      return isSatisfied(lhs.evaluate(s), rhs.evaluate(s));
+   }
+
+   /**
+    * Return true if the operator of the term holds
+    * between the specified values of its expressions.
+    * @param lhsval the value of the left-hand expression
+    * @param rhsval the value of the right-hand expression
+    * @return true if the term is satisfied by the values
+    */
+   boolean isSatisfied(Constant lhsval, Constant rhsval) {
       switch(this.operator) {
     	  case "=":
     		  return isEqual(lhsval, rhsval);
@@ -162,6 +170,14 @@ public class Term {
       return lhs.appliesTo(sch) && rhs.appliesTo(sch);
    }
    
+   Expression lhs() {
+      return lhs;
+   }
+   
+   Expression rhs() {
+      return rhs;
+   }
+   
    public String getOperator() {
 	   return this.operator;
    }
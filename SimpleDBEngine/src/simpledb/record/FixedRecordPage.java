@@ -0,0 +1,201 @@
+package simpledb.record;
+
+import static java.sql.Types.INTEGER;
+import java.util.*;
+import simpledb.file.*;
+import simpledb.query.Constant;
+import simpledb.tx.Transaction;
+
+/**
+ * Store a record at a given location in a block. 
+ * Every slot has the same size, and begins with
+ * an empty/inuse flag.
+ * @author Edward Sciore
+ */
+public class FixedRecordPage implements RecordPage {
+   private Transaction tx;
+   private BlockId blk;
+   private Layout layout;
+
+   public FixedRecordPage(Transaction tx, BlockId blk, Layout layout) {
+      this.tx = tx;
+      this.blk = blk;
+      this.layout = layout;
+      tx.pin(blk);
+   }
+
+   /**
+    * Return the integer value stored for the
+    * specified field of a specified slot.
+    * @param fldname the name of the field.
+    * @return the integer stored in that field
+    */
+   public int getInt(int slot, String fldname) {
+      int fldpos = offset(slot) + layout.offset(fldname);
+      return tx.getInt(blk, fldpos);
+   }
+
+   /**
+    * Return the string value stored for the
+    * specified field of the specified slot.
+    * @param fldname the name of the field.
+    * @return the string stored in that field
+    */
+   public String getString(int slot, String fldname) {
+      int fldpos = offset(slot) + layout.offset(fldname);
+      return tx.getString(blk, fldpos);
+   }
+
+   /**
+    * Return the integer value stored for the field at
+    * the specified position in the schema, whose offset
+    * the layout keeps in an array.
+    */
+   public int getInt(int slot, int fldindex) {
+      return tx.getInt(blk, offset(slot) + layout.offset(fldindex));
+   }
+
+   /**
+    * Return the characters of the string stored for the
+    * field at the specified position in the schema.
+    */
+   public byte[] getBytes(int slot, int fldindex) {
+      return tx.getBytes(blk, offset(slot) + layout.offset(fldindex));
+   }
+
+   /**
+    * Read the values of an integer field for several slots,
+    * from the field's offset in each slot.
+    */
+   public void getInts(int[] slots, int n, int fldindex, int[] dest, int destpos) {
+      tx.getInts(blk, fieldOffsets(slots, n, fldindex), n, dest, destpos);
+   }
+
+   /**
+    * Read the values of a string field for several slots,
+    * from the field's offset in each slot.
+    */
+   public void getStrings(int[] slots, int n, int fldindex, String[] dest, int destpos) {
+      tx.getStrings(blk, fieldOffsets(slots, n, fldindex), n, dest, destpos);
+   }
+
+   /**
+    * Store an integer at the specified field
+    * of the specified slot.
+    * @param fldname the name of the field
+    * @param val the integer value stored in that field
+    */
+   public void setInt(int slot, String fldname, int val) {
+      int fldpos = offset(slot) + layout.offset(fldname);
+      tx.setInt(blk, fldpos, val, true);
+   }
+
+   /**
+    * Store a string at the specified field
+    * of the specified slot.
+    * @param fldname the name of the field
+    * @param val the string value stored in that field
+    */
+   public void setString(int slot, String fldname, String val) {
+      int fldpos = offset(slot) + layout.offset(fldname);
+      tx.setString(blk, fldpos, val, true);
+   }
+   
+   public void delete(int slot) {
+      setFlag(slot, EMPTY);
+   }
+   
+   /** Use the layout to format a new block of records.
+    *  These values should not be logged 
+    *  (because the old values are meaningless).
+    */ 
+   public void format() {
+      int slot = 0;
+      while (isValidSlot(slot)) {
+         tx.setInt(blk, offset(slot), EMPTY, false); 
+         Schema sch = layout.schema();
+         for (String fldname : sch.fields()) {
+            int fldpos = offset(slot) + layout.offset(fldname);
+            if (sch.type(fldname) == INTEGER)
+               tx.setInt(blk, fldpos, 0, false);
+            else
+               tx.setString(blk, fldpos, "", false);
+         }
+         slot++;
+      }
+   }
+
+   public int nextAfter(int slot) {
+      return searchAfter(slot, USED);
+   }
+ 
+   public int insertAfter(int slot) {
+      int newslot = searchAfter(slot, EMPTY);
+      if (newslot >= 0)
+         setFlag(newslot, USED);
+      return newslot;
+   }
+  
+   /**
+    * Store records in a newly-formatted block,
+    * logging only the setting of each slot's flag.
+    * @see RecordPage#load(List)
+    */
+   public int load(List<List<Constant>> recs) {
+      Schema sch = layout.schema();
+      int slot = 0;
+      while (slot < recs.size() && isValidSlot(slot)) {
+         Iterator<Constant> vals = recs.get(slot).iterator();
+         for (String fldname : sch.fields()) {
+            int fldpos = offset(slot) + layout.offset(fldname);
+            Constant val = vals.next();
+            if (sch.type(fldname) == INTEGER)
+               tx.setInt(blk, fldpos, val.asInt(), false);
+            else
+               tx.setString(blk, fldpos, val.asString(), false);
+         }
+         setFlag(slot, USED);
+         slot++;
+      }
+      return slot;
+   }
+
+   public BlockId block() {
+      return blk;
+   }
+   
+   // Private auxiliary methods
+   
+   /**
+    * Set the record's empty/inuse flag.
+    */
+   private void setFlag(int slot, int flag) {
+      tx.setInt(blk, offset(slot), flag, true); 
+   }
+
+   private int searchAfter(int slot, int flag) {
+      slot++;
+      while (isValidSlot(slot)) {
+         if (tx.getInt(blk, offset(slot)) == flag)
+            return slot;
+         slot++;
+      }
+      return -1;
+   }
+
+   private boolean isValidSlot(int slot) {
+      return offset(slot+1) <= tx.blockSize();
+   }
+
+   private int[] fieldOffsets(int[] slots, int n, int fldindex) {
+      int fldoffset = layout.offset(fldindex);
+      int[] offsets = new int[n];
+      for (int i=0; i<n; i++)
+         offsets[i] = offset(slots[i]) + fldoffset;
+      return offsets;
+   }
+
+   private int offset(int slot) {
+      return slot * layout.slotSize();
+   }
+}
@@ -0,0 +1,97 @@
+package simpledb.record;
+
+import simpledb.file.BlockId;
+import simpledb.tx.Transaction;
+
+/**
+ * The free-space map of a table, which records the blocks
+ * of the table that are known to be full, so that an insertion
+ * can go directly to a block that may have room.
+ * The map is stored in its own file, as an array of integers:
+ * integer 0 is the number of the first block that may have room,
+ * and integer b+1 is nonzero if block b is full.
+ * <p>
+ * The map is a hint (see {@link Transaction#getHint}).
+ * An insertion that finds no room in a block that the map
+ * says has some marks the block as full and asks again;
+ * a block that the map says is full regains its room
+ * only when one of its records is deleted.
+ */
+public class FreeSpaceMap {
+   private static final int FULL = 1, ROOM = 0;
+   private Transaction tx;
+   private String filename;
+   private int perblock;
+
+   /**
+    * Create a free-space map for the specified table.
+    * @param tx the current transaction
+    * @param tblname the name of the table
+    */
+   public FreeSpaceMap(Transaction tx, String tblname) {
+      this.tx = tx;
+      filename = tblname + ".fsm";
+      perblock = tx.blockSize() / Integer.BYTES;
+   }
+
+   /**
+    * Return the first block of the table that may have room
+    * for another record, starting from the lowest such block
+    * recorded in the map.
+    * Each block of the map is pinned once, and its
+    * entries are scanned together.
+    * @param numblocks the number of blocks in the table
+    * @return the number of the block, or -1 if every block is full
+    */
+   public int findSpace(int numblocks) {
+      int start = get(0);
+      int[] hints = new int[perblock];
+      int blknum = start;
+      while (blknum < numblocks) {
+         // read the rest of the map block holding blknum's entry
+         int n = blknum + 1;
+         int count = Math.min(perblock - n % perblock, numblocks - blknum);
+         BlockId blk = new BlockId(filename, n / perblock);
+         tx.getHints(blk, (n % perblock) * Integer.BYTES, count, hints);
+         for (int i=0; i<count; i++, blknum++)
+            if (hints[i] != FULL) {
+               if (blknum != start)
+                  set(0, blknum);
+               return blknum;
+            }
+      }
+      if (start != numblocks)
+         set(0, numblocks);
+      return -1;
+   }
+
+   /**
+    * Record that the specified block has no room.
+    * @param blknum the number of the block
+    */
+   public void setFull(int blknum) {
+      set(blknum + 1, FULL);
+   }
+
+   /**
+    * Record that the specified block has room,
+    * because one of its records was deleted.
+    * @param blknum the number of the block
+    */
+   public void setRoom(int blknum) {
+      if (get(blknum + 1) == FULL)
+         set(blknum + 1, ROOM);
+      if (get(0) > blknum)
+         set(0, blknum);
+   }
+
+   private int get(int n) {
+      BlockId blk = new BlockId(filename, n / perblock);
+      return tx.getHint(blk, (n % perblock) * Integer.BYTES);
+   }
+
+   private void set(int n, int val) {
+      BlockId blk = new BlockId(filename, n / perblock);
+      tx.setHint(blk, (n % perblock) * Integer.BYTES, val);
+   }
+}
@@ -0,0 +1,104 @@
+package simpledb.record;
+
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+/**
+ * Fills a table, deletes records from two of its blocks,
+ * and checks that new records (each inserted by a new scan,
+ * as an SQL insert statement does) go into those blocks
+ * and then to the end of the table.
+ * Then checks that the map also learns of the room freed in
+ * a slotted table when records shrink, and when a record grows
+ * so much that it moves to another block.
+ */
+public class FreeSpaceMapTest {
+   public static void main(String[] args) throws Exception {
+      SimpleDB db = new SimpleDB("fsmtest", 400, 8);
+      Transaction tx = db.newTx();
+      Schema sch = new Schema();
+      sch.addIntField("A");
+      sch.addStringField("B", 9);
+      Layout layout = new Layout(sch);
+
+      TableScan ts = new TableScan(tx, "T", layout);
+      for (int i=0; i<2000; i++) {
+         ts.insert();
+         ts.setInt("A", i);
+         ts.setString("B", "rec" + i);
+      }
+      ts.beforeFirst();
+      int deleted = 0;
+      while (ts.next()) {
+         int blknum = ts.getRid().blockNumber();
+         if (blknum == 40 || (blknum == 70 && ts.getRid().slot() < 2)) {
+            ts.delete();
+            deleted++;
+         }
+      }
+      ts.close();
+      int size = tx.size("T.tbl");
+      tx.commit();
+      System.out.println("deleted " + deleted + " records from a table of " + size + " blocks");
+
+      tx = db.newTx();
+      long start = System.nanoTime();
+      String blocks = "";
+      int last = -1;
+      for (int i=0; i<deleted+1; i++) {
+         ts = new TableScan(tx, "T", layout);
+         ts.insert();
+         ts.setInt("A", -1);
+         ts.setString("B", "new");
+         int blknum = ts.getRid().blockNumber();
+         if (blknum != last)
+            blocks += " " + blknum;
+         last = blknum;
+         ts.close();
+      }
+      long ms = (System.nanoTime() - start) / 1000000;
+      tx.commit();
+      System.out.println((deleted+1) + " inserts went to blocks" + blocks
+            + " (expected 40 70 " + (size-1) + ") in " + ms + "ms");
+
+      tx = db.newTx();
+      Schema ssch = new Schema();
+      ssch.addIntField("A");
+      ssch.addStringField("B", 80);
+      Layout slotted = new Layout(ssch, true);
+      String full = "0123456789012345678901234567890123456789";
+      fill(tx, "S", slotted, full);
+      fill(tx, "M", slotted, full);
+      ts = new TableScan(tx, "S", slotted);
+      while (ts.next())
+         if (ts.getRid().blockNumber() == 10)
+            ts.setString("B", "short");
+      ts.close();
+      ts = new TableScan(tx, "M", slotted);
+      while (ts.next())
+         if (ts.getRid().blockNumber() == 20)
+            ts.setString("B", full + full);  // some of them move out
+      ts.close();
+      tx.commit();
+
+      tx = db.newTx();
+      ts = new TableScan(tx, "S", slotted);
+      ts.insert();
+      int blknum = ts.getRid().blockNumber();
+      ts.close();
+      int mblknum = new FreeSpaceMap(tx, "M").findSpace(tx.size("M.tbl"));
+      tx.commit();
+      System.out.println("after records shrank, an insert went to block " + blknum + " (expected 10)");
+      System.out.println("after a record moved out, the map offers block " + mblknum + " (expected 20)");
+   }
+
+   private static void fill(Transaction tx, String tblname, Layout layout, String val) {
+      TableScan ts = new TableScan(tx, tblname, layout);
+      for (int i=0; i<300; i++) {
+         ts.insert();
+         ts.setInt("A", i);
+         ts.setString("B", val);
+      }
+      ts.close();
+   }
+}
@@ -8,13 +8,19 @@ import simpledb.file.Page;
  * Description of the structure of a record.
  * It contains the name, type, length and offset of
  * each field of the table.
+ * A layout also says whether the table uses
+ * fixed-size slots ({@link FixedRecordPage}) or
+ * slotted pages with variable-length records
+ * ({@link SlottedRecordPage}).
  * @author Edward Sciore
  *
  */
 public class Layout {
    private Schema schema;
    private Map<String,Integer> offsets;
+   private int[] ordoffsets;
    private int slotsize;
+   private boolean slotted;
 
    /**
     * This constructor creates a Layout object from a schema. 
@@ -25,14 +31,30 @@ public class Layout {
     * @param schema the schema of the table's records
     */
    public Layout(Schema schema) {
+      this(schema, false);
+   }
+
+   /**
+    * This constructor creates a Layout object from a schema,
+    * in the specified record format.
+    * For a slotted layout, the offsets are those that
+    * the fields would have in a fixed-size slot, and the
+    * slot size is the space taken by the largest possible
+    * record, including its slot directory entry.
+    * @param schema the schema of the table's records
+    * @param slotted whether the table uses slotted pages
+    */
+   public Layout(Schema schema, boolean slotted) {
       this.schema = schema;
+      this.slotted = slotted;
       offsets  = new HashMap<>();
       int pos = Integer.BYTES; // leave space for the empty/inuse flag
       for (String fldname : schema.fields()) {
          offsets.put(fldname, pos);
          pos += lengthInBytes(fldname);
       }
-      slotsize = pos;
+      slotsize = slotted ? SlottedRecordPage.maxSlotSize(schema) : pos;
+      ordoffsets = ordinalOffsets();
    }
 
    /**
@@ -45,9 +67,23 @@ public class Layout {
     * @param recordlen the already-calculated length of each record
     */
    public Layout(Schema schema, Map<String,Integer> offsets, int slotsize) {
+      this(schema, offsets, slotsize, false);
+   }
+
+   /**
+    * Create a Layout object from the specified metadata,
+    * in the specified record format.
+    * @param schema the schema of the table's records
+    * @param offsets the already-calculated offsets of the fields within a record
+    * @param slotsize the already-calculated length of each record
+    * @param slotted whether the table uses slotted pages
+    */
+   public Layout(Schema schema, Map<String,Integer> offsets, int slotsize, boolean slotted) {
       this.schema    = schema;
       this.offsets   = offsets;
       this.slotsize = slotsize;
+      this.slotted  = slotted;
+      ordoffsets = ordinalOffsets();
    }
 
    /**
@@ -67,6 +103,16 @@ public class Layout {
       return offsets.get(fldname);
    }
 
+   /**
+    * Return the offset of a field within a record,
+    * given the field's position in the schema.
+    * @param fldindex the position of the field in the schema
+    * @return the offset of that field within a record
+    */
+   public int offset(int fldindex) {
+      return ordoffsets[fldindex];
+   }
+
    /**
     * Return the size of a slot, in bytes.
     * @return the size of a slot
@@ -75,6 +121,23 @@ public class Layout {
       return slotsize;
    }
 
+   /**
+    * Return true if the table's records are stored
+    * in slotted pages.
+    * @return true if the layout is slotted
+    */
+   public boolean isSlotted() {
+      return slotted;
+   }
+
+   private int[] ordinalOffsets() {
+      List<String> fields = schema.fields();
+      int[] result = new int[fields.size()];
+      for (int i=0; i<result.length; i++)
+         result[i] = offsets.get(fields.get(i));
+      return result;
+   }
+
    private int lengthInBytes(String fldname) {
       int fldtype = schema.type(fldname);
       if (fldtype == INTEGER)
@@ -1,25 +1,21 @@
 package simpledb.record;
 
-import static java.sql.Types.INTEGER;
-import simpledb.file.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import simpledb.file.BlockId;
+import simpledb.query.Constant;
 import simpledb.tx.Transaction;
 
 /**
- * Store a record at a given location in a block. 
- * @author Edward Sciore
+ * The interface implemented by the record formats.
+ * A record page stores the records of one block,
+ * each in a numbered slot. A slot's number never
+ * changes while its record exists, so that a block
+ * number and a slot number identify a record (see {@link RID}).
+ * Creating a record page pins its block.
  */
-public class RecordPage {
-   public static final int EMPTY = 0, USED = 1;
-   private Transaction tx;
-   private BlockId blk;
-   private Layout layout;
-
-   public RecordPage(Transaction tx, BlockId blk, Layout layout) {
-      this.tx = tx;
-      this.blk = blk;
-      this.layout = layout;
-      tx.pin(blk);
-   }
+public interface RecordPage {
+   static final int EMPTY = 0, USED = 1;
 
    /**
     * Return the integer value stored for the
@@ -27,10 +23,7 @@ public class RecordPage {
     * @param fldname the name of the field.
     * @return the integer stored in that field
     */
-   public int getInt(int slot, String fldname) {
-      int fldpos = offset(slot) + layout.offset(fldname);
-      return tx.getInt(blk, fldpos);
-   }
+   int getInt(int slot, String fldname);
 
    /**
     * Return the string value stored for the
@@ -38,9 +31,51 @@ public class RecordPage {
     * @param fldname the name of the field.
     * @return the string stored in that field
     */
-   public String getString(int slot, String fldname) {
-      int fldpos = offset(slot) + layout.offset(fldname);
-      return tx.getString(blk, fldpos);
+   String getString(int slot, String fldname);
+
+   /**
+    * Return the integer value stored for the field
+    * at the specified position in the schema.
+    * @param fldindex the position of the field in the schema
+    * @return the integer stored in that field
+    */
+   int getInt(int slot, int fldindex);
+
+   /**
+    * Return the characters of the string stored for the
+    * field at the specified position in the schema,
+    * without decoding them into a string.
+    * @param fldindex the position of the field in the schema
+    * @return the bytes of the string stored in that field
+    */
+   byte[] getBytes(int slot, int fldindex);
+
+   /**
+    * Read the integer values of the field at the specified
+    * position in the schema for several slots into an array.
+    * @param slots the slots
+    * @param n the number of slots
+    * @param fldindex the position of the field in the schema
+    * @param dest the array that receives the values
+    * @param destpos the position in dest of the first value
+    */
+   default void getInts(int[] slots, int n, int fldindex, int[] dest, int destpos) {
+      for (int i=0; i<n; i++)
+         dest[destpos+i] = getInt(slots[i], fldindex);
+   }
+
+   /**
+    * Read the string values of the field at the specified
+    * position in the schema for several slots into an array.
+    * @param slots the slots
+    * @param n the number of slots
+    * @param fldindex the position of the field in the schema
+    * @param dest the array that receives the values
+    * @param destpos the position in dest of the first value
+    */
+   default void getStrings(int[] slots, int n, int fldindex, String[] dest, int destpos) {
+      for (int i=0; i<n; i++)
+         dest[destpos+i] = new String(getBytes(slots[i], fldindex), StandardCharsets.US_ASCII);
    }
 
    /**
@@ -49,10 +84,7 @@ public class RecordPage {
     * @param fldname the name of the field
     * @param val the integer value stored in that field
     */
-   public void setInt(int slot, String fldname, int val) {
-      int fldpos = offset(slot) + layout.offset(fldname);
-      tx.setInt(blk, fldpos, val, true);
-   }
+   void setInt(int slot, String fldname, int val);
 
    /**
     * Store a string at the specified field
@@ -60,82 +92,77 @@ public class RecordPage {
     * @param fldname the name of the field
     * @param val the string value stored in that field
     */
-   public void setString(int slot, String fldname, String val) {
-      int fldpos = offset(slot) + layout.offset(fldname);
-      tx.setString(blk, fldpos, val, true);
-   }
-   
-   public void delete(int slot) {
-      setFlag(slot, EMPTY);
-   }
-   
-   /** Use the layout to format a new block of records.
-    *  These values should not be logged 
-    *  (because the old values are meaningless).
-    */ 
-   public void format() {
-      int slot = 0;
-      while (isValidSlot(slot)) {
-         tx.setInt(blk, offset(slot), EMPTY, false); 
-         Schema sch = layout.schema();
-         for (String fldname : sch.fields()) {
-            int fldpos = offset(slot) + layout.offset(fldname);
-            if (sch.type(fldname) == INTEGER)
-               tx.setInt(blk, fldpos, 0, false);
-            else
-               tx.setString(blk, fldpos, "", false);
-         }
-         slot++;
-      }
-   }
+   void setString(int slot, String fldname, String val);
 
-   public int nextAfter(int slot) {
-      return searchAfter(slot, USED);
-   }
- 
-   public int insertAfter(int slot) {
-      int newslot = searchAfter(slot, EMPTY);
-      if (newslot >= 0)
-         setFlag(newslot, USED);
-      return newslot;
-   }
-  
-   public BlockId block() {
-      return blk;
-   }
-   
-   // Private auxiliary methods
-   
    /**
-    * Set the record's empty/inuse flag.
+    * Delete the record in the specified slot.
+    * @param slot the slot of the record
     */
-   private void setFlag(int slot, int flag) {
-      tx.setInt(blk, offset(slot), flag, true); 
-   }
-
-   private int searchAfter(int slot, int flag) {
-      slot++;
-      while (isValidSlot(slot)) {
-         if (tx.getInt(blk, offset(slot)) == flag)
-            return slot;
-         slot++;
-      }
-      return -1;
-   }
-
-   private boolean isValidSlot(int slot) {
-      return offset(slot+1) <= tx.blockSize();
-   }
-
-   private int offset(int slot) {
-      return slot * layout.slotSize();
-   }
-}
-
+   void delete(int slot);
 
+   /**
+    * Format a new block, so that it contains no records.
+    * These values are not logged
+    * (because the old values are meaningless).
+    */
+   void format();
 
+   /**
+    * Return the first used slot after the specified slot.
+    * @param slot a slot number, or -1
+    * @return the next used slot, or -1 if there is none
+    */
+   int nextAfter(int slot);
 
+   /**
+    * Find an empty slot after the specified slot
+    * and mark it as used.
+    * @param slot a slot number, or -1
+    * @return the new slot, or -1 if the block is full
+    */
+   int insertAfter(int slot);
 
+   /**
+    * Store records in a newly-formatted block, in slots
+    * 0, 1, and so on, until the block is full.
+    * The values are not logged; only the existence of the
+    * records is, so that a rollback removes them.
+    * The transaction forces the block to disk when it commits.
+    * @param recs the records, each holding a value for every
+    * field of the schema, in the order of the schema's fields
+    * @return the number of records stored
+    */
+   int load(List<List<Constant>> recs);
 
+   BlockId block();
 
+   /**
+    * A factory method that creates a record page
+    * in the format specified by the table's layout.
+    * @param tx the current transaction
+    * @param blk the block to be accessed
+    * @param layout the layout of the table
+    * @return a record page for the block
+    */
+   static RecordPage create(Transaction tx, BlockId blk, Layout layout) {
+      return create(tx, blk, layout, null);
+   }
 
+   /**
+    * A factory method that creates a record page which
+    * tells the table's free-space map about the room
+    * that its modifications free in a block, other
+    * than by deleting the current record.
+    * @param tx the current transaction
+    * @param blk the block to be accessed
+    * @param layout the layout of the table
+    * @param fsm the free-space map of the table, or null
+    * @return a record page for the block
+    */
+   static RecordPage create(Transaction tx, BlockId blk, Layout layout, FreeSpaceMap fsm) {
+      if (layout.isSlotted())
+         return new SlottedRecordPage(tx, blk, layout, fsm);
+      else
+         return new FixedRecordPage(tx, blk, layout);
+   }
+}
@@ -19,7 +19,7 @@ public class RecordTest {
       }
       BlockId blk = tx.append("testfile");
       tx.pin(blk);
-      RecordPage rp = new RecordPage(tx, blk, layout);
+      RecordPage rp = RecordPage.create(tx, blk, layout);
       rp.format();
 
       System.out.println("Filling the page with random records.");
@@ -0,0 +1,95 @@
+package simpledb.record;
+
+import java.util.*;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+/**
+ * Fills a fixed-slot table and a slotted-page table with the
+ * same short strings in a varchar(100) field, compares the
+ * number of blocks they use, and then checks that the slotted
+ * table keeps its RIDs and values through deletions and
+ * through updates that make records grow.
+ * Finally, makes the records grow again in a transaction that
+ * rolls back, counting its log records, and checks that the
+ * rollback restores every value.
+ */
+public class SlottedPageTest {
+   public static void main(String[] args) throws Exception {
+      SimpleDB db = new SimpleDB("slottedtest", 400, 8);
+      Transaction tx = db.newTx();
+
+      Schema sch = new Schema();
+      sch.addIntField("A");
+      sch.addStringField("B", 100);
+      Layout fixed = new Layout(sch);
+      Layout slotted = new Layout(sch, true);
+
+      Map<RID,String> expected = new HashMap<>();
+      TableScan fs = new TableScan(tx, "F", fixed);
+      TableScan ss = new TableScan(tx, "S", slotted);
+      for (int i=0; i<200; i++) {
+         fs.insert();
+         fs.setInt("A", i);
+         fs.setString("B", "rec" + i);
+         ss.insert();
+         ss.setInt("A", i);
+         ss.setString("B", "rec" + i);
+         expected.put(ss.getRid(), "rec" + i);
+      }
+      fs.close();
+      System.out.println("200 records use " + tx.size("F.tbl") + " fixed-slot blocks and "
+            + tx.size("S.tbl") + " slotted blocks");
+
+      ss.beforeFirst();
+      while (ss.next()) {
+         int a = ss.getInt("A");
+         if (a % 3 == 0) {
+            expected.remove(ss.getRid());
+            ss.delete();
+         }
+         else if (a % 3 == 1) {
+            String longer = "a much longer value for record " + a;
+            ss.setString("B", longer);
+            expected.put(ss.getRid(), longer);
+         }
+      }
+
+      int errors = 0, count = 0;
+      ss.beforeFirst();
+      while (ss.next()) {
+         count++;
+         String b = ss.getString("B");
+         if (!b.equals(expected.get(ss.getRid()))) {
+            System.out.println("slot " + ss.getRid() + " has " + b);
+            errors++;
+         }
+      }
+      ss.close();
+      System.out.println(count + " records remain (expected " + expected.size() + "), "
+            + errors + " wrong values");
+      tx.commit();
+
+      tx = db.newTx();
+      int lsn = db.logMgr().latestLSN();
+      ss = new TableScan(tx, "S", slotted);
+      int updates = 0;
+      while (ss.next()) {
+         ss.setString("B", "rolled back " + ss.getString("B"));
+         updates++;
+      }
+      ss.close();
+      System.out.println(updates + " updates wrote " + (db.logMgr().latestLSN() - lsn) + " log records");
+      tx.rollback();
+
+      tx = db.newTx();
+      errors = 0;
+      ss = new TableScan(tx, "S", slotted);
+      while (ss.next())
+         if (!ss.getString("B").equals(expected.get(ss.getRid())))
+            errors++;
+      ss.close();
+      System.out.println("after rollback, " + errors + " wrong values");
+      tx.commit();
+   }
+}
@@ -0,0 +1,557 @@
+package simpledb.record;
+
+import static java.sql.Types.INTEGER;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import simpledb.file.BlockId;
+import simpledb.query.Constant;
+import simpledb.tx.Transaction;
+
+/**
+ * Store variable-length records in a block, using a slot directory.
+ * The block begins with a header holding the number of slots
+ * and the start of the record area, followed by the slot directory.
+ * Each directory entry holds the offset and length of its record;
+ * an offset of 0 denotes an empty slot.
+ * Records are stored from the end of the block towards the directory.
+ * A record is the sequence of its field values: an integer takes
+ * 4 bytes, and a string takes a 4-byte length followed by its
+ * characters, padded to a multiple of 4 bytes.
+ * <p>
+ * A slot's number never changes, so RIDs stay valid.
+ * A record that grows is moved elsewhere in the block,
+ * and the block is compacted when its free space is fragmented.
+ * If the record still does not fit, it is moved to another block,
+ * and its slot keeps a forwarding entry: the negated target block
+ * number (minus 1) and the target slot. The target slot's entry
+ * holds a negated length, which marks the record as "moved in",
+ * so that scans of the target block skip it; the record is
+ * always accessed through its original slot.
+ * <p>
+ * A string is written as a single range of bytes (its length,
+ * characters and padding), so that its modification is logged with
+ * one record however the space held its old contents; and a compaction
+ * is logged as one image of the record area.
+ */
+public class SlottedRecordPage implements RecordPage {
+   private static final int HEADER = 2 * Integer.BYTES; // slot count, record area start
+   private static final int ENTRY = 2 * Integer.BYTES;  // record offset, record length
+   private Transaction tx;
+   private BlockId blk;
+   private Layout layout;
+   private Schema sch;
+   private FreeSpaceMap fsm;
+   private int maxlength;
+
+   public SlottedRecordPage(Transaction tx, BlockId blk, Layout layout) {
+      this(tx, blk, layout, null);
+   }
+
+   /**
+    * Create a record page that tells the specified
+    * free-space map when a record shrinks or leaves a block.
+    * The deletion of a record through its own slot is left
+    * to the caller; the deletion of a forwarded record
+    * frees room in its target block, which is reported here.
+    */
+   public SlottedRecordPage(Transaction tx, BlockId blk, Layout layout, FreeSpaceMap fsm) {
+      this.tx = tx;
+      this.blk = blk;
+      this.layout = layout;
+      this.fsm = fsm;
+      this.sch = layout.schema();
+      maxlength = maxRecordLength(sch);
+      tx.pin(blk);
+   }
+
+   /**
+    * Return the space taken in a block by the largest possible
+    * record of the schema, including its directory entry.
+    * @param sch the schema of the records
+    * @return the maximum space per record, in bytes
+    */
+   static int maxSlotSize(Schema sch) {
+      return ENTRY + maxRecordLength(sch);
+   }
+
+   public int getInt(int slot, String fldname) {
+      if (isForwarded(slot)) {
+         SlottedRecordPage target = openTarget(slot);
+         try {
+            return target.getInt(entryLength(slot), fldname);
+         }
+         finally {
+            tx.unpin(target.block());
+         }
+      }
+      return tx.getInt(blk, fieldPos(slot, fldname));
+   }
+
+   public String getString(int slot, String fldname) {
+      if (isForwarded(slot)) {
+         SlottedRecordPage target = openTarget(slot);
+         try {
+            return target.getString(entryLength(slot), fldname);
+         }
+         finally {
+            tx.unpin(target.block());
+         }
+      }
+      return readString(fieldPos(slot, fldname));
+   }
+
+   public int getInt(int slot, int fldindex) {
+      if (isForwarded(slot)) {
+         SlottedRecordPage target = openTarget(slot);
+         try {
+            return target.getInt(entryLength(slot), fldindex);
+         }
+         finally {
+            tx.unpin(target.block());
+         }
+      }
+      return tx.getInt(blk, fieldPos(slot, fldindex));
+   }
+
+   public byte[] getBytes(int slot, int fldindex) {
+      if (isForwarded(slot)) {
+         SlottedRecordPage target = openTarget(slot);
+         try {
+            return target.getBytes(entryLength(slot), fldindex);
+         }
+         finally {
+            tx.unpin(target.block());
+         }
+      }
+      return readBytes(fieldPos(slot, fldindex));
+   }
+
+   public void setInt(int slot, String fldname, int val) {
+      if (isForwarded(slot)) {
+         SlottedRecordPage target = openTarget(slot);
+         try {
+            target.setInt(entryLength(slot), fldname, val);
+         }
+         finally {
+            tx.unpin(target.block());
+         }
+      }
+      else
+         tx.setInt(blk, fieldPos(slot, fldname), val, true);
+   }
+
+   /**
+    * Store a string at the specified field of the specified slot.
+    * The record is rewritten, in place if it does not grow,
+    * and otherwise in newly-allocated space in the block.
+    * If the block has no room for it, the record is
+    * moved to another block.
+    */
+   public void setString(int slot, String fldname, String val) {
+      if (isForwarded(slot)) {
+         SlottedRecordPage target = openTarget(slot);
+         Object[] vals;
+         try {
+            int tslot = entryLength(slot);
+            if (target.rewrite(tslot, fldname, val))
+               return;
+            vals = target.readRecord(tslot);
+            target.delete(tslot);
+            target.roomFreed();
+         }
+         finally {
+            tx.unpin(target.block());
+         }
+         vals[sch.fields().indexOf(fldname)] = val;
+         moveOut(slot, vals);
+      }
+      else if (!rewrite(slot, fldname, val)) {
+         Object[] vals = readRecord(slot);
+         vals[sch.fields().indexOf(fldname)] = val;
+         moveOut(slot, vals);
+      }
+   }
+
+   public void delete(int slot) {
+      if (isForwarded(slot)) {
+         SlottedRecordPage target = openTarget(slot);
+         try {
+            target.delete(entryLength(slot));
+            target.roomFreed();
+         }
+         finally {
+            tx.unpin(target.block());
+         }
+      }
+      setEntry(slot, 0, 0);
+   }
+
+   public void format() {
+      tx.setInt(blk, 0, 0, false);
+      tx.setInt(blk, Integer.BYTES, tx.blockSize(), false);
+   }
+
+   /**
+    * Return the next slot that holds a record, or forwards to one.
+    * Records moved in from other blocks are skipped.
+    */
+   public int nextAfter(int slot) {
+      int numslots = numSlots();
+      for (int s=slot+1; s<numslots; s++) {
+         int off = entryOffset(s);
+         if (off < 0 || (off > 0 && entryLength(s) > 0))
+            return s;
+      }
+      return -1;
+   }
+
+   /**
+    * Find an empty slot after the specified slot, or add a new
+    * slot to the directory, and store an empty record in it.
+    * The block must have room for a record of maximum size,
+    * so that setting the new record's fields does not
+    * move it to another block.
+    */
+   public int insertAfter(int slot) {
+      Object[] vals = new Object[sch.fields().size()];
+      for (int i=0; i<vals.length; i++)
+         vals[i] = (sch.type(sch.fields().get(i)) == INTEGER) ? (Object) 0 : "";
+      return store(slot, vals, maxlength, false);
+   }
+
+   /**
+    * Store records in a newly-formatted block.
+    * The records and their directory entries are not logged;
+    * only the final setting of the slot count is.
+    * @see RecordPage#load(List)
+    */
+   public int load(List<List<Constant>> recs) {
+      int n = 0;
+      int start = tx.blockSize();
+      while (n < recs.size()) {
+         List<Constant> rec = recs.get(n);
+         Object[] vals = new Object[rec.size()];
+         for (int i=0; i<vals.length; i++)
+            vals[i] = (sch.type(sch.fields().get(i)) == INTEGER) ? (Object) rec.get(i).asInt()
+                                                                 : rec.get(i).asString();
+         int len = valuesLength(vals);
+         if (start - len < HEADER + (n+1) * ENTRY)
+            break;
+         start -= len;
+         writeRecord(start, vals, false);
+         tx.setInt(blk, HEADER + n * ENTRY, start, false);
+         tx.setInt(blk, HEADER + n * ENTRY + Integer.BYTES, len, false);
+         n++;
+      }
+      tx.setInt(blk, Integer.BYTES, start, false);
+      tx.setInt(blk, 0, n, true);
+      return n;
+   }
+
+   public BlockId block() {
+      return blk;
+   }
+
+   // Private auxiliary methods
+
+   private boolean isForwarded(int slot) {
+      return entryOffset(slot) < 0;
+   }
+
+   private SlottedRecordPage openTarget(int slot) {
+      BlockId target = new BlockId(blk.fileName(), -entryOffset(slot) - 1);
+      return new SlottedRecordPage(tx, target, layout, fsm);
+   }
+
+   /**
+    * Store the specified values as a new record, in an empty
+    * slot after the specified slot or in a new slot,
+    * provided that the block has the specified amount of room.
+    * @return the slot of the record, or -1 if there is no room
+    */
+   private int store(int slot, Object[] vals, int room, boolean movedin) {
+      int numslots = numSlots();
+      int newslot = -1;
+      for (int s=slot+1; s<numslots && newslot<0; s++)
+         if (entryOffset(s) == 0)
+            newslot = s;
+      int needed = room + ((newslot < 0) ? ENTRY : 0);
+      if (freeSpace(numslots, liveBytes(-1)) < needed)
+         return -1;
+
+      if (newslot < 0) {
+         if (recordStart() < HEADER + (numslots+1) * ENTRY)
+            compact(-1);
+         newslot = numslots;
+         tx.setInt(blk, 0, numslots + 1, true);
+         setEntry(newslot, 0, 0);
+      }
+      int len = valuesLength(vals);
+      int off = allocate(len, -1);
+      writeRecord(off, vals, true);
+      setEntry(newslot, off, movedin ? -len : len);
+      return newslot;
+   }
+
+   /**
+    * Rewrite the record in the specified slot of this block
+    * with a new value for the specified field, in place if it
+    * does not grow, and otherwise in newly-allocated space.
+    * @return false if the block has no room for the record
+    */
+   private boolean rewrite(int slot, String fldname, String val) {
+      Object[] vals = readRecord(slot);
+      vals[sch.fields().indexOf(fldname)] = val;
+      int newlen = valuesLength(vals);
+      int oldlen = entryLength(slot);
+      boolean movedin = oldlen < 0;
+      int off = entryOffset(slot);
+      if (newlen > Math.abs(oldlen)) {
+         off = allocate(newlen, slot);
+         if (off < 0)
+            return false;
+      }
+      writeRecord(off, vals, true);
+      setEntry(slot, off, movedin ? -newlen : newlen);
+      if (newlen < Math.abs(oldlen))
+         roomFreed();
+      return true;
+   }
+
+   /**
+    * Move the record of the specified slot to another block,
+    * and make the slot forward to it.
+    * The last block of the file is tried first;
+    * if it has no room, or another transaction modified it
+    * after this transaction's snapshot, a new block is appended.
+    */
+   private void moveOut(int slot, Object[] vals) {
+      if (!isForwarded(slot))
+         roomFreed();
+      String filename = blk.fileName();
+      int len = valuesLength(vals);
+      BlockId last = new BlockId(filename, tx.size(filename) - 1);
+      if (!last.equals(blk) && tx.canInsert(last)) {
+         SlottedRecordPage target = new SlottedRecordPage(tx, last, layout, fsm);
+         int tslot = target.store(-1, vals, len, true);
+         tx.unpin(last);
+         if (tslot >= 0) {
+            setEntry(slot, -last.number() - 1, tslot);
+            return;
+         }
+      }
+      BlockId newblk = tx.append(filename);
+      SlottedRecordPage target = new SlottedRecordPage(tx, newblk, layout, fsm);
+      target.format();
+      int tslot = target.store(-1, vals, len, true);
+      tx.unpin(newblk);
+      if (tslot < 0)
+         throw new RuntimeException("record does not fit in an empty block of " + filename);
+      setEntry(slot, -newblk.number() - 1, tslot);
+   }
+
+   /**
+    * Tell the free-space map, if any, that
+    * a record of this block has shrunk or left.
+    */
+   private void roomFreed() {
+      if (fsm != null)
+         fsm.setRoom(blk.number());
+   }
+
+   private int numSlots() {
+      return tx.getInt(blk, 0);
+   }
+
+   private int recordStart() {
+      return tx.getInt(blk, Integer.BYTES);
+   }
+
+   private int entryOffset(int slot) {
+      return tx.getInt(blk, HEADER + slot * ENTRY);
+   }
+
+   private int entryLength(int slot) {
+      return tx.getInt(blk, HEADER + slot * ENTRY + Integer.BYTES);
+   }
+
+   private void setEntry(int slot, int offset, int length) {
+      tx.setInt(blk, HEADER + slot * ENTRY, offset, true);
+      tx.setInt(blk, HEADER + slot * ENTRY + Integer.BYTES, length, true);
+   }
+
+   /**
+    * Return the total length of the records in the block,
+    * not counting the record in the specified slot.
+    */
+   private int liveBytes(int exclude) {
+      int numslots = numSlots();
+      int live = 0;
+      for (int s=0; s<numslots; s++)
+         if (s != exclude && entryOffset(s) > 0)
+            live += Math.abs(entryLength(s));
+      return live;
+   }
+
+   private int freeSpace(int numslots, int live) {
+      return tx.blockSize() - HEADER - numslots * ENTRY - live;
+   }
+
+   /**
+    * Allocate space for a record of the specified length
+    * at the start of the record area, compacting the block
+    * if the contiguous free space is too small.
+    * The record in the specified slot (if any) is being
+    * replaced, so compaction can reclaim its space.
+    * @return the offset of the space, or -1 if the block has no room
+    */
+   private int allocate(int length, int replacing) {
+      int numslots = numSlots();
+      int dirend = HEADER + numslots * ENTRY;
+      if (freeSpace(numslots, liveBytes(replacing)) < length)
+         return -1;
+      int start = recordStart();
+      if (start - length < dirend) {
+         compact(replacing);
+         start = recordStart();
+      }
+      start -= length;
+      tx.setInt(blk, Integer.BYTES, start, true);
+      return start;
+   }
+
+   /**
+    * Move the records to the end of the block, so that
+    * all of the free space is between the directory and
+    * the record area. Records keep their order, in decreasing
+    * offset; the new record area is built in memory and
+    * written as a single range.
+    */
+   private void compact(int exclude) {
+      int numslots = numSlots();
+      List<Integer> slots = new ArrayList<>();
+      for (int s=0; s<numslots; s++)
+         if (s != exclude && entryOffset(s) > 0)
+            slots.add(s);
+      slots.sort((s1, s2) -> Integer.compare(entryOffset(s2), entryOffset(s1)));
+      int start = recordStart();
+      int blocksize = tx.blockSize();
+      byte[] area = tx.readBytes(blk, start, blocksize - start);
+      int dest = blocksize;
+      for (int s : slots)
+         dest -= Math.abs(entryLength(s));
+      byte[] compacted = new byte[blocksize - dest];
+      int pos = blocksize;
+      boolean moved = false;
+      for (int s : slots) {
+         int off = entryOffset(s);
+         int len = entryLength(s);  // negative if moved in
+         pos -= Math.abs(len);
+         System.arraycopy(area, off - start, compacted, pos - dest, Math.abs(len));
+         if (pos != off) {
+            setEntry(s, pos, len);
+            moved = true;
+         }
+      }
+      if (moved)
+         tx.writeBytes(blk, dest, compacted, true);
+      tx.setInt(blk, Integer.BYTES, dest, true);
+   }
+
+   private int fieldPos(int slot, String fldname) {
+      int fldindex = sch.fields().indexOf(fldname);
+      if (fldindex < 0)
+         throw new IllegalArgumentException("field " + fldname + " not found.");
+      return fieldPos(slot, fldindex);
+   }
+
+   private int fieldPos(int slot, int fldindex) {
+      List<String> fields = sch.fields();
+      int pos = entryOffset(slot);
+      for (int i=0; i<fldindex; i++) {
+         if (sch.type(fields.get(i)) == INTEGER)
+            pos += Integer.BYTES;
+         else
+            pos += Integer.BYTES + padded(tx.getInt(blk, pos));
+      }
+      return pos;
+   }
+
+   private Object[] readRecord(int slot) {
+      Object[] vals = new Object[sch.fields().size()];
+      int pos = entryOffset(slot);
+      for (int i=0; i<vals.length; i++) {
+         if (sch.type(sch.fields().get(i)) == INTEGER) {
+            vals[i] = tx.getInt(blk, pos);
+            pos += Integer.BYTES;
+         }
+         else {
+            String s = readString(pos);
+            vals[i] = s;
+            pos += Integer.BYTES + padded(s.length());
+         }
+      }
+      return vals;
+   }
+
+   private void writeRecord(int pos, Object[] vals, boolean okToLog) {
+      for (Object val : vals) {
+         if (val instanceof Integer) {
+            tx.setInt(blk, pos, (Integer) val, okToLog);
+            pos += Integer.BYTES;
+         }
+         else {
+            String s = (String) val;
+            writeString(pos, s, okToLog);
+            pos += Integer.BYTES + padded(s.length());
+         }
+      }
+   }
+
+   /**
+    * Read a string stored as its length followed
+    * by its characters.
+    */
+   private String readString(int pos) {
+      return new String(readBytes(pos), StandardCharsets.US_ASCII);
+   }
+
+   private byte[] readBytes(int pos) {
+      return tx.getBytes(blk, pos);
+   }
+
+   /**
+    * Write a string as its length, its characters,
+    * and the padding, in a single range.
+    */
+   private void writeString(int pos, String s, boolean okToLog) {
+      byte[] b = s.getBytes(StandardCharsets.US_ASCII);
+      ByteBuffer bb = ByteBuffer.allocate(Integer.BYTES + padded(b.length));
+      bb.putInt(b.length);
+      bb.put(b);
+      tx.writeBytes(blk, pos, bb.array(), okToLog);
+   }
+
+   private int valuesLength(Object[] vals) {
+      int len = 0;
+      for (Object val : vals)
+         len += (val instanceof Integer) ? Integer.BYTES
+                                         : Integer.BYTES + padded(((String) val).length());
+      return len;
+   }
+
+   private static int maxRecordLength(Schema sch) {
+      int len = 0;
+      for (String fldname : sch.fields()) {
+         len += Integer.BYTES;
+         if (sch.type(fldname) != INTEGER)
+            len += padded(sch.length(fldname));
+      }
+      return len;
+   }
+
+   private static int padded(int n) {
+      return (n + Integer.BYTES - 1) / Integer.BYTES * Integer.BYTES;
+   }
+}
@@ -1,6 +1,7 @@
 package simpledb.record;
 
 import static java.sql.Types.INTEGER;
+import java.util.List;
 import simpledb.file.BlockId;
 import simpledb.query.*;
 import simpledb.tx.Transaction;
@@ -8,12 +9,20 @@ import simpledb.tx.Transaction;
 /**
  * Provides the abstraction of an arbitrarily large array
  * of records.
+ * An insertion goes to the current block if it has room,
+ * and otherwise to the block that the table's free-space map
+ * chooses. Temporary tables have no free-space map, since
+ * they only grow at the end.
+ * An insertion never uses a block that another transaction
+ * modified after the snapshot of this one, since modifying it
+ * would abort the transaction; it appends a block instead.
  * @author sciore
  */
 public class TableScan implements UpdateScan {
    private Transaction tx;
    private Layout layout;
    private RecordPage rp;
+   private FreeSpaceMap fsm;
    private String filename;
    private int currentslot;
 
@@ -21,6 +30,8 @@ public class TableScan implements UpdateScan {
       this.tx = tx;
       this.layout = layout;
       filename = tblname + ".tbl";
+      if (!tblname.startsWith("temp"))
+         fsm = new FreeSpaceMap(tx, tblname);
       if (tx.size(filename) == 0)
          moveToNewBlock();
       else 
@@ -59,6 +70,57 @@ public class TableScan implements UpdateScan {
          return new Constant(getString(fldname));
    }
 
+   public int fieldIndex(String fldname) {
+      return layout.schema().fields().indexOf(fldname);
+   }
+
+   public int getInt(int fldindex) {
+      return rp.getInt(currentslot, fldindex);
+   }
+
+   public byte[] getBytes(int fldindex) {
+      return rp.getBytes(currentslot, fldindex);
+   }
+
+   /**
+    * Fill the batch with the next records of the table.
+    * The used slots of the current block are found first,
+    * and then the values of each field are read for all of
+    * those slots, one column at a time.
+    */
+   public boolean nextBatch(Batch b) {
+      List<String> fields = b.fields();
+      int[] ords = new int[fields.size()];
+      for (int c=0; c<ords.length; c++) {
+         ords[c] = fieldIndex(fields.get(c));
+         if (ords[c] < 0)
+            throw new RuntimeException("field " + fields.get(c) + " not found.");
+      }
+      int[] slots = new int[Batch.CAPACITY];
+      int n = 0;
+      while (true) {
+         int m = 0;
+         int slot = currentslot;
+         while (n + m < Batch.CAPACITY && (slot = rp.nextAfter(slot)) >= 0)
+            slots[m++] = slot;
+         for (int c=0; c<ords.length; c++) {
+            int ord = ords[c];
+            if (b.isInt(c))
+               rp.getInts(slots, m, ord, b.ints(c), n);
+            else
+               rp.getStrings(slots, m, ord, b.strings(c), n);
+         }
+         n += m;
+         if (m > 0)
+            currentslot = slots[m-1];
+         if (n == Batch.CAPACITY || atLastBlock())
+            break;
+         moveToBlock(rp.block().number()+1);
+      }
+      b.setSize(n);
+      return n > 0;
+   }
+
    public int getCurrentSlot() {
       return this.currentslot;
    }
@@ -90,24 +152,43 @@ public class TableScan implements UpdateScan {
    }
 
    public void insert() {
-      currentslot = rp.insertAfter(currentslot);
+      boolean wholeblock = (currentslot < 0);
+      boolean current = tx.canInsert(rp.block());
+      currentslot = current ? rp.insertAfter(currentslot) : -1;
       while (currentslot < 0) {
-         if (atLastBlock()) 
+         if (fsm == null) {
+            if (atLastBlock())
+               moveToNewBlock();
+            else
+               moveToBlock(rp.block().number()+1);
+         }
+         else if (!current)
             moveToNewBlock();
-         else 
-            moveToBlock(rp.block().number()+1);
-         currentslot = rp.insertAfter(currentslot);
+         else {
+            if (wholeblock)
+               fsm.setFull(rp.block().number());
+            int blknum = fsm.findSpace(tx.size(filename));
+            if (blknum < 0)
+               moveToNewBlock();
+            else
+               moveToBlock(blknum);
+         }
+         wholeblock = true;
+         current = tx.canInsert(rp.block());
+         currentslot = current ? rp.insertAfter(currentslot) : -1;
       }
    }
 
    public void delete() {
       rp.delete(currentslot);
+      if (fsm != null)
+         fsm.setRoom(rp.block().number());
    }
 
    public void moveToRid(RID rid) {
       close();
       BlockId blk = new BlockId(filename, rid.blockNumber());
-      rp = new RecordPage(tx, blk, layout);
+      rp = RecordPage.create(tx, blk, layout, fsm);
       currentslot = rid.slot();
    }
 
@@ -120,14 +201,14 @@ public class TableScan implements UpdateScan {
    private void moveToBlock(int blknum) {
       close();
       BlockId blk = new BlockId(filename, blknum);
-      rp = new RecordPage(tx, blk, layout);
+      rp = RecordPage.create(tx, blk, layout, fsm);
       currentslot = -1;
    }
 
    private void moveToNewBlock() {
       close();
       BlockId blk = tx.append(filename);
-      rp = new RecordPage(tx, blk, layout);
+      rp = RecordPage.create(tx, blk, layout, fsm);
       rp.format();
       currentslot = -1;
    }
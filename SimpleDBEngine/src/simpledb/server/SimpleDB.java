@@ -3,8 +3,11 @@ package simpledb.server;
 import java.io.File;
 import simpledb.file.FileMgr;
 import simpledb.log.LogMgr;
+import simpledb.buffer.BufferFlusher;
 import simpledb.buffer.BufferMgr;
+import simpledb.buffer.ReplacementPolicy;
 import simpledb.tx.Transaction;
+import simpledb.tx.recovery.Checkpointer;
 import simpledb.metadata.MetadataMgr;
 import simpledb.plan.*;
 import simpledb.index.planner.IndexUpdatePlanner;
@@ -19,12 +22,24 @@ public class SimpleDB {
    public static int BLOCK_SIZE = 400;
    public static int BUFFER_SIZE = 8;
    public static String LOG_FILE = "simpledb.log";
+   public static String REPLACEMENT_POLICY = ReplacementPolicy.LRU;
+   public static long FLUSH_INTERVAL = 1000; // 1 second
+   public static int FLUSH_BATCH_SIZE = 32;
+   public static long CHECKPOINT_INTERVAL = 30000; // 30 seconds
+   public static long GROUP_COMMIT_WINDOW = 1000; // 1 millisecond, in microseconds
+   public static int LOG_BUFFER_SIZE = 8; // pages
+   public static boolean SYNC_WRITES = false;
+   public static boolean MAPPED_FILES = false;
+   public static int READ_AHEAD = 8; // blocks
+   public static String LOAD_DIRECTORY = null; // for remote loads; null refuses them
 
    private  FileMgr     fm;
    private  BufferMgr   bm;
    private  LogMgr      lm;
    private  MetadataMgr mdm;
    private  Planner planner;
+   private  BufferFlusher flusher;
+   private  Checkpointer checkpointer;
 
    /**
     * A constructor useful for debugging.
@@ -33,15 +48,29 @@ public class SimpleDB {
     * @param buffsize the number of buffers
     */
    public SimpleDB(String dirname, int blocksize, int buffsize) {
+      this(dirname, blocksize, buffsize, REPLACEMENT_POLICY);
+   }
+   
+   /**
+    * A constructor useful for comparing buffer replacement policies.
+    * @param dirname the name of the database directory
+    * @param blocksize the block size
+    * @param buffsize the number of buffers
+    * @param policyname the name of the buffer replacement policy
+    * @see simpledb.buffer.ReplacementPolicy
+    */
+   public SimpleDB(String dirname, int blocksize, int buffsize, String policyname) {
       File dbDirectory = new File(dirname);
-      fm = new FileMgr(dbDirectory, blocksize);
-      lm = new LogMgr(fm, LOG_FILE);
-      bm = new BufferMgr(fm, lm, buffsize); 
+      fm = new FileMgr(dbDirectory, blocksize, SYNC_WRITES, MAPPED_FILES);
+      lm = new LogMgr(fm, LOG_FILE, GROUP_COMMIT_WINDOW, LOG_BUFFER_SIZE);
+      bm = new BufferMgr(fm, lm, buffsize, policyname); 
+      bm.setReadAhead(READ_AHEAD);
    }
    
    /**
     * A simpler constructor for most situations. Unlike the
-    * 3-arg constructor, it also initializes the metadata tables.
+    * 3-arg constructor, it also initializes the metadata tables
+    * and starts the background buffer flusher and checkpointer.
     * @param dirname the name of the database directory
     */
    public SimpleDB(String dirname) {
@@ -61,6 +90,23 @@ public class SimpleDB {
     UpdatePlanner up = new IndexUpdatePlanner(mdm);
       planner = new Planner(qp, up);
       tx.commit();
+      flusher = new BufferFlusher(bm, FLUSH_INTERVAL, FLUSH_BATCH_SIZE);
+      flusher.start();
+      checkpointer = new Checkpointer(lm, bm, CHECKPOINT_INTERVAL);
+      checkpointer.start();
+   }
+
+   /**
+    * Stop the background threads of the database, write
+    * the rest of the log, and stop the log writer.
+    * The database cannot be used afterwards.
+    */
+   public void shutdown() {
+      if (flusher != null)
+         flusher.shutdown();
+      if (checkpointer != null)
+         checkpointer.shutdown();
+      lm.shutdown();
    }
    
    /**
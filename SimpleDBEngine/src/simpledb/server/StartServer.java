@@ -8,6 +8,8 @@ public class StartServer {
    public static void main(String args[]) throws Exception {
       // configure and initialize the database
       String dirname = (args.length == 0) ? "studentdb" : args[0];
+      if (args.length > 1)
+         SimpleDB.LOAD_DIRECTORY = args[1];  // the files that clients can load
       SimpleDB db = new SimpleDB(dirname);
       
       // create a registry specific for the server on the default port
@@ -0,0 +1,114 @@
+package simpledb.tx;
+
+import simpledb.buffer.BufferMgr;
+import simpledb.file.*;
+import simpledb.log.LogMgr;
+import simpledb.server.SimpleDB;
+import simpledb.tx.concurrency.*;
+
+/**
+ * Runs transactions that deadlock, and checks that one
+ * transaction of the deadlock is aborted right away,
+ * so that the others can go on.
+ * Since the transactions run under snapshot isolation, a
+ * transaction that then gets the XLock on a block that another
+ * transaction modified and committed after it started also aborts.
+ */
+public class DeadlockTest {
+   private static FileMgr fm;
+   private static LogMgr lm;
+   private static BufferMgr bm;
+
+   public static void main(String[] args) throws InterruptedException {
+      SimpleDB db = new SimpleDB("deadlocktest", 400, 8);
+      fm = db.fileMgr();
+      lm = db.logMgr();
+      bm = db.bufferMgr();
+      long start = System.currentTimeMillis();
+
+      // a cycle of three transactions, each holding an XLock
+      // and requesting an XLock on the block of the next
+      Thread[] cycle = new Thread[3];
+      for (int i=0; i<3; i++) {
+         cycle[i] = new Thread(new Cycle("Tx " + (char) ('A' + i), i + 1, (i + 1) % 3 + 1));
+         cycle[i].start();
+      }
+      for (Thread t : cycle)
+         t.join();
+
+      // two transactions reading a block and then both
+      // modifying it, so the second to do so aborts
+      Thread d = new Thread(new Upgrade("Tx D"));
+      Thread e = new Thread(new Upgrade("Tx E"));
+      d.start();
+      e.start();
+      d.join();
+      e.join();
+
+      System.out.println("elapsed " + (System.currentTimeMillis() - start) + "ms, "
+            + ConcurrencyMgr.deadlockCount(lm) + " deadlocks, "
+            + ConcurrencyMgr.lockWaitCount(lm) + " lock waits, "
+            + (ConcurrencyMgr.lockWaitNanos(lm) / 1000000) + "ms waiting for locks");
+   }
+
+   static class Cycle implements Runnable {
+      private String name;
+      private int mine, next;
+
+      Cycle(String name, int mine, int next) {
+         this.name = name;
+         this.mine = mine;
+         this.next = next;
+      }
+
+      public void run() {
+         Transaction tx = new Transaction(fm, lm, bm);
+         BlockId blk1 = new BlockId("testfile", mine);
+         BlockId blk2 = new BlockId("testfile", next);
+         tx.pin(blk1);
+         tx.pin(blk2);
+         try {
+            tx.setInt(blk1, 0, 0, false);
+            System.out.println(name + ": receive xlock " + mine);
+            Thread.sleep(500);
+            System.out.println(name + ": request xlock " + next);
+            tx.setInt(blk2, 0, mine, false);
+            System.out.println(name + ": receive xlock " + next);
+            tx.commit();
+         }
+         catch(LockAbortException ex) {
+            System.out.println(name + ": aborted");
+            tx.rollback();
+         }
+         catch(InterruptedException ex) {};
+      }
+   }
+
+   static class Upgrade implements Runnable {
+      private String name;
+
+      Upgrade(String name) {
+         this.name = name;
+      }
+
+      public void run() {
+         Transaction tx = new Transaction(fm, lm, bm);
+         BlockId blk = new BlockId("testfile", 4);
+         tx.pin(blk);
+         try {
+            tx.getInt(blk, 0);
+            System.out.println(name + ": read block 4");
+            Thread.sleep(500);
+            System.out.println(name + ": request xlock 4");
+            tx.setInt(blk, 0, 0, false);
+            System.out.println(name + ": receive xlock 4");
+            tx.commit();
+         }
+         catch(LockAbortException ex) {
+            System.out.println(name + ": aborted");
+            tx.rollback();
+         }
+         catch(InterruptedException ex) {};
+      }
+   }
+}
@@ -0,0 +1,91 @@
+package simpledb.tx;
+
+import simpledb.buffer.BufferMgr;
+import simpledb.file.*;
+import simpledb.log.LogMgr;
+import simpledb.server.SimpleDB;
+import simpledb.tx.concurrency.*;
+
+/**
+ * Checks the hierarchical locks: the compatibility of
+ * the lock modes, the escalation of many block locks to a
+ * file lock, appends that no longer lock the end of the file,
+ * and the separate lock tables of two databases.
+ */
+public class LockHierarchyTest {
+   private static int nextTxNum = 2000000;
+   private static LogMgr lm;
+
+   public static void main(String[] args) throws InterruptedException {
+      check("IX with IX", LockMode.IX.compatible(LockMode.IX), true);
+      check("X with IX", LockMode.X.compatible(LockMode.IX), false);
+      check("IX joined with X is X", LockMode.IX.join(LockMode.X) == LockMode.X, true);
+
+      SimpleDB db = new SimpleDB("lockhierarchytest", 400, 8);
+      FileMgr fm = db.fileMgr();
+      lm = db.logMgr();
+      BufferMgr bm = db.bufferMgr();
+
+      // a few block locks leave the file to other writers
+      ConcurrencyMgr cm1 = new ConcurrencyMgr(nextTxNum++, lm);
+      for (int i=0; i<10; i++)
+         cm1.xLock(new BlockId("hierfile", i));
+      check("writer of another block waits", waits("hierfile", 100), false);
+
+      // but many block locks become a file lock
+      for (int i=10; i<60; i++)
+         cm1.xLock(new BlockId("hierfile", i));
+      check("after escalation, writer of another block waits", waits("hierfile", 200), true);
+      LogMgr otherlm = new SimpleDB("lockhierarchytest2", 400, 8).logMgr();
+      check("writer in another database waits", waits(otherlm, "hierfile", 200), false);
+      cm1.commit();
+
+      // a file lock taken up front
+      ConcurrencyMgr cm2 = new ConcurrencyMgr(nextTxNum++, lm);
+      cm2.lockTable("hierfile2");
+      check("writer waits for file lock", waits("hierfile2", 200), true);
+      cm2.rollback();
+
+      // inserters appending to the same file do not wait for each other
+      Transaction tx1 = new Transaction(fm, lm, bm);
+      Transaction tx2 = new Transaction(fm, lm, bm);
+      BlockId blk1 = tx1.append("testfile");
+      tx1.pin(blk1);
+      tx1.setInt(blk1, 0, 1, true);
+      BlockId blk2 = tx2.append("testfile");
+      tx2.pin(blk2);
+      tx2.setInt(blk2, 0, 2, true);
+      check("appended different blocks", !blk1.equals(blk2), true);
+      tx2.commit();
+      tx1.commit();
+   }
+
+   /**
+    * Return whether a new transaction XLocking the
+    * block 1000 of the file waits longer than the
+    * specified time. It commits once it gets the lock.
+    */
+   private static boolean waits(String filename, long millis) {
+      return waits(lm, filename, millis);
+   }
+
+   private static boolean waits(LogMgr lm, String filename, long millis) {
+      ConcurrencyMgr cm = new ConcurrencyMgr(nextTxNum++, lm);
+      Thread t = new Thread(() -> {
+         cm.xLock(new BlockId(filename, 1000));
+         cm.commit();
+      });
+      t.start();
+      try {
+         t.join(millis);
+         return t.isAlive();
+      }
+      catch(InterruptedException e) {
+         return false;
+      }
+   }
+
+   private static void check(String what, boolean actual, boolean expected) {
+      System.out.println(what + ": " + actual + (actual == expected ? "" : ", NOT " + expected));
+   }
+}
@@ -0,0 +1,67 @@
+package simpledb.tx;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import simpledb.file.BlockId;
+import simpledb.log.LogMgr;
+import simpledb.server.SimpleDB;
+import simpledb.tx.concurrency.*;
+
+/**
+ * Runs many short transactions on 1, 2, 4 and 8 threads,
+ * each looking up a few blocks in its snapshot and updating one
+ * of them through its own concurrency manager, and reports the throughput.
+ * Each update increments a counter while holding an XLock,
+ * and the counters are checked against the number of commits.
+ */
+public class LockThroughputTest {
+   private static final int BLOCKS = 2000;
+   private static final int TXS_PER_THREAD = 50000;
+   private static AtomicInteger nextTxNum = new AtomicInteger(1000000);
+   private static LogMgr lm;
+
+   public static void main(String[] args) throws InterruptedException {
+      lm = new SimpleDB("lockthroughputtest", 400, 8).logMgr();
+      for (int threads=1; threads<=8; threads*=2) {
+         int[] counters = new int[BLOCKS];
+         AtomicLong commits = new AtomicLong(), aborts = new AtomicLong();
+         Thread[] workers = new Thread[threads];
+         long start = System.nanoTime();
+         for (int i=0; i<threads; i++) {
+            Random rand = new Random(i);
+            workers[i] = new Thread(() -> run(rand, counters, commits, aborts));
+            workers[i].start();
+         }
+         for (Thread t : workers)
+            t.join();
+         long elapsed = System.nanoTime() - start;
+         long sum = 0;
+         for (int c : counters)
+            sum += c;
+         System.out.println(threads + " threads: " + (commits.get() * 1000000000L / elapsed) + " tx/s, "
+               + commits.get() + " commits, " + aborts.get() + " aborts, "
+               + (sum == commits.get() ? "counters as expected" : "COUNTERS NOT AS EXPECTED"));
+      }
+      System.out.println(ConcurrencyMgr.deadlockCount(lm) + " deadlocks, "
+            + ConcurrencyMgr.lockWaitCount(lm) + " lock waits");
+   }
+
+   private static void run(Random rand, int[] counters, AtomicLong commits, AtomicLong aborts) {
+      for (int n=0; n<TXS_PER_THREAD; n++) {
+         ConcurrencyMgr cm = new ConcurrencyMgr(nextTxNum.getAndIncrement(), lm);
+         try {
+            for (int i=0; i<3; i++)
+               cm.isCurrent(new BlockId("testfile", rand.nextInt(BLOCKS)));
+            int k = rand.nextInt(BLOCKS);
+            cm.xLock(new BlockId("testfile", k));
+            counters[k]++;
+            commits.incrementAndGet();
+            cm.commit();
+         }
+         catch(LockAbortException e) {
+            aborts.incrementAndGet();
+            cm.rollback();
+         }
+      }
+   }
+}
@@ -0,0 +1,89 @@
+package simpledb.tx;
+
+import simpledb.file.BlockId;
+import simpledb.log.LogMgr;
+import simpledb.plan.*;
+import simpledb.query.Scan;
+import simpledb.server.SimpleDB;
+
+/**
+ * Runs queries in transactions that modify nothing, and checks
+ * that they write no log records and do not force the log;
+ * and checks that a transaction declared read-only
+ * cannot modify the database.
+ */
+public class ReadOnlyTest {
+   public static void main(String[] args) {
+      SimpleDB db = new SimpleDB("readonlytest");
+      LogMgr lm = db.logMgr();
+      Planner planner = db.planner();
+      Transaction tx = db.newTx();
+      planner.executeUpdate("create table T(A int, B varchar(9))", tx);
+      for (int i=0; i<300; i++)
+         planner.executeUpdate("insert into T(A, B) values (" + i + ", 'b" + (i % 7) + "')", tx);
+      tx.commit();
+
+      // point queries, committed or rolled back, and a query
+      // that sorts into temporary tables
+      int lsn = lm.latestLSN();
+      long flushes = lm.flushCount();
+      for (int i=0; i<100; i++) {
+         tx = db.newTx();
+         int n = count(planner, tx, "select b from t where a = " + i);
+         if (n != 1)
+            System.out.println("select a = " + i + ": " + n + " records, NOT 1");
+         if (i % 2 == 0)
+            tx.commit();
+         else
+            tx.rollback();
+      }
+      tx = db.newTx();
+      System.out.println("sorted query: " + count(planner, tx, "select a, b from t order by b, a") + " records");
+      tx.commit();
+      check("log records written by queries", lm.latestLSN() - lsn, 0);
+      check("log writes by queries", (int) (lm.flushCount() - flushes), 0);
+
+      // a read-only transaction cannot modify the database
+      tx = db.newTx();
+      tx.setReadOnly(true);
+      check("records read by a read-only transaction", count(planner, tx, "select a from t where b = 'b3'"), 43);
+      try {
+         planner.executeUpdate("delete from T where a = 5", tx);
+         System.out.println("read-only delete: NOT REFUSED");
+      }
+      catch(RuntimeException e) {
+         System.out.println("read-only delete: refused as expected");
+      }
+      tx.rollback();
+      check("log records written by read-only transactions", lm.latestLSN() - lsn, 0);
+
+      // a transaction that has modified the database cannot become read-only
+      tx = db.newTx();
+      BlockId blk = new BlockId("t.tbl", 0);
+      tx.pin(blk);
+      tx.setInt(blk, 0, tx.getInt(blk, 0), true);
+      try {
+         tx.setReadOnly(true);
+         System.out.println("read-only after update: NOT REFUSED");
+      }
+      catch(RuntimeException e) {
+         System.out.println("read-only after update: refused as expected");
+      }
+      tx.commit();
+      check("log records written by the update", lm.latestLSN() - lsn, 3);
+   }
+
+   private static int count(Planner planner, Transaction tx, String qry) {
+      Plan p = planner.createQueryPlan(qry, tx);
+      Scan s = p.open();
+      int n = 0;
+      while (s.next())
+         n++;
+      s.close();
+      return n;
+   }
+
+   private static void check(String what, int actual, int expected) {
+      System.out.println(what + ": " + actual + (actual == expected ? "" : ", NOT " + expected));
+   }
+}
@@ -0,0 +1,143 @@
+package simpledb.tx;
+
+import simpledb.server.SimpleDB;
+import simpledb.buffer.BufferMgr;
+import simpledb.file.*;
+import simpledb.log.LogMgr;
+import simpledb.record.*;
+import simpledb.tx.concurrency.LockAbortException;
+
+/**
+ * Runs interleaved transactions on one thread, which would
+ * wait forever if readers locked the blocks they read,
+ * and checks that each reads the values of its snapshot.
+ * Then runs inserters that would abort if a transaction
+ * created ahead of its use got a stale snapshot, or if
+ * concurrent insertions conflicted on the block they share.
+ */
+public class SnapshotTest {
+   public static void main(String[] args) {
+      SimpleDB db = new SimpleDB("snapshottest", 400, 8);
+      FileMgr fm = db.fileMgr();
+      LogMgr lm = db.logMgr();
+      BufferMgr bm = db.bufferMgr();
+      BlockId blk = new BlockId("testfile", 1);
+
+      Transaction tx1 = new Transaction(fm, lm, bm);
+      tx1.pin(blk);
+      tx1.setInt(blk, 80, 1, false);
+      tx1.setString(blk, 40, "one", false);
+      tx1.commit();
+
+      // a reader started before a writer keeps reading the old values,
+      // both before and after the writer commits
+      Transaction reader = new Transaction(fm, lm, bm);
+      reader.pin(blk);
+      check("reader before update", reader.getInt(blk, 80), 1);
+      Transaction writer = new Transaction(fm, lm, bm);
+      writer.pin(blk);
+      writer.setInt(blk, 80, 2, true);
+      writer.setString(blk, 40, "two", true);
+      check("writer sees its update", writer.getInt(blk, 80), 2);
+      check("reader during update", reader.getInt(blk, 80), 1);
+      writer.commit();
+      check("reader after commit", reader.getInt(blk, 80), 1);
+      System.out.println("reader after commit reads " + reader.getString(blk, 40));
+
+      // a transaction started after the commit sees the update
+      Transaction later = new Transaction(fm, lm, bm);
+      later.pin(blk);
+      check("later transaction", later.getInt(blk, 80), 2);
+      later.commit();
+
+      // the reader cannot update a block that was modified after it started
+      try {
+         reader.setInt(blk, 80, 3, true);
+         System.out.println("reader's update: NOT ABORTED");
+         reader.commit();
+      }
+      catch(LockAbortException e) {
+         System.out.println("reader's update: aborted as expected");
+         reader.rollback();
+      }
+
+      // a rolled-back update is never seen
+      Transaction tx2 = new Transaction(fm, lm, bm);
+      tx2.pin(blk);
+      Transaction tx3 = new Transaction(fm, lm, bm);
+      tx3.pin(blk);
+      tx2.setInt(blk, 80, 4, true);
+      tx2.rollback();
+      check("after rollback", tx3.getInt(blk, 80), 2);
+      tx3.setInt(blk, 80, 5, true);
+      tx3.commit();
+
+      Transaction tx4 = new Transaction(fm, lm, bm);
+      tx4.pin(blk);
+      check("final value", tx4.getInt(blk, 80), 5);
+      tx4.commit();
+
+      // two connections inserting in turn, each creating
+      // its next transaction when it commits
+      Schema sch = new Schema();
+      sch.addIntField("A");
+      Layout layout = new Layout(sch);
+      Transaction[] conns = { new Transaction(fm, lm, bm), new Transaction(fm, lm, bm) };
+      int aborts = 0;
+      for (int i=0; i<20; i++) {
+         Transaction tx = conns[i % 2];
+         try {
+            insert(tx, layout, i);
+            tx.commit();
+         }
+         catch(LockAbortException e) {
+            aborts++;
+            tx.rollback();
+         }
+         conns[i % 2] = new Transaction(fm, lm, bm);
+      }
+      check("aborted inserts in turn", aborts, 0);
+
+      // two overlapping inserters go to different blocks
+      Transaction txA = conns[0], txB = conns[1];
+      check("records seen by A", count(txA, layout), 20);
+      check("records seen by B", count(txB, layout), 20);
+      RID ridA = insert(txA, layout, 20);
+      txA.commit();
+      try {
+         RID ridB = insert(txB, layout, 21);
+         txB.commit();
+         System.out.println("overlapping inserts: B went to "
+               + (ridB.blockNumber() == ridA.blockNumber() ? "A's block" : "another block"));
+      }
+      catch(LockAbortException e) {
+         System.out.println("overlapping inserts: B ABORTED");
+         txB.rollback();
+      }
+      Transaction tx5 = new Transaction(fm, lm, bm);
+      check("records at the end", count(tx5, layout), 22);
+      tx5.commit();
+   }
+
+   private static RID insert(Transaction tx, Layout layout, int val) {
+      TableScan ts = new TableScan(tx, "snapshots", layout);
+      ts.insert();
+      ts.setInt("A", val);
+      RID rid = ts.getRid();
+      ts.close();
+      return rid;
+   }
+
+   private static int count(Transaction tx, Layout layout) {
+      TableScan ts = new TableScan(tx, "snapshots", layout);
+      int n = 0;
+      while (ts.next())
+         n++;
+      ts.close();
+      return n;
+   }
+
+   private static void check(String what, int actual, int expected) {
+      System.out.println(what + ": " + actual + (actual == expected ? "" : ", NOT " + expected));
+   }
+}
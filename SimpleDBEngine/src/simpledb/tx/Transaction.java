@@ -1,5 +1,6 @@
 package simpledb.tx;
 
+import java.util.Arrays;
 import simpledb.file.*;
 import simpledb.log.LogMgr;
 import simpledb.buffer.*;
@@ -10,17 +11,23 @@ import simpledb.tx.concurrency.ConcurrencyMgr;
  * Provide transaction management for clients,
  * ensuring that all transactions are serializable, recoverable,
  * and in general satisfy the ACID properties.
+ * <p>
+ * A transaction that modifies no blocks other than those of
+ * temporary tables is read-only: it reads its snapshot without
+ * locks, and it never touches the log.
+ * A transaction can also be declared read-only,
+ * so that any attempt to modify the database fails.
  * @author Edward Sciore
  */
 public class Transaction {
    private static int nextTxNum = 0;
-   private static final int END_OF_FILE = -1;
    private RecoveryMgr    recoveryMgr;
    private ConcurrencyMgr concurMgr;
    private BufferMgr bm;
    private FileMgr fm;
    private int txnum;
    private BufferList mybuffers;
+   private boolean readOnly = false;
    
    /**
     * Create a new transaction and its associated 
@@ -39,26 +46,49 @@ public class Transaction {
       this.bm = bm;
       txnum       = nextTxNumber();
       recoveryMgr = new RecoveryMgr(this, txnum, lm, bm);
-      concurMgr   = new ConcurrencyMgr();
+      concurMgr   = new ConcurrencyMgr(txnum, lm);
       mybuffers = new BufferList(bm);
    }
    
+   /**
+    * Declare whether the transaction is read-only.
+    * A transaction that has already modified the
+    * database cannot be made read-only.
+    * @param readOnly whether the transaction is read-only
+    */
+   public void setReadOnly(boolean readOnly) {
+      if (readOnly && recoveryMgr.isStarted())
+         throw new RuntimeException("transaction " + txnum + " has modified the database.");
+      this.readOnly = readOnly;
+   }
+
+   /**
+    * Return whether the transaction has been declared read-only.
+    * @return true if the transaction is read-only
+    */
+   public boolean isReadOnly() {
+      return readOnly;
+   }
+
    /**
     * Commit the current transaction.
-    * Flush all modified buffers (and their log records),
+    * Unless the transaction is read-only,
+    * flush any buffers holding unlogged modifications,
     * write and flush a commit record to the log,
+    * make the modifications visible to later transactions,
     * release all locks, and unpin any pinned buffers.
     */
    public void commit() {
       recoveryMgr.commit();
       System.out.println("transaction " + txnum + " committed");
-      concurMgr.release();
+      concurMgr.commit();
       mybuffers.unpinAll();
    }
    
    /**
     * Rollback the current transaction.
-    * Undo any modified values,
+    * Unless the transaction is read-only,
+    * undo any modified values,
     * flush those buffers,
     * write and flush a rollback record to the log,
     * release all locks, and unpin any pinned buffers.
@@ -66,14 +96,15 @@ public class Transaction {
    public void rollback() {
       recoveryMgr.rollback();
       System.out.println("transaction " + txnum + " rolled back");
-      concurMgr.release();
+      concurMgr.rollback();
       mybuffers.unpinAll();
    }
    
    /**
     * Flush all modified buffers.
     * Then go through the log, rolling back all
-    * uncommitted transactions.  Finally, 
+    * uncommitted transactions and redoing the
+    * committed ones.  Finally, 
     * write a quiescent checkpoint record to the log.
     * This method is called during system startup,
     * before user transactions begin.
@@ -105,109 +136,347 @@ public class Transaction {
    /**
     * Return the integer value stored at the
     * specified offset of the specified block.
-    * The method first obtains an SLock on the block,
-    * then it calls the buffer to retrieve the value.
+    * The value is read from the snapshot of the transaction
+    * (see {@link #snapshot}), so no lock is needed.
     * @param blk a reference to a disk block
     * @param offset the byte offset within the block
     * @return the integer stored at that offset
     */
    public int getInt(BlockId blk, int offset) {
-      concurMgr.sLock(blk);
       Buffer buff = mybuffers.getBuffer(blk);
-      return buff.contents().getInt(offset);
+      synchronized (buff) {
+         return snapshot(blk, buff).getInt(offset);
+      }
    }
    
    /**
     * Return the string value stored at the
     * specified offset of the specified block.
-    * The method first obtains an SLock on the block,
-    * then it calls the buffer to retrieve the value.
+    * The value is read from the snapshot of the transaction,
+    * so no lock is needed.
     * @param blk a reference to a disk block
     * @param offset the byte offset within the block
     * @return the string stored at that offset
     */
    public String getString(BlockId blk, int offset) {
-      concurMgr.sLock(blk);
       Buffer buff = mybuffers.getBuffer(blk);
-      return buff.contents().getString(offset);
+      synchronized (buff) {
+         return snapshot(blk, buff).getString(offset);
+      }
+   }
+   
+   /**
+    * Return the bytes of the string stored at the
+    * specified offset of the specified block,
+    * without decoding them into a string.
+    * The value is read from the snapshot of the transaction.
+    * @param blk a reference to a disk block
+    * @param offset the byte offset within the block
+    * @return the bytes of the string stored at that offset
+    */
+   public byte[] getBytes(BlockId blk, int offset) {
+      Buffer buff = mybuffers.getBuffer(blk);
+      synchronized (buff) {
+         return snapshot(blk, buff).getBytes(offset);
+      }
+   }
+   
+   /**
+    * Return the specified number of bytes stored
+    * at the specified offset of the specified block,
+    * which are not preceded by their length.
+    * The value is read from the snapshot of the transaction.
+    * @param blk a reference to a disk block
+    * @param offset the byte offset within the block
+    * @param length the number of bytes
+    * @return the bytes stored at that offset
+    */
+   public byte[] readBytes(BlockId blk, int offset, int length) {
+      Buffer buff = mybuffers.getBuffer(blk);
+      synchronized (buff) {
+         return snapshot(blk, buff).readBytes(offset, length);
+      }
+   }
+   
+   /**
+    * Read the integers stored at the specified offsets
+    * of the specified block into an array.
+    * The buffer and the snapshot of the block are obtained
+    * once for all of the values, which makes this cheaper
+    * than calling {@link #getInt} for each of them.
+    * @param blk a reference to a disk block
+    * @param offsets the byte offsets within the block
+    * @param n the number of offsets to read
+    * @param dest the array that receives the values
+    * @param destpos the position in dest of the first value
+    */
+   public void getInts(BlockId blk, int[] offsets, int n, int[] dest, int destpos) {
+      Buffer buff = mybuffers.getBuffer(blk);
+      synchronized (buff) {
+         Page p = snapshot(blk, buff);
+         for (int i=0; i<n; i++)
+            dest[destpos+i] = p.getInt(offsets[i]);
+      }
+   }
+   
+   /**
+    * Read the strings stored at the specified offsets
+    * of the specified block into an array, as {@link #getInts}
+    * does for integers.
+    * @param blk a reference to a disk block
+    * @param offsets the byte offsets within the block
+    * @param n the number of offsets to read
+    * @param dest the array that receives the values
+    * @param destpos the position in dest of the first value
+    */
+   public void getStrings(BlockId blk, int[] offsets, int n, String[] dest, int destpos) {
+      Buffer buff = mybuffers.getBuffer(blk);
+      synchronized (buff) {
+         Page p = snapshot(blk, buff);
+         for (int i=0; i<n; i++)
+            dest[destpos+i] = p.getString(offsets[i]);
+      }
    }
    
    /**
     * Store an integer at the specified offset 
     * of the specified block.
-    * The method first obtains an XLock on the block.
+    * The method first obtains an XLock on the block,
+    * and saves the block for transactions that started earlier.
     * It then reads the current value at that offset,
     * puts it into an update log record, and 
-    * writes that record to the log.
+    * writes that record to the log,
+    * unless the block belongs to a temporary table.
     * Finally, it calls the buffer to store the value,
-    * passing in the LSN of the log record and the transaction's id. 
+    * passing in the LSN of the log record and the transaction's id;
+    * a temporary table's buffer is not forced at commit.
     * @param blk a reference to the disk block
     * @param offset a byte offset within that block
     * @param val the value to be stored
     */
    public void setInt(BlockId blk, int offset, int val, boolean okToLog) {
+      boolean recoverable = beforeModify(blk.fileName());
       concurMgr.xLock(blk);
       Buffer buff = mybuffers.getBuffer(blk);
-      int lsn = -1;
-      if (okToLog)
-         lsn = recoveryMgr.setInt(buff, offset, val);
-      Page p = buff.contents();
-      p.setInt(offset, val);
-      buff.setModified(txnum, lsn);
+      synchronized (buff) { // keep the buffer from being flushed or read mid-change
+         concurMgr.beforeWrite(blk, buff.contents());
+         int lsn = recoverable ? -1 : Buffer.NO_FORCE;
+         if (okToLog && recoverable)
+            lsn = recoveryMgr.setInt(buff, offset, val);
+         Page p = buff.contents();
+         p.setInt(offset, val);
+         buff.setModified(txnum, lsn);
+      }
    }
    
    /**
     * Store a string at the specified offset 
     * of the specified block.
-    * The method first obtains an XLock on the block.
+    * The method first obtains an XLock on the block,
+    * and saves the block for transactions that started earlier.
     * It then reads the current value at that offset,
     * puts it into an update log record, and 
-    * writes that record to the log.
+    * writes that record to the log,
+    * unless the block belongs to a temporary table.
     * Finally, it calls the buffer to store the value,
-    * passing in the LSN of the log record and the transaction's id. 
+    * passing in the LSN of the log record and the transaction's id;
+    * a temporary table's buffer is not forced at commit.
     * @param blk a reference to the disk block
     * @param offset a byte offset within that block
     * @param val the value to be stored
     */
    public void setString(BlockId blk, int offset, String val, boolean okToLog) {
+      boolean recoverable = beforeModify(blk.fileName());
       concurMgr.xLock(blk);
       Buffer buff = mybuffers.getBuffer(blk);
-      int lsn = -1;
-      if (okToLog)
-         lsn = recoveryMgr.setString(buff, offset, val);
-      Page p = buff.contents();
-      p.setString(offset, val);
-      buff.setModified(txnum, lsn);
+      synchronized (buff) { // keep the buffer from being flushed or read mid-change
+         concurMgr.beforeWrite(blk, buff.contents());
+         int lsn = recoverable ? -1 : Buffer.NO_FORCE;
+         if (okToLog && recoverable)
+            lsn = recoveryMgr.setString(buff, offset, val);
+         Page p = buff.contents();
+         p.setString(offset, val);
+         buff.setModified(txnum, lsn);
+      }
+   }
+
+   /**
+    * Store bytes at the specified offset of the specified
+    * block, without their length, as {@link #setInt} does
+    * for an integer. The log record holds the bytes that
+    * the value overwrites, however they were stored,
+    * so that a range of the block can be changed at once.
+    * @param blk a reference to the disk block
+    * @param offset a byte offset within that block
+    * @param val the bytes to be stored
+    */
+   public void writeBytes(BlockId blk, int offset, byte[] val, boolean okToLog) {
+      boolean recoverable = beforeModify(blk.fileName());
+      concurMgr.xLock(blk);
+      Buffer buff = mybuffers.getBuffer(blk);
+      synchronized (buff) { // keep the buffer from being flushed or read mid-change
+         concurMgr.beforeWrite(blk, buff.contents());
+         int lsn = recoverable ? -1 : Buffer.NO_FORCE;
+         if (okToLog && recoverable)
+            lsn = recoveryMgr.writeBytes(buff, offset, val);
+         Page p = buff.contents();
+         p.writeBytes(offset, val);
+         buff.setModified(txnum, lsn);
+      }
    }
 
    /**
     * Return the number of blocks in the specified file.
-    * This method first obtains an SLock on the 
-    * "end of the file", before asking the file manager
-    * to return the file size.
+    * No lock is needed: a block appended by a transaction
+    * that is not in the snapshot reads as an empty block,
+    * since it was saved before the transaction formatted it.
     * @param filename the name of the file
     * @return the number of blocks in the file
     */
    public int size(String filename) {
-      BlockId dummyblk = new BlockId(filename, END_OF_FILE);
-      concurMgr.sLock(dummyblk);
       return fm.length(filename);
    }
    
    /**
     * Append a new block to the end of the specified file
     * and returns a reference to it.
-    * This method first obtains an XLock on the
-    * "end of the file", before performing the append.
+    * No lock is needed: concurrent appends get different
+    * blocks, and the transaction XLocks the new block
+    * when it formats it.
     * @param filename the name of the file
     * @return a reference to the newly-created disk block
     */
    public BlockId append(String filename) {
-      BlockId dummyblk = new BlockId(filename, END_OF_FILE);
-      concurMgr.xLock(dummyblk);
+      beforeModify(filename);
       return fm.append(filename);
    }
+
+   /**
+    * Return whether a record can be inserted into the block
+    * without aborting the transaction: that is, unless another
+    * transaction modified the block and committed after this
+    * transaction's snapshot. Such a modification need not touch
+    * the slot the insertion would use, so the inserter goes to
+    * another block instead of failing.
+    * @param blk a reference to the disk block
+    * @return whether an insertion can use the block
+    */
+   public boolean canInsert(BlockId blk) {
+      return concurMgr.isCurrent(blk);
+   }
+
+   /**
+    * Obtain an XLock on the whole file, for a statement
+    * that is about to modify most of its blocks.
+    * The blocks then need no locks of their own.
+    * @param filename the name of the file
+    */
+   public void lockTable(String filename) {
+      beforeModify(filename);
+      concurMgr.lockTable(filename);
+   }
    
+   /**
+    * Return the integer stored at the specified offset
+    * of a block of a hint file, such as a free-space map.
+    * Hints are neither locked nor logged: a stale hint
+    * costs performance but not correctness, because the
+    * caller checks whatever a hint tells it.
+    * A block beyond the end of the file reads as zeros.
+    * @param blk a reference to the disk block
+    * @param offset the byte offset within the block
+    * @return the integer stored at that offset
+    */
+   public int getHint(BlockId blk, int offset) {
+      if (blk.number() >= fm.length(blk.fileName()))
+         return 0;
+      Buffer buff = bm.pin(blk);
+      try {
+         synchronized (buff) {
+            return buff.contents().getInt(offset);
+         }
+      }
+      finally {
+         bm.unpin(buff);
+      }
+   }
+
+   /**
+    * Read n consecutive integers of a block of a hint file,
+    * starting at the specified offset, into an array.
+    * The block is pinned once for all of the values,
+    * which makes this cheaper than calling {@link #getHint}
+    * for each of them.
+    * A block beyond the end of the file reads as zeros.
+    * @param blk a reference to the disk block
+    * @param offset the byte offset of the first integer
+    * @param n the number of integers to read
+    * @param dest the array that receives the values
+    */
+   public void getHints(BlockId blk, int offset, int n, int[] dest) {
+      if (blk.number() >= fm.length(blk.fileName())) {
+         Arrays.fill(dest, 0, n, 0);
+         return;
+      }
+      Buffer buff = bm.pin(blk);
+      try {
+         synchronized (buff) {
+            Page p = buff.contents();
+            for (int i=0; i<n; i++)
+               dest[i] = p.getInt(offset + i*Integer.BYTES);
+         }
+      }
+      finally {
+         bm.unpin(buff);
+      }
+   }
+
+   /**
+    * Store an integer at the specified offset of a block
+    * of a hint file, extending the file if necessary.
+    * The modification is not locked or logged (see {@link #getHint}),
+    * and the buffer is not forced at commit, but written
+    * whenever it is replaced or flushed.
+    * @param blk a reference to the disk block
+    * @param offset the byte offset within the block
+    * @param val the value to be stored
+    */
+   public void setHint(BlockId blk, int offset, int val) {
+      while (blk.number() >= fm.length(blk.fileName()))
+         fm.append(blk.fileName());
+      Buffer buff = bm.pin(blk);
+      synchronized (buff) {
+         buff.contents().setInt(offset, val);
+         buff.setModified(txnum, Buffer.NO_FORCE);
+      }
+      bm.unpin(buff);
+   }
+
+   /**
+    * Check that the transaction may modify the file, and make
+    * sure that its START record has been written; unless the
+    * file is a temporary table, whose modifications are not logged,
+    * since the table is discarded when the transaction finishes.
+    * @return whether modifications to the file are logged
+    */
+   private boolean beforeModify(String filename) {
+      if (filename.startsWith("temp"))
+         return false;
+      if (readOnly)
+         throw new RuntimeException("transaction " + txnum + " is read-only.");
+      recoveryMgr.start();
+      return true;
+   }
+
+   /**
+    * Return the contents of the pinned block as of
+    * the snapshot of the transaction.
+    * The caller synchronizes on the buffer.
+    */
+   private Page snapshot(BlockId blk, Buffer buff) {
+      return concurMgr.snapshot(blk, buff.contents());
+   }
+
    public int blockSize() {
       return fm.blockSize();
    }
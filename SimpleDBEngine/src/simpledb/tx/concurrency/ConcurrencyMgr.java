@@ -1,51 +1,169 @@
 package simpledb.tx.concurrency;
 
 import java.util.*;
-import simpledb.file.BlockId;
+import simpledb.file.*;
+import simpledb.log.LogMgr;
 
 /**
  * The concurrency manager for the transaction.
  * Each transaction has its own concurrency manager. 
  * The concurrency manager keeps track of which locks the 
  * transaction currently has, and interacts with the
- * global lock table as needed. 
+ * lock table of the database as needed.
+ * <p>
+ * Locks are hierarchical: before XLocking a block, a transaction
+ * locks the block's file in the intention mode IX, so that
+ * a transaction can XLock a whole file with a single lock.
+ * Once a transaction has XLocked ESCALATION blocks of a file,
+ * it tries to XLock the file instead, and gives up its block locks.
+ * <p>
+ * Transactions run under snapshot isolation: a transaction reads
+ * the database as of its first access to it, using the earlier versions of
+ * blocks kept by the version store of the database, and so reads take no locks.
+ * Modifications take XLocks, and a transaction aborts if it tries to
+ * modify a block that another transaction modified and committed
+ * after it started.
  * @author Edward Sciore
  */
 public class ConcurrencyMgr {
 
+   private static final int ESCALATION = 50;  // XLocked blocks per file
+
+   private LockTable locktbl;
+   private VersionStore versions;
+   private Map<Object,LockMode> locks = new HashMap<>();
+   private Map<String,Integer> blockCounts = new HashMap<>();
+   private Set<BlockId> writable = new HashSet<>();
+   private int txnum;
+   private long snapshot = -1;  // taken at the first access
+
    /**
-    * The global lock table. This variable is static because 
-    * all transactions share the same table.
+    * Create a concurrency manager for the specified transaction.
+    * The lock table uses the id of the transaction to find
+    * deadlocks, and to choose which transaction to abort.
+    * The transaction gets its snapshot timestamp when it
+    * first reads or modifies a block, rather than now, so that
+    * a transaction created ahead of its use (as a connection does
+    * for its next one) neither starts with a stale snapshot nor
+    * keeps the version store from discarding old versions.
+    * The lock table and the version store are those
+    * of the database, which its log manager holds.
+    * @param txnum the id of the transaction
+    * @param lm the log manager of the database
     */
-   private static LockTable locktbl = new LockTable();
-   private Map<BlockId,String> locks  = new HashMap<BlockId,String>();
+   public ConcurrencyMgr(int txnum, LogMgr lm) {
+      this.txnum = txnum;
+      locktbl = lm.lockTable();
+      versions = lm.versionStore();
+   }
 
    /**
-    * Obtain an SLock on the block, if necessary.
-    * The method will ask the lock table for an SLock
-    * if the transaction currently has no locks on that block.
+    * Return the page that the transaction reads for the block:
+    * either its current contents, or an earlier version of it
+    * if the block was modified by a transaction that had not
+    * committed when this transaction started.
+    * The caller keeps the buffer from being modified during
+    * the call and while it reads the page.
     * @param blk a reference to the disk block
+    * @param current the current contents of the block
+    * @return the contents that the transaction sees
     */
-   public void sLock(BlockId blk) {
-      if (locks.get(blk) == null) {
-         locktbl.sLock(blk);
-         locks.put(blk, "S");
-      }
+   public Page snapshot(BlockId blk, Page current) {
+      Page image = versions.image(blk, txnum, snapshot());
+      return (image == null) ? current : image;
+   }
+
+   /**
+    * Save the current contents of the block, which the
+    * transaction is about to modify, so that transactions
+    * that started earlier keep reading them.
+    * The caller holds an XLock on the block, and keeps the
+    * buffer from being modified or read during the call.
+    * @param blk a reference to the disk block
+    * @param current the current contents of the block
+    */
+   public void beforeWrite(BlockId blk, Page current) {
+      if (!blk.fileName().startsWith("temp"))
+         versions.save(blk, txnum, current);
    }
 
    /**
     * Obtain an XLock on the block, if necessary.
-    * If the transaction does not have an XLock on that block,
-    * then the method first gets an SLock on that block
-    * (if necessary), and then upgrades it to an XLock.
+    * Unless the transaction has an XLock on the block's file,
+    * the method asks the lock table for an IX lock on the file
+    * and an XLock on the block, and then may escalate to an
+    * XLock on the file.
+    * If another transaction modified the block and committed
+    * after this transaction started, then an exception is thrown.
+    * The blocks of temporary tables, which belong to a
+    * single transaction, are not locked.
     * @param blk a reference to the disk block
     */
    public void xLock(BlockId blk) {
-      if (!hasXLock(blk)) {
-         sLock(blk);
-         locktbl.xLock(blk);
-         locks.put(blk, "X");
+      if (writable.contains(blk) || blk.fileName().startsWith("temp"))
+         return;
+      String filename = blk.fileName();
+      if (!covered(filename, LockMode.X)) {
+         lock(filename, LockMode.IX);
+         lock(blk, LockMode.X);
+         int count = blockCounts.merge(filename, 1, Integer::sum);
+         if (count % ESCALATION == 0 && locktbl.tryLock(filename, txnum, LockMode.X)) {
+            locks.put(filename, LockMode.X);
+            releaseBlocks(filename);
+         }
       }
+      if (versions.conflicts(blk, txnum, snapshot()))
+         throw new LockAbortException();
+      writable.add(blk);
+   }
+
+   /**
+    * Return whether the transaction can modify the block
+    * without aborting: that is, unless another transaction
+    * modified it and committed after this transaction's snapshot.
+    * An insertion that finds a block it cannot modify
+    * goes to another block instead.
+    * No lock is taken, so a transaction that commits a modification
+    * of the block before the XLock is granted still causes an abort.
+    * @param blk a reference to the disk block
+    * @return whether the block is current in the snapshot
+    */
+   public boolean isCurrent(BlockId blk) {
+      if (writable.contains(blk) || blk.fileName().startsWith("temp"))
+         return true;
+      return !versions.conflicts(blk, txnum, snapshot());
+   }
+
+   /**
+    * XLock the whole file, so that its blocks can be
+    * modified without locking each of them.
+    * The lock waits for the transactions that
+    * have locked any block of the file.
+    * @param filename the name of the file
+    */
+   public void lockTable(String filename) {
+      if (covered(filename, LockMode.X))
+         return;
+      lock(filename, LockMode.X);
+      releaseBlocks(filename);
+   }
+
+   /**
+    * Make the modifications of the transaction visible
+    * to transactions that start later, and release its locks.
+    */
+   public void commit() {
+      versions.commit(txnum);
+      release();
+   }
+
+   /**
+    * Discard the versions saved by the transaction, whose
+    * modifications have been undone, and release its locks.
+    */
+   public void rollback() {
+      versions.rollback(txnum);
+      release();
    }
 
    /**
@@ -53,13 +171,72 @@ public class ConcurrencyMgr {
     * unlock each one.
     */
    public void release() {
-      for (BlockId blk : locks.keySet()) 
-         locktbl.unlock(blk);
+      for (Object item : locks.keySet()) 
+         locktbl.unlock(item, txnum);
       locks.clear();
+      blockCounts.clear();
+      writable.clear();
+   }
+
+   /**
+    * Return the number of deadlocks that the lock table
+    * of the database has broken by aborting a transaction.
+    * @param lm the log manager of the database
+    * @return the number of deadlocks
+    */
+   public static long deadlockCount(LogMgr lm) {
+      return lm.lockTable().deadlocks();
+   }
+
+   /**
+    * Return the number of lock requests that had to wait.
+    * @param lm the log manager of the database
+    * @return the number of lock waits
+    */
+   public static long lockWaitCount(LogMgr lm) {
+      return lm.lockTable().lockWaits();
+   }
+
+   /**
+    * Return the total time that transactions have
+    * spent waiting for locks.
+    * @param lm the log manager of the database
+    * @return the lock wait time in nanoseconds
+    */
+   public static long lockWaitNanos(LogMgr lm) {
+      return lm.lockTable().lockWaitNanos();
+   }
+
+   private long snapshot() {
+      if (snapshot < 0)
+         snapshot = versions.begin(txnum);
+      return snapshot;
+   }
+
+   private boolean covered(Object item, LockMode mode) {
+      LockMode held = locks.get(item);
+      return held != null && held.covers(mode);
    }
 
-   private boolean hasXLock(BlockId blk) {
-      String locktype = locks.get(blk);
-      return locktype != null && locktype.equals("X");
+   private void lock(Object item, LockMode mode) {
+      if (!covered(item, mode)) {
+         locktbl.lock(item, txnum, mode);
+         locks.merge(item, mode, LockMode::join);
+      }
+   }
+
+   /**
+    * Give up the block locks of the file, which
+    * the XLock on the file now covers.
+    */
+   private void releaseBlocks(String filename) {
+      Iterator<Map.Entry<Object,LockMode>> iter = locks.entrySet().iterator();
+      while (iter.hasNext()) {
+         Object item = iter.next().getKey();
+         if (item instanceof BlockId && ((BlockId) item).fileName().equals(filename)) {
+            locktbl.unlock(item, txnum);
+            iter.remove();
+         }
+      }
    }
 }
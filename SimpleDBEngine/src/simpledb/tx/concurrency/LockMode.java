@@ -0,0 +1,44 @@
+package simpledb.tx.concurrency;
+
+/**
+ * The modes of a lock in the lock hierarchy.
+ * A transaction locks a file in the intention mode IX
+ * before it XLocks a block of the file; or it XLocks
+ * the whole file.
+ * Reads take no locks, since transactions read their
+ * snapshots (see {@link ConcurrencyMgr}), so there are no
+ * shared modes.
+ */
+public enum LockMode {
+   IX, X;
+
+   /**
+    * Return whether two transactions can hold
+    * this mode and the specified mode on the same item.
+    * @param other the mode held by the other transaction
+    * @return whether the two modes are compatible
+    */
+   public boolean compatible(LockMode other) {
+      return this == IX && other == IX;
+   }
+
+   /**
+    * Return whether a transaction holding this mode
+    * needs nothing more to have the specified mode.
+    * @param other the mode wanted
+    * @return whether this mode is at least as strong
+    */
+   public boolean covers(LockMode other) {
+      return this == X || other == IX;
+   }
+
+   /**
+    * Return the weakest mode that covers both
+    * this mode and the specified mode.
+    * @param other another mode
+    * @return the weakest mode covering both
+    */
+   public LockMode join(LockMode other) {
+      return covers(other) ? this : other;
+   }
+}
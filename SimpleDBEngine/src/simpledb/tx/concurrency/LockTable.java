@@ -1,103 +1,399 @@
 package simpledb.tx.concurrency;
 
 import java.util.*;
-import simpledb.file.BlockId;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.*;
 
 /**
- * The lock table, which provides methods to lock and unlock blocks.
- * If a transaction requests a lock that causes a conflict with an
- * existing lock, then that transaction is placed on a wait list.
- * There is only one wait list for all blocks.
- * When the last lock on a block is unlocked, then all transactions
- * are removed from the wait list and rescheduled.
- * If one of those transactions discovers that the lock it is waiting for
- * is still locked, it will place itself back on the wait list.
+ * The lock table, which provides methods to lock and unlock
+ * the items of the lock hierarchy: files, and blocks of files.
+ * An item is locked in one of the modes of {@link LockMode};
+ * a transaction that locks an item it already holds
+ * gets the weakest mode covering both.
+ * <p>
+ * The table is divided into stripes, each guarding the locks
+ * of the items that hash to it, so that transactions locking
+ * different items seldom contend.
+ * Each lock has a FIFO queue of the requests that could not be
+ * granted at once. When the lock changes, the queued requests that
+ * can be granted are granted in queue order, and only their
+ * transactions are woken up.
+ * A request is queued behind an earlier conflicting request,
+ * so that the earlier one is not starved; but a request by a
+ * transaction that already holds the item (an upgrade) is not
+ * held up by the queue, and does not hold up later requests.
+ * An upgrade waits only for the other holders to leave, so making
+ * later requests queue behind it would turn many overlapping
+ * transactions into deadlocks.
+ * <p>
+ * Each waiting transaction is recorded, and the waits-for graph
+ * is searched for a cycle each time a transaction is about to wait.
+ * The searches are made one at a time, and look at one stripe at
+ * a time; a cycle seen while locks are changing may not be a real
+ * deadlock, in which case a transaction is aborted needlessly.
+ * If there is a cycle, the youngest transaction in it is aborted
+ * right away: if it is not the transaction about to wait, its request
+ * is cancelled and it is woken up to throw an exception.
+ * If the search grows too large, the table falls back to the
+ * wait-die policy: a transaction waits only for younger transactions,
+ * and otherwise aborts.
+ * Each database has its own lock table, which its
+ * log manager holds.
  * @author Edward Sciore
  */
-class LockTable {
-   private static final long MAX_TIME = 10000; // 10 seconds
-   
-   private Map<BlockId,Integer> locks = new HashMap<BlockId,Integer>();
-   
+public class LockTable {
+   private static final int STRIPES = 64;
+   private static final int MAX_SEARCH = 1000; // transactions visited per search
+
+   private Stripe[] stripes = new Stripe[STRIPES];
+   private Map<Integer,Request> waiting = new ConcurrentHashMap<>();
+   private Object detector = new Object();
+   private AtomicLong deadlocks = new AtomicLong();
+   private AtomicLong lockWaits = new AtomicLong();
+   private AtomicLong lockWaitNanos = new AtomicLong();
+
+   public LockTable() {
+      for (int i=0; i<STRIPES; i++)
+         stripes[i] = new Stripe();
+   }
+
    /**
-    * Grant an SLock on the specified block.
-    * If an XLock exists when the method is called,
-    * then the calling thread will be placed on a wait list
-    * until the lock is released.
-    * If the thread remains on the wait list for a certain 
-    * amount of time (currently 10 seconds),
-    * then an exception is thrown.
-    * @param blk a reference to the disk block
+    * Lock the item in the specified mode.
+    * If the mode conflicts with the lock of another transaction,
+    * or with an earlier queued request, then the calling
+    * thread waits until its request is granted.
+    * If waiting would cause a deadlock, and the calling transaction
+    * is chosen to be aborted, then an exception is thrown.
+    * @param item the file name or block to be locked
+    * @param txnum the id of the calling transaction
+    * @param mode the mode wanted
     */
-   public synchronized void sLock(BlockId blk) {
+   void lock(Object item, int txnum, LockMode mode) {
+      Stripe st = stripe(item);
+      Request r;
+      st.mutex.lock();
+      try {
+         LockState ls = st.locks.computeIfAbsent(item, i -> new LockState());
+         r = ls.request(item, txnum, mode, st);
+         if (r == null)
+            return;
+         ls.queue.addLast(r);
+         waiting.put(txnum, r);
+      }
+      finally {
+         st.mutex.unlock();
+      }
+
+      long start = System.nanoTime();
       try {
-         long timestamp = System.currentTimeMillis();
-         while (hasXlock(blk) && !waitingTooLong(timestamp))
-            wait(MAX_TIME);
-         if (hasXlock(blk))
-            throw new LockAbortException();
-         int val = getLockVal(blk);  // will not be negative
-         locks.put(blk, val+1);
-      }
-      catch(InterruptedException e) {
+         // the search takes other stripes, so this one is not held
+         checkDeadlock(r);
+         st.mutex.lock();
+         try {
+            while (!r.granted && !r.cancelled)
+               r.ready.awaitUninterruptibly();
+         }
+         finally {
+            st.mutex.unlock();
+         }
+      }
+      finally {
+         waiting.remove(txnum);
+         lockWaits.incrementAndGet();
+         lockWaitNanos.addAndGet(System.nanoTime() - start);
+      }
+      if (r.cancelled)
          throw new LockAbortException();
+   }
+
+   /**
+    * Lock the item in the specified mode if that can be done
+    * without waiting, and otherwise leave the lock unchanged.
+    * @param item the file name or block to be locked
+    * @param txnum the id of the calling transaction
+    * @param mode the mode wanted
+    * @return whether the lock was granted
+    */
+   boolean tryLock(Object item, int txnum, LockMode mode) {
+      Stripe st = stripe(item);
+      st.mutex.lock();
+      try {
+         LockState ls = st.locks.computeIfAbsent(item, i -> new LockState());
+         boolean granted = (ls.request(item, txnum, mode, st) == null);
+         if (ls.holders.isEmpty() && ls.queue.isEmpty())
+            st.locks.remove(item);
+         return granted;
+      }
+      finally {
+         st.mutex.unlock();
       }
    }
-   
+
    /**
-    * Grant an XLock on the specified block.
-    * If a lock of any type exists when the method is called,
-    * then the calling thread will be placed on a wait list
-    * until the locks are released.
-    * If the thread remains on the wait list for a certain 
-    * amount of time (currently 10 seconds),
-    * then an exception is thrown.
-    * @param blk a reference to the disk block
+    * Release the lock of the transaction on the specified item,
+    * and grant the queued requests that it was blocking.
+    * @param item the file name or block to be unlocked
+    * @param txnum the id of the calling transaction
     */
-   synchronized void xLock(BlockId blk) {
+   void unlock(Object item, int txnum) {
+      Stripe st = stripe(item);
+      st.mutex.lock();
       try {
-         long timestamp = System.currentTimeMillis();
-         while (hasOtherSLocks(blk) && !waitingTooLong(timestamp))
-            wait(MAX_TIME);
-         if (hasOtherSLocks(blk))
-            throw new LockAbortException();
-         locks.put(blk, -1);
-      }
-      catch(InterruptedException e) {
-         throw new LockAbortException();
+         LockState ls = st.locks.get(item);
+         if (ls == null)
+            return;
+         ls.holders.remove(txnum);
+         grantWaiting(ls);
+         if (ls.holders.isEmpty() && ls.queue.isEmpty())
+            st.locks.remove(item);
+      }
+      finally {
+         st.mutex.unlock();
+      }
+   }
+
+   /**
+    * Return the number of deadlocks that were broken
+    * by aborting a transaction.
+    * @return the number of deadlocks
+    */
+   long deadlocks() {
+      return deadlocks.get();
+   }
+
+   /**
+    * Return the number of lock requests that had to wait.
+    * @return the number of lock waits
+    */
+   long lockWaits() {
+      return lockWaits.get();
+   }
+
+   /**
+    * Return the total time spent waiting for locks,
+    * including by transactions that were then aborted.
+    * @return the lock wait time in nanoseconds
+    */
+   long lockWaitNanos() {
+      return lockWaitNanos.get();
+   }
+
+   /**
+    * Look for a cycle in the waits-for graph through the
+    * transaction of the request, which has just been queued.
+    * Cancel the request of the youngest transaction of the
+    * cycle, if any, which wakes that transaction up.
+    * The request may have closed several cycles, so the search
+    * is repeated until there is none left.
+    */
+   private void checkDeadlock(Request r) {
+      synchronized (detector) {
+         while (true) {
+            Deque<Integer> path = new ArrayDeque<>();
+            Set<Integer> visited = new HashSet<>();
+            Boolean found = reaches(r.txnum, r.txnum, visited, path);
+            if (found == null) {
+               // the search grew too large, so use wait-die instead
+               for (int tx : blockers(r))
+                  if (tx < r.txnum) {
+                     cancel(r);
+                     return;
+                  }
+               return;
+            }
+            if (!found)
+               return;
+            int victim = r.txnum;
+            for (int tx : path)
+               victim = Math.max(victim, tx);
+            Request vr = waiting.get(victim);
+            if (vr == null || !cancel(vr))
+               return;
+            deadlocks.incrementAndGet();
+            if (victim == r.txnum)
+               return;
+         }
       }
    }
-   
+
    /**
-    * Release a lock on the specified block.
-    * If this lock is the last lock on that block,
-    * then the waiting transactions are notified.
-    * @param blk a reference to the disk block
+    * Return whether the target transaction can be reached by
+    * following the waits-for graph from the specified transaction,
+    * putting the transactions in between on the path;
+    * or null if more than MAX_SEARCH transactions were visited.
     */
-   synchronized void unlock(BlockId blk) {
-      int val = getLockVal(blk);
-      if (val > 1)
-         locks.put(blk, val-1);
-      else {
-         locks.remove(blk);
-         notifyAll();
-      }
-   }
-   
-   private boolean hasXlock(BlockId blk) {
-      return getLockVal(blk) < 0;
-   }
-   
-   private boolean hasOtherSLocks(BlockId blk) {
-      return getLockVal(blk) > 1;
-   }
-   
-   private boolean waitingTooLong(long starttime) {
-      return System.currentTimeMillis() - starttime > MAX_TIME;
-   }
-   
-   private int getLockVal(BlockId blk) {
-      Integer ival = locks.get(blk);
-      return (ival == null) ? 0 : ival.intValue();
+   private Boolean reaches(int from, int target, Set<Integer> visited, Deque<Integer> path) {
+      Request r = waiting.get(from);
+      if (r == null)
+         return false;
+      for (int tx : blockers(r)) {
+         if (tx == target)
+            return true;
+         if (!visited.add(tx))
+            continue;
+         if (visited.size() > MAX_SEARCH)
+            return null;
+         path.push(tx);
+         Boolean found = reaches(tx, target, visited, path);
+         if (found == null || found)
+            return found;
+         path.pop();
+      }
+      return false;
+   }
+
+   /**
+    * Return the transactions that the request waits for:
+    * the other holders of conflicting locks, and unless the
+    * request is an upgrade, the transactions of the conflicting
+    * requests queued ahead of it.
+    * A request that is no longer queued waits for nothing.
+    */
+   private List<Integer> blockers(Request r) {
+      List<Integer> result = new ArrayList<>();
+      Stripe st = stripe(r.item);
+      st.mutex.lock();
+      try {
+         LockState ls = st.locks.get(r.item);
+         if (ls == null || r.granted || r.cancelled)
+            return result;
+         for (Map.Entry<Integer,LockMode> e : ls.holders.entrySet())
+            if (e.getKey() != r.txnum && !e.getValue().compatible(r.mode))
+               result.add(e.getKey());
+         if (!r.upgrade)
+            for (Request ahead : ls.queue) {
+               if (ahead == r)
+                  break;
+               if (!ahead.upgrade && !ahead.mode.compatible(r.mode))
+                  result.add(ahead.txnum);
+            }
+         return result;
+      }
+      finally {
+         st.mutex.unlock();
+      }
+   }
+
+   /**
+    * Cancel the request if it is still queued, grant the
+    * requests that it was blocking, and wake its transaction.
+    * @return whether the request was cancelled
+    */
+   private boolean cancel(Request r) {
+      Stripe st = stripe(r.item);
+      st.mutex.lock();
+      try {
+         LockState ls = st.locks.get(r.item);
+         if (ls == null || r.granted || r.cancelled)
+            return false;
+         ls.queue.remove(r);
+         r.cancelled = true;
+         r.ready.signal();
+         grantWaiting(ls);
+         if (ls.holders.isEmpty() && ls.queue.isEmpty())
+            st.locks.remove(r.item);
+         return true;
+      }
+      finally {
+         st.mutex.unlock();
+      }
+   }
+
+   /**
+    * Grant the queued requests that are compatible with the lock
+    * and with the earlier requests still queued, in queue order,
+    * and wake their transactions.
+    */
+   private void grantWaiting(LockState ls) {
+      List<Request> ahead = new ArrayList<>();
+      Iterator<Request> iter = ls.queue.iterator();
+      while (iter.hasNext()) {
+         Request r = iter.next();
+         if (ls.compatible(r) && (r.upgrade || !conflicts(ahead, r))) {
+            iter.remove();
+            ls.grant(r);
+            r.ready.signal();
+         }
+         else
+            ahead.add(r);
+      }
+   }
+
+   /**
+    * Return whether the request must queue behind one
+    * of the specified requests, which are ahead of it.
+    */
+   private static boolean conflicts(Collection<Request> ahead, Request r) {
+      for (Request q : ahead)
+         if (!q.upgrade && !q.mode.compatible(r.mode))
+            return true;
+      return false;
+   }
+
+   private Stripe stripe(Object item) {
+      int h = item.hashCode();
+      h ^= h >>> 16;
+      return stripes[h & (STRIPES - 1)];
+   }
+
+   private static class Stripe {
+      final ReentrantLock mutex = new ReentrantLock();
+      final Map<Object,LockState> locks = new HashMap<>();
+   }
+
+   /**
+    * The lock on an item: the mode held by each
+    * transaction, and the queued requests.
+    */
+   private static class LockState {
+      final Map<Integer,LockMode> holders = new HashMap<>();
+      final Deque<Request> queue = new ArrayDeque<>();
+
+      /**
+       * Grant the mode at once if possible, returning null;
+       * otherwise return a request for it, to be queued.
+       */
+      Request request(Object item, int txnum, LockMode mode, Stripe st) {
+         LockMode held = holders.get(txnum);
+         if (held != null && held.covers(mode))
+            return null;
+         LockMode wanted = (held == null) ? mode : held.join(mode);
+         Request r = new Request(item, txnum, wanted, held != null, st.mutex.newCondition());
+         if (compatible(r) && (r.upgrade || !conflicts(queue, r))) {
+            grant(r);
+            return null;
+         }
+         return r;
+      }
+
+      boolean compatible(Request r) {
+         for (Map.Entry<Integer,LockMode> e : holders.entrySet())
+            if (e.getKey() != r.txnum && !e.getValue().compatible(r.mode))
+               return false;
+         return true;
+      }
+
+      void grant(Request r) {
+         r.granted = true;
+         holders.put(r.txnum, r.mode);
+      }
+   }
+
+   private static class Request {
+      final Object item;
+      final int txnum;
+      final LockMode mode;
+      final boolean upgrade;
+      final Condition ready;
+      boolean granted = false, cancelled = false;
+
+      Request(Object item, int txnum, LockMode mode, boolean upgrade, Condition ready) {
+         this.item = item;
+         this.txnum = txnum;
+         this.mode = mode;
+         this.upgrade = upgrade;
+         this.ready = ready;
+      }
    }
 }
@@ -0,0 +1,169 @@
+package simpledb.tx.concurrency;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import simpledb.file.*;
+
+/**
+ * The version store, which keeps the earlier versions of
+ * modified blocks, so that each transaction can read the
+ * database as it was when the transaction started.
+ * <p>
+ * Each transaction gets a snapshot timestamp when it starts,
+ * and each committing transaction gets a larger commit timestamp.
+ * The first time a transaction modifies a block, a copy of the
+ * block is saved. A transaction sees the modifications of
+ * the transactions that committed before its snapshot, and its own;
+ * when it reads a block having a later modification, it reads the
+ * copy saved by the earliest such modification instead.
+ * Since a transaction modifies a block only while holding an XLock
+ * on it (or on its file), the versions of a block are in commit order, and only the
+ * last can be uncommitted.
+ * A version is discarded once no active transaction can need it,
+ * which is when every active snapshot is at least its commit timestamp.
+ * Each database has its own version store, which its
+ * log manager holds.
+ */
+public class VersionStore {
+   private static final long UNCOMMITTED = Long.MAX_VALUE;
+
+   private long clock = 0;  // the last commit timestamp
+   private Map<Integer,Long> active = new HashMap<>();
+   private Map<BlockId,Deque<Version>> versions = new ConcurrentHashMap<>();
+   private Map<Integer,List<Version>> written = new HashMap<>();
+   private Deque<Version> committed = new ArrayDeque<>();
+
+   /**
+    * Start the specified transaction, and return its snapshot timestamp.
+    * @param txnum the id of the transaction
+    * @return the snapshot timestamp
+    */
+   synchronized long begin(int txnum) {
+      active.put(txnum, clock);
+      return clock;
+   }
+
+   /**
+    * Return the earlier version of the block that a transaction
+    * having the specified snapshot should read,
+    * or null if it should read the current contents.
+    * The caller keeps the block from being modified during the call.
+    * @param blk a reference to the disk block
+    * @param txnum the id of the reading transaction
+    * @param snapshot the snapshot timestamp of the reading transaction
+    * @return the page to read, or null
+    */
+   Page image(BlockId blk, int txnum, long snapshot) {
+      if (!versions.containsKey(blk))
+         return null;
+      synchronized (this) {
+         Deque<Version> vs = versions.get(blk);
+         if (vs == null)
+            return null;
+         for (Version v : vs)
+            if (v.txnum != txnum && v.commitTs > snapshot)
+               return v.image;
+         return null;
+      }
+   }
+
+   /**
+    * Return whether another transaction committed a
+    * modification to the block after the specified snapshot.
+    * The caller holds an XLock on the block.
+    * @param blk a reference to the disk block
+    * @param txnum the id of the calling transaction
+    * @param snapshot the snapshot timestamp of the calling transaction
+    * @return whether a later modification was committed
+    */
+   synchronized boolean conflicts(BlockId blk, int txnum, long snapshot) {
+      Deque<Version> vs = versions.get(blk);
+      if (vs == null)
+         return false;
+      Version last = vs.peekLast();
+      return last.txnum != txnum && last.commitTs > snapshot;
+   }
+
+   /**
+    * Save a copy of the block before the transaction
+    * modifies it, unless the transaction has already done so.
+    * The caller holds an XLock on the block, and keeps it
+    * from being modified or read during the call.
+    * @param blk a reference to the disk block
+    * @param txnum the id of the modifying transaction
+    * @param current the current contents of the block
+    */
+   synchronized void save(BlockId blk, int txnum, Page current) {
+      Deque<Version> vs = versions.computeIfAbsent(blk, b -> new ArrayDeque<>());
+      if (!vs.isEmpty() && vs.peekLast().txnum == txnum)
+         return;
+      Version v = new Version(blk, txnum, current.copy());
+      vs.addLast(v);
+      written.computeIfAbsent(txnum, t -> new ArrayList<>()).add(v);
+   }
+
+   /**
+    * Give the modifications of the transaction a commit timestamp,
+    * which makes them visible to transactions that start later.
+    * The caller still holds the XLocks of the transaction.
+    * @param txnum the id of the committing transaction
+    */
+   synchronized void commit(int txnum) {
+      active.remove(txnum);
+      List<Version> vs = written.remove(txnum);
+      if (vs != null) {
+         clock++;
+         for (Version v : vs) {
+            v.commitTs = clock;
+            committed.addLast(v);
+         }
+      }
+      prune();
+   }
+
+   /**
+    * Discard the versions saved by the transaction,
+    * whose modifications have been undone.
+    * @param txnum the id of the rolled-back transaction
+    */
+   synchronized void rollback(int txnum) {
+      active.remove(txnum);
+      List<Version> vs = written.remove(txnum);
+      if (vs != null)
+         for (Version v : vs)
+            remove(v);
+      prune();
+   }
+
+   /**
+    * Discard the committed versions that no active
+    * transaction can read, oldest first.
+    */
+   private void prune() {
+      long oldest = clock;
+      for (long snapshot : active.values())
+         oldest = Math.min(oldest, snapshot);
+      while (!committed.isEmpty() && committed.peekFirst().commitTs <= oldest)
+         remove(committed.pollFirst());
+   }
+
+   private void remove(Version v) {
+      Deque<Version> vs = versions.get(v.blk);
+      vs.remove(v);
+      if (vs.isEmpty())
+         versions.remove(v.blk);
+   }
+
+   private static class Version {
+      final BlockId blk;
+      final int txnum;
+      final Page image;
+      long commitTs = UNCOMMITTED;
+
+      Version(BlockId blk, int txnum, Page image) {
+         this.blk = blk;
+         this.txnum = txnum;
+         this.image = image;
+      }
+   }
+}
@@ -0,0 +1,56 @@
+package simpledb.tx.recovery;
+
+import java.util.Iterator;
+import simpledb.file.BlockId;
+import simpledb.log.LogMgr;
+import simpledb.server.SimpleDB;
+import simpledb.tx.Transaction;
+
+/**
+ * Checks that the checkpoints of two databases open at
+ * the same time each list only their own active transactions,
+ * and that the background threads of a database stop.
+ */
+public class CheckpointTest {
+   public static void main(String[] args) {
+      SimpleDB db1 = new SimpleDB("checkpointtest1", 400, 8);
+      SimpleDB db2 = new SimpleDB("checkpointtest2", 400, 8);
+
+      Transaction tx = db1.newTx();
+      BlockId blk = tx.append("testfile");
+      tx.pin(blk);
+      tx.setInt(blk, 0, 1, true);
+      RecoveryMgr.checkpoint(db1.logMgr(), db1.bufferMgr());
+      RecoveryMgr.checkpoint(db2.logMgr(), db2.bufferMgr());
+      System.out.println("db1 checkpoint lists " + activeAtCheckpoint(db1.logMgr()) + " (expected 1)");
+      System.out.println("db2 checkpoint lists " + activeAtCheckpoint(db2.logMgr()) + " (expected 0)");
+      tx.commit();
+
+      SimpleDB db3 = new SimpleDB("checkpointtest3");
+      long start = System.currentTimeMillis();
+      db3.shutdown();
+      long ms = System.currentTimeMillis() - start;
+      System.out.println("background threads stopped in " + ms + "ms: "
+            + (!isRunning("BufferFlusher") && !isRunning("Checkpointer")));
+      db1.shutdown();
+      db2.shutdown();
+      System.out.println("log writers stopped: " + !isRunning("LogWriter"));
+   }
+
+   private static int activeAtCheckpoint(LogMgr lm) {
+      Iterator<byte[]> iter = lm.iterator();
+      while (iter.hasNext()) {
+         LogRecord rec = LogRecord.createLogRecord(iter.next());
+         if (rec instanceof NQCheckpointRecord)
+            return ((NQCheckpointRecord) rec).activeTxs().size();
+      }
+      return -1;
+   }
+
+   private static boolean isRunning(String name) {
+      for (Thread t : Thread.getAllStackTraces().keySet())
+         if (t.getName().equals(name))
+            return true;
+      return false;
+   }
+}
@@ -0,0 +1,79 @@
+package simpledb.tx.recovery;
+
+import simpledb.buffer.BufferMgr;
+import simpledb.log.LogMgr;
+
+/**
+ * A background thread that periodically flushes the
+ * buffer pool and writes a nonquiescent checkpoint record,
+ * so that recovery does not have to read the log back
+ * to its beginning.
+ * The checkpoint does not wait for active transactions
+ * to finish, and new transactions can start while it runs.
+ * The thread runs until {@link #shutdown()} is called.
+ */
+public class Checkpointer extends Thread {
+   private LogMgr lm;
+   private BufferMgr bm;
+   private long interval;
+   private Object monitor = new Object(); // not the thread's own, which join uses
+   private boolean stopped = false;
+
+   /**
+    * Create a daemon thread that checkpoints the specified log.
+    * @param lm the log manager
+    * @param bm the buffer manager
+    * @param interval the time between checkpoints, in milliseconds
+    */
+   public Checkpointer(LogMgr lm, BufferMgr bm, long interval) {
+      super("Checkpointer");
+      this.lm = lm;
+      this.bm = bm;
+      this.interval = interval;
+      setDaemon(true);
+   }
+
+   public void run() {
+      while (awaitRound())
+         RecoveryMgr.checkpoint(lm, bm);
+   }
+
+   /**
+    * Stop the thread and wait for it to finish its current round.
+    * The thread is not interrupted, since interrupting a
+    * thread doing file I/O closes the file's channel.
+    */
+   public void shutdown() {
+      synchronized (monitor) {
+         stopped = true;
+         monitor.notifyAll();
+      }
+      try {
+         join();
+      }
+      catch(InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   /**
+    * Wait for the next round.
+    * @return false if the thread has been stopped
+    */
+   private boolean awaitRound() {
+      synchronized (monitor) {
+         long end = System.currentTimeMillis() + interval;
+         long remaining = interval;
+         while (!stopped && remaining > 0) {
+            try {
+               monitor.wait(remaining);
+            }
+            catch(InterruptedException e) {
+               stopped = true;
+            }
+            remaining = end - System.currentTimeMillis();
+         }
+         return !stopped;
+      }
+   }
+}
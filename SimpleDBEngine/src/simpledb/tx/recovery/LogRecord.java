@@ -10,7 +10,8 @@ import simpledb.tx.Transaction;
 public interface LogRecord {
    static final int CHECKPOINT = 0, START = 1,
          COMMIT = 2, ROLLBACK  = 3,
-         SETINT = 4, SETSTRING = 5;
+         SETINT = 4, SETSTRING = 5, NQCKPT = 6,
+         SETBYTES = 7;
 
    /**
     * Returns the log record's type. 
@@ -28,11 +29,19 @@ public interface LogRecord {
    /**
     * Undoes the operation encoded by this log record.
     * The only log record types for which this method
-    * does anything interesting are SETINT and SETSTRING.
+    * does anything interesting are SETINT, SETSTRING and SETBYTES.
     * @param txnum the id of the transaction that is performing the undo.
     */
    void undo(Transaction tx);
 
+   /**
+    * Redoes the operation encoded by this log record.
+    * The only log record types for which this method
+    * does anything interesting are SETINT, SETSTRING and SETBYTES.
+    * @param tx the transaction that is performing the redo.
+    */
+   void redo(Transaction tx);
+
    /**
     * Interpret the bytes returned by the log iterator.
     * @param bytes
@@ -53,6 +62,10 @@ public interface LogRecord {
          return new SetIntRecord(p);
       case SETSTRING: 
          return new SetStringRecord(p);
+      case NQCKPT: 
+         return new NQCheckpointRecord(p);
+      case SETBYTES: 
+         return new SetBytesRecord(p);
       default:
          return null;
       }
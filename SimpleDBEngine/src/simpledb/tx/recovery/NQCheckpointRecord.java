@@ -0,0 +1,87 @@
+package simpledb.tx.recovery;
+
+import java.util.*;
+import simpledb.file.Page;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+
+/**
+ * The NQCKPT (nonquiescent checkpoint) log record.
+ * The record lists the transactions that were active
+ * when it was written. Every other transaction that
+ * started before the record had already completed,
+ * so recovery only needs to read back past the record
+ * far enough to find the START records of the listed
+ * transactions that did not complete.
+ */
+public class NQCheckpointRecord implements LogRecord {
+   private List<Integer> txnums = new ArrayList<>();
+
+   /**
+    * Create a nonquiescent checkpoint record
+    * by reading the list of transactions from the log.
+    * @param p the page containing the log values
+    */
+   public NQCheckpointRecord(Page p) {
+      int npos = Integer.BYTES;
+      int count = p.getInt(npos);
+      for (int i=1; i<=count; i++)
+         txnums.add(p.getInt(npos + i*Integer.BYTES));
+   }
+
+   public int op() {
+      return NQCKPT;
+   }
+
+   /**
+    * Checkpoint records have no associated transaction,
+    * and so the method returns a "dummy", negative txid.
+    */
+   public int txNumber() {
+      return -1; // dummy value
+   }
+
+   /**
+    * Return the transactions that were active
+    * when the checkpoint was written.
+    * @return the ids of the active transactions
+    */
+   public List<Integer> activeTxs() {
+      return txnums;
+   }
+
+   /**
+    * Does nothing, because a checkpoint record
+    * contains no undo information.
+    */
+   public void undo(Transaction tx) {}
+
+   /**
+    * Does nothing, because a checkpoint record
+    * contains no redo information.
+    */
+   public void redo(Transaction tx) {}
+
+   public String toString() {
+      return "<NQCKPT " + txnums + ">";
+   }
+
+   /**
+    * A static method to write a nonquiescent checkpoint record to the log.
+    * This log record contains the NQCKPT operator,
+    * followed by the number of active transactions and their ids.
+    * @return the LSN of the last log value
+    */
+   public static int writeToLog(LogMgr lm, Collection<Integer> txnums) {
+      byte[] rec = new byte[(2 + txnums.size()) * Integer.BYTES];
+      Page p = new Page(rec);
+      p.setInt(0, NQCKPT);
+      p.setInt(Integer.BYTES, txnums.size());
+      int pos = 2 * Integer.BYTES;
+      for (int txnum : txnums) {
+         p.setInt(pos, txnum);
+         pos += Integer.BYTES;
+      }
+      return lm.append(rec);
+   }
+}
@@ -9,6 +9,15 @@ import static simpledb.tx.recovery.LogRecord.*;
 
 /**
  * The recovery manager.  Each transaction has its own recovery manager.
+ * <p>
+ * A transaction's START record is written just before its
+ * first modification. A transaction that modifies nothing
+ * writes no log records at all, and its commit or rollback
+ * neither flushes buffers nor forces the log.
+ * <p>
+ * The set of active transactions, which checkpoints record,
+ * and the lock that keeps it in agreement with the log belong
+ * to the log manager, so that each database has its own.
  * @author Edward Sciore
  */
 public class RecoveryMgr {
@@ -16,6 +25,7 @@ public class RecoveryMgr {
    private BufferMgr bm;
    private Transaction tx;
    private int txnum;
+   private boolean started = false;
 
    /**
     * Create a recovery manager for the specified transaction.
@@ -26,26 +36,84 @@ public class RecoveryMgr {
       this.txnum = txnum;
       this.lm = lm;
       this.bm = bm;
-      StartRecord.writeToLog(lm, txnum);
    }
 
    /**
-    * Write a commit record to the log, and flushes it to disk.
+    * Write the START record of the transaction, unless it has
+    * already been written. The transaction calls this method
+    * before each modification that has to be recovered.
+    */
+   public void start() {
+      if (started)
+         return;
+      started = true;
+      lm.checkpointLock().readLock().lock();
+      try {
+         StartRecord.writeToLog(lm, txnum);
+         lm.activeTxs().add(txnum);
+      }
+      finally {
+         lm.checkpointLock().readLock().unlock();
+      }
+   }
+
+   /**
+    * Return whether the START record of the
+    * transaction has been written.
+    * @return true if the transaction has modified the database
+    */
+   public boolean isStarted() {
+      return started;
+   }
+
+   /**
+    * Write a commit record to the log, and flushes it to disk
+    * together with those of other committing transactions.
+    * A transaction that modified nothing has nothing to do.
+    * The transaction's modified buffers are not forced,
+    * because the log records hold the new values and
+    * recovery can redo them; only buffers holding changes
+    * that were not logged (such as the formatting of new
+    * blocks) have to be written.
     */
    public void commit() {
-      bm.flushAll(txnum);
-      int lsn = CommitRecord.writeToLog(lm, txnum);
-      lm.flush(lsn);
+      if (!started)
+         return;
+      bm.flushUnlogged(txnum);
+      int lsn;
+      lm.checkpointLock().readLock().lock();
+      try {
+         lsn = CommitRecord.writeToLog(lm, txnum);
+         lm.activeTxs().remove(txnum);
+      }
+      finally {
+         lm.checkpointLock().readLock().unlock();
+      }
+      lm.groupCommit(lsn);
    }
 
    /**
     * Write a rollback record to the log and flush it to disk.
+    * The undone values are not logged, so the transaction's
+    * buffers are forced before the rollback record is written;
+    * recovery then neither undoes nor redoes the transaction.
+    * A transaction that modified nothing has nothing to do.
     */
    public void rollback() {
+      if (!started)
+         return;
       doRollback();
       bm.flushAll(txnum);
-      int lsn = RollbackRecord.writeToLog(lm, txnum);
-      lm.flush(lsn);
+      int lsn;
+      lm.checkpointLock().readLock().lock();
+      try {
+         lsn = RollbackRecord.writeToLog(lm, txnum);
+         lm.activeTxs().remove(txnum);
+      }
+      finally {
+         lm.checkpointLock().readLock().unlock();
+      }
+      lm.groupCommit(lsn);
    }
 
    /**
@@ -53,12 +121,38 @@ public class RecoveryMgr {
     * and then write a quiescent checkpoint record to the log and flush it.
     */
    public void recover() {
+      start();
       doRecover();
       bm.flushAll(txnum);
       int lsn = CheckpointRecord.writeToLog(lm);
       lm.flush(lsn);
    }
 
+   /**
+    * Flush every dirty buffer, and then write a nonquiescent
+    * checkpoint record listing the currently active transactions.
+    * Transactions keep running while the checkpoint is taken;
+    * they are only kept from starting or finishing
+    * while the record is appended.
+    * Every modification logged before the previous NQCKPT record
+    * is on disk once this record is written, which is where
+    * the redo pass of recovery can start.
+    * @param lm the log manager
+    * @param bm the buffer manager
+    */
+   public static void checkpoint(LogMgr lm, BufferMgr bm) {
+      bm.flushAll();
+      int lsn;
+      lm.checkpointLock().writeLock().lock();
+      try {
+         lsn = NQCheckpointRecord.writeToLog(lm, new ArrayList<>(lm.activeTxs()));
+      }
+      finally {
+         lm.checkpointLock().writeLock().unlock();
+      }
+      lm.flush(lsn);
+   }
+
    /**
     * Write a setint record to the log and return its lsn.
     * @param buff the buffer containing the page
@@ -68,7 +162,7 @@ public class RecoveryMgr {
    public int setInt(Buffer buff, int offset, int newval) {
       int oldval = buff.contents().getInt(offset);
       BlockId blk = buff.block();
-      return SetIntRecord.writeToLog(lm, txnum, blk, offset, oldval);
+      return SetIntRecord.writeToLog(lm, txnum, blk, offset, oldval, newval);
    }
 
    /**
@@ -80,7 +174,29 @@ public class RecoveryMgr {
    public int setString(Buffer buff, int offset, String newval) {
       String oldval = buff.contents().getString(offset);
       BlockId blk = buff.block();
-      return SetStringRecord.writeToLog(lm, txnum, blk, offset, oldval);
+      return SetStringRecord.writeToLog(lm, txnum, blk, offset, oldval, newval);
+   }
+
+   /**
+    * Write the setbytes records for a range of bytes
+    * to the log and return the lsn of the last one.
+    * A log record has to fit in a log page, so a range
+    * too large for a single record is split.
+    * @param buff the buffer containing the page
+    * @param offset the offset of the range in the page
+    * @param newval the bytes to be written
+    */
+   public int writeBytes(Buffer buff, int offset, byte[] newval) {
+      BlockId blk = buff.block();
+      int max = SetBytesRecord.maxLength(blk, buff.contents().size());
+      int lsn = -1;
+      for (int pos=0; pos<newval.length; pos+=max) {
+         int len = Math.min(max, newval.length - pos);
+         byte[] oldval = buff.contents().readBytes(offset + pos, len);
+         byte[] val = Arrays.copyOfRange(newval, pos, pos + len);
+         lsn = SetBytesRecord.writeToLog(lm, txnum, blk, offset + pos, oldval, val);
+      }
+      return lsn;
    }
 
    /**
@@ -105,24 +221,55 @@ public class RecoveryMgr {
 
    /**
     * Do a complete database recovery.
-    * The method iterates through the log records.
+    * The method iterates backwards through the log records.
     * Whenever it finds a log record for an unfinished
-    * transaction, it calls undo() on that record.
-    * The method stops when it encounters a CHECKPOINT record
-    * or the end of the log.
+    * transaction, it calls undo() on that record;
+    * the log records of committed transactions are saved,
+    * and redone in log order once the backward pass is over.
+    * The method stops reading when it encounters a CHECKPOINT
+    * record or the end of the log.
+    * When it encounters the most recent NQCKPT record, it
+    * notes which of the transactions listed there are unfinished,
+    * and it keeps reading until it has found the START records
+    * of all of them and has also reached the next-earlier NQCKPT
+    * record, before which every modification is on disk.
     */
    private void doRecover() {
-      Collection<Integer> finishedTxs = new ArrayList<>();
+      Collection<Integer> committedTxs = new HashSet<>();
+      Collection<Integer> finishedTxs = new HashSet<>();
+      Collection<Integer> unfinishedAtCkpt = null;
+      boolean pastRedoPoint = false;
+      Deque<LogRecord> redoRecs = new ArrayDeque<>();
       Iterator<byte[]> iter = lm.iterator();
       while (iter.hasNext()) {
          byte[] bytes = iter.next();
          LogRecord rec = LogRecord.createLogRecord(bytes);
          if (rec.op() == CHECKPOINT)
-            return;
-         if (rec.op() == COMMIT || rec.op() == ROLLBACK)
+            break;
+         if (rec.op() == NQCKPT) {
+            if (unfinishedAtCkpt == null) {
+               unfinishedAtCkpt = new HashSet<>(((NQCheckpointRecord) rec).activeTxs());
+               unfinishedAtCkpt.removeAll(finishedTxs);
+            }
+            else
+               pastRedoPoint = true;
+         }
+         else if (rec.op() == COMMIT || rec.op() == ROLLBACK) {
             finishedTxs.add(rec.txNumber());
+            if (rec.op() == COMMIT)
+               committedTxs.add(rec.txNumber());
+         }
          else if (!finishedTxs.contains(rec.txNumber()))
             rec.undo(tx);
+         else if (committedTxs.contains(rec.txNumber()) && !pastRedoPoint)
+            redoRecs.push(rec);
+         if (rec.op() == START && unfinishedAtCkpt != null)
+            unfinishedAtCkpt.remove(rec.txNumber());
+         if (pastRedoPoint && unfinishedAtCkpt.isEmpty())
+            break;
       }
+      // the records were pushed newest first, so they pop in log order
+      while (!redoRecs.isEmpty())
+         redoRecs.pop().redo(tx);
    }
 }
@@ -56,6 +56,9 @@ public class RecoveryTest {
          tx4.setInt(blk1, pos, pos+100, true);
          pos += Integer.BYTES;
       }
+      // a nonquiescent checkpoint while tx3 and tx4 are active;
+      // recovery must still read back to tx4's START record
+      RecoveryMgr.checkpoint(db.logMgr(), bm);
       tx3.setString(blk0, 30, "uvw", true);
       tx4.setString(blk1, 30, "xyz", true);
       bm.flushAll(3);
@@ -0,0 +1,61 @@
+package simpledb.tx.recovery;
+
+import simpledb.server.SimpleDB;
+import simpledb.file.*;
+import simpledb.tx.Transaction;
+
+/**
+ * Run this program twice. The first run commits a
+ * transaction without forcing its buffer, and then "crashes";
+ * the second run should redo the committed change.
+ */
+public class RedoTest {
+   private static FileMgr fm;
+   private static SimpleDB db;
+   private static BlockId blk;
+
+   public static void main(String[] args) throws Exception {
+      db = new SimpleDB("redotest", 400, 8);
+      fm = db.fileMgr();
+      blk = new BlockId("testfile", 0);
+
+      if (fm.length("testfile") == 0) {
+         initialize();
+         modify();
+      }
+      else {
+         recover();
+      }
+   }
+
+   private static void initialize() {
+      Transaction tx1 = db.newTx();
+      tx1.append("testfile");
+      tx1.pin(blk);
+      tx1.setInt(blk, 0, 0, false); // unlogged, so forced at commit
+      tx1.commit();
+      printValue("After initialization:");
+   }
+
+   private static void modify() {
+      Transaction tx2 = db.newTx();
+      tx2.pin(blk);
+      tx2.setInt(blk, 0, 123, true);
+      tx2.commit();
+      // the commit forced only the log, not the buffer
+      printValue("After commit:");
+   }
+
+   private static void recover() {
+      Transaction tx = db.newTx();
+      tx.recover();
+      printValue("After recovery (should be 123):");
+   }
+
+   // Print the value that made it to disk.
+   private static void printValue(String msg) {
+      Page p = new Page(fm.blockSize());
+      fm.read(blk, p);
+      System.out.println(msg + " " + p.getInt(0));
+   }
+}
@@ -0,0 +1,114 @@
+package simpledb.tx.recovery;
+
+import simpledb.file.*;
+import simpledb.log.LogMgr;
+import simpledb.tx.Transaction;
+
+/**
+ * The SETBYTES log record, which holds the old and new
+ * contents of a range of a block, such as a string field
+ * of a variable-length record, or the record area of a
+ * compacted block.
+ */
+public class SetBytesRecord implements LogRecord {
+   private int txnum, offset;
+   private byte[] oldval, newval;
+   private BlockId blk;
+
+   /**
+    * Create a new setbytes log record.
+    * @param p the page containing the log values
+    */
+   public SetBytesRecord(Page p) {
+      int tpos = Integer.BYTES;
+      txnum = p.getInt(tpos);
+      int fpos = tpos + Integer.BYTES;
+      String filename = p.getString(fpos);
+      int bpos = fpos + Page.maxLength(filename.length());
+      int blknum = p.getInt(bpos);
+      blk = new BlockId(filename, blknum);
+      int opos = bpos + Integer.BYTES;
+      offset = p.getInt(opos);
+      int vpos = opos + Integer.BYTES;
+      oldval = p.getBytes(vpos);
+      int npos = vpos + Integer.BYTES + oldval.length;
+      newval = p.getBytes(npos);
+   }
+
+   public int op() {
+      return SETBYTES;
+   }
+
+   public int txNumber() {
+      return txnum;
+   }
+
+   public String toString() {
+      return "<SETBYTES " + txnum + " " + blk + " " + offset + " " + oldval.length + " bytes>";
+   }
+
+   /**
+    * Replace the range of the block with the old bytes saved in the log record.
+    * @see simpledb.tx.recovery.LogRecord#undo(Transaction)
+    */
+   public void undo(Transaction tx) {
+      tx.pin(blk);
+      tx.writeBytes(blk, offset, oldval, false); // don't log the undo!
+      tx.unpin(blk);
+   }
+
+   /**
+    * Replace the range of the block with the new bytes saved in the log record.
+    * Temporary tables are deleted when the database starts up,
+    * so their modifications are not redone.
+    * @see simpledb.tx.recovery.LogRecord#redo(Transaction)
+    */
+   public void redo(Transaction tx) {
+      if (blk.fileName().startsWith("temp"))
+         return;
+      tx.pin(blk);
+      tx.writeBytes(blk, offset, newval, false); // don't log the redo!
+      tx.unpin(blk);
+   }
+
+   /**
+    * Return the largest range of the specified block
+    * whose record fits in a log page of the specified size.
+    * @param blk the modified block
+    * @param pagesize the size of a log page
+    * @return the maximum number of bytes per record
+    */
+   static int maxLength(BlockId blk, int pagesize) {
+      // the record's fields other than the bytes, then the record's
+      // length and the page's boundary, which the log page also holds
+      int fixed = 6 * Integer.BYTES + Page.maxLength(blk.fileName().length());
+      return (pagesize - fixed - 2 * Integer.BYTES) / 2;
+   }
+
+   /**
+    * A static method to write a setbytes record to the log.
+    * This log record contains the SETBYTES operator,
+    * followed by the transaction id, the filename, number,
+    * and offset of the modified block, and the previous
+    * and new contents of the range starting at that offset.
+    * @return the LSN of the last log value
+    */
+   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, byte[] oldval, byte[] newval) {
+      int tpos = Integer.BYTES;
+      int fpos = tpos + Integer.BYTES;
+      int bpos = fpos + Page.maxLength(blk.fileName().length());
+      int opos = bpos + Integer.BYTES;
+      int vpos = opos + Integer.BYTES;
+      int npos = vpos + Integer.BYTES + oldval.length;
+      byte[] rec = new byte[npos + Integer.BYTES + newval.length];
+      Page p = new Page(rec);
+      p.setInt(0, SETBYTES);
+      p.setInt(tpos, txnum);
+      p.setString(fpos, blk.fileName());
+      p.setInt(bpos, blk.number());
+      p.setInt(opos, offset);
+      p.setBytes(vpos, oldval);
+      p.setBytes(npos, newval);
+      return lm.append(rec);
+   }
+}
@@ -5,12 +5,16 @@ import simpledb.log.LogMgr;
 import simpledb.tx.Transaction;
 
 public class SetIntRecord implements LogRecord {
-   private int txnum, offset, val;
+   private int txnum, offset, oldval, newval;
+   private boolean hasNewVal;
    private BlockId blk;
 
    /**
     * Create a new setint log record.
-    * @param bb the bytebuffer containing the log values
+    * Records written before redo logging was introduced
+    * hold only the old value; such a record cannot be redone,
+    * but its transaction forced its pages when it committed.
+    * @param p the page containing the log values
     */
    public SetIntRecord(Page p) {
       int tpos = Integer.BYTES;
@@ -23,7 +27,11 @@ public class SetIntRecord implements LogRecord {
       int opos = bpos + Integer.BYTES;
       offset = p.getInt(opos);
       int vpos = opos + Integer.BYTES;      
-      val = p.getInt(vpos);
+      oldval = p.getInt(vpos);
+      int npos = vpos + Integer.BYTES;
+      hasNewVal = npos + Integer.BYTES <= p.size();
+      if (hasNewVal)
+         newval = p.getInt(npos);
    }
 
    public int op() {
@@ -35,19 +43,34 @@ public class SetIntRecord implements LogRecord {
    }
 
    public String toString() {
-      return "<SETINT " + txnum + " " + blk + " " + offset + " " + val + ">";
+      String s = "<SETINT " + txnum + " " + blk + " " + offset + " " + oldval;
+      return hasNewVal ? s + " " + newval + ">" : s + ">";
    }
 
    /**
-    * Replace the specified data value with the value saved in the log record.
+    * Replace the specified data value with the old value saved in the log record.
     * The method pins a buffer to the specified block,
     * calls setInt to restore the saved value,
     * and unpins the buffer.
-    * @see simpledb.tx.recovery.LogRecord#undo(int)
+    * @see simpledb.tx.recovery.LogRecord#undo(Transaction)
     */
    public void undo(Transaction tx) {
       tx.pin(blk);
-      tx.setInt(blk, offset, val, false); // don't log the undo!
+      tx.setInt(blk, offset, oldval, false); // don't log the undo!
+      tx.unpin(blk);
+   }
+
+   /**
+    * Replace the specified data value with the new value saved in the log record.
+    * Temporary tables are deleted when the database starts up,
+    * so their modifications are not redone.
+    * @see simpledb.tx.recovery.LogRecord#redo(Transaction)
+    */
+   public void redo(Transaction tx) {
+      if (!hasNewVal || blk.fileName().startsWith("temp"))
+         return;
+      tx.pin(blk);
+      tx.setInt(blk, offset, newval, false); // don't log the redo!
       tx.unpin(blk);
    }
 
@@ -56,23 +79,25 @@ public class SetIntRecord implements LogRecord {
     * This log record contains the SETINT operator,
     * followed by the transaction id, the filename, number,
     * and offset of the modified block, and the previous
-    * integer value at that offset.
+    * and new integer values at that offset.
     * @return the LSN of the last log value
     */
-   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, int val) {
+   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, int oldval, int newval) {
       int tpos = Integer.BYTES;
       int fpos = tpos + Integer.BYTES;
       int bpos = fpos + Page.maxLength(blk.fileName().length());
       int opos = bpos + Integer.BYTES;
       int vpos = opos + Integer.BYTES;
-      byte[] rec = new byte[vpos + Integer.BYTES];
+      int npos = vpos + Integer.BYTES;
+      byte[] rec = new byte[npos + Integer.BYTES];
       Page p = new Page(rec);
       p.setInt(0, SETINT);
       p.setInt(tpos, txnum);
       p.setString(fpos, blk.fileName());
       p.setInt(bpos, blk.number());
       p.setInt(opos, offset);
-      p.setInt(vpos, val);
+      p.setInt(vpos, oldval);
+      p.setInt(npos, newval);
       return lm.append(rec);
    }
 }
@@ -6,12 +6,15 @@ import simpledb.tx.Transaction;
 
 public class SetStringRecord implements LogRecord {
    private int txnum, offset;
-   private String val;
+   private String oldval, newval;
    private BlockId blk;
 
    /**
-    * Create a new setint log record.
-    * @param bb the bytebuffer containing the log values
+    * Create a new setstring log record.
+    * Records written before redo logging was introduced
+    * hold only the old value; such a record cannot be redone,
+    * but its transaction forced its pages when it committed.
+    * @param p the page containing the log values
     */
    public SetStringRecord(Page p) {
       int tpos = Integer.BYTES;
@@ -24,7 +27,10 @@ public class SetStringRecord implements LogRecord {
       int opos = bpos + Integer.BYTES;
       offset = p.getInt(opos);
       int vpos = opos + Integer.BYTES;      
-      val = p.getString(vpos);
+      oldval = p.getString(vpos);
+      int npos = vpos + Page.maxLength(oldval.length());
+      if (npos + Integer.BYTES <= p.size())
+         newval = p.getString(npos);
    }
 
    public int op() {
@@ -36,37 +42,53 @@ public class SetStringRecord implements LogRecord {
    }
 
    public String toString() {
-      return "<SETSTRING " + txnum + " " + blk + " " + offset + " " + val + ">";
+      String s = "<SETSTRING " + txnum + " " + blk + " " + offset + " " + oldval;
+      return (newval != null) ? s + " " + newval + ">" : s + ">";
    }
 
    /**
-    * Replace the specified data value with the value saved in the log record.
+    * Replace the specified data value with the old value saved in the log record.
     * The method pins a buffer to the specified block,
-    * calls setInt to restore the saved value,
+    * calls setString to restore the saved value,
     * and unpins the buffer.
-    * @see simpledb.tx.recovery.LogRecord#undo(int)
+    * @see simpledb.tx.recovery.LogRecord#undo(Transaction)
     */
    public void undo(Transaction tx) {
       tx.pin(blk);
-      tx.setString(blk, offset, val, false); // don't log the undo!
+      tx.setString(blk, offset, oldval, false); // don't log the undo!
       tx.unpin(blk);
    }
 
    /**
-    * A static method to write a setInt record to the log.
-    * This log record contains the SETINT operator,
+    * Replace the specified data value with the new value saved in the log record.
+    * Temporary tables are deleted when the database starts up,
+    * so their modifications are not redone.
+    * @see simpledb.tx.recovery.LogRecord#redo(Transaction)
+    */
+   public void redo(Transaction tx) {
+      if (newval == null || blk.fileName().startsWith("temp"))
+         return;
+      tx.pin(blk);
+      tx.setString(blk, offset, newval, false); // don't log the redo!
+      tx.unpin(blk);
+   }
+
+   /**
+    * A static method to write a setString record to the log.
+    * This log record contains the SETSTRING operator,
     * followed by the transaction id, the filename, number,
     * and offset of the modified block, and the previous
-    * integer value at that offset.
+    * and new string values at that offset.
     * @return the LSN of the last log value
     */
-   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, String val) {
+   public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, String oldval, String newval) {
       int tpos = Integer.BYTES;
       int fpos = tpos + Integer.BYTES;
       int bpos = fpos + Page.maxLength(blk.fileName().length());
       int opos = bpos + Integer.BYTES;
       int vpos = opos + Integer.BYTES;
-      int reclen = vpos + Page.maxLength(val.length());
+      int npos = vpos + Page.maxLength(oldval.length());
+      int reclen = npos + Page.maxLength(newval.length());
       byte[] rec = new byte[reclen];
       Page p = new Page(rec);
       p.setInt(0, SETSTRING);
@@ -74,7 +96,8 @@ public class SetStringRecord implements LogRecord {
       p.setString(fpos, blk.fileName());
       p.setInt(bpos, blk.number());
       p.setInt(opos, offset);
-      p.setString(vpos, val);
+      p.setString(vpos, oldval);
+      p.setString(npos, newval);
       return lm.append(rec);
    }
-}
\ No newline at end of file
+}